@@ -0,0 +1,24 @@
+package fourier;
+
+/**
+ * An FFT backend that can do a batch of FFTs of the same size in one go, with the points of the transforms
+ * interleaved: point i of transform b is at i * batch + b. Laid out like this, the backend can work through
+ * the same point of every transform in the batch one after the other, with the same twiddle factors, which
+ * keeps the twiddles in the cache and gives the JIT compiler simple loops to vectorise.
+ * SignalProcessor uses this for its spectrogram methods whenever its backend can do it
+ * @see SignalProcessor#blackmanHarrisSpectrogram
+ */
+public interface BatchFFTBackend extends FFTBackend {
+
+	/**
+	 * Does a batch of FFTs of complex inputs, in place
+	 * @param real the real parts of the inputs, interleaved, which the real parts of the results are written over
+	 * @param imaginary the imaginary parts of the inputs, interleaved, which the imaginary parts of the results are
+	 * written over
+	 * @param size the number of points in each FFT
+	 * @param batch the number of FFTs in the batch
+	 * @throws IllegalArgumentException if the backend does not support the size, or the arrays are not size * batch long
+	 */
+	void transformBatch(double[] real, double[] imaginary, int size, int batch);
+
+}
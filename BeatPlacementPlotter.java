@@ -22,9 +22,10 @@ public class BeatPlacementPlotter {
 	static String placedBeatsFileName = "Deorro-FiveHours user beat labelled";
 	static String computerBeatsFileName = "Deorro-FiveHours beat predictions";
 
-	// Arrays to hold the final arrays of the beat placements
-	static int[] placedBeatsArray;
-	static int[] computerBeatsArray;
+	// Arrays to hold the final arrays of the beat placements. The beat predictions can be
+	// fractions of a millisecond
+	static double[] placedBeatsArray;
+	static double[] computerBeatsArray;
 
 	static int falsePositive = 0;
 	static int falseNegative = 0;
@@ -44,9 +45,9 @@ public class BeatPlacementPlotter {
 		// -------------------------------------------
 
 		Scanner scanPlacedBeats = new Scanner(placedBeatsFile);
-		ArrayList<Integer> placedBeatsData = new ArrayList<Integer>() ;
+		ArrayList<Double> placedBeatsData = new ArrayList<Double>() ;
 		while(scanPlacedBeats.hasNextLine()){
-			placedBeatsData.add(Integer.parseInt(scanPlacedBeats.nextLine()));
+			placedBeatsData.add(Double.parseDouble(scanPlacedBeats.nextLine()));
 		}
 		scanPlacedBeats.close();
 
@@ -54,9 +55,9 @@ public class BeatPlacementPlotter {
 		placedBeatsData.remove(0);
 
 		// convert array list into an array of a set size
-		placedBeatsArray = new int[placedBeatsData.size()];
+		placedBeatsArray = new double[placedBeatsData.size()];
 
-		ListIterator<Integer> placedBeatsIterator = placedBeatsData.listIterator(0);
+		ListIterator<Double> placedBeatsIterator = placedBeatsData.listIterator(0);
 		for (int i = 0; placedBeatsIterator.hasNext(); ++i) {
 			placedBeatsArray[i] = placedBeatsIterator.next() - 400;
 		}
@@ -69,17 +70,21 @@ public class BeatPlacementPlotter {
 		// --------------------------------------------
 
 		Scanner scanComputerBeats = new Scanner(computerBeatsFile);
-		ArrayList<Integer> computerBeatsData = new ArrayList<Integer>() ;
+		ArrayList<Double> computerBeatsData = new ArrayList<Double>() ;
 		while(scanComputerBeats.hasNextLine()){
-			computerBeatsData.add(Integer.parseInt(scanComputerBeats.nextLine()));
+			String line = scanComputerBeats.nextLine();
+			// skip over the settings written at the top of the file
+			if (!line.contains("=")) {
+				computerBeatsData.add(Double.parseDouble(line));
+			}
 		}
 		scanComputerBeats.close();
 
 		// convert array list into an array of a set size
 		// use a temporary array
-		int[] temporary = new int[computerBeatsData.size()];
+		double[] temporary = new double[computerBeatsData.size()];
 
-		ListIterator<Integer> computerBeatsIterator = computerBeatsData.listIterator(0);
+		ListIterator<Double> computerBeatsIterator = computerBeatsData.listIterator(0);
 		for (int i = 0; computerBeatsIterator.hasNext(); ++i) {
 			temporary[i] = computerBeatsIterator.next();
 		}
@@ -94,7 +99,7 @@ public class BeatPlacementPlotter {
 				++counter;
 		}
 
-		computerBeatsArray = new int[counter];
+		computerBeatsArray = new double[counter];
 
 		for (int i = 0; i < computerBeatsArray.length; ++i) {
 			computerBeatsArray[i] = temporary[i];
@@ -158,6 +163,10 @@ public class BeatPlacementPlotter {
 		// negative
 		// If a partner is found, it counts as a hit
 		boolean partnerFound = false;
+
+		// the total distance between each hit and its partner, to see how accurately the beats are placed
+		double totalHitError = 0;
+
 		for (int i = 0; i < placedBeatsArray.length; ++i) {
 
 			partnerFound = false;
@@ -165,6 +174,7 @@ public class BeatPlacementPlotter {
 			for (int j = 0; j < computerBeatsArray.length && computerBeatsArray[j] < placedBeatsArray[i] + errorAllowable; ++j) {
 				if (Math.abs(computerBeatsArray[j] - placedBeatsArray[i]) < errorAllowable) {
 					++hits;
+					totalHitError += Math.abs(computerBeatsArray[j] - placedBeatsArray[i]);
 					partnered[j] = true;
 					partnerFound = true;
 					break;
@@ -197,6 +207,7 @@ public class BeatPlacementPlotter {
 		System.out.println("precision = " + precision);
 		System.out.println("recall = " + recall);
 		System.out.println("fmeasure = " + fmeasure);
+		System.out.format("mean placement error of hits = %.3f milliseconds\n", totalHitError / hits);
 
 
 
@@ -0,0 +1,198 @@
+package audio;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+import fourier.SignalProcessor;
+import rollingmemory.RollingDoubleMemory;
+
+/**
+ * Checks how well the beat tracker places beats in between windows. A made up track (the one made by
+ * FilterbankOnsetTester) has kicks at a steady tempo that isn't a whole number of hops apart, so every kick
+ * lands at a different place in between two windows. The track is run through the FFT front-end, the beat
+ * tracker and the tempo scheduler in the same way as Illumaxate does, and the time of every beat is worked
+ * out from getBeatPosition just as it is written out in Illumaxate.
+ * This is done three times: with no impulse memory given to the beat tracker (so beats are only placed in
+ * between windows by the forecast of the tempo), with the denoised impulse memory given to it (which is
+ * what the peak was found from before) and with the impulse memory from before the impulses were denoised.
+ * Before the beats, the peaks themselves are checked. The peak of every onset in the denoised impulse is
+ * moved in between windows by BeatTracker.peakOffset and matched to the closest kick. Only the strongest
+ * onset matched to each kick is kept (the noise makes small onsets of its own), and the spread of how far
+ * the peaks are from their kicks is printed out. Without a fit the peaks can only land on whole windows,
+ * so they are spread out by up to a window as the kicks move in between windows.
+ * For the beats it prints out how many landed within errorAllowable of a kick, and the mean and spread of how
+ * far they were from the kick. The mean is mostly the delay of the front-end, so it is the spread that shows
+ * how well the beats are placed. BeatPlacementPlotter does the same for the beats of a real track against
+ * beats placed by hand
+ */
+public class BeatPositionTester {
+
+	// the tempo of the kicks. At a 3 millisecond hop this is about 157.1 windows between kicks
+	static final double kickBPM = 127.3;
+
+	// the same beat settings as Illumaxate uses by default
+	static final int expectedBPM = 130;
+	static final int numOfBeatsInInterval = 7;
+	static final double minTempoEstimateMillis = 50;
+
+	// a beat within this many milliseconds of a kick counts as a hit, as in BeatPlacementPlotter
+	static final double errorAllowable = 70;
+
+	// the memories given to the beat tracker to find the peaks from, in the order they are tried
+	static final String[] peakMemoryNames = {"no impulse memory", "denoised impulses", "impulses before denoising"};
+
+	public static void main(String[] args) {
+
+		int windowSizeInFrames = (int) (FilterbankOnsetTester.sampleRate / FilterbankOnsetTester.minFrequency);
+		int hopInFrames = (int) (FilterbankOnsetTester.sampleRate * FilterbankOnsetTester.hopMillis / 1000);
+		int windowsInMovAverage = (int) (FilterbankOnsetTester.movingAverageMillis / FilterbankOnsetTester.hopMillis);
+
+		// the hop is a whole number of frames, so it isn't quite the hop asked for. This is the one Illumaxate
+		// writes the beats out with
+		double actualHopMillis = hopInFrames * 1000 / FilterbankOnsetTester.sampleRate;
+
+		// the same working out as Illumaxate does for the interval
+		double windowOffsetsPerBeat = 60000.0 / expectedBPM / actualHopMillis;
+		int windowsInInterval = (int) (windowOffsetsPerBeat * numOfBeatsInInterval * 1.5);
+
+		int numOfKicks = 0;
+		double[] kickTimes = new double[(int) (FilterbankOnsetTester.trackSeconds * 4) + 1];
+		for (double time = 500; time < FilterbankOnsetTester.trackSeconds * 1000 - 500; time += 60000.0 / kickBPM) {
+			kickTimes[numOfKicks++] = time;
+		}
+
+		int[] track = FilterbankOnsetTester.makeTrack(kickTimes, numOfKicks, new Random(35));
+		int numOfHops = (track.length - windowSizeInFrames) / hopInFrames;
+
+		System.out.format("%d hops of %.3f milliseconds, %d kicks at %.1f BPM (%.2f windows apart)\n",
+				numOfHops, actualHopMillis, numOfKicks, kickBPM, 60000 / (kickBPM * actualHopMillis));
+
+		// the beat tracker prints out every tempo it finds, which we don't want mixed in with the results
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {}
+		}));
+
+		for (int m = 0; m < peakMemoryNames.length; ++m) {
+
+			SignalProcessor signalProcess = new SignalProcessor(windowSizeInFrames);
+			RollingDoubleMemory impulseMemory = new RollingDoubleMemory(windowsInMovAverage);
+			RollingDoubleMemory denoisedMemory = new RollingDoubleMemory(numOfHops);
+			RollingDoubleMemory volumeMemory = new RollingDoubleMemory(numOfHops);
+
+			BeatTracker tracker = new BeatTracker(windowsInMovAverage, windowOffsetsPerBeat, numOfBeatsInInterval,
+					denoisedMemory, volumeMemory, windowsInInterval);
+			if (m == 1) {
+				tracker.setImpulseMemory(denoisedMemory);
+			} else if (m == 2) {
+				tracker.setImpulseMemory(impulseMemory);
+			}
+			int windowsBetweenTempoEstimates = (int) Math.ceil(minTempoEstimateMillis / actualHopMillis);
+			TempoEstimationScheduler tempoScheduler = new TempoEstimationScheduler(tracker, denoisedMemory, volumeMemory,
+					windowsInInterval, windowsBetweenTempoEstimates);
+
+			int numOfBeats = 0;
+			int hits = 0;
+			double errorTotal = 0;
+			double errorSquaredTotal = 0;
+
+			// the window the onset being looked at peaked in, and the strength and offset (in windows) of the
+			// strongest peak matched to each kick
+			int peakWindow = -1;
+			double[] kickPeakStrengths = new double[numOfKicks];
+			double[] kickPeakErrors = new double[numOfKicks];
+			double[] previousSpectrum = null;
+			int[] window = new int[windowSizeInFrames];
+
+			for (int h = 0; h < numOfHops; ++h) {
+
+				System.arraycopy(track, h * hopInFrames, window, 0, windowSizeInFrames);
+				double[] spectrum = signalProcess.log(signalProcess.blackmanHarrisFFT(window)).clone();
+
+				impulseMemory.addDouble((previousSpectrum == null) ? 0 : tracker.getImpulse(spectrum, previousSpectrum));
+				previousSpectrum = spectrum;
+				volumeMemory.addDouble(tracker.getRMSVolume(window));
+				denoisedMemory.addDouble(tracker.trailedMovingAverage(
+						impulseMemory.getDoubleArray(h - windowsInMovAverage + 1, windowsInMovAverage)));
+
+				double denoised = denoisedMemory.getDouble(h);
+				if (denoised > 0 && (peakWindow < 0 || denoised > denoisedMemory.getDouble(peakWindow))) {
+					peakWindow = h;
+				}
+
+				// once the onset has ended, its peak is moved in between windows and matched to the closest kick
+				if (denoised <= 0 && peakWindow >= 0) {
+
+					double peakPosition = peakWindow + tracker.peakOffset(peakWindow, h);
+					double peakStrength = denoisedMemory.getDouble(peakWindow);
+
+					for (int k = 0; k < numOfKicks; ++k) {
+						double peakError = peakPosition - kickTimes[k] / actualHopMillis;
+						if (Math.abs(peakError * actualHopMillis) < errorAllowable && peakStrength > kickPeakStrengths[k]) {
+							kickPeakStrengths[k] = peakStrength;
+							kickPeakErrors[k] = peakError;
+						}
+					}
+					peakWindow = -1;
+				}
+
+				if (!tracker.getBeat(tempoScheduler.getTempo(h), h)) {
+					continue;
+				}
+
+				// the same time Illumaxate writes out for the beat
+				double beatTime = (tracker.getBeatPosition() + 1) * actualHopMillis;
+				++numOfBeats;
+
+				double closestError = closestKick(beatTime, kickTimes, numOfKicks);
+
+				if (Math.abs(closestError) < errorAllowable) {
+					++hits;
+					errorTotal += closestError;
+					errorSquaredTotal += closestError * closestError;
+				}
+			}
+
+			int numOfPeaks = 0;
+			double peakErrorTotal = 0;
+			double peakErrorSquaredTotal = 0;
+			for (int k = 0; k < numOfKicks; ++k) {
+				if (kickPeakStrengths[k] > 0) {
+					++numOfPeaks;
+					peakErrorTotal += kickPeakErrors[k];
+					peakErrorSquaredTotal += kickPeakErrors[k] * kickPeakErrors[k];
+				}
+			}
+
+			double meanPeakError = peakErrorTotal / numOfPeaks;
+			double peakSpread = Math.sqrt(peakErrorSquaredTotal / numOfPeaks - meanPeakError * meanPeakError);
+
+			double meanError = errorTotal / hits;
+			double spread = Math.sqrt(errorSquaredTotal / hits - meanError * meanError);
+
+			out.println("peaks from " + peakMemoryNames[m] + ":");
+			out.format("\t%d kicks with an onset peak, spread %.3f windows\n", numOfPeaks, peakSpread);
+			out.format("\t%d beats, %d hits, mean error %.3f milliseconds, spread %.3f milliseconds (%.3f windows)\n",
+					numOfBeats, hits, meanError, spread, spread / actualHopMillis);
+		}
+
+		System.setOut(out);
+	}
+
+
+	// returns how far the time given is from the closest kick, in milliseconds
+	static double closestKick(double time, double[] kickTimes, int numOfKicks) {
+
+		double closestError = Double.MAX_VALUE;
+		for (int k = 0; k < numOfKicks; ++k) {
+			if (Math.abs(time - kickTimes[k]) < Math.abs(closestError)) {
+				closestError = time - kickTimes[k];
+			}
+		}
+
+		return closestError;
+	}
+
+}
@@ -2,9 +2,13 @@ package audio;
 
 import javax.sound.sampled.SourceDataLine;
 
+import fourier.ConstantQTransform;
 import fourier.DFTSearch;
+import fourier.HarmonicSumPlan;
 import fourier.SignalProcessor;
 import rollingmemory.RollingDoubleMemory;
+import rollingmemory.SlidingWindowMax;
+import rollingmemory.SparseOnsetRing;
 
 public class BeatTracker extends DFTSearch{
 
@@ -17,16 +21,42 @@ public class BeatTracker extends DFTSearch{
 	// this variable holds the value for the number of expected windows between any two beats
 	private double expectedWindowsBetweenBeats;
 
+	// the number of windows in each sample of the interval given to trackBeat. This is 1 unless
+	// the onset envelope is decimated before the tempo is worked out
+	private int windowsPerTempoSample;
+
 	private int maxNumberofJumps;
 
 	private RollingDoubleMemory denoisedImpulseRollingMemory;
 
 	private RollingDoubleMemory volumeRollingMemory;
 
+	// the impulse of every window before it was denoised, which the peak of an onset is found in between
+	// windows from. This is null if it hasn't been given to the beat tracker
+	private RollingDoubleMemory impulseRollingMemory;
+
+	// keeps track of the largest of the most recent denoised impulses, so we can find the strongest
+	// impulse near a predicted beat without going through every window around it
+	private SlidingWindowMax recentMax;
+
 	private SignalProcessor signalProcess;
-	
+
+	// the number of samples in the intervals given to trackBeat
+	private int numOfSamplesInInterval;
+
+	// how much longer the FFT of the interval is than the interval itself (1 if the FFT is exactly
+	// the length of the interval). Bins of the FFT are stretched by this much
 	private double difference;
 
+	// the number of harmonics summed together in the harmonic FFT, and the number of points each
+	// harmonic is stretched over
+	private int numOfHarmonics = 6;
+	private int harmonicResolution = 700;
+
+	// the plan used to sum the harmonics of the interval's FFT. It holds where every point of every
+	// harmonic lands in the FFT, so this doesn't have to be worked out on every hop
+	private HarmonicSumPlan harmonicSum;
+
 
 	/**
 	 * The beat tracker will create a signal processor that handles the size of interval
@@ -36,28 +66,91 @@ public class BeatTracker extends DFTSearch{
 	 * pass by before a new beat is found
 	 */
 	public BeatTracker(int windowsInMovAverage, double expectedWindowsBetweenBeats, int numOfBeatsInInterval, RollingDoubleMemory denoisedImpulseRollingMemory, RollingDoubleMemory volumeRollingMemory, int numOfWindowsInInterval){
+		this(windowsInMovAverage, expectedWindowsBetweenBeats, numOfBeatsInInterval, denoisedImpulseRollingMemory, volumeRollingMemory, numOfWindowsInInterval, 1);
+	}
+
+
+	/**
+	 * The beat tracker will create a signal processor that handles the size of interval
+	 * inputed into this constructor. The intervals given to trackBeat are made of samples of a decimated
+	 * onset envelope, each of which covers a number of windows. The tempo handed back by trackBeat is
+	 * still in windows, so beats are still placed on the windows themselves
+	 * @param windowsInMovAverage the number of windows we want in the moving average
+	 * @param expectedWindowsBetweenBeats the number of windows that we expect will
+	 * pass by before a new beat is found
+	 * @param numOfSamplesInInterval the number of samples in the intervals given to trackBeat
+	 * @param windowsPerTempoSample the number of windows in each sample of the intervals given to trackBeat
+	 * @see OnsetEnvelopeDecimator
+	 */
+	public BeatTracker(int windowsInMovAverage, double expectedWindowsBetweenBeats, int numOfBeatsInInterval, RollingDoubleMemory denoisedImpulseRollingMemory, RollingDoubleMemory volumeRollingMemory, int numOfSamplesInInterval, int windowsPerTempoSample){
 
 		this.movingAverageSize = windowsInMovAverage;
 
 		this.expectedWindowsBetweenBeats = expectedWindowsBetweenBeats;
 
+		this.windowsPerTempoSample = windowsPerTempoSample;
+
 		this.denoisedImpulseRollingMemory = denoisedImpulseRollingMemory;
 
 		this.volumeRollingMemory = volumeRollingMemory;
 
+		// make sure the denoised impulse memory is keeping track of its largest recent impulses
+		if (denoisedImpulseRollingMemory.getWindowMax() == null) {
+			denoisedImpulseRollingMemory.attachWindowMax(new SlidingWindowMax(denoisedImpulseRollingMemory.getMemorySize()));
+		}
+		this.recentMax = denoisedImpulseRollingMemory.getWindowMax();
+
 		maxNumberofJumps = numOfBeatsInInterval;
 
-		this.signalProcess = new SignalProcessor(numOfWindowsInInterval);
+		this.numOfSamplesInInterval = numOfSamplesInInterval;
 
-		int doubled = 1;
-		while(doubled < numOfWindowsInInterval)
-			doubled *= 2;
+		this.signalProcess = new SignalProcessor(numOfSamplesInInterval);
 
-		this.difference = doubled / (double)numOfWindowsInInterval;
+		this.difference = signalProcess.getFFTSize() / (double)numOfSamplesInInterval;
 		
 		}
 
 
+	/**
+	 * Decides whether the FFT of the interval is exactly the length of the interval, or padded out to the
+	 * next 2^n (which it is by default). With an exact size FFT, each bin is a whole number of cycles in the
+	 * interval, so there is no difference in bin size to correct for
+	 * @param exactSize true to make the FFT exactly the length of the interval
+	 * @see SignalProcessor#SignalProcessor(int, boolean)
+	 */
+	public void setExactSizeFFT(boolean exactSize) {
+		this.signalProcess = new SignalProcessor(numOfSamplesInInterval, exactSize);
+		this.difference = signalProcess.getFFTSize() / (double)numOfSamplesInInterval;
+		this.harmonicSum = null;
+	}
+
+
+	/**
+	 * Gives the beat tracker the memory holding the impulse of every window before it was denoised. The peak
+	 * of the impulse a beat is forecast from is found in between windows by fitting a parabola through this.
+	 * The denoised impulse can't be used for this, as the windows either side of a peak are nearly always
+	 * zero in it. If this isn't given, beats are only placed in between windows by the forecast of the tempo
+	 * @param impulseRollingMemory the memory of impulses before they were denoised. It only needs to hold
+	 * the last few windows
+	 */
+	public void setImpulseMemory(RollingDoubleMemory impulseRollingMemory) {
+		this.impulseRollingMemory = impulseRollingMemory;
+	}
+
+
+	/**
+	 * Changes the number of harmonics summed together when the tempo is found from the FFT of the
+	 * interval, and how many points each harmonic is stretched over
+	 * @param numOfHarmonics the number of harmonics to sum
+	 * @param harmonicResolution the number of points each harmonic is stretched over
+	 */
+	public void setHarmonicSum(int numOfHarmonics, int harmonicResolution) {
+		this.numOfHarmonics = numOfHarmonics;
+		this.harmonicResolution = harmonicResolution;
+		this.harmonicSum = null;
+	}
+
+
 	public double getVolume(double[] window) {
 
 		double volume = 0;
@@ -85,6 +178,45 @@ public class BeatTracker extends DFTSearch{
 	}
 
 
+	/**
+	 * The float equivalent of getVolume(double[]), for spectra kept in single precision. The volume is
+	 * still added up in a double
+	 * @param window the FFT window
+	 * @return the volume of the window
+	 */
+	public double getVolume(float[] window) {
+
+		double volume = 0;
+
+		for (int i = 0; i < window.length; ++i) {
+			volume += window[i];
+		}
+
+		return volume;
+	}
+
+
+	/**
+	 * The float equivalent of getLowFreqVolume(double[], double), for spectra kept in single precision.
+	 * The volume is still added up in a double
+	 * @param window the FFT window
+	 * @param audioFrameRate the frame rate of the audio the window is from
+	 * @return the volume of the window under 800 Hz
+	 */
+	public double getLowFreqVolume(float[] window, double audioFrameRate) {
+
+		int frequencyIncrements = (int) Math.ceil(audioFrameRate / window.length);
+
+		double lowFreqVolume = 0;
+
+		for (int i = 0; (i + 1) * frequencyIncrements < 800; ++i) {
+			lowFreqVolume += window[i];
+		}
+
+		return lowFreqVolume;
+	}
+
+
 	public double getRMSVolume(int[] window) {
 
 		double RMSVolume = 0;
@@ -129,6 +261,78 @@ public class BeatTracker extends DFTSearch{
 	}
 
 
+	/**
+	 * The float equivalent of getImpulse(double[], double[]), for spectra kept in single precision.
+	 * The impulse is still added up in a double
+	 * @param newFFTWindow the FFT window being processed
+	 * @param prevFFTWindow the last FFT window to be processed
+	 * @return the impulse of the signal between the two windows
+	 */
+	public double getImpulse(float[] newFFTWindow, float[] prevFFTWindow) {
+
+		double totalImpulse = 0;
+
+		for (int i = 0; i < newFFTWindow.length / 3; ++i) {
+
+			double impulse = newFFTWindow[i] - prevFFTWindow[i];
+			if (impulse > 0) {
+				totalImpulse += impulse;
+			}
+
+		}
+
+		return totalImpulse;
+
+	}
+
+
+	/**
+	 * The equivalent of getImpulse(double[], double[]) for the bands of a constant Q transform. The first
+	 * third of the FFT's bins goes up to a third of the sample rate, and the bands of a ConstantQTransform made
+	 * with its default range go up to the same frequency, so every band counts
+	 * @param newBands the bands of the window being processed
+	 * @param prevBands the bands of the last window to be processed
+	 * @return the impulse of the signal between the two windows
+	 * @see ConstantQTransform
+	 */
+	public double getBandImpulse(double[] newBands, double[] prevBands) {
+
+		double totalImpulse = 0;
+
+		for (int i = 0; i < newBands.length; ++i) {
+
+			double impulse = newBands[i] - prevBands[i];
+			if (impulse > 0) {
+				totalImpulse += impulse;
+			}
+
+		}
+
+		return totalImpulse;
+
+	}
+
+
+	/**
+	 * The equivalent of getLowFreqVolume(double[], double) for the bands of a constant Q transform. Only the
+	 * bands centred under 800 Hz are added up, which are the first few
+	 * @param bands the bands of the window
+	 * @param constantQ the transform the bands are from
+	 * @return the volume of the window under 800 Hz
+	 * @see ConstantQTransform
+	 */
+	public double getLowFreqVolume(double[] bands, ConstantQTransform constantQ) {
+
+		double lowFreqVolume = 0;
+
+		for (int i = 0; i < constantQ.getBandsBelow(800); ++i) {
+			lowFreqVolume += bands[i];
+		}
+
+		return lowFreqVolume;
+	}
+
+
 
 	public double trailedMovingAverage(double[] impulseArray) {
 
@@ -158,80 +362,61 @@ public class BeatTracker extends DFTSearch{
 	 * hits an impulse when traced backwards from the current window
 	 */
 	public double[] trackBeat(double[] intervalImpulses, double[] intervalVolumes) {
-
-		// decide how many cycles there will be in the interval if we use the value given in
-		// 'expectedWindowsBetweenBeats'.
-		double numOfCyclesInInterval = intervalImpulses.length / expectedWindowsBetweenBeats;
-
-		// we want to create bins to search between which encompass the value above. we want the lower
-		// bound to be half the size of the upper bound as well
-		double lowerBin = numOfCyclesInInterval * 3.0 / 4;
-		double upperBin = numOfCyclesInInterval * 3.0 / 2;
-
-		// do DFT search between the bins to start off with
-		// we have doubled the the lower and upper bins sizes because they
-		double jump = search(intervalImpulses, 31, 5, lowerBin, upperBin);
-
-		// To start off with, we want to convert the answer the DFT search spits
-		// out into windows per cycle rather than cycles per interval
-		// we multiply it by two since we doubled the size of the interval given to the search
-		// when we mirrored the interval
-		jump = (intervalImpulses.length) / jump;
-
-		//System.out.format("%.1f BPM", 60000 / (jump * 3));
-
-		// do it again for different harmonies of the tempo
-		jump = search(intervalImpulses, 31, 5, lowerBin * 2, upperBin + lowerBin);
-
-		jump = (intervalImpulses.length * 2) / jump;
-		//System.out.format("	%.1f BPM \n", 60000 / (jump * 3));
+		return trackBeat(intervalImpulses, intervalVolumes, null, 0);
+	}
 
 
+	/**
+	 * Tracks the beat in exactly the same way as trackBeat above, but finds the impulse around each landing
+	 * of the jump loop from the sparse onset ring of the interval rather than going through every window of
+	 * the error bars. The ring must hold the onsets of the same memory the interval was read from
+	 * @param intervalImpulses the impulses of each sample of the interval
+	 * @param intervalVolumes the volumes of each sample of the interval
+	 * @param onsets the sparse onset ring of the memory the interval was read from, or null to go through
+	 * the error bars window by window
+	 * @param firstSample the index (in the memory) of the first sample of the interval
+	 * @return the same array trackBeat above returns
+	 */
+	public double[] trackBeat(double[] intervalImpulses, double[] intervalVolumes, SparseOnsetRing onsets, int firstSample) {
 
+		// decide how many cycles there will be in the interval if we use the value given in
+		// 'expectedWindowsBetweenBeats'. Each sample of the interval may cover more than one window
+		double numOfCyclesInInterval = intervalImpulses.length * windowsPerTempoSample / expectedWindowsBetweenBeats;
 
+		// we want the lowest bin the tempo could be at, which encompasses the value above. The
+		// harmonic FFT sum starts from this bin
+		double lowerBin = numOfCyclesInInterval * 3.0 / 4;
 
 		int newlowerBin = (int)(lowerBin * difference);
 
 		// Harmonic FFT timing
-
-		int numOfInputPoints = newlowerBin;
-		int startingIndex = newlowerBin;
-		int newArraySize = 700;
-
-		double d = numOfInputPoints / (double)newArraySize;
-		double[] outputHarmonicFFT = new double[newArraySize];
-
-		double constant = 0;
-
+		// the plan only depends on the lower bin (which only changes if the interval length changes),
+		// so it is only made again when the lower bin is different to the one it was made for
+		if (harmonicSum == null || harmonicSum.getStartBin() != newlowerBin) {
+			harmonicSum = new HarmonicSumPlan(newlowerBin, numOfHarmonics, harmonicResolution);
+		}
 
 		double[] answer = signalProcess.blackmanHarrisFFT(intervalImpulses);
 
-		for (int j = 0; j < 6; j++) {
-			for (int k = 0; k < newArraySize; ++k) {
-				constant = startingIndex + d*k;
-				outputHarmonicFFT[k] += ((answer[(int)constant + 1] - answer[(int)constant]) * (constant - (int)constant) +  answer[(int)constant]) * (j * 0.2 + 1);
-			}
-			startingIndex *= 2;
-			numOfInputPoints *= 2;
-			d = numOfInputPoints / (double) newArraySize;
-		}
+		double[] outputHarmonicFFT = harmonicSum.sum(answer);
 
 		double maxValue = 0;
 		int maxValueIndex = 0;
 
-		for (int j = 0; j < newArraySize; ++j) {
+		for (int j = 0; j < outputHarmonicFFT.length; ++j) {
 			if (outputHarmonicFFT[j] > maxValue){
 				maxValue = outputHarmonicFFT[j];
 				maxValueIndex = j;
 			}
 		}
 
-		double ans = (maxValueIndex * (double)newlowerBin / outputHarmonicFFT.length + newlowerBin);
+		double ans = harmonicSum.getBin(maxValueIndex);
 
 
 
-		jump = intervalImpulses.length * difference / ans;
-		System.out.format("	%.1f BPM \n", 60000 / (jump * 3));
+		// convert the bin back into the number of samples between each beat
+		double jump = intervalImpulses.length * difference / ans;
+		System.out.format("	%.1f BPM \n", 60000 / (jump * windowsPerTempoSample * 3));
 
 
 
@@ -279,25 +464,39 @@ public class BeatTracker extends DFTSearch{
 			double maxImpulse = -10;
 			int maxImpulseIndex = 0;
 
-			// we search either side of the landing site for the maximum impulse within the error range
-			for (int i = 0; i < error; ++i) {
+			if (onsets != null) {
+
+				// the ring already knows where the onsets are, so we binary search it for the strongest
+				// onset within the error bars. These reach as far either side as the loop below does
+				int reach = (int) Math.ceil(error) - 1;
+				int strongest = onsets.strongestInRange(firstSample + Math.max(0, landing - reach), firstSample + landing + reach);
 
-				// checking the windows above the landing
-				if (intervalImpulses[landing + i] > maxImpulse) {
-					maxImpulse = intervalImpulses[landing + i];
-					maxImpulseIndex = landing + i;
+				if (strongest >= 0) {
+					maxImpulseIndex = strongest - firstSample;
+					maxImpulse = intervalImpulses[maxImpulseIndex];
 				}
+			} else {
 
-				// checking the windows below the landing
-				// we want to ensure that we don't go out of bounds of the array
-				// when negating from indexes, hence the extra 'if' statement
-				if (landing - i >= 0) {
-					if (intervalImpulses[landing - i] > maxImpulse) {
-						maxImpulse = intervalImpulses[landing - i];
-						maxImpulseIndex = landing - i;
+				// we search either side of the landing site for the maximum impulse within the error range
+				for (int i = 0; i < error; ++i) {
+
+					// checking the windows above the landing
+					if (intervalImpulses[landing + i] > maxImpulse) {
+						maxImpulse = intervalImpulses[landing + i];
+						maxImpulseIndex = landing + i;
 					}
-				}
 
+					// checking the windows below the landing
+					// we want to ensure that we don't go out of bounds of the array
+					// when negating from indexes, hence the extra 'if' statement
+					if (landing - i >= 0) {
+						if (intervalImpulses[landing - i] > maxImpulse) {
+							maxImpulse = intervalImpulses[landing - i];
+							maxImpulseIndex = landing - i;
+						}
+					}
+
+				}
 			}
 
 			// there are two things that can happen, either an impulse is found,
@@ -355,7 +554,9 @@ public class BeatTracker extends DFTSearch{
 		// two unequal sized windows, meaning the interval size can become a dynamic variable
 		// accumImpulses /= intervalImpulses.length;
 
-		return new double[]{jump, accumImpulses, hits, numJumps, intervalImpulses.length};
+		// the jump and the interval size are handed back in windows rather than samples, as this is what
+		// the beats are placed on
+		return new double[]{jump * windowsPerTempoSample, accumImpulses, hits, numJumps, intervalImpulses.length * windowsPerTempoSample};
 	}
 
 
@@ -386,6 +587,14 @@ public class BeatTracker extends DFTSearch{
 
 	double windowsBetweenBeats = 0;
 
+	// how far (in windows, between -0.5 and 0.5) the peak of the last impulse that confirmed a prediction
+	// was from the window it was found in. This is 0 if the last prediction wasn't confirmed by an impulse
+	double anchorPeakOffset = 0;
+
+	// the position of the last beat found, in windows. Unlike the window the beat was found on, this
+	// can fall in between two windows
+	double beatPosition = 0;
+
 	/**
 	 * This is should be called immediately after using 'trackbeat'
 	 * The inputed arguments to this method must be exactly the same as the arguments
@@ -423,12 +632,14 @@ public class BeatTracker extends DFTSearch{
 
 			// forecast when the next beat will be
 			nextBeat = totalWindowsProcessed + windowsBetweenBeats;
+			anchorPeakOffset = 0;
 
 			// we set this beat to be a new beat only if the last window set to be a beat occurred over
 			// 2 thirds of a a beat ago
 			if (totalWindowsProcessed - windowsBetweenBeats * 2 / 3 > prevBeat) {
 				isBeat = true; 
 				prevBeat = totalWindowsProcessed;
+				beatPosition = totalWindowsProcessed;
 			}
 
 			// because a new tempo has been found, we need to set the failed predictions back to 0
@@ -452,21 +663,14 @@ public class BeatTracker extends DFTSearch{
 		// to see if an impulse does indeed occur. If not, the failed prediction tally goes up by one
 		if ((int)nextBeat + errorInWindows <= totalWindowsProcessed)	{
 
-			// go through the error bars (either side of the prediction) and check for the closest impulse
-			double contenderImpulse = 0;
-			double maxImpulse = 0;
-			int impulseIndex = 0;
-			for (int i = 0; i < (errorInWindows * 2) + 1; ++i) {
-				contenderImpulse = denoisedImpulseRollingMemory.getDouble(totalWindowsProcessed - i);
-				if (contenderImpulse > maxImpulse) {
-					maxImpulse = contenderImpulse;
-					impulseIndex = i;
-				}
-
-			}
+			// find the strongest impulse in the error bars (either side of the prediction). The sliding
+			// window max already knows this, so we don't need to go through the error bars ourselves
+			int errorWidth = Math.min(errorInWindows * 2 + 1, recentMax.getMaxWidth());
+			boolean impulseFound = recentMax.maxValue(errorWidth) > 0;
+			int impulseIndex = impulseFound ? totalWindowsProcessed - recentMax.maxIndex(errorWidth) : 0;
 
 			// if there were no impulses, that means that the prediction is wrong
-			if (maxImpulse > 0) {
+			if (impulseFound) {
 				// there was an impulse
 
 				// we tweak where we jump from slightly, to be the closest impulse found within the error range
@@ -475,6 +679,10 @@ public class BeatTracker extends DFTSearch{
 
 				prevBeat = totalWindowsProcessed - impulseIndex;
 
+				// the impulse only tells us which window the onset peaked in, so we find where in between
+				// the windows the peak actually was. The next beat is then forecast from there
+				anchorPeakOffset = peakOffset(totalWindowsProcessed - impulseIndex, totalWindowsProcessed);
+
 				// we reset the failed prediction tally and turn the decline in confidence off
 				failedPredictions = 0;
 				declineInConfidence = false;
@@ -496,16 +704,10 @@ public class BeatTracker extends DFTSearch{
 			} else {
 				// there is no impulse within the error
 
-				maxImpulse = 0;
-				impulseIndex = 0;
-
-				// go back and find the maximum impulse within a beat of the guess
-				for (int i = 0; i < windowsBetweenBeats / 2; ++i) {
-					if (denoisedImpulseRollingMemory.getDouble(totalWindowsProcessed - i) > maxImpulse) {
-						maxImpulse = denoisedImpulseRollingMemory.getDouble(totalWindowsProcessed - i);
-						impulseIndex = i;
-					}
-				}
+				// go back and find the strongest impulse within half a beat of the guess
+				int windowsToLookBack = Math.min((int) Math.ceil(windowsBetweenBeats / 2), recentMax.getMaxWidth());
+				impulseFound = windowsToLookBack > 0 && recentMax.maxValue(windowsToLookBack) > 0;
+				impulseIndex = impulseFound ? totalWindowsProcessed - recentMax.maxIndex(windowsToLookBack) : 0;
 
 				// if no impulse is found, we will
 
@@ -514,6 +716,7 @@ public class BeatTracker extends DFTSearch{
 
 				// we then set the next beat and hope for the best
 				nextBeat += windowsBetweenBeats - errorInWindows;
+				anchorPeakOffset = 0;
 
 				prevBeat = totalWindowsProcessed - errorInWindows;
 
@@ -523,7 +726,7 @@ public class BeatTracker extends DFTSearch{
 
 
 				if (declineInConfidence) {
-					if (maxImpulse > 0) {
+					if (impulseFound) {
 						tempoConfidence -= volumeRollingMemory.getDouble(totalWindowsProcessed - impulseIndex);
 					}
 					if (tempoConfidence > 0.01) {}
@@ -538,7 +741,9 @@ public class BeatTracker extends DFTSearch{
 		if ((int) nextBeat == totalWindowsProcessed) {
 			isBeat = true;
 			
-			
+			// the beat is found on this window, but the forecast (and the peak it was forecast from)
+			// can place it in between windows
+			beatPosition = nextBeat + anchorPeakOffset;
 		}
 
 		return isBeat;
@@ -546,4 +751,48 @@ public class BeatTracker extends DFTSearch{
 	}
 
 
+	/**
+	 * Returns the position of the last beat found by getBeat, in windows. The beat is found on a whole window,
+	 * but the position can fall in between windows. It is worked out from where in between the windows the
+	 * next beat was forecast to land, and where the peak of the impulse the forecast was made from was
+	 * @return the position of the last beat, in windows
+	 */
+	public double getBeatPosition() {
+		return beatPosition;
+	}
+
+
+	/**
+	 * Finds how far the peak of an impulse is from the window it was found in, by fitting a parabola through
+	 * the impulse (before it was denoised) and the windows either side of it. If no memory of the impulses
+	 * before they were denoised has been given, the window after the impulse hasn't been processed yet, or
+	 * the three windows don't make a peak, the impulse is taken to be right on its window
+	 * @param peakWindow the window the impulse was found in
+	 * @param totalWindowsProcessed the newest window processed
+	 * @return the offset of the peak, between -0.5 and 0.5 windows
+	 * @see #setImpulseMemory
+	 */
+	double peakOffset(int peakWindow, int totalWindowsProcessed) {
+
+		if (impulseRollingMemory == null || peakWindow + 1 > totalWindowsProcessed
+				|| peakWindow - 1 < impulseRollingMemory.getMinIndexAvailable()) {
+			return 0;
+		}
+
+		double before = impulseRollingMemory.getDouble(peakWindow - 1);
+		double peak = impulseRollingMemory.getDouble(peakWindow);
+		double after = impulseRollingMemory.getDouble(peakWindow + 1);
+
+		double curvature = before - 2 * peak + after;
+		if (curvature >= 0) {
+			return 0;
+		}
+
+		double offset = 0.5 * (before - after) / curvature;
+
+		// the peak has to be closer to this window than either of the others
+		return Math.max(-0.5, Math.min(0.5, offset));
+	}
+
+
 }
@@ -0,0 +1,270 @@
+package audio;
+
+/**
+ * An onset front-end that works on the audio one sample at a time, without an FFT. It is a small bank of
+ * band-pass filters, each followed by an envelope follower, so for every hop it gives the level of each band,
+ * the flux (how much the bands went up by since the last hop) and the volume of the lower bands. This costs
+ * a handful of multiplies per band per sample, rather than an FFT of a whole window every hop, which makes it
+ * suited to running on low power machines or tracking lots of streams at once.
+ *
+ * Each band is a biquad band-pass filter (from the Audio EQ Cookbook, with a peak gain of 0 dB). The envelope
+ * follower rises quickly (the attack) and falls slowly (the release) with the size of the filtered signal,
+ * much like a VU meter. The level of a band over a hop is the log of the average of its envelope over the hop,
+ * which puts it on the same sort of scale as SignalProcessor.log does for the FFT. The flux is then worked out
+ * much as BeatTracker.getImpulse does for two FFT windows: only the bands that went up count.
+ * Unlike the FFT, where every window overlaps the last by most of its length, the level of a band over one
+ * short hop goes up and down a little from hop to hop even when nothing new is playing. Added up over every
+ * band, these small rises go over the moving average the impulse is denoised with often enough to give lots
+ * of false onsets, and each false onset hides any real onset just after it. So a band only counts towards
+ * the flux by how much it went up past a small threshold, which the rise of a real onset easily gets over
+ */
+public class BiquadFilterbank {
+
+	// the centre frequencies of the bands used if none are given. One octave apart
+	static final double[] defaultCentres = {62.5, 125, 250, 500, 1000, 2000, 4000, 8000};
+
+	/**
+	 * The amount (in log10) a band has to go up by in one hop before it counts towards the flux, if none is
+	 * given. This is set for the 3 millisecond hop Illumaxate uses by default. It is the smallest threshold
+	 * FilterbankOnsetTester finds the best F-measure with; anything up to about 0.3 does as well
+	 */
+	public static final double DEFAULT_RISE_THRESHOLD = 0.1;
+
+	// bands centred below this are counted in the low band volume, just like getLowFreqVolume
+	static final double lowBandLimit = 800; // in Hz
+
+	// the centre frequency of each band
+	private final double[] centres;
+
+	// the coefficients of each band's filter, already divided by a0
+	private final double[] b0, b2, a1, a2;
+
+	// the last two inputs and outputs of each band's filter
+	private final double[] x1, x2, y1, y2;
+
+	// the amount (in log10) a band has to go up by in one hop before it counts towards the flux
+	private final double riseThreshold;
+
+	// the envelope of each band, and how much of the gap to the filtered signal it closes every
+	// sample when it is rising and falling
+	private final double[] envelopes;
+	private final double attack;
+	private final double release;
+
+	// the level of each band over the last hop, and the hop before it
+	private double[] levels;
+	private double[] previousLevels;
+
+	// the flux, total volume and low band volume of the last hop
+	private double flux = 0;
+	private double volume = 0;
+	private double lowBandVolume = 0;
+
+
+	/**
+	 * Creates a filterbank with bands one octave apart, up to the highest that fits under the Nyquist frequency.
+	 * The envelopes have a 5 millisecond attack and a 50 millisecond release, and the flux only counts rises
+	 * past DEFAULT_RISE_THRESHOLD
+	 * @param sampleRate the sample rate of the audio, in Hz
+	 */
+	public BiquadFilterbank(double sampleRate) {
+		this(sampleRate, bandsUnder(defaultCentres, sampleRate * 0.45), Math.sqrt(2), 5, 50, DEFAULT_RISE_THRESHOLD);
+	}
+
+
+	/**
+	 * Creates a filterbank with the bands given, whose flux only counts rises past DEFAULT_RISE_THRESHOLD
+	 * @param sampleRate the sample rate of the audio, in Hz
+	 * @param centres the centre frequency of each band, in Hz
+	 * @param q the Q of every band's filter. A Q of the square root of 2 gives bands about an octave wide
+	 * @param attackMillis how quickly the envelope of each band rises, in milliseconds
+	 * @param releaseMillis how quickly the envelope of each band falls, in milliseconds
+	 * @throws IllegalArgumentException if there are no bands or a band is not under the Nyquist frequency
+	 */
+	public BiquadFilterbank(double sampleRate, double[] centres, double q, double attackMillis, double releaseMillis) {
+		this(sampleRate, centres, q, attackMillis, releaseMillis, DEFAULT_RISE_THRESHOLD);
+	}
+
+
+	/**
+	 * Creates a filterbank with the bands and flux threshold given
+	 * @param sampleRate the sample rate of the audio, in Hz
+	 * @param centres the centre frequency of each band, in Hz
+	 * @param q the Q of every band's filter. A Q of the square root of 2 gives bands about an octave wide
+	 * @param attackMillis how quickly the envelope of each band rises, in milliseconds
+	 * @param releaseMillis how quickly the envelope of each band falls, in milliseconds
+	 * @param riseThreshold the amount (in log10) a band has to go up by in one hop before it counts towards
+	 * the flux. 0 counts every rise
+	 * @throws IllegalArgumentException if there are no bands, a band is not under the Nyquist frequency, or
+	 * the threshold is below 0
+	 */
+	public BiquadFilterbank(double sampleRate, double[] centres, double q, double attackMillis, double releaseMillis, double riseThreshold) {
+
+		if (centres.length == 0) {
+			throw new IllegalArgumentException("The filterbank needs at least one band");
+		}
+		if (riseThreshold < 0) {
+			throw new IllegalArgumentException("The rise threshold should not be below 0, not " + riseThreshold);
+		}
+
+		this.centres = centres.clone();
+		this.riseThreshold = riseThreshold;
+
+		int bands = centres.length;
+		b0 = new double[bands];
+		b2 = new double[bands];
+		a1 = new double[bands];
+		a2 = new double[bands];
+		x1 = new double[bands];
+		x2 = new double[bands];
+		y1 = new double[bands];
+		y2 = new double[bands];
+		envelopes = new double[bands];
+		levels = new double[bands];
+		previousLevels = new double[bands];
+
+		for (int b = 0; b < bands; ++b) {
+
+			if (centres[b] <= 0 || centres[b] >= sampleRate / 2) {
+				throw new IllegalArgumentException("Band centred at " + centres[b] + " Hz is not in the range of 0 - " + sampleRate / 2 + " Hz");
+			}
+
+			double w0 = 2 * Math.PI * centres[b] / sampleRate;
+			double alpha = Math.sin(w0) / (2 * q);
+			double a0 = 1 + alpha;
+
+			b0[b] = alpha / a0;
+			b2[b] = -alpha / a0;
+			a1[b] = -2 * Math.cos(w0) / a0;
+			a2[b] = (1 - alpha) / a0;
+		}
+
+		// a one pole follower closes 1 - e^(-1 / samples) of the gap every sample
+		attack = 1 - Math.exp(-1000 / (attackMillis * sampleRate));
+		release = 1 - Math.exp(-1000 / (releaseMillis * sampleRate));
+	}
+
+
+	/**
+	 * Runs the filterbank over the new samples of a hop, and works out the level of every band, the flux,
+	 * the volume and the low band volume for the hop
+	 * @param frames the mono samples that have come in since the last hop
+	 */
+	public void processHop(int[] frames) {
+
+		// the levels of this hop become the previous levels, and we reuse the old array for the new ones
+		double[] swap = previousLevels;
+		previousLevels = levels;
+		levels = swap;
+
+		flux = 0;
+		volume = 0;
+		lowBandVolume = 0;
+
+		for (int b = 0; b < centres.length; ++b) {
+
+			double envelope = envelopes[b];
+			double envelopeTotal = 0;
+
+			// keep the filter's state in local variables while we go through the samples
+			double bx1 = x1[b], bx2 = x2[b], by1 = y1[b], by2 = y2[b];
+
+			for (int i = 0; i < frames.length; ++i) {
+
+				double x = frames[i];
+				double y = b0[b] * x + b2[b] * bx2 - a1[b] * by1 - a2[b] * by2;
+				bx2 = bx1;
+				bx1 = x;
+				by2 = by1;
+				by1 = y;
+
+				double size = Math.abs(y);
+				envelope += (size > envelope ? attack : release) * (size - envelope);
+				envelopeTotal += envelope;
+			}
+
+			x1[b] = bx1;
+			x2[b] = bx2;
+			y1[b] = by1;
+			y2[b] = by2;
+			envelopes[b] = envelope;
+
+			levels[b] = Math.log10(1 + envelopeTotal / Math.max(1, frames.length));
+
+			// only the bands that went up by more than the threshold count towards the flux
+			double rise = levels[b] - previousLevels[b] - riseThreshold;
+			if (rise > 0) {
+				flux += rise;
+			}
+
+			volume += levels[b];
+			if (centres[b] < lowBandLimit) {
+				lowBandVolume += levels[b];
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the level of every band over the last hop
+	 * @return the levels of the bands. This is not a new array and will be overwritten by the next hop
+	 */
+	public double[] getLevels() {
+		return levels;
+	}
+
+
+	/**
+	 * Returns the flux of the last hop, which is the total amount the bands went up by since the hop
+	 * before. This takes the place of the impulse worked out from two FFT windows
+	 * @return the flux of the hop
+	 * @see BeatTracker#getImpulse
+	 */
+	public double getFlux() {
+		return flux;
+	}
+
+
+	/**
+	 * Returns the total level of all the bands over the last hop
+	 * @return the volume of the hop
+	 * @see BeatTracker#getVolume
+	 */
+	public double getVolume() {
+		return volume;
+	}
+
+
+	/**
+	 * Returns the total level of the bands centred under 800 Hz over the last hop
+	 * @return the low band volume of the hop
+	 * @see BeatTracker#getLowFreqVolume
+	 */
+	public double getLowBandVolume() {
+		return lowBandVolume;
+	}
+
+
+	/**
+	 * Returns the number of bands in the filterbank
+	 * @return the number of bands
+	 */
+	public int getNumOfBands() {
+		return centres.length;
+	}
+
+
+	// returns the centres that are under the limit given, keeping at least the first one
+	static double[] bandsUnder(double[] centres, double limit) {
+
+		int count = 1;
+		while (count < centres.length && centres[count] < limit) {
+			++count;
+		}
+
+		double[] under = new double[count];
+		System.arraycopy(centres, 0, under, 0, count);
+		return under;
+	}
+
+}
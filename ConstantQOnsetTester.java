@@ -0,0 +1,154 @@
+package audio;
+
+import java.util.Random;
+
+import fourier.ConstantQTransform;
+import fourier.SignalProcessor;
+import rollingmemory.RollingDoubleMemory;
+
+/**
+ * Compares the constant Q onset front-end against the FFT onset front-end used in Illumaxate, on the made up
+ * track of FilterbankOnsetTester (noise, a held chord, and kick drums at known times).
+ * First it checks the transform itself: a sinusoid is put at the centre of every band, and it prints how many
+ * of them come out loudest in their own band, and how far the power in that band is from the power the
+ * sinusoid would have in the bin of a Hamming windowed FFT of the whole window.
+ * Then both front-ends are run over the track with the same hop, and it prints how many values each gives for
+ * every window, the time per hop, how much the impulse goes up and down from hop to hop (its standard
+ * deviation over its mean), how many onsets are found, and the F-measure of those onsets against the real
+ * kick times.
+ * Both front-ends look at the same frequencies (up to a third of the sample rate), but the constant Q impulse
+ * is the sum of a few dozen bands rather than hundreds of bins. The noise in each band doesn't average out
+ * over so few of them, so the impulse goes up and down far more, more of the noise gets over the moving
+ * average, and many more onsets are found than there are kicks. This is the same whichever bands the impulse
+ * is summed over, so it is the number of values rather than the range of frequencies that costs the
+ * F-measure. Which does better on real music needs labelled tracks run through Illumaxate (with constantQ on
+ * and off) and BeatPlacementPlotter
+ * @see ConstantQTransform
+ * @see FilterbankOnsetTester
+ */
+public class ConstantQOnsetTester {
+
+	// the amplitude of the sinusoids put through the transform
+	static final double amplitude = 10000;
+
+	public static void main(String[] args) {
+
+		Random random = new Random(50);
+
+		int windowSizeInFrames = (int) (FilterbankOnsetTester.sampleRate / FilterbankOnsetTester.minFrequency);
+		int hopInFrames = (int) (FilterbankOnsetTester.sampleRate * FilterbankOnsetTester.hopMillis / 1000);
+		int windowsInMovAverage = (int) (FilterbankOnsetTester.movingAverageMillis / FilterbankOnsetTester.hopMillis);
+
+		ConstantQTransform constantQ = new ConstantQTransform(FilterbankOnsetTester.sampleRate, windowSizeInFrames);
+		int numOfBands = constantQ.getNumOfBands();
+
+		// -------------------
+		// a sinusoid per band
+		// -------------------
+		SignalProcessor signalProcess = new SignalProcessor(windowSizeInFrames);
+		double[] bands = new double[numOfBands];
+		int[] window = new int[windowSizeInFrames];
+		int loudestInOwnBand = 0;
+		double scaleError = 0;
+
+		// a sinusoid of amplitude A in the bin of a Hamming windowed FFT has a power of (A / 2 * the sum of
+		// the window)^2, and every band should give the same
+		double windowSum = 0;
+		for (int n = 0; n < windowSizeInFrames; ++n) {
+			windowSum += 0.54 - 0.46 * Math.cos(2 * Math.PI * n / (windowSizeInFrames - 1));
+		}
+		double expectedPower = Math.pow(amplitude / 2 * windowSum, 2);
+
+		for (int b = 0; b < numOfBands; ++b) {
+
+			double frequency = constantQ.getCentreFrequency(b);
+			for (int n = 0; n < windowSizeInFrames; ++n) {
+				window[n] = (int) Math.round(amplitude * Math.cos(2 * Math.PI * frequency * n / FilterbankOnsetTester.sampleRate));
+			}
+
+			constantQ.transform(window, false, bands);
+
+			int loudest = 0;
+			for (int c = 1; c < numOfBands; ++c) {
+				if (bands[c] > bands[loudest]) {
+					loudest = c;
+				}
+			}
+			if (loudest == b) {
+				++loudestInOwnBand;
+			}
+			scaleError = Math.max(scaleError, Math.abs(Math.log10(bands[b] / expectedPower)));
+		}
+
+		System.out.format("%d bands from %.1f Hz to %.1f Hz, %d kernel bins in all\n", numOfBands,
+				constantQ.getCentreFrequency(0), constantQ.getCentreFrequency(numOfBands - 1), constantQ.getKernelSize());
+		System.out.println(loudestInOwnBand + " of " + numOfBands + " sinusoids are loudest in their own band");
+		System.out.format("Every band's power is within %.4f of the log10 power expected\n\n", scaleError);
+
+		// -----------
+		// the onsets
+		// -----------
+		int numOfKicks = 0;
+		double[] kickTimes = new double[(int) (FilterbankOnsetTester.trackSeconds * 4) + 1];
+		for (double time = 500; time < FilterbankOnsetTester.trackSeconds * 1000 - 500; time += 250 + 420 * random.nextDouble()) {
+			kickTimes[numOfKicks++] = time;
+		}
+
+		int[] track = FilterbankOnsetTester.makeTrack(kickTimes, numOfKicks, random);
+		int numOfHops = (track.length - windowSizeInFrames) / hopInFrames;
+
+		for (int pass = 0; pass < 2; ++pass) {
+
+			boolean useConstantQ = pass == 1;
+
+			BeatTracker tracker = FilterbankOnsetTester.makeTracker(windowsInMovAverage);
+			int size = useConstantQ ? numOfBands : signalProcess.getFFTSize();
+			double[] impulses = new double[numOfHops];
+			double[] previous = new double[size];
+			double[] current = new double[size];
+
+			long startTime = System.nanoTime();
+			for (int h = 0; h < numOfHops; ++h) {
+
+				System.arraycopy(track, h * hopInFrames, window, 0, windowSizeInFrames);
+
+				if (useConstantQ) {
+					constantQ.transform(window, true, current);
+					impulses[h] = (h == 0) ? 0 : tracker.getBandImpulse(current, previous);
+				} else {
+					signalProcess.blackmanHarrisFFT(window, true, current);
+					impulses[h] = (h == 0) ? 0 : tracker.getImpulse(current, previous);
+				}
+
+				double[] swap = previous;
+				previous = current;
+				current = swap;
+			}
+			long time = System.nanoTime() - startTime;
+
+			// how much the impulse goes up and down, and the onsets found from it once it is denoised
+			double mean = 0;
+			for (int h = 0; h < numOfHops; ++h) {
+				mean += impulses[h] / numOfHops;
+			}
+			double variance = 0;
+			for (int h = 0; h < numOfHops; ++h) {
+				variance += (impulses[h] - mean) * (impulses[h] - mean) / numOfHops;
+			}
+
+			RollingDoubleMemory impulseMemory = new RollingDoubleMemory(windowsInMovAverage);
+			double[] denoised = new double[numOfHops];
+			for (int h = 0; h < numOfHops; ++h) {
+				impulseMemory.addDouble(impulses[h]);
+				denoised[h] = tracker.trailedMovingAverage(impulseMemory.getDoubleArray(h - windowsInMovAverage + 1, windowsInMovAverage));
+			}
+
+			System.out.format("%s: %4d values per window, %.2f microseconds per hop, impulse varies by %.3f, %d onsets for %d kicks, F-measure %.3f\n",
+					useConstantQ ? "Constant Q" : "FFT       ", size, time / (numOfHops * 1000.0), Math.sqrt(variance) / mean,
+					PrecisionTester.onsets(denoised).length, numOfKicks,
+					FilterbankOnsetTester.fMeasure(tracker, impulses, windowsInMovAverage, windowSizeInFrames,
+							hopInFrames, kickTimes, numOfKicks));
+		}
+	}
+
+}
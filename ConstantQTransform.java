@@ -0,0 +1,337 @@
+package fourier;
+
+import java.util.Arrays;
+
+/**
+ * A constant Q transform, which splits a window of audio into bands that are spaced evenly in pitch (a fixed
+ * number of bands in every octave) rather than evenly in frequency as the bins of an FFT are. The low bands
+ * are narrow and the high bands are wide, so a few dozen bands cover what takes hundreds of FFT bins, while
+ * the bass is split up as finely as the FFT would split it.
+ *
+ * It is worked out with the sparse spectral kernels of Brown and Puckette ("An efficient algorithm for the
+ * calculation of a constant Q transform", 1992). The value of each band is the audio multiplied by a windowed
+ * complex sinusoid at the band's centre frequency (its kernel), and summed. Instead of doing that sum over
+ * every sample for every band, the FFT of each kernel is worked out once, when this object is made, and only
+ * the handful of bins around the band's centre frequency that are not almost zero are kept. Then each window
+ * needs one FFT of the audio, and each band is just the sum of those few bins multiplied by its kernel's bins.
+ *
+ * Each band's kernel is a Hamming window Q cycles of its centre frequency long, so every band is the same
+ * width in pitch. The lowest bands would need more samples than the window has, so their kernels are cut to
+ * the length of the window, and they are as fine as an FFT of the window would be, rather than any finer.
+ * The kernels are centred in the window, so every band is of the same moment in time. Each kernel is scaled
+ * so that a sinusoid at its centre gives the same power as it would in the bin of an FFT of the whole window
+ * with a Hamming window on it, so the bands are on the same sort of scale as the FFT's bins.
+ *
+ * As with SignalProcessor, an object of this class keeps arrays it works in between calls, so each thread
+ * should have its own
+ * @see SignalProcessor
+ */
+public class ConstantQTransform {
+
+	/**
+	 * The number of bands in each octave if none is given. This makes each band a third of an octave wide
+	 * (a Q of about 5)
+	 */
+	public static final int DEFAULT_BINS_PER_OCTAVE = 4;
+
+	// a bin of a kernel's FFT is left out if it is smaller than this fraction of the kernel's largest bin.
+	// This is the threshold Brown and Puckette used
+	private static final double kernelThreshold = 0.0054;
+
+	// the number of frames in each window, and the size of the FFT
+	private final int windowSize;
+	private final int fftSize;
+
+	// the centre frequency of each band, lowest first
+	private final double[] centres;
+
+	// the kernels, kept sparse: the bins of band b are from kernelStarts[b] up to (but not including)
+	// kernelStarts[b + 1], each with the FFT bin it multiplies and the conjugate of the kernel's value there
+	private final int[] kernelStarts;
+	private final int[] kernelBins;
+	private final double[] kernelReal;
+	private final double[] kernelImaginary;
+
+	// the FFT, the window padded with zeros up to the size of the FFT, and the arrays it is worked out in
+	private final FFTBackend backend;
+	private final double[] padded;
+	private final double[] real;
+	private final double[] imaginary;
+
+	private boolean fastMath = false;
+
+
+	/**
+	 * Creates a constant Q transform with DEFAULT_BINS_PER_OCTAVE bands in each octave, from the lowest
+	 * frequency that has two whole cycles in the window up to a third of the sample rate. BeatTracker.getImpulse
+	 * adds up the first third of the bins of an FFT, which go from 0 up to a third of the sample rate, so the
+	 * bands cover the same range of frequencies
+	 * @param sampleRate the sample rate of the audio, in Hz
+	 * @param windowSize the number of frames in each window
+	 */
+	public ConstantQTransform(double sampleRate, int windowSize) {
+		this(sampleRate, windowSize, 2 * sampleRate / windowSize, sampleRate / 3, DEFAULT_BINS_PER_OCTAVE);
+	}
+
+
+	/**
+	 * Creates a constant Q transform with the bands given. The first band is centred on the minimum frequency,
+	 * and every band after it is 2^(1 / binsPerOctave) times higher, up to the last one that isn't above the
+	 * maximum frequency
+	 * @param sampleRate the sample rate of the audio, in Hz
+	 * @param windowSize the number of frames in each window
+	 * @param minFrequency the centre frequency of the lowest band, in Hz
+	 * @param maxFrequency the highest frequency a band can be centred on, in Hz
+	 * @param binsPerOctave the number of bands in each octave
+	 * @throws IllegalArgumentException if the window is empty, there are no bands in each octave, or the
+	 * frequencies aren't in order and under the Nyquist frequency
+	 */
+	public ConstantQTransform(double sampleRate, int windowSize, double minFrequency, double maxFrequency, int binsPerOctave) {
+
+		if (windowSize < 1 || binsPerOctave < 1) {
+			throw new IllegalArgumentException("A constant Q transform needs at least one frame and one band per octave, not "
+					+ windowSize + " frames and " + binsPerOctave + " bands per octave");
+		}
+		if (minFrequency <= 0 || maxFrequency < minFrequency || maxFrequency >= sampleRate / 2) {
+			throw new IllegalArgumentException("Bands from " + minFrequency + " Hz to " + maxFrequency
+					+ " Hz are not in order in the range of 0 - " + sampleRate / 2 + " Hz");
+		}
+
+		this.windowSize = windowSize;
+
+		// the FFT is padded out to the next 2^n, as SignalProcessor does
+		int size = 1;
+		while (size < windowSize) {
+			size *= 2;
+		}
+		fftSize = size;
+
+		// the bands, and the Q that makes each one as wide as the gap to the next
+		int numOfBands = (int) Math.floor(binsPerOctave * Math.log(maxFrequency / minFrequency) / Math.log(2) + 1e-9) + 1;
+		centres = new double[numOfBands];
+		for (int b = 0; b < numOfBands; ++b) {
+			centres[b] = minFrequency * Math.pow(2, b / (double) binsPerOctave);
+		}
+		double q = 1 / (Math.pow(2, 1.0 / binsPerOctave) - 1);
+
+		backend = FFTBackends.forSize(fftSize);
+		padded = new double[fftSize];
+		real = new double[fftSize];
+		imaginary = new double[fftSize];
+
+		// the sum of a Hamming window over the whole window, which every kernel is scaled to
+		double fullWindowSum = 0;
+		for (int n = 0; n < windowSize; ++n) {
+			fullWindowSum += hamming(n, windowSize);
+		}
+
+		// work out the FFT of every kernel, and keep the bins that aren't almost zero. The kernels are made in
+		// the arrays the transform works in, as they aren't needed for anything else yet
+		int[] starts = new int[numOfBands + 1];
+		int[] bins = new int[numOfBands * fftSize];
+		double[] kernelRe = new double[numOfBands * fftSize];
+		double[] kernelIm = new double[numOfBands * fftSize];
+		int kept = 0;
+
+		double[] kernelSine = new double[fftSize];
+		double[] cosineReal = new double[fftSize];
+		double[] cosineImaginary = new double[fftSize];
+		double[] sineReal = new double[fftSize];
+		double[] sineImaginary = new double[fftSize];
+
+		for (int b = 0; b < numOfBands; ++b) {
+
+			// Q cycles of the centre frequency, but no longer than the window, centred in the window
+			int length = Math.min(windowSize, (int) Math.ceil(q * sampleRate / centres[b]));
+			int offset = (windowSize - length) / 2;
+
+			double windowSum = 0;
+			for (int n = 0; n < length; ++n) {
+				windowSum += hamming(n, length);
+			}
+			double scale = fullWindowSum / windowSum;
+
+			// the kernel is complex, so the FFTs of its real (cosine) and imaginary (sine) parts are worked out
+			// separately and put back together
+			Arrays.fill(padded, 0);
+			Arrays.fill(kernelSine, 0);
+			for (int n = 0; n < length; ++n) {
+				double coefficient = scale * hamming(n, length);
+				double angle = 2 * Math.PI * centres[b] * n / sampleRate;
+				padded[offset + n] = coefficient * Math.cos(angle);
+				kernelSine[offset + n] = coefficient * Math.sin(angle);
+			}
+			backend.transform(padded, cosineReal, cosineImaginary);
+			backend.transform(kernelSine, sineReal, sineImaginary);
+
+			double largest = 0;
+			for (int k = 0; k < fftSize; ++k) {
+				real[k] = cosineReal[k] - sineImaginary[k];
+				imaginary[k] = cosineImaginary[k] + sineReal[k];
+				largest = Math.max(largest, Math.hypot(real[k], imaginary[k]));
+			}
+
+			// the conjugate is kept, so each band is the FFT of the audio multiplied by it. It is divided by the
+			// size of the FFT, as the inverse FFT would be (this is Parseval's theorem)
+			starts[b] = kept;
+			for (int k = 0; k < fftSize; ++k) {
+				if (Math.hypot(real[k], imaginary[k]) >= kernelThreshold * largest) {
+					bins[kept] = k;
+					kernelRe[kept] = real[k] / fftSize;
+					kernelIm[kept] = -imaginary[k] / fftSize;
+					++kept;
+				}
+			}
+		}
+		starts[numOfBands] = kept;
+
+		kernelStarts = starts;
+		kernelBins = Arrays.copyOf(bins, kept);
+		kernelReal = Arrays.copyOf(kernelRe, kept);
+		kernelImaginary = Arrays.copyOf(kernelIm, kept);
+
+		Arrays.fill(padded, 0);
+	}
+
+
+	// the nth coefficient of a Hamming window of the length given
+	private static double hamming(int n, int length) {
+		return (length == 1) ? 1 : 0.54 - 0.46 * Math.cos(2 * Math.PI * n / (length - 1));
+	}
+
+
+	/**
+	 * Works out the power in each band of a window of audio, and puts it through log10(1 + power) if asked, as
+	 * SignalProcessor.log does. The result is written into the destination given
+	 * @param frames the window of audio, which must be the size this transform was made for
+	 * @param log true to put every value through log10(1 + value)
+	 * @param destination the array the power of each band is written into, at least getNumOfBands() long
+	 * @return the destination
+	 * @throws IllegalArgumentException if the window is the wrong size, or the destination is too short
+	 */
+	public double[] transform(int[] frames, boolean log, double[] destination) {
+
+		if (frames.length != windowSize) {
+			throw new IllegalArgumentException("Array given is of size " + frames.length + ". Transform created for array of size " + windowSize + ".");
+		}
+
+		for (int n = 0; n < windowSize; ++n) {
+			padded[n] = frames[n];
+		}
+
+		return transformPadded(log, destination);
+	}
+
+
+	/**
+	 * The double argument equivalent of transform(int[], boolean, double[])
+	 * @param frames the window of audio, which must be the size this transform was made for
+	 * @param log true to put every value through log10(1 + value)
+	 * @param destination the array the power of each band is written into, at least getNumOfBands() long
+	 * @return the destination
+	 * @throws IllegalArgumentException if the window is the wrong size, or the destination is too short
+	 * @see transform(int[], boolean, double[])
+	 */
+	public double[] transform(double[] frames, boolean log, double[] destination) {
+
+		if (frames.length != windowSize) {
+			throw new IllegalArgumentException("Array given is of size " + frames.length + ". Transform created for array of size " + windowSize + ".");
+		}
+
+		System.arraycopy(frames, 0, padded, 0, windowSize);
+
+		return transformPadded(log, destination);
+	}
+
+
+	// does the FFT of the padded window and multiplies it by each band's kernel
+	private double[] transformPadded(boolean log, double[] destination) {
+
+		if (destination.length < centres.length) {
+			throw new IllegalArgumentException("The destination is " + destination.length + " long, but there are " + centres.length + " bands");
+		}
+
+		backend.transform(padded, real, imaginary);
+
+		for (int b = 0; b < centres.length; ++b) {
+
+			double bandReal = 0;
+			double bandImaginary = 0;
+
+			for (int i = kernelStarts[b]; i < kernelStarts[b + 1]; ++i) {
+				int k = kernelBins[i];
+				bandReal += real[k] * kernelReal[i] - imaginary[k] * kernelImaginary[i];
+				bandImaginary += real[k] * kernelImaginary[i] + imaginary[k] * kernelReal[i];
+			}
+
+			double power = bandReal * bandReal + bandImaginary * bandImaginary;
+			destination[b] = !log ? power : fastMath ? FastMath.log10(1 + power) : Math.log10(1 + power);
+		}
+
+		return destination;
+	}
+
+
+	/**
+	 * Decides whether the log is worked out with FastMath rather than Math, as SignalProcessor.setFastMath does
+	 * @param fastMath true to use FastMath
+	 * @see FastMath
+	 */
+	public void setFastMath(boolean fastMath) {
+		this.fastMath = fastMath;
+	}
+
+
+	/**
+	 * Returns the number of bands
+	 * @return the number of bands, which is the length of the result of transform
+	 */
+	public int getNumOfBands() {
+		return centres.length;
+	}
+
+
+	/**
+	 * Returns the centre frequency of a band
+	 * @param band the index of the band, 0 being the lowest
+	 * @return the centre frequency of the band, in Hz
+	 */
+	public double getCentreFrequency(int band) {
+		return centres[band];
+	}
+
+
+	/**
+	 * Returns how many bands are centred below the frequency given. These are always the first bands
+	 * @param frequency the frequency, in Hz
+	 * @return the number of bands centred below it
+	 */
+	public int getBandsBelow(double frequency) {
+
+		int bands = 0;
+		while (bands < centres.length && centres[bands] < frequency) {
+			++bands;
+		}
+		return bands;
+	}
+
+
+	/**
+	 * Returns the number of kernel bins kept over all the bands, which is how many complex multiplies each
+	 * transform needs on top of its FFT
+	 * @return the number of kernel bins
+	 */
+	public int getKernelSize() {
+		return kernelBins.length;
+	}
+
+
+	/**
+	 * Returns the size of the FFT each window is padded out to
+	 * @return the size of the FFT
+	 */
+	public int getFFTSize() {
+		return fftSize;
+	}
+
+}
@@ -33,6 +33,12 @@ public class DFTBeatSearch {
 
 	double[] window;
 
+	// which refinement doSearch uses once the first spread out search is done
+	int refinement = DFTSearch.BINARY_REFINEMENT;
+
+	// a tally of how many single bin DFTs have been worked out
+	long dftEvaluations = 0;
+
 
 
 	DFTBeatSearch(int initialNumberofDFTs){
@@ -58,6 +64,13 @@ public class DFTBeatSearch {
 		windowLength = window.length;
 		twoPiOverWindowLength = 2 * Math.PI / windowLength;
 
+		// if we are using the parabolic refinement, one spread out search is all we need. The peak of the
+		// parabola through the best bin and its neighbours is used rather than searching again between them
+		if (refinement == DFTSearch.PARABOLIC_REFINEMENT) {
+			initialSearch();
+			return DFTSearchSession.parabolicPeak(intialBins, initialBinsResult, indexOfMaxValue, intialBins[indexOfMaxValue]);
+		}
+
 		for (int i = 0; i < numberOfIterations; ++i) {
 			initialSearch();
 		}
@@ -68,6 +81,30 @@ public class DFTBeatSearch {
 	}
 
 
+	/**
+	 * Chooses how doSearch homes in on the best bin. With the binary refinement the spread out search is
+	 * done again between the best bin and its larger neighbour for every iteration. With the parabolic
+	 * refinement only one spread out search is done, and the number of iterations is ignored
+	 * @param refinement either DFTSearch.BINARY_REFINEMENT or DFTSearch.PARABOLIC_REFINEMENT
+	 * @throws IllegalArgumentException if the refinement is not one of the two above
+	 */
+	public void setRefinement(int refinement) {
+		if (refinement != DFTSearch.BINARY_REFINEMENT && refinement != DFTSearch.PARABOLIC_REFINEMENT) {
+			throw new IllegalArgumentException("Refinement " + refinement + " is not a known refinement");
+		}
+		this.refinement = refinement;
+	}
+
+
+	/**
+	 * Returns how many single bin DFTs have been worked out since this was created
+	 * @return the number of DFTs done
+	 */
+	public long getDFTEvaluations() {
+		return dftEvaluations;
+	}
+
+
 	private void initialSearch(){
 
 		// find the range of bins we need to search for
@@ -85,6 +122,8 @@ public class DFTBeatSearch {
 		}
 
 
+		dftEvaluations += intitialNumberofBins;
+
 		// We now do a DFT for each bin inside of the intialBins array
 		for (int i = 0; i < intitialNumberofBins; ++i) {
 
@@ -0,0 +1,148 @@
+package fourier;
+
+import java.util.Random;
+
+/**
+ * Compares the binary refinement and the parabolic refinement of the DFT searches on made up
+ * impulse intervals that look like the ones the beat tracker is given, for the two places they are used.
+ * The first is HarmonicTempoPlotter, which searches a prepared session for 8 harmonics every hop. The
+ * second is DFTBeatSearch.doSearch, which repeats its spread out search for every iteration with the binary
+ * refinement and only does it once with the parabolic one. For both it prints out how many DFTs each
+ * refinement needs per hop, how long they take and how far off they are from the real tempo.
+ * trackBeat does no DFT searches (the tempo comes from the harmonic FFT estimate), so none of the DFTs
+ * saved here are saved in trackBeat. The parabolic refinement is not any more accurate than the binary
+ * one, it is only cheaper
+ */
+public class DFTRefinementTester {
+
+	// the same numbers the harmonic plotter uses when it searches
+	static final int numOfIntervals = 31;
+	static final int binarySearches = 5;
+	static final int numOfHarmonics = 8;
+
+	// the number of times doSearch repeats its spread out search with the binary refinement
+	static final int doSearchIterations = 5;
+
+	// a 3 millisecond hop, 130 BPM expected and 7 beats in the interval, just like in Illumaxate
+	static final double hopMillis = 3;
+	static final double expectedWindowsBetweenBeats = 60000 / (130 * hopMillis);
+	static final int windowsInInterval = (int) (expectedWindowsBetweenBeats * 7 * 1.5);
+
+	static final int numOfLoops = 2000;
+
+	public static void main(String[] args) {
+
+		Random random = new Random(26);
+
+		DFTSearchSession binarySession = new DFTSearchSession();
+		DFTSearchSession parabolicSession = new DFTSearchSession();
+		parabolicSession.setRefinement(DFTSearch.PARABOLIC_REFINEMENT);
+
+		DFTBeatSearch binaryBeatSearch = new DFTBeatSearch(numOfIntervals + 1);
+		DFTBeatSearch parabolicBeatSearch = new DFTBeatSearch(numOfIntervals + 1);
+		parabolicBeatSearch.setRefinement(DFTSearch.PARABOLIC_REFINEMENT);
+
+		// the errors and times of the harmonic searches ([0]) and of doSearch ([1])
+		double[] binaryError = new double[2];
+		double[] parabolicError = new double[2];
+		long[] binaryTime = new long[2];
+		long[] parabolicTime = new long[2];
+
+		double[] interval = new double[windowsInInterval];
+		double[][] harmonicRanges = new double[numOfHarmonics][2];
+
+		for (int loop = 0; loop < numOfLoops; ++loop) {
+
+			// pick a tempo between 110 and 150 BPM and work out how many cycles fit in the interval
+			double bpm = 110 + 40 * random.nextDouble();
+			double windowsPerBeat = 60000 / (bpm * hopMillis);
+			double cyclesInInterval = windowsInInterval / windowsPerBeat;
+
+			fillInterval(interval, windowsPerBeat, random);
+
+			// these are the bins the harmonic plotter searches between, in the same way it works them out
+			double numOfCyclesInInterval = windowsInInterval / expectedWindowsBetweenBeats;
+			double lowerBin = numOfCyclesInInterval * 3.0 / 4;
+			double upperBin = numOfCyclesInInterval * 3.0 / 2;
+			for (int i = 0; i < numOfHarmonics; ++i) {
+				harmonicRanges[i][0] = lowerBin * (i + 1);
+				harmonicRanges[i][1] = upperBin + lowerBin * i;
+			}
+
+			// the harmonic plotter prepares the interval and searches every harmonic once per hop
+			long startTime = System.nanoTime();
+			binarySession.prepare(interval);
+			double[] binaryBins = binarySession.searchAll(numOfIntervals, binarySearches, harmonicRanges);
+			binaryTime[0] += System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			parabolicSession.prepare(interval);
+			double[] parabolicBins = parabolicSession.searchAll(numOfIntervals, binarySearches, harmonicRanges);
+			parabolicTime[0] += System.nanoTime() - startTime;
+
+			// only the first harmonic's range always holds the real tempo, so only its error is counted
+			binaryError[0] += Math.abs(binaryBins[0] - cyclesInInterval);
+			parabolicError[0] += Math.abs(parabolicBins[0] - cyclesInInterval);
+
+			// doSearch is given the first harmonic's range
+			startTime = System.nanoTime();
+			double binaryBin = binaryBeatSearch.doSearch(interval, harmonicRanges[0], doSearchIterations);
+			binaryTime[1] += System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			double parabolicBin = parabolicBeatSearch.doSearch(interval, harmonicRanges[0], doSearchIterations);
+			parabolicTime[1] += System.nanoTime() - startTime;
+
+			binaryError[1] += Math.abs(binaryBin - cyclesInInterval);
+			parabolicError[1] += Math.abs(parabolicBin - cyclesInInterval);
+		}
+
+		System.out.println("Interval of " + windowsInInterval + " windows, " + numOfLoops + " hops");
+
+		print("harmonic plotter (" + numOfHarmonics + " harmonics)", binarySession.getDFTEvaluations(), parabolicSession.getDFTEvaluations(),
+				binaryTime[0], parabolicTime[0], binaryError[0], parabolicError[0]);
+		print("doSearch (" + doSearchIterations + " iterations)", binaryBeatSearch.getDFTEvaluations(), parabolicBeatSearch.getDFTEvaluations(),
+				binaryTime[1], parabolicTime[1], binaryError[1], parabolicError[1]);
+	}
+
+
+	// prints out the DFTs, time and mean error per hop of both refinements and the DFTs saved per hop
+	static void print(String name, long binaryEvaluations, long parabolicEvaluations, long binaryTime, long parabolicTime,
+			double binaryError, double parabolicError) {
+
+		double binaryDFTs = binaryEvaluations / (double) numOfLoops;
+		double parabolicDFTs = parabolicEvaluations / (double) numOfLoops;
+
+		System.out.println(name + ":");
+		System.out.format("\tbinary refinement:    %.0f DFTs per hop, %.3f milliseconds per hop, mean error %.5f bins\n",
+				binaryDFTs, binaryTime / (numOfLoops * 1000000.0), binaryError / numOfLoops);
+		System.out.format("\tparabolic refinement: %.0f DFTs per hop, %.3f milliseconds per hop, mean error %.5f bins\n",
+				parabolicDFTs, parabolicTime / (numOfLoops * 1000000.0), parabolicError / numOfLoops);
+		System.out.format("\tDFTs saved per hop = %.0f (%.0f%%)\n", binaryDFTs - parabolicDFTs, 100 * (binaryDFTs - parabolicDFTs) / binaryDFTs);
+	}
+
+
+	// fills the interval with an impulse on every beat (moved by up to a window either way) and
+	// some random smaller impulses as noise. Everything else is left as zero, like the denoised impulses
+	static void fillInterval(double[] interval, double windowsPerBeat, Random random) {
+
+		for (int i = 0; i < interval.length; ++i) {
+			interval[i] = 0;
+		}
+
+		double phase = windowsPerBeat * random.nextDouble();
+		for (double beat = phase; beat < interval.length; beat += windowsPerBeat) {
+			int index = (int) beat + random.nextInt(3) - 1;
+			if (index >= 0 && index < interval.length) {
+				interval[index] = 5 + 5 * random.nextDouble();
+			}
+		}
+
+		for (int i = 0; i < interval.length; ++i) {
+			if (random.nextDouble() < 0.01) {
+				interval[i] = 3 * random.nextDouble();
+			}
+		}
+	}
+
+}
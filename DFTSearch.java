@@ -2,17 +2,42 @@ package fourier;
 
 public class DFTSearch {
 
+	/**
+	 * The default amount of work (number of bins multiplied by the number of non-zero values
+	 * in the window) a sweep of DFTs needs before the bins are split up across the fork join
+	 * pool. Below this it costs more to hand the work out to other threads than to just do it
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 18;
+
+
+	/**
+	 * After the spread out search, the best bin is homed in on with rounds of binary searching.
+	 * Every round costs two more DFTs over the data
+	 */
+	public static final int BINARY_REFINEMENT = 0;
+
+	/**
+	 * After the spread out search, a parabola is fitted through the best bin and its two neighbours
+	 * and the peak of the parabola is taken as the best bin. This costs no more DFTs at all
+	 */
+	public static final int PARABOLIC_REFINEMENT = 1;
+
+	// the search session that the window given to the search is prepared in. It keeps hold of the
+	// arrays the non-zero values are picked out into, so they don't have to be made every search
+	private final DFTSearchSession session = new DFTSearchSession();
+
 
 	/**
 	 * Attempts to find a repetitive pattern in the signal (interval) given to it. The period of
 	 * the pattern will only be between the start and end bins given to the method. It first does
 	 * a spread out search with n intervals (input argument) and then does a binary search m
-	 * times (also input argument) to home in on the pattern's period.
+	 * times (also input argument) to home in on the pattern's period. If the parabolic refinement
+	 * has been chosen, the binary search is skipped and a parabola is fitted around the best bin instead
 	 * @param window is the signal or interval of impulse data to be processed to find a pattern
 	 * @param numOfIntervals the number of initial searches in the spread out search before binary
 	 * searching commences
 	 * @param binarySearches the number of binary searches carried out to home in on the correct
-	 * period
+	 * period (ignored when the parabolic refinement is being used)
 	 * @param startBin the start bin to search for
 	 * @param endBin the end bin to search for
 	 * @return the period which most correlates to the data. The period is as a fraction of the
@@ -21,164 +46,91 @@ public class DFTSearch {
 	 */
 	public double search(double[] window, int numOfIntervals, int binarySearches, double startBin, double endBin) {
 
-		// We first want to process the data to remove any zero values
-		// We take out the zero values by making an array which is already the size of the window.
-		// We make it equal in size, just in case of the (pretty much impossibility) of there being
-		// no zero values in he given window
-		double[] smallWindow = new double[window.length];
-		// We need to make another array, telling us of the original indexes of the values we picked
-		// out from the window
-		int[] smallWindowIndexes = new int[window.length];
-		// We also need a value to tell us how many relevant values exist within the small window
-		int smallWindowLength = 0;
-
-		// now we iterate through the window randomly pick out the non-zero values, adding them
-		// sequentially to our smallWindow and increasing it's 'length' by one. We also add a
-		// Black-man harris window as we do this
-		for (int i = 0; i < window.length; ++i) {
-			if (window[i] > 0) {
-				smallWindow[smallWindowLength] = window[i] * (0.54 - 0.46 * Math.cos((2 * Math.PI * i) / window.length));
-				smallWindowIndexes[smallWindowLength] = i;
-				++smallWindowLength;
-
-			}
-		}
-
-		// We want to find out the range, which we get in the following way
-		double range = endBin - startBin;
-
-		// We want to search between the range at regular intervals. Say the amount of intervals used as
-		// an argument for this method = 6. We will actually do 7 initial DFT searches like so:
-		// 
-		//	V						V       <--- location of start and end bins
-		//	|	|	|	|	|	|	|       <--- searches
-		//    1   2   3   4   5   6			<--- intervals
-		//
-		// So in this case, we need to create an array of length 7 to store all of the bins we will
-		// do DFTs for
-
-		double[] binIntervals = new double[numOfIntervals + 1];
-
-		for (int i = 0; i < numOfIntervals + 1; ++i) {
-			binIntervals[i] = startBin + (i * range) / numOfIntervals;
-		}
-
-		// Now we do the DFT's for every single binInterval and place the power responses in a new array,
-		// where each index's value in the new array corresponds to the same index's value in binInterval
-		double[] binPowers = new double [numOfIntervals + 1];
-
-		// To compute the DFT, we also need a double[] to the imaginary and real parts of the DFT equations.
-		// It is only a temporary storage variable that it overwritten with each new DFT
-		// [0] is real, [1] is imaginary
-		double[] imagNum = new double[2];
-
-		for (int i = 0; i < binIntervals.length; ++i) {
-
-			// this is a constant used for every loop of the DFT, and so it's easier and faster
-			// if we just work it before going into the loop, rather than in every loop of the DFT
-			double constant = binIntervals[i] * 2 * Math.PI / smallWindow.length;
-
-			// reset imagNum
-			imagNum[0] = 0;
-			imagNum[1] = 0;
-
-			// Here is the main part of the DFT
-			for (int j = 0; j < smallWindowLength; ++j) {
-				imagNum[0] += smallWindow[j] * Math.cos(constant * smallWindowIndexes[j]);
-				imagNum[1] += smallWindow[j] * Math.sin(constant * smallWindowIndexes[j]);
-			}
-			// We don't bother square rooting as it's just extra processing that actually won't
-			// affect which power is the maximum, which is all we are interested in. We don't care
-			// about what specifically each power is
-			binPowers[i] = Math.pow(imagNum[0], 2) + Math.pow(imagNum[1], 2);
-		}
-
-		// We now have 2 arrays: binIntervals and binPowers. The indexes in both correspond to each other
-
-		// We iterate through binPowers and find the maximum value in it. We store this is a new variable
-		// and put the bin it corresponds to in another variable
-		double bestPower = 0;
-		double bestBin = 0;
-
-		for (int i  = 0; i < binPowers.length; ++i) {
-			if (binPowers[i] > bestPower) {
-				bestPower = binPowers[i];
-				bestBin = binIntervals[i];
-			}
-		}
-
-		// Now we have these vales, we can move onto a binary search
-		// An full explanation for how this is done is on the iPad notes somewhere
-
-		// We need to work out the span of the binary search first
-		// Initially, we work out the span in the following way
-
-		double span = range / (numOfIntervals * 2);
-
-		// We now start the binary search loop.
-		for (int i = 0 ; i < binarySearches; ++i) {
-
-			// We create two contender bins, either side of the best bin, to challenge the best bin
-			// and see either of their power responses are larger than the best bin's power response. The
-			// one with the largest power response becomes the new best bin and best power
-
-			double contender1Bin = bestBin - span;
-			double contender2Bin = bestBin + span;
-
-			double contender1Power = 0;
-			double contender2Power = 0;
-
-			// Do a DFT for each contender
-
-			double constant;
-			// reset imagNum
-			imagNum[0] = 0;
-			imagNum[1] = 0;
-
-			// contender 1 DFT
-			constant = contender1Bin * 2 * Math.PI / smallWindow.length;
-			for (int j = 0; j < smallWindowLength; ++j) {
-				imagNum[0] += smallWindow[j] * Math.cos(constant * smallWindowIndexes[j]);
-				imagNum[1] += smallWindow[j] * Math.sin(constant * smallWindowIndexes[j]);
-			}
-			contender1Power = Math.pow(imagNum[0], 2) + Math.pow(imagNum[1], 2);
-
-			// reset imagNum
-			imagNum[0] = 0;
-			imagNum[1] = 0;
-
-			// contender 2 DFT
-			constant = contender2Bin * 2 * Math.PI / smallWindow.length;
-			for (int j = 0; j < smallWindowLength; ++j) {
-				imagNum[0] += smallWindow[j] * Math.cos(constant * smallWindowIndexes[j]);
-				imagNum[1] += smallWindow[j] * Math.sin(constant * smallWindowIndexes[j]);
-			}
-			contender2Power = Math.pow(imagNum[0], 2) + Math.pow(imagNum[1], 2);
-
-			// We can now decide which of three bins has the largest power response. Whichever one
-			// does, it becomes the bestBin, and it's power, the bestPower. If the original bestBin
-			// has the best power, it maintains being the best bin. We then repeat, halving the span
-			// each time
-
-			if (contender1Power > bestPower) {
-				bestPower = contender1Power;
-				bestBin = contender1Bin;
-			} else if (contender2Power > bestPower) {
-				bestPower = contender2Power;
-				bestBin = contender2Bin;
-			}
-
-			span /= 2;
-		}
-
-		// once the binary search is complete, we now have a bin which should (most of the time)
-		// be the bin that holds the largest power response within the range given. (actually, it could be
-		// a little outside of the range, but that's actually quite useful)
-
-		return bestBin;
+		// We first want to process the data to remove any zero values and window the rest. The session
+		// keeps hold of the arrays it does this with, so they are reused every time we search
+		session.prepare(window);
+
+		return session.search(numOfIntervals, binarySearches, startBin, endBin);
 
 	}
 
 
+	/**
+	 * Works out the power response of the window at every bin given to it. The bins are all worked out
+	 * together in one pass over the data, so each non-zero value in the window is only loaded once for
+	 * all of the bins rather than once for every bin. If there is enough work to do, the bins are split
+	 * up across the fork join pool. The powers returned are exactly the same as the ones the search
+	 * method finds for the same bins
+	 * @param window is the signal or interval of impulse data to be processed
+	 * @param bins the (fractional) bins we want the power response of
+	 * @return a new array holding the power response of each bin, where each index corresponds to
+	 * the same index in the bins array
+	 */
+	public double[] searchBins(double[] window, double[] bins) {
+
+		session.prepare(window);
+
+		return session.searchBins(bins);
+	}
+
+
+	/**
+	 * Sets how much work (number of bins multiplied by the number of non-zero values in the window)
+	 * a sweep of DFTs needs before its bins are split up across the fork join pool. For offline runs
+	 * or very large intervals this can be lowered. Integer.MAX_VALUE turns the parallel sweep off
+	 * @param parallelThreshold the amount of work needed before the sweep is done in parallel
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		session.setParallelThreshold(parallelThreshold);
+	}
+
+
+	/**
+	 * Returns the amount of work needed before the bins of a sweep are split across the fork join pool
+	 * @return the parallel threshold
+	 * @see setParallelThreshold
+	 */
+	public int getParallelThreshold() {
+		return session.getParallelThreshold();
+	}
+
+
+	/**
+	 * Chooses how the search homes in on the best bin once the spread out search is done
+	 * @param refinement either BINARY_REFINEMENT or PARABOLIC_REFINEMENT
+	 * @throws IllegalArgumentException if the refinement is not one of the two above
+	 */
+	public void setRefinement(int refinement) {
+		session.setRefinement(refinement);
+	}
+
+
+	/**
+	 * Returns how the search homes in on the best bin once the spread out search is done
+	 * @return either BINARY_REFINEMENT or PARABOLIC_REFINEMENT
+	 */
+	public int getRefinement() {
+		return session.getRefinement();
+	}
+
+
+	/**
+	 * Returns how many single bin DFTs have been worked out by this object since it was
+	 * created or since the tally was last reset
+	 * @return the number of DFTs done
+	 */
+	public long getDFTEvaluations() {
+		return session.getDFTEvaluations();
+	}
+
+
+	/**
+	 * Sets the tally of DFTs done by this object back to 0
+	 */
+	public void resetDFTEvaluations() {
+		session.resetDFTEvaluations();
+	}
+
+
 
 }
@@ -0,0 +1,517 @@
+package fourier;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A search session holds the non-zero, windowed values of one interval so that many DFT searches
+ * can be done on the same interval without picking out the non-zero values and windowing them
+ * every single time. The interval is prepared once, and then any number of (startBin, endBin)
+ * searches can be asked of it. Once an interval is prepared, searches can be made from more than
+ * one thread at the same time, as none of them write to anything the session holds (apart from
+ * the DFT tally, which is atomic)
+ */
+public class DFTSearchSession {
+
+	// the non-zero values of the interval with a hamming window applied to them
+	private double[] smallWindow = new double[0];
+
+	// the original indexes of the values we picked out from the interval
+	private int[] smallWindowIndexes = new int[0];
+
+	// how many relevant values exist within the small window
+	private int smallWindowLength = 0;
+
+	// the length of the interval that was prepared
+	private int windowLength = 0;
+
+	// which refinement the search uses once the spread out search is done
+	private int refinement = DFTSearch.BINARY_REFINEMENT;
+
+	// the amount of work above which the bins of one sweep are worked out in parallel
+	private int parallelThreshold = DFTSearch.DEFAULT_PARALLEL_THRESHOLD;
+
+	// a tally of how many single bin DFTs this session has worked out
+	private final AtomicLong dftEvaluations = new AtomicLong();
+
+
+	/**
+	 * Prepares an interval to be searched. The non-zero values are picked out and a hamming window is
+	 * applied to them. The arrays used to store them are only made larger if the interval is larger than
+	 * any interval prepared before, so preparing the same sized interval again creates no new arrays.
+	 * This must not be called while searches are still being made on the last prepared interval
+	 * @param window is the signal or interval of impulse data to be searched
+	 */
+	public void prepare(double[] window) {
+
+		// We make the arrays equal in size to the window, just in case of the (pretty much impossibility)
+		// of there being no zero values in the given window
+		if (smallWindow.length < window.length) {
+			smallWindow = new double[window.length];
+			smallWindowIndexes = new int[window.length];
+		}
+
+		smallWindowLength = 0;
+		windowLength = window.length;
+
+		// now we iterate through the window and pick out the non-zero values, adding them
+		// sequentially to our smallWindow and increasing it's 'length' by one. We also add a
+		// hamming window as we do this
+		for (int i = 0; i < window.length; ++i) {
+			if (window[i] > 0) {
+				smallWindow[smallWindowLength] = window[i] * (0.54 - 0.46 * Math.cos((2 * Math.PI * i) / window.length));
+				smallWindowIndexes[smallWindowLength] = i;
+				++smallWindowLength;
+			}
+		}
+	}
+
+
+	/**
+	 * Prepares an interval to be searched from a list of its onsets, rather than from every window in it.
+	 * This gives exactly the same result as preparing the whole interval, but only costs as much as the
+	 * number of onsets there are
+	 * @param onsetIndexes the window index of each onset, in order
+	 * @param onsetStrengths the strength of each onset, which should all be above zero
+	 * @param numOfOnsets the number of onsets in the arrays
+	 * @param firstIndex the window index of the first window in the interval
+	 * @param windowLength the number of windows in the interval
+	 */
+	public void prepare(int[] onsetIndexes, double[] onsetStrengths, int numOfOnsets, int firstIndex, int windowLength) {
+
+		if (smallWindow.length < numOfOnsets) {
+			smallWindow = new double[numOfOnsets];
+			smallWindowIndexes = new int[numOfOnsets];
+		}
+
+		smallWindowLength = 0;
+		this.windowLength = windowLength;
+
+		// the onsets are already picked out for us, so we just need to add the hamming window to them
+		for (int j = 0; j < numOfOnsets; ++j) {
+			int i = onsetIndexes[j] - firstIndex;
+			if (i >= 0 && i < windowLength && onsetStrengths[j] > 0) {
+				smallWindow[smallWindowLength] = onsetStrengths[j] * (0.54 - 0.46 * Math.cos((2 * Math.PI * i) / windowLength));
+				smallWindowIndexes[smallWindowLength] = i;
+				++smallWindowLength;
+			}
+		}
+	}
+
+
+	/**
+	 * Searches the prepared interval for the period of a repetitive pattern between the start and end bins.
+	 * This works in exactly the same way as DFTSearch.search
+	 * @param numOfIntervals the number of initial searches in the spread out search before the refinement
+	 * @param binarySearches the number of binary searches carried out to home in on the correct
+	 * period (ignored when the parabolic refinement is being used)
+	 * @param startBin the start bin to search for
+	 * @param endBin the end bin to search for
+	 * @return the period which most correlates to the data, as the number of cycles in the interval
+	 * @see DFTSearch#search
+	 */
+	public double search(int numOfIntervals, int binarySearches, double startBin, double endBin) {
+
+		// We want to find out the range, which we get in the following way
+		double range = endBin - startBin;
+
+		// We want to search between the range at regular intervals. Say the amount of intervals used as
+		// an argument for this method = 6. We will actually do 7 initial DFT searches like so:
+		// 
+		//	V						V       <--- location of start and end bins
+		//	|	|	|	|	|	|	|       <--- searches
+		//    1   2   3   4   5   6			<--- intervals
+		//
+		// So in this case, we need to create an array of length 7 to store all of the bins we will
+		// do DFTs for
+
+		double[] binIntervals = new double[numOfIntervals + 1];
+
+		for (int i = 0; i < numOfIntervals + 1; ++i) {
+			binIntervals[i] = startBin + (i * range) / numOfIntervals;
+		}
+
+		// Now we do the DFT's for every single binInterval and place the power responses in a new array,
+		// where each index's value in the new array corresponds to the same index's value in binInterval
+		double[] binPowers = new double [numOfIntervals + 1];
+
+		binPowers(binIntervals, binPowers);
+
+		// We now have 2 arrays: binIntervals and binPowers. The indexes in both correspond to each other
+
+		// We iterate through binPowers and find the maximum value in it. We store this is a new variable
+		// and put the bin it corresponds to in another variable
+		double bestPower = 0;
+		double bestBin = 0;
+		int bestIndex = -1;
+
+		for (int i  = 0; i < binPowers.length; ++i) {
+			if (binPowers[i] > bestPower) {
+				bestPower = binPowers[i];
+				bestBin = binIntervals[i];
+				bestIndex = i;
+			}
+		}
+
+		// if we are using the parabolic refinement, we don't need to do any more DFTs. The peak
+		// of the parabola through the best bin and its neighbours gives us the bin straight away
+		if (refinement == DFTSearch.PARABOLIC_REFINEMENT) {
+			return parabolicPeak(binIntervals, binPowers, bestIndex, bestBin);
+		}
+
+		// Now we have these vales, we can move onto a binary search
+		// An full explanation for how this is done is on the iPad notes somewhere
+
+		// We need to work out the span of the binary search first
+		// Initially, we work out the span in the following way
+
+		double span = range / (numOfIntervals * 2);
+
+		// the two contender bins and their powers are stored in these for every round
+		double[] contenderBins = new double[2];
+		double[] contenderPowers = new double[2];
+
+		// We now start the binary search loop.
+		for (int i = 0 ; i < binarySearches; ++i) {
+
+			// We create two contender bins, either side of the best bin, to challenge the best bin
+			// and see either of their power responses are larger than the best bin's power response. The
+			// one with the largest power response becomes the new best bin and best power
+
+			double contender1Bin = bestBin - span;
+			double contender2Bin = bestBin + span;
+
+			// Do a DFT for each contender. Both are worked out in the same pass over the data
+			contenderBins[0] = contender1Bin;
+			contenderBins[1] = contender2Bin;
+			binPowers(contenderBins, contenderPowers);
+
+			double contender1Power = contenderPowers[0];
+			double contender2Power = contenderPowers[1];
+
+			// We can now decide which of three bins has the largest power response. Whichever one
+			// does, it becomes the bestBin, and it's power, the bestPower. If the original bestBin
+			// has the best power, it maintains being the best bin. We then repeat, halving the span
+			// each time
+
+			if (contender1Power > bestPower) {
+				bestPower = contender1Power;
+				bestBin = contender1Bin;
+			} else if (contender2Power > bestPower) {
+				bestPower = contender2Power;
+				bestBin = contender2Bin;
+			}
+
+			span /= 2;
+		}
+
+		// once the binary search is complete, we now have a bin which should (most of the time)
+		// be the bin that holds the largest power response within the range given. (actually, it could be
+		// a little outside of the range, but that's actually quite useful)
+
+		return bestBin;
+
+	}
+
+
+	/**
+	 * Does a search for every one of the bin ranges given to it on the prepared interval. If there is
+	 * enough work to do, the ranges are searched at the same time across the fork join pool
+	 * @param numOfIntervals the number of initial searches in each spread out search
+	 * @param binarySearches the number of binary searches carried out for each range
+	 * @param binRanges an array of bin ranges, where [n][0] is the start bin and [n][1] the end bin of a range
+	 * @return the best bin found for each range, where each index corresponds to the same index in binRanges
+	 */
+	public double[] searchAll(int numOfIntervals, int binarySearches, double[][] binRanges) {
+
+		double[] bestBins = new double[binRanges.length];
+
+		if ((long) smallWindowLength * (numOfIntervals + 1) * binRanges.length >= parallelThreshold && binRanges.length > 1) {
+
+			// give each range its own task and then wait for all of them to finish
+			RangeSearchTask[] tasks = new RangeSearchTask[binRanges.length];
+			for (int i = 0; i < binRanges.length; ++i) {
+				tasks[i] = new RangeSearchTask(numOfIntervals, binarySearches, binRanges[i][0], binRanges[i][1]);
+			}
+			ForkJoinTask.invokeAll(tasks);
+			for (int i = 0; i < binRanges.length; ++i) {
+				bestBins[i] = tasks[i].join();
+			}
+
+		} else {
+			for (int i = 0; i < binRanges.length; ++i) {
+				bestBins[i] = search(numOfIntervals, binarySearches, binRanges[i][0], binRanges[i][1]);
+			}
+		}
+
+		return bestBins;
+	}
+
+
+	/**
+	 * Works out the power response of the prepared interval at every bin given to it
+	 * @param bins the (fractional) bins we want the power response of
+	 * @return a new array holding the power response of each bin
+	 * @see DFTSearch#searchBins
+	 */
+	public double[] searchBins(double[] bins) {
+
+		double[] powers = new double[bins.length];
+
+		binPowers(bins, powers);
+
+		return powers;
+	}
+
+
+	/**
+	 * Returns the length of the last interval prepared
+	 * @return the length of the interval
+	 */
+	public int getWindowLength() {
+		return windowLength;
+	}
+
+
+	/**
+	 * Returns how many non-zero values the last prepared interval had
+	 * @return the number of non-zero values in the interval
+	 */
+	public int getNonZeroLength() {
+		return smallWindowLength;
+	}
+
+
+	/**
+	 * Chooses how the search homes in on the best bin once the spread out search is done
+	 * @param refinement either DFTSearch.BINARY_REFINEMENT or DFTSearch.PARABOLIC_REFINEMENT
+	 * @throws IllegalArgumentException if the refinement is not one of the two above
+	 */
+	public void setRefinement(int refinement) {
+		if (refinement != DFTSearch.BINARY_REFINEMENT && refinement != DFTSearch.PARABOLIC_REFINEMENT) {
+			throw new IllegalArgumentException("Refinement " + refinement + " is not a known refinement");
+		}
+		this.refinement = refinement;
+	}
+
+
+	/**
+	 * Returns how the search homes in on the best bin once the spread out search is done
+	 * @return either DFTSearch.BINARY_REFINEMENT or DFTSearch.PARABOLIC_REFINEMENT
+	 */
+	public int getRefinement() {
+		return refinement;
+	}
+
+
+	/**
+	 * Sets how much work a sweep of DFTs (or a set of searches) needs before it is split up across
+	 * the fork join pool. Integer.MAX_VALUE turns the parallel work off
+	 * @param parallelThreshold the amount of work needed before the work is done in parallel
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+
+
+	/**
+	 * Returns the amount of work needed before work is split across the fork join pool
+	 * @return the parallel threshold
+	 */
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+
+	/**
+	 * Returns how many single bin DFTs have been worked out by this session since it was
+	 * created or since the tally was last reset
+	 * @return the number of DFTs done
+	 */
+	public long getDFTEvaluations() {
+		return dftEvaluations.get();
+	}
+
+
+	/**
+	 * Sets the tally of DFTs done by this session back to 0
+	 */
+	public void resetDFTEvaluations() {
+		dftEvaluations.set(0);
+	}
+
+
+	/**
+	 * Fits a parabola through the log power of the best bin and the two bins either side of it and
+	 * returns the bin at the peak of the parabola. The log is used since the peak of a windowed
+	 * DFT is much closer to a parabola in log power than it is in power. If the best bin is at the
+	 * edge of the bins searched, or the three points don't make a peak, the best bin is returned as it is
+	 * @param bins the bins that were searched, which must be evenly spaced
+	 * @param powers the power response of each of the bins
+	 * @param bestIndex the index of the bin with the largest power (or -1 if none was found)
+	 * @param bestBin the bin with the largest power
+	 * @return the refined bin
+	 */
+	static double parabolicPeak(double[] bins, double[] powers, int bestIndex, double bestBin) {
+
+		if (bestIndex < 1 || bestIndex > bins.length - 2 || powers[bestIndex - 1] <= 0 || powers[bestIndex + 1] <= 0) {
+			return bestBin;
+		}
+
+		double left = Math.log(powers[bestIndex - 1]);
+		double middle = Math.log(powers[bestIndex]);
+		double right = Math.log(powers[bestIndex + 1]);
+
+		// this is the curvature of the parabola. It has to be negative for the middle to be a peak
+		double curvature = left - 2 * middle + right;
+		if (curvature >= 0) {
+			return bestBin;
+		}
+
+		// the offset of the peak from the best bin, as a fraction of the spacing between bins.
+		// It will always be between -0.5 and 0.5
+		double offset = 0.5 * (left - right) / curvature;
+
+		return bestBin + offset * (bins[bestIndex + 1] - bins[bestIndex]);
+	}
+
+
+	/**
+	 * Fills in the power response of every bin in the bins array from the prepared interval. If there
+	 * is enough work, the bins are split up between the threads of the fork join pool, otherwise it is
+	 * all done on the calling thread
+	 * @param bins the bins we want the power response of
+	 * @param powers the array the power responses are written into
+	 */
+	private void binPowers(double[] bins, double[] powers) {
+
+		dftEvaluations.addAndGet(bins.length);
+
+		if ((long) bins.length * smallWindowLength >= parallelThreshold && bins.length > 1) {
+			ForkJoinPool.commonPool().invoke(new BinPowerTask(smallWindow, smallWindowIndexes, smallWindowLength,
+					windowLength, bins, powers, 0, bins.length, parallelThreshold));
+		} else {
+			binPowers(smallWindow, smallWindowIndexes, smallWindowLength, windowLength, bins, powers, 0, bins.length);
+		}
+	}
+
+
+	/**
+	 * Fills in the power response of the bins between firstBin (inclusive) and lastBin (exclusive).
+	 * Rather than doing one DFT after another, we go through the data once and add each value's effect
+	 * onto every bin as we go. Every bin still has its values added up in the same order as a normal
+	 * DFT, so the result is exactly the same as doing the DFTs one by one
+	 */
+	static void binPowers(double[] smallWindow, int[] smallWindowIndexes, int smallWindowLength, int windowLength,
+			double[] bins, double[] powers, int firstBin, int lastBin) {
+
+		int numOfBins = lastBin - firstBin;
+
+		// these are the constants used for every loop of each bin's DFT. We work them out before going
+		// into the loop, rather than in every loop of the DFT
+		double[] constants = new double[numOfBins];
+
+		// the real and imaginary parts of every bin's DFT, which are added to as we go through the data
+		double[] real = new double[numOfBins];
+		double[] imaginary = new double[numOfBins];
+
+		for (int b = 0; b < numOfBins; ++b) {
+			constants[b] = bins[firstBin + b] * 2 * Math.PI / windowLength;
+		}
+
+		// Here is the main part of the DFT, where the outer loop is over the data rather than the bins
+		for (int j = 0; j < smallWindowLength; ++j) {
+
+			double value = smallWindow[j];
+			int index = smallWindowIndexes[j];
+
+			for (int b = 0; b < numOfBins; ++b) {
+				real[b] += value * Math.cos(constants[b] * index);
+				imaginary[b] += value * Math.sin(constants[b] * index);
+			}
+		}
+
+		// We don't bother square rooting as it won't affect which power is the maximum
+		for (int b = 0; b < numOfBins; ++b) {
+			powers[firstBin + b] = Math.pow(real[b], 2) + Math.pow(imaginary[b], 2);
+		}
+	}
+
+
+	/**
+	 * A fork join task which splits the bins of a sweep in half until each half is small enough to
+	 * be worked out on one thread
+	 */
+	private static class BinPowerTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] smallWindow;
+		private final int[] smallWindowIndexes;
+		private final int smallWindowLength;
+		private final int windowLength;
+		private final double[] bins;
+		private final double[] powers;
+		private final int firstBin;
+		private final int lastBin;
+		private final int threshold;
+
+		BinPowerTask(double[] smallWindow, int[] smallWindowIndexes, int smallWindowLength, int windowLength,
+				double[] bins, double[] powers, int firstBin, int lastBin, int threshold) {
+			this.smallWindow = smallWindow;
+			this.smallWindowIndexes = smallWindowIndexes;
+			this.smallWindowLength = smallWindowLength;
+			this.windowLength = windowLength;
+			this.bins = bins;
+			this.powers = powers;
+			this.firstBin = firstBin;
+			this.lastBin = lastBin;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+
+			// if there is little enough work left, or only one bin, we work it out on this thread
+			if ((long) (lastBin - firstBin) * smallWindowLength < threshold || lastBin - firstBin < 2) {
+				binPowers(smallWindow, smallWindowIndexes, smallWindowLength, windowLength, bins, powers, firstBin, lastBin);
+				return;
+			}
+
+			int middleBin = (firstBin + lastBin) / 2;
+
+			invokeAll(new BinPowerTask(smallWindow, smallWindowIndexes, smallWindowLength, windowLength, bins, powers, firstBin, middleBin, threshold),
+					new BinPowerTask(smallWindow, smallWindowIndexes, smallWindowLength, windowLength, bins, powers, middleBin, lastBin, threshold));
+		}
+	}
+
+
+	/**
+	 * A fork join task which does one whole search of the prepared interval
+	 */
+	private class RangeSearchTask extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int numOfIntervals;
+		private final int binarySearches;
+		private final double startBin;
+		private final double endBin;
+
+		RangeSearchTask(int numOfIntervals, int binarySearches, double startBin, double endBin) {
+			this.numOfIntervals = numOfIntervals;
+			this.binarySearches = binarySearches;
+			this.startBin = startBin;
+			this.endBin = endBin;
+		}
+
+		@Override
+		protected Double compute() {
+			return search(numOfIntervals, binarySearches, startBin, endBin);
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+package audio;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import fourier.SignalProcessor;
+import rollingmemory.RollingArrayMemory;
+import rollingmemory.RollingDoubleMemory;
+
+/**
+ * Runs the tempo stage of Illumaxate over a made up track with kicks at a steady tempo, once with every window
+ * going into the onset envelope and once for each of a few decimated envelope rates (as set by
+ * Illumaxate.tempoAnalysisRate). The track is the one made by FilterbankOnsetTester (noise and a held chord),
+ * with the kicks expectedBPM apart.
+ * Each run does what Illumaxate's audio loop does for every window: the denoised impulse goes through the
+ * onset envelope decimator, a tempogram column is made whenever there is a new sample of the envelope (and
+ * added to the tempogram memory every window), and the scheduler is asked for the tempo on every new sample.
+ * It prints out the rate of the envelope, how many times trackBeat was called, how long the tempo stage took
+ * per window, and the median of the tempos found once the interval is full, which should be the tempo of the
+ * kicks for every rate
+ * @see OnsetEnvelopeDecimator
+ */
+public class DecimatedTempoTester {
+
+	// the tempo of the kicks, which is also the tempo the beat tracker expects
+	static final int kickBPM = 128;
+
+	// the same beat settings as Illumaxate uses by default
+	static final int expectedBPM = 130;
+	static final int numOfBeatsInInterval = 7;
+	static final double minTempoEstimateMillis = 50;
+
+	// the rates of the onset envelope to try, in Hz. 0 uses every window
+	static final double[] tempoAnalysisRates = {0, 200, 100};
+
+	public static void main(String[] args) {
+
+		Random random = new Random(34);
+
+		int windowSizeInFrames = (int) (FilterbankOnsetTester.sampleRate / FilterbankOnsetTester.minFrequency);
+		int hopInFrames = (int) (FilterbankOnsetTester.sampleRate * FilterbankOnsetTester.hopMillis / 1000);
+		int windowsInMovAverage = (int) (FilterbankOnsetTester.movingAverageMillis / FilterbankOnsetTester.hopMillis);
+
+		// the same working out as Illumaxate does for the interval
+		double windowOffsetsPerBeat = 60000.0 / expectedBPM / FilterbankOnsetTester.hopMillis;
+		int windowsInInterval = (int) (windowOffsetsPerBeat * numOfBeatsInInterval * 1.5);
+		double windowRate = 1000 / FilterbankOnsetTester.hopMillis;
+
+		int numOfKicks = 0;
+		double[] kickTimes = new double[(int) (FilterbankOnsetTester.trackSeconds * 4) + 1];
+		for (double time = 500; time < FilterbankOnsetTester.trackSeconds * 1000 - 500; time += 60000.0 / kickBPM) {
+			kickTimes[numOfKicks++] = time;
+		}
+
+		int[] track = FilterbankOnsetTester.makeTrack(kickTimes, numOfKicks, random);
+		int numOfHops = (track.length - windowSizeInFrames) / hopInFrames;
+
+		System.out.println(numOfHops + " hops of " + FilterbankOnsetTester.hopMillis + " milliseconds, kicks at " + kickBPM + " BPM");
+
+		for (double tempoAnalysisRate : tempoAnalysisRates) {
+
+			int windowsPerTempoSample = (tempoAnalysisRate <= 0 || tempoAnalysisRate >= windowRate) ?
+					1 : (int) Math.round(windowRate / tempoAnalysisRate);
+			int samplesInInterval = (int) Math.ceil(windowsInInterval / (double) windowsPerTempoSample);
+			double samplesPerBeat = windowOffsetsPerBeat / windowsPerTempoSample;
+
+			int tempogramIntervalSizeInWindows = 1;
+			while (tempogramIntervalSizeInWindows <= (samplesPerBeat * numOfBeatsInInterval)) {
+				tempogramIntervalSizeInWindows *= 2;
+			}
+
+			SignalProcessor signalProcess = new SignalProcessor(windowSizeInFrames);
+			SignalProcessor impulseProcess = new SignalProcessor(tempogramIntervalSizeInWindows);
+			RollingArrayMemory spectra = new RollingArrayMemory(signalProcess.getFFTSize(), 16);
+			RollingArrayMemory tempogram = new RollingArrayMemory(tempogramIntervalSizeInWindows, 16);
+			RollingDoubleMemory impulseMemory = new RollingDoubleMemory(windowsInMovAverage);
+			RollingDoubleMemory denoisedMemory = new RollingDoubleMemory(numOfHops);
+			RollingDoubleMemory volumeMemory = new RollingDoubleMemory(numOfHops);
+
+			// the decimated envelope is kept in its own memories, as it is in Illumaxate
+			OnsetEnvelopeDecimator onsetDecimator = null;
+			RollingDoubleMemory tempoImpulseMemory = denoisedMemory;
+			RollingDoubleMemory tempoVolumeMemory = volumeMemory;
+			if (windowsPerTempoSample > 1) {
+				onsetDecimator = new OnsetEnvelopeDecimator(windowsPerTempoSample);
+				tempoImpulseMemory = new RollingDoubleMemory(numOfHops);
+				tempoVolumeMemory = new RollingDoubleMemory(numOfHops);
+			}
+
+			BeatTracker tracker = new BeatTracker(windowsInMovAverage, windowOffsetsPerBeat, numOfBeatsInInterval,
+					denoisedMemory, volumeMemory, samplesInInterval, windowsPerTempoSample);
+			int samplesBetweenTempoEstimates = (int) Math.ceil(minTempoEstimateMillis / (FilterbankOnsetTester.hopMillis * windowsPerTempoSample));
+			TempoEstimationScheduler tempoScheduler = new TempoEstimationScheduler(tracker, tempoImpulseMemory,
+					tempoVolumeMemory, samplesInInterval, samplesBetweenTempoEstimates);
+
+			// the tempogram column is empty until the first sample of the envelope is finished
+			double[] tempogramColumn = new double[tempogramIntervalSizeInWindows];
+
+			double[] tempos = new double[numOfHops];
+			int numOfTempos = 0;
+			int[] window = new int[windowSizeInFrames];
+			long tempoTime = 0;
+
+			for (int h = 0; h < numOfHops; ++h) {
+
+				System.arraycopy(track, h * hopInFrames, window, 0, windowSizeInFrames);
+				double[] spectrum = signalProcess.blackmanHarrisFFT(window, true, spectra.getWritableRow());
+				spectra.commitRow();
+
+				impulseMemory.addDouble((h == 0) ? 0 : tracker.getImpulse(spectrum, spectra.getArrayPointer(h - 1)));
+				volumeMemory.addDouble(tracker.getRMSVolume(window));
+				denoisedMemory.addDouble(tracker.trailedMovingAverage(
+						impulseMemory.getDoubleArray(h - windowsInMovAverage + 1, windowsInMovAverage)));
+
+				long startTime = System.nanoTime();
+
+				boolean newTempoSample = true;
+				if (onsetDecimator != null) {
+					newTempoSample = onsetDecimator.add(h, denoisedMemory.getDouble(h), volumeMemory.getDouble(h));
+					if (newTempoSample) {
+						tempoImpulseMemory.addDouble(onsetDecimator.getImpulse());
+						tempoVolumeMemory.addDouble(onsetDecimator.getVolume());
+					}
+				}
+				int newestTempoSample = tempoImpulseMemory.getLastAddedIndex();
+
+				if (newTempoSample) {
+					tempogramColumn = impulseProcess.sqrt(
+							impulseProcess.blackmanHarrisFFT(
+									tempoImpulseMemory.getDoubleArray(
+											newestTempoSample - tempogramIntervalSizeInWindows + 1, tempogramIntervalSizeInWindows)));
+				}
+				tempogram.addArray(tempogramColumn);
+
+				double[] tempo = newTempoSample ? tempoScheduler.getTempo(newestTempoSample) : null;
+
+				tempoTime += System.nanoTime() - startTime;
+
+				// only the tempos found once the interval is full of the track are counted
+				if (tempo != null && tempo[2] > 1 && h >= windowsInInterval) {
+					tempos[numOfTempos++] = 60000 / (tempo[0] * FilterbankOnsetTester.hopMillis);
+				}
+			}
+
+			Arrays.sort(tempos, 0, numOfTempos);
+			double medianTempo = (numOfTempos > 0) ? tempos[numOfTempos / 2] : 0;
+
+			System.out.format("%s (%d windows per sample): %d trackBeat calls, tempo stage %.2f microseconds per window, median tempo %.1f BPM\n",
+					(windowsPerTempoSample == 1) ? "every window     " : String.format("%5.1f Hz envelope", windowRate / windowsPerTempoSample),
+					windowsPerTempoSample, tempoScheduler.getEstimatesMade(), tempoTime / (numOfHops * 1000.0), medianTempo);
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+package fourier;
+
+/**
+ * Something that can work out the FFT of a real window. FFTObject (and so SignalProcessor) hands every FFT
+ * it does to a backend, so the code that does the transform can be swapped without anything else changing.
+ * Which backend is used for each window size is decided by FFTBackends.
+ *
+ * A backend must be safe to use from more than one thread at once. Anything it keeps between calls (plans,
+ * twiddle factors and so on) should never change once it has been made, and anything it writes to during a
+ * transform should either be the arrays it was given or belong to the thread calling it
+ * @see FFTBackends
+ */
+public interface FFTBackend {
+
+	/**
+	 * Returns the name the backend is chosen by
+	 * @return the name of the backend
+	 */
+	String getName();
+
+
+	/**
+	 * Returns whether the backend can do an FFT of the size given
+	 * @param size the number of points in the FFT
+	 * @return true if the backend can transform windows of this size, false otherwise
+	 */
+	boolean supports(int size);
+
+
+	/**
+	 * Does an FFT of a real window. The window isn't changed. The result is written into the real and
+	 * imaginary arrays given, which must be the same length as the window. Each bin k is the sum of
+	 * window[n] * e^(-2 * pi * i * k * n / size), with no scaling
+	 * @param window the real input
+	 * @param real the array the real part of the result is written to
+	 * @param imaginary the array the imaginary part of the result is written to
+	 * @throws IllegalArgumentException if the backend does not support the size of the window, or the arrays
+	 * are not all the same length
+	 */
+	void transform(double[] window, double[] real, double[] imaginary);
+
+}
@@ -0,0 +1,181 @@
+package fourier;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks every FFT backend against the radix 2 FFT this project has always used, and times them.
+ * Each backend is given the same signals as FFTtester (a sum of cosine waves) and some random noise, at
+ * a range of window sizes, and the largest difference from the radix 2 FFT (relative to the largest value
+ * of the radix 2 FFT) is printed out. A backend is only said to agree if this is down at rounding error.
+ * The time each backend takes per FFT is printed next to it. The sizes go on up to 2^20, past
+ * FFTBackends.LARGE_SIZE, where the mixed radix FFT is used rather than the radix 2 FFT unless a backend
+ * has been selected. The backend FFTBackends uses for each size is printed out with the size.
+ * After that, a windowed FFT of real frames (as SignalProcessor does for every window) is timed from 256 to
+ * 65536 points, with the radix 2 FFT (the window is put on in a pass of its own, then the frames are put
+ * into bit reversed order) against the Stockham stages of the mixed radix FFT (the window is put on as the
+ * first stage loads the frames, and there is no bit reversal)
+ */
+public class FFTBackendTester {
+
+	// the signals from FFTtester
+	static final int sampleRate = 160;
+	static final double[] inputFreq = new double[] {3, 5, 6, 3, 4, 1};
+	static final double[] inputAmp = new double[] { 18, 16, 3, 8, 4, 6, 1 };
+	static final double[] inputPha = new double[] { 0.5 , 0.1, 0, 0.5, 0.5, 0.2, 0.4};
+
+	// the largest relative difference that still counts as agreeing
+	static final double tolerance = 1e-12;
+
+	static final int[] sizes = {2, 8, 64, 256, 1024, 2048, 4096, 16384, 65536, 262144, 1048576};
+
+	static final int[] windowedSizes = {256, 512, 1024, 2048, 4096, 8192, 16384, 32768, 65536};
+
+
+	public static void main(String[] args) {
+
+		Random random = new Random(41);
+		FFTBackend reference = new Radix2Backend();
+		List<FFTBackend> backends = FFTBackends.getBackends();
+		boolean allAgree = true;
+
+		for (int size : sizes) {
+
+			double[] signal = new double[size];
+			double[] noise = new double[size];
+			for (int s = 0; s < size; ++s) {
+				for (int f = 0; f < inputFreq.length; ++f) {
+					signal[s] += inputAmp[f] * Math.cos(2 * Math.PI * inputPha[f] + (Math.PI * 2 * inputFreq[f] * s) / sampleRate);
+				}
+				noise[s] = random.nextDouble() * 2 - 1;
+			}
+
+			System.out.println("Size " + size + " (" + FFTBackends.forSize(size).getName() + " is used)");
+
+			for (FFTBackend backend : backends) {
+
+				if (!backend.supports(size)) {
+					continue;
+				}
+
+				double error = Math.max(difference(reference, backend, signal), difference(reference, backend, noise));
+				boolean agrees = error < tolerance;
+				allAgree &= agrees;
+
+				System.out.format("	%-12s %8.2f microseconds per FFT, largest difference %.1e %s\n", backend.getName(),
+						time(backend, noise), error, agrees ? "" : "DOES NOT AGREE");
+			}
+		}
+
+		System.out.println(allAgree ? "Every backend agrees with the radix 2 FFT" : "Some backends do not agree with the radix 2 FFT");
+
+		System.out.println();
+		System.out.println("Windowed FFT of real frames (Blackman-Harris)");
+		System.out.println("	size	radix 2, window pass + bit reversal	Stockham, window fused		speed up");
+
+		for (int size : windowedSizes) {
+
+			double[] frames = new double[size];
+			double[] coefficients = new double[size];
+			for (int i = 0; i < size; ++i) {
+				frames[i] = random.nextInt(60000) - 30000;
+				coefficients[i] = 0.355768 - 0.487396 * Math.cos(2 * Math.PI * i / size)
+						+ 0.144232 * Math.cos(4 * Math.PI * i / size)
+						- 0.012604 * Math.cos(6 * Math.PI * i / size);
+			}
+
+			double radix2 = timeWindowed(new Radix2Backend(), frames, coefficients);
+			double stockham = timeWindowed(new MixedRadixBackend(), frames, coefficients);
+
+			System.out.format("	%d	%8.2f microseconds				%8.2f microseconds		%.2fx\n", size, radix2, stockham, radix2 / stockham);
+		}
+	}
+
+
+	// returns the largest difference between two backends' FFTs of the window, relative to the largest
+	// value in the reference FFT
+	static double difference(FFTBackend reference, FFTBackend backend, double[] window) {
+
+		int size = window.length;
+		double[] referenceReal = new double[size];
+		double[] referenceImaginary = new double[size];
+		double[] real = new double[size];
+		double[] imaginary = new double[size];
+
+		reference.transform(window, referenceReal, referenceImaginary);
+		backend.transform(window, real, imaginary);
+
+		double largest = 0;
+		double difference = 0;
+		for (int k = 0; k < size; ++k) {
+			largest = Math.max(largest, Math.hypot(referenceReal[k], referenceImaginary[k]));
+			difference = Math.max(difference, Math.hypot(referenceReal[k] - real[k], referenceImaginary[k] - imaginary[k]));
+		}
+
+		return difference / largest;
+	}
+
+
+	// returns how long one windowed FFT of the frames takes with a backend, in microseconds. Backends that can
+	// put the window on themselves do, the others have the window put on in a pass of its own first, just as
+	// FFTObject does
+	static double timeWindowed(FFTBackend backend, double[] frames, double[] coefficients) {
+
+		int size = frames.length;
+		double[] windowed = new double[size];
+		double[] real = new double[size];
+		double[] imaginary = new double[size];
+		int transformsPerRound = Math.max(10, (1 << 21) / size);
+		double quickest = Double.MAX_VALUE;
+
+		// the first round is a warm up, and isn't counted
+		for (int round = 0; round < 6; ++round) {
+
+			long start = System.nanoTime();
+			for (int i = 0; i < transformsPerRound; ++i) {
+
+				if (backend instanceof WindowedFFTBackend) {
+					((WindowedFFTBackend) backend).transformWindowed(frames, coefficients, real, imaginary);
+				} else {
+					for (int j = 0; j < size; ++j) {
+						windowed[j] = frames[j] * coefficients[j];
+					}
+					backend.transform(windowed, real, imaginary);
+				}
+			}
+
+			if (round > 0) {
+				quickest = Math.min(quickest, (System.nanoTime() - start) / (1000.0 * transformsPerRound));
+			}
+		}
+
+		return quickest;
+	}
+
+
+	// returns how long one FFT of the window takes with a backend, in microseconds. It is warmed up first,
+	// then the quickest of a few rounds is used
+	static double time(FFTBackend backend, double[] window) {
+
+		int size = window.length;
+		double[] real = new double[size];
+		double[] imaginary = new double[size];
+		int transformsPerRound = Math.max(10, (1 << 21) / size);
+
+		for (int i = 0; i < transformsPerRound * 2; ++i) {
+			backend.transform(window, real, imaginary);
+		}
+
+		double quickest = Double.MAX_VALUE;
+		for (int round = 0; round < 5; ++round) {
+			long start = System.nanoTime();
+			for (int i = 0; i < transformsPerRound; ++i) {
+				backend.transform(window, real, imaginary);
+			}
+			quickest = Math.min(quickest, (System.nanoTime() - start) / (1000.0 * transformsPerRound));
+		}
+
+		return quickest;
+	}
+
+}
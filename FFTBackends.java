@@ -0,0 +1,280 @@
+package fourier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps track of the FFT backends there are, and decides which one is used for each window size.
+ *
+ * The radix 2 FFT is always there, as are the radix 4 FFT, the mixed radix FFT (which can do any size,
+ * not just powers of 2, so it is used for sizes the others can't do) and the four step FFT (for large sizes).
+ * The JTransforms backend is there if JTransforms is on the class path. Other backends can be added with
+ * register. Which backend is used is set by name with select, or with the system property
+ * fourier.fftBackend (-Dfourier.fftBackend=jtransforms) if select hasn't been called.
+ * If nothing is set, the radix 2 FFT is used, as it always has been, except for sizes of LARGE_SIZE and
+ * up, where it no longer fits in the cache and is several times slower than it needs to be. There, the mixed
+ * radix FFT is used. The four step FFT is only used if it is selected (or picked by "auto"), since it has
+ * only been timed on a single core, where it is slower than the mixed radix FFT.
+ *
+ * If the selection is "auto", the first time a window size is asked for, every backend that can do that
+ * size is timed doing FFTs of it and the fastest one is used for that size from then on. Different sizes
+ * can end up with different backends. This is done on whatever machine the program is running on, so it
+ * picks what is actually fastest there. If the backend selected can't do a size, the fastest backend that
+ * can is used instead
+ */
+public class FFTBackends {
+
+	/**
+	 * The selection that times every backend and picks the fastest for each size
+	 */
+	public static final String AUTO = "auto";
+
+	/**
+	 * The system property the selection is read from, if select hasn't been called
+	 */
+	public static final String PROPERTY = "fourier.fftBackend";
+
+	/**
+	 * The size from which the mixed radix FFT is used if no backend has been selected
+	 */
+	public static final int LARGE_SIZE = 1 << 16;
+
+	// the backends there are, in the order they were registered
+	private static final List<FFTBackend> backends = new CopyOnWriteArrayList<FFTBackend>();
+
+	// the backend used for each size asked for so far. This is cleared whenever the selection or the backends change
+	private static final ConcurrentHashMap<Integer, FFTBackend> chosen = new ConcurrentHashMap<Integer, FFTBackend>();
+
+	// the name of the backend selected, or AUTO. Null until select is called, in which case the system property is used
+	private static volatile String selection = null;
+
+	// roughly how long the timing of each backend for a size is allowed to take
+	private static final long benchmarkNanos = 100000000L;
+
+	static {
+		backends.add(new Radix2Backend());
+		backends.add(new Radix4Backend());
+		backends.add(new MixedRadixBackend());
+		backends.add(new FourStepBackend());
+
+		// JTransforms is optional, so if it can't be found, we carry on without it
+		try {
+			backends.add(new JTransformsBackend());
+		} catch (LinkageError e) {
+			// JTransforms is not on the class path
+		}
+	}
+
+
+	/**
+	 * Returns the backend used for FFTs of the size given, deciding which one it is if this is the first time
+	 * the size has been asked for
+	 * @param size the number of points in the FFT
+	 * @return the backend for the size
+	 * @throws IllegalArgumentException if no backend can do an FFT of the size
+	 */
+	public static FFTBackend forSize(int size) {
+
+		FFTBackend backend = chosen.get(size);
+		if (backend == null) {
+
+			// two threads may both decide, but only the first one put in is ever used
+			FFTBackend decided = decide(size);
+			backend = chosen.putIfAbsent(size, decided);
+			if (backend == null) {
+				backend = decided;
+			}
+		}
+		return backend;
+	}
+
+
+	/**
+	 * Selects which backend is used from now on. Objects made before this keep the backend they already had
+	 * @param name the name of a backend, or AUTO to pick the fastest for each size
+	 * @throws IllegalArgumentException if there is no backend with the name given
+	 */
+	public static void select(String name) {
+
+		if (!AUTO.equals(name) && find(name) == null) {
+			throw new IllegalArgumentException("There is no FFT backend called \"" + name + "\". The backends there are: "
+					+ getNames() + " (JTransforms needs to be on the class path to be used)");
+		}
+
+		selection = name;
+		chosen.clear();
+	}
+
+
+	/**
+	 * Adds a backend that can be selected. If there is already a backend with the same name, it is replaced
+	 * @param backend the backend to add
+	 */
+	public static synchronized void register(FFTBackend backend) {
+
+		FFTBackend old = find(backend.getName());
+		if (old != null) {
+			backends.remove(old);
+		}
+		backends.add(backend);
+		chosen.clear();
+	}
+
+
+	/**
+	 * Returns every backend that can be selected
+	 * @return the backends, in the order they were registered
+	 */
+	public static List<FFTBackend> getBackends() {
+		return Collections.unmodifiableList(new ArrayList<FFTBackend>(backends));
+	}
+
+
+	/**
+	 * Returns the name of the selection, which is either the name of a backend or AUTO
+	 * @return the selection
+	 */
+	public static String getSelection() {
+
+		String name = selection;
+		if (name == null) {
+			name = System.getProperty(PROPERTY, Radix2Backend.NAME);
+		}
+		return name;
+	}
+
+
+	// decides which backend is used for a size
+	private static FFTBackend decide(int size) {
+
+		String name = getSelection();
+
+		// with nothing selected, large sizes are left to the mixed radix FFT
+		if (selection == null && System.getProperty(PROPERTY) == null && size >= LARGE_SIZE) {
+			FFTBackend backend = find(MixedRadixBackend.NAME);
+			if (backend != null && backend.supports(size)) {
+				return backend;
+			}
+		}
+
+		if (!AUTO.equals(name)) {
+
+			FFTBackend backend = find(name);
+			if (backend != null && backend.supports(size)) {
+				return backend;
+			}
+
+			if (backend == null) {
+				System.err.println("There is no FFT backend called \"" + name + "\", so the fastest one will be used");
+			}
+		}
+
+		return fastest(size);
+	}
+
+
+	// times every backend that can do the size, and returns the fastest
+	private static FFTBackend fastest(int size) {
+
+		List<FFTBackend> candidates = new ArrayList<FFTBackend>();
+		for (FFTBackend backend : backends) {
+			if (backend.supports(size)) {
+				candidates.add(backend);
+			}
+		}
+
+		if (candidates.isEmpty()) {
+			throw new IllegalArgumentException("None of the FFT backends " + getNames() + " can do an FFT of size " + size);
+		}
+		if (candidates.size() == 1) {
+			return candidates.get(0);
+		}
+
+		// every backend is given the same made up window
+		Random random = new Random(size);
+		double[] window = new double[size];
+		for (int i = 0; i < size; ++i) {
+			window[i] = random.nextDouble() * 2 - 1;
+		}
+		double[] real = new double[size];
+		double[] imaginary = new double[size];
+
+		FFTBackend fastest = null;
+		double fastestNanos = Double.MAX_VALUE;
+
+		for (FFTBackend backend : candidates) {
+
+			double nanos;
+			try {
+				nanos = time(backend, window, real, imaginary);
+			} catch (RuntimeException | LinkageError e) {
+				// a backend that fails can't be the fastest
+				continue;
+			}
+
+			if (nanos < fastestNanos) {
+				fastestNanos = nanos;
+				fastest = backend;
+			}
+		}
+
+		return (fastest != null) ? fastest : candidates.get(0);
+	}
+
+
+	// returns the quickest a backend did one FFT of the window, in nanoseconds. The backend is warmed up first
+	// (so the JIT compiler has had a go at it), then FFTs are done in rounds and the quickest round is used,
+	// as the slower rounds are the ones something else got in the way of
+	private static double time(FFTBackend backend, double[] window, double[] real, double[] imaginary) {
+
+		int transformsPerRound = Math.max(4, (1 << 18) / window.length);
+		long deadline = System.nanoTime() + benchmarkNanos;
+
+		// warm up
+		for (int i = 0; i < transformsPerRound * 3 && System.nanoTime() < deadline; ++i) {
+			backend.transform(window, real, imaginary);
+		}
+
+		double quickest = Double.MAX_VALUE;
+		for (int round = 0; round < 5 && (round == 0 || System.nanoTime() < deadline); ++round) {
+
+			long start = System.nanoTime();
+			int transforms = 0;
+			while (transforms < transformsPerRound && (transforms == 0 || System.nanoTime() < deadline)) {
+				backend.transform(window, real, imaginary);
+				++transforms;
+			}
+			quickest = Math.min(quickest, (System.nanoTime() - start) / (double) transforms);
+		}
+
+		return quickest;
+	}
+
+
+	// returns the backend with the name given, or null if there isn't one
+	private static FFTBackend find(String name) {
+
+		for (FFTBackend backend : backends) {
+			if (backend.getName().equals(name)) {
+				return backend;
+			}
+		}
+		return null;
+	}
+
+
+	// returns the names of every backend, for error messages
+	private static List<String> getNames() {
+
+		List<String> names = new ArrayList<String>();
+		for (FFTBackend backend : backends) {
+			names.add(backend.getName());
+		}
+		return names;
+	}
+
+}
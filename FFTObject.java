@@ -1,5 +1,8 @@
 package fourier;
 
+import java.util.Arrays;
+import java.util.HashMap;
+
 /**
  * The FFT compute method returns an array showing the frequencies
  * present in the window it was given. These frequencies
@@ -11,17 +14,81 @@ package fourier;
  * largest amplitude (dominant frequency). It does not mean that the sine
  * wave with the largest amplitude repeats every 7 frames (period of 7 frames).
  * most prominent signal. 
+ *
+ * How much of the complex result of each FFT is kept can be set with setRetention and setRetainedBins.
+ * By default all of it is kept, and getPhases works out the phase of every bin each time it is called.
+ * If only the magnitudes are wanted, or only the complex values of a few bins, the FFT is done in arrays
+ * shared by every FFT object of the same size on the same thread, and this object keeps only what it was
+ * asked to. If the phases of only some bins are read, LAZY_PHASES works each one out the first time it is
+ * read after an FFT and keeps it until the next FFT, so the cost is in proportion to the bins read
  * @author Clement
  *
  */
 abstract class FFTObject {
 
+	/**
+	 * All of the complex result of each FFT is kept, and phases are worked out whenever they are asked for.
+	 * This is how FFT objects have always been
+	 */
+	public static final int RETAIN_COMPLEX = 0;
+
+	/**
+	 * Only the magnitudes of each FFT are kept. The phases and complex values can't be asked for
+	 */
+	public static final int RETAIN_MAGNITUDES = 1;
+
+	/**
+	 * The magnitudes are kept, along with the complex values of a range of bins, set with setRetainedBins.
+	 * Only the phases and complex values of those bins can be asked for
+	 */
+	public static final int RETAIN_BIN_RANGE = 2;
+
+	/**
+	 * All of the complex result of each FFT is kept, but the phase of each bin is only worked out the first
+	 * time it is asked for after an FFT, and is kept until the next FFT
+	 */
+	public static final int LAZY_PHASES = 3;
+
+	// the arrays the FFT is done in for objects that don't keep the whole complex result, for each size. They
+	// are shared by every such object on the same thread, as each object has taken what it keeps from them
+	// before the next FFT is done in them
+	private static final ThreadLocal<HashMap<Integer, double[][]>> sharedComplex = new ThreadLocal<HashMap<Integer, double[][]>>() {
+		@Override
+		protected HashMap<Integer, double[][]> initialValue() {
+			return new HashMap<Integer, double[][]>();
+		}
+	};
+
 	// store the window size of the FFT
 	// this cannot be changed once the object has been constructed
 	private final int WINDOW_SIZE;
 
-	// create an complex input vector for the FFT computation (hence the 2D array)
-	private double[][] _complexVector;
+	// the backend that does the FFTs for this window size. Which backend this is is decided by FFTBackends
+	private final FFTBackend _backend;
+
+	// the real and imaginary parts of the last FFT computed by this object. These are this object's own
+	// arrays, so objects on different threads never get in each other's way. They are null if this object
+	// doesn't keep the whole complex result
+	private double[] _real;
+	private double[] _imaginary;
+
+	// the two arrays above together, as the FFT methods take them
+	private double[][] _ownComplex;
+
+	// how much of the complex result is kept, which is one of the retention constants above
+	private int _retention = RETAIN_COMPLEX;
+
+	// the first bin and the complex values of each bin kept when only a range of bins is kept
+	private int _firstRetainedBin;
+	private double[] _retainedReal;
+	private double[] _retainedImaginary;
+
+	// the phases worked out since the last FFT when the phases are lazy, and which FFT each one is from
+	private double[] _phaseCache;
+	private int[] _phaseCacheFFT;
+
+	// goes up by one every FFT, so the phases kept from earlier FFTs can be told apart
+	private int _numOfFFTs = 0;
 
 	// create a real output array that the compute method can return
 	private double[] _output;
@@ -29,132 +96,163 @@ abstract class FFTObject {
 	// create an imaginary output array that the getOffsets method can return
 	private double[] _phaseOutput;
 
-	// create a twiddleFactor matrix that will be filled when the object is created
-	// and can only be used for the inputed window size
-	// it could technically be used for a smaller inputed window size than the size it was initialised for
-	// but it cannot handle a window size any larger (at all)
-	// if the window size is created for 1024 points, the twiddleFactor will have a length of 1024 / 2
-	// because the twiddleFactor matrix doesn't need to change it's values once they have been computed,
-	// it is initialised as 'final'
-	private final double[][] _twiddleFactor;
+	// the windowed frames, padded with zeros, for backends that can't put the window on themselves.
+	// This is only made the first time it is needed
+	private double[] _windowed;
 
-	private final int[] _bitReverseOrder;
+	// true to work out logs and phases with FastMath rather than Math
+	private boolean _fastMath = false;
 
 	public FFTObject(int windowSize) {
+		this(windowSize, false);
+	}
+
+	// if exactSize is true, the FFT is the size of the window given rather than the next 2^n up, so no
+	// padding is needed. Only backends that can do any size (such as the mixed radix one) can be used for these
+	public FFTObject(int windowSize, boolean exactSize) {
+
+		// the plan rounds the window size up to the nearest 2^n
+		if (exactSize) {
+			if (windowSize < 1) {
+				throw new IllegalArgumentException("The window size should be above 0, not " + windowSize);
+			}
+			this.WINDOW_SIZE = windowSize;
+		} else {
+			this.WINDOW_SIZE = FFTPlan.forSize(windowSize).getSize();
+		}
 
-		// check to make sure that the inputed window size for construction has a size of 2^n
-//		int windowSizeHalf = windowSize;
-//		while((windowSizeHalf % 2) == 0 && windowSizeHalf != 1) {
-//			windowSizeHalf = windowSizeHalf / 2;
-//		}
-//		if (windowSizeHalf != 1) {
-//			// if the inputed window size for construction does not have a size of 2^n, return an error
-//			throw new IllegalArgumentException("The window size for initialisation should be a number of 2^n");
-//		}
-		
-		int size = 1;
-		while (size < windowSize)
-			size *= 2;
-
-		// set the property windowSize
-		this.WINDOW_SIZE = size;
-
-		// set the size of the complex vector which will store the complex input vector
-		// and then will have calculations done and re-stored into the same array
-		_complexVector = new double[WINDOW_SIZE][2];
+		_backend = FFTBackends.forSize(WINDOW_SIZE);
+
+		// set the size of the arrays which will store the complex result
+		_real = new double[WINDOW_SIZE];
+		_imaginary = new double[WINDOW_SIZE];
+		_ownComplex = new double[][] {_real, _imaginary};
 
 		// set the size of the vector the computeFFT method will return
 		_output = new double[WINDOW_SIZE];
 
-		// set the size of the vector the getPhases method will return
-		_phaseOutput = new double[WINDOW_SIZE];
+		// the vector the getPhases method will return is only made the first time it is called
 
-		// set the size of the twiddleFactor matrix
-		_twiddleFactor = new double[WINDOW_SIZE / 2][2];  // twiddle matrix where [][0] is real and [][1] is imaginary
+	}
 
+	protected double[] compute(double window[]) {
 
-		// fill in the twiddleFactor matrix
-		// this does not have to be recalculated every time the FFT compute method is called
-		// the twiddleFactor matrix exactly the same for a window size (regardless of the values in the window)
-		// r here stands for row
-		for (int r = 0; r < WINDOW_SIZE / 2; ++r) {
+		// the backend does the transform, leaving the result in our own arrays (or the shared ones)
+		double[][] complex = complexArrays();
+		_backend.transform(window, complex[0], complex[1]);
+		retain(complex);
 
-			_twiddleFactor[r][0] = Math.cos((2 * Math.PI * r) / WINDOW_SIZE);
-			_twiddleFactor[r][1] = -Math.sin((2 * Math.PI * r) / WINDOW_SIZE);
+		return magnitudes(complex);
 
-		}
+	}
 
 
-		_bitReverseOrder = new int[WINDOW_SIZE];
+	// does an FFT of the frames with each one multiplied by its coefficient of a window function, and
+	// padded with zeros up to the window size. If the backend can, it puts the window on as it loads the
+	// frames, otherwise the windowed frames are worked out first
+	protected double[] computeWindowed(double[] frames, double[] coefficients) {
 
-		// r stands for new row index
-		for (int r = 0; r < WINDOW_SIZE; ++r) {
-			_bitReverseOrder[r] = Integer.reverse(r) >>> (32 - (int) (Math.log(WINDOW_SIZE) / Math.log(2)) );
-		// do a bit reversal of an index to quickly find it's new index 
-		}
+		double[][] complex = transformWindowed(frames, coefficients);
 
+		return magnitudes(complex);
 	}
 
-	protected double[] compute(double window[]) {
 
-		// transfer the real input to a complex vector and do bit reversal to shuffle around the input
-		// into the correct order for FFT to calculate correctly
-		// r stands for row
+	// does the same FFT as computeWindowed, but writes the power of each bin (or log10(1 + power) if log is
+	// true) straight into the destination given, rather than into this object's own output array. Nothing
+	// is copied anywhere else, so the destination can be where the spectrum is going to be kept
+	protected double[] computeWindowedInto(double[] frames, double[] coefficients, boolean log, double[] destination) {
+
+		if (destination.length < WINDOW_SIZE) {
+			throw new IllegalArgumentException("The destination is " + destination.length + " long, but the FFT is " + WINDOW_SIZE + " long");
+		}
+
+		double[][] complex = transformWindowed(frames, coefficients);
+		double[] real = complex[0];
+		double[] imaginary = complex[1];
+
 		for (int r = 0; r < WINDOW_SIZE; ++r) {
-			_complexVector[_bitReverseOrder[r]][0] = window[r];
-			_complexVector[_bitReverseOrder[r]][1] = 0;	// the input is real (for now)
+			double power = Math.pow(real[r], 2) + Math.pow(imaginary[r], 2);
+			destination[r] = !log ? power : _fastMath ? FastMath.log10(1 + power) : Math.log10(1 + power);
 		}
 
+		return destination;
+	}
 
-		int step = 2;
 
-		int loop = WINDOW_SIZE / step;
+	// does the FFT of the windowed frames, leaving the result in our own arrays (or the shared ones), which
+	// are returned
+	private double[][] transformWindowed(double[] frames, double[] coefficients) {
 
-		int log2ofN = (int) (Math.log(WINDOW_SIZE) / Math.log(2));
-		// this variable tells how many 'stages' of butterfly calculation there are
+		double[][] complex = complexArrays();
 
-		int a; // this holds the index of the first reference to the complex input vector
-		int b; // this holds the index of the second reference to the complex input vector
-		int t; // this hold the index to the wanted twiddle factor in the complex twiddleFactor vector
+		if (_backend instanceof WindowedFFTBackend) {
 
-		// this will hold an intermediary complex value for use in calculations
-		double[] complexResult = new double[2];
+			((WindowedFFTBackend) _backend).transformWindowed(frames, coefficients, complex[0], complex[1]);
 
+		} else {
 
-		for (int stage = 0; stage < log2ofN; ++stage) {
+			if (_windowed == null) {
+				_windowed = new double[WINDOW_SIZE];
+			}
 
-			for (int offset = 0; offset < step / 2; offset++) {
+			for (int i = 0; i < frames.length; ++i) {
+				_windowed[i] = frames[i] * coefficients[i];
+			}
+			for (int i = frames.length; i < WINDOW_SIZE; ++i) {
+				_windowed[i] = 0;
+			}
 
-				t = offset * loop;
+			_backend.transform(_windowed, complex[0], complex[1]);
+		}
 
-				for (int stepIteration = 0; stepIteration < loop; ++stepIteration) {
-					a = offset + stepIteration * step;
-					b = offset + step / 2 + stepIteration * step;
-					// find what wn (twiddle factor from the complex twiddleFactor vector)
-					// multiplied by the second variable in the step is
-					complexResult[0] = _complexVector[b][0] * _twiddleFactor[t][0]
-							- _complexVector[b][1] * _twiddleFactor[t][1];
-					complexResult[1] = _complexVector[b][1] * _twiddleFactor[t][0]
-							+ _complexVector[b][0] * _twiddleFactor[t][1];
+		retain(complex);
 
-					_complexVector[b][0] = _complexVector[a][0] - complexResult[0];
-					_complexVector[b][1] = _complexVector[a][1] - complexResult[1];
+		return complex;
+	}
 
-					_complexVector[a][0] = _complexVector[a][0] + complexResult[0];
-					_complexVector[a][1] = _complexVector[a][1] + complexResult[1];
-				}
-			}
-			step = step * 2;
-			loop = WINDOW_SIZE / step;
-		}
 
-		// find the magnitude of each complex number in the complex vector
+	// find the magnitude of each complex number in the complex vector
+	private double[] magnitudes(double[][] complex) {
+
+		double[] real = complex[0];
+		double[] imaginary = complex[1];
+
 		for (int r = 0; r < WINDOW_SIZE; ++r) {
-			_output[r] = Math.pow(_complexVector[r][0], 2) + Math.pow(_complexVector[r][1], 2);
+			_output[r] = Math.pow(real[r], 2) + Math.pow(imaginary[r], 2);
 		}		
 
 		return _output;
+	}
+
+
+	// returns the arrays the next FFT is done in: our own if we keep the whole complex result, otherwise the
+	// ones shared by the objects of this size on this thread
+	private double[][] complexArrays() {
+
+		if (_ownComplex != null) {
+			return _ownComplex;
+		}
+
+		HashMap<Integer, double[][]> shared = sharedComplex.get();
+		double[][] complex = shared.get(WINDOW_SIZE);
+		if (complex == null) {
+			complex = new double[2][WINDOW_SIZE];
+			shared.put(WINDOW_SIZE, complex);
+		}
+		return complex;
+	}
+
+
+	// keeps what this object is meant to keep of an FFT that has just been done
+	private void retain(double[][] complex) {
 
+		++_numOfFFTs;
+
+		if (_retention == RETAIN_BIN_RANGE) {
+			System.arraycopy(complex[0], _firstRetainedBin, _retainedReal, 0, _retainedReal.length);
+			System.arraycopy(complex[1], _firstRetainedBin, _retainedImaginary, 0, _retainedImaginary.length);
+		}
 	}
 
 
@@ -167,14 +265,28 @@ abstract class FFTObject {
 	// A threshold tolerance is needed to zero any double values that should
 	// essentially be zero. If there is no threshold value, the non zeroed values
 	// make the data extremely noisy
+	// If only a range of bins is kept, the phases of the bins outside it are left at zero. If only
+	// the magnitudes are kept, this throws an IllegalArgumentException
 	public double[] getPhases(double thresholdTolerance) {
 
-		// _complexVector[-][0] = real
-		//	complexVector[-][1] = imaginary
-		for (int r = 0; r < _complexVector.length; ++r) {
-			if (Math.abs((_complexVector[r][0])) > thresholdTolerance || Math.abs((_complexVector[r][1])) > thresholdTolerance) {
+		checkComplexKept();
+
+		if (_phaseOutput == null) {
+			_phaseOutput = new double[WINDOW_SIZE];
+		}
+
+		int first = 0;
+		int last = WINDOW_SIZE;
+		if (_retention == RETAIN_BIN_RANGE) {
+			first = _firstRetainedBin;
+			last = _firstRetainedBin + _retainedReal.length;
+			Arrays.fill(_phaseOutput, 0);
+		}
+
+		for (int r = first; r < last; ++r) {
+			if (Math.abs(getReal(r)) > thresholdTolerance || Math.abs(getImaginary(r)) > thresholdTolerance) {
 				// if above is to parse any almost zero double values
-				_phaseOutput[r] = Math.atan2(_complexVector[r][1], _complexVector[r][0]) / (Math.PI * 2);
+				_phaseOutput[r] = getPhaseValue(r);
 
 			} else {
 				// if the value is basically zero, set it to exactly zero
@@ -186,11 +298,200 @@ abstract class FFTObject {
 
 
 	// same as the method above but only returns the phase of a single value,
-	// where the index of this value in the complex array is to be specified
+	// where the index of this value in the complex array is to be specified.
+	// When the phases are lazy, it is only worked out the first time it is asked for after each FFT
 	public double getPhaseValue(int index) {
 
-		return Math.atan2(_complexVector[index][1], _complexVector[index][0]) / (Math.PI * 2);
+		if (_retention == LAZY_PHASES) {
+			if (_phaseCacheFFT[index] != _numOfFFTs) {
+				_phaseCache[index] = phase(_imaginary[index], _real[index]);
+				_phaseCacheFFT[index] = _numOfFFTs;
+			}
+			return _phaseCache[index];
+		}
+
+		return phase(getImaginary(index), getReal(index));
+
+	}
+
+
+	/**
+	 * Returns the real part of a bin of the last FFT
+	 * @param bin the bin
+	 * @return the real part of the bin
+	 * @throws IllegalArgumentException if this object doesn't keep the complex value of the bin
+	 */
+	public double getReal(int bin) {
+
+		if (_real != null) {
+			return _real[bin];
+		}
+		return _retainedReal[retainedIndex(bin)];
+	}
+
+
+	/**
+	 * Returns the imaginary part of a bin of the last FFT
+	 * @param bin the bin
+	 * @return the imaginary part of the bin
+	 * @throws IllegalArgumentException if this object doesn't keep the complex value of the bin
+	 */
+	public double getImaginary(int bin) {
+
+		if (_imaginary != null) {
+			return _imaginary[bin];
+		}
+		return _retainedImaginary[retainedIndex(bin)];
+	}
+
+
+	/**
+	 * Sets how much of the complex result of each FFT this object keeps. The complex result of the last FFT
+	 * is lost when this is changed
+	 * @param retention RETAIN_COMPLEX, RETAIN_MAGNITUDES or LAZY_PHASES. (To keep a range of bins, use
+	 * setRetainedBins)
+	 * @throws IllegalArgumentException if the retention is not one of the three above
+	 * @see setRetainedBins
+	 */
+	public void setRetention(int retention) {
+
+		if (retention != RETAIN_COMPLEX && retention != RETAIN_MAGNITUDES && retention != LAZY_PHASES) {
+			throw new IllegalArgumentException("The retention should be RETAIN_COMPLEX (" + RETAIN_COMPLEX + "), RETAIN_MAGNITUDES ("
+					+ RETAIN_MAGNITUDES + ") or LAZY_PHASES (" + LAZY_PHASES + "), not " + retention
+					+ ". To keep a range of bins, use setRetainedBins");
+		}
+
+		_retention = retention;
+		_retainedReal = null;
+		_retainedImaginary = null;
+
+		if (retention == RETAIN_MAGNITUDES) {
+			_real = null;
+			_imaginary = null;
+			_ownComplex = null;
+		} else if (_real == null) {
+			_real = new double[WINDOW_SIZE];
+			_imaginary = new double[WINDOW_SIZE];
+			_ownComplex = new double[][] {_real, _imaginary};
+		}
+
+		if (retention == LAZY_PHASES) {
+			_phaseCache = new double[WINDOW_SIZE];
+			_phaseCacheFFT = new int[WINDOW_SIZE];
+			// nothing in the cache is from an FFT yet
+			Arrays.fill(_phaseCacheFFT, _numOfFFTs - 1);
+		} else {
+			_phaseCache = null;
+			_phaseCacheFFT = null;
+		}
+	}
+
+
+	/**
+	 * Makes this object keep only the magnitudes of each FFT and the complex values of a range of bins.
+	 * Only the phases and complex values of those bins can then be asked for. The complex result of the last
+	 * FFT is lost when this is called
+	 * @param firstBin the first bin kept
+	 * @param numOfBins the number of bins kept
+	 * @throws IllegalArgumentException if the bins are not all within the FFT
+	 * @see setRetention
+	 */
+	public void setRetainedBins(int firstBin, int numOfBins) {
+
+		if (firstBin < 0 || numOfBins < 1 || firstBin + numOfBins > WINDOW_SIZE) {
+			throw new IllegalArgumentException("Bins " + firstBin + " to " + (firstBin + numOfBins - 1) + " are not all within an FFT of "
+					+ WINDOW_SIZE + " bins");
+		}
+
+		setRetention(RETAIN_MAGNITUDES);
+
+		_retention = RETAIN_BIN_RANGE;
+		_firstRetainedBin = firstBin;
+		_retainedReal = new double[numOfBins];
+		_retainedImaginary = new double[numOfBins];
+	}
+
+
+	/**
+	 * Returns how much of the complex result of each FFT this object keeps
+	 * @return RETAIN_COMPLEX, RETAIN_MAGNITUDES, RETAIN_BIN_RANGE or LAZY_PHASES
+	 */
+	public int getRetention() {
+		return _retention;
+	}
+
+
+	// works out a phase from -0.5 to 0.5, as getPhases gives them
+	private double phase(double imaginary, double real) {
+		return (_fastMath ? FastMath.atan2(imaginary, real) : Math.atan2(imaginary, real)) / (Math.PI * 2);
+	}
+
+
+	// returns where a bin is in the arrays of retained bins
+	private int retainedIndex(int bin) {
+
+		checkComplexKept();
+
+		int index = bin - _firstRetainedBin;
+		if (index < 0 || index >= _retainedReal.length) {
+			throw new IllegalArgumentException("Only bins " + _firstRetainedBin + " to " + (_firstRetainedBin + _retainedReal.length - 1)
+					+ " are kept, not bin " + bin);
+		}
+		return index;
+	}
+
+
+	// throws an IllegalArgumentException if this object keeps only the magnitudes
+	private void checkComplexKept() {
+
+		if (_retention == RETAIN_MAGNITUDES) {
+			throw new IllegalArgumentException("Only the magnitudes of each FFT are kept, so there are no complex values or phases."
+					+ " Use setRetention or setRetainedBins to keep them");
+		}
+	}
+
+
+	/**
+	 * Sets whether this object works out logs (of the spectrum) and phases with the quicker approximations
+	 * in FastMath, rather than with Math. The approximations are off to begin with
+	 * @param fastMath true to use FastMath, false to use Math
+	 * @see FastMath
+	 */
+	public void setFastMath(boolean fastMath) {
+		_fastMath = fastMath;
+	}
+
+
+	/**
+	 * Returns whether this object works out logs and phases with FastMath
+	 * @return true if FastMath is used, false if Math is
+	 */
+	public boolean isFastMath() {
+		return _fastMath;
+	}
+
+
+	/**
+	 * Returns the number of points in the FFTs this object does, which is the length of the arrays it returns
+	 * @return the size of the FFT
+	 */
+	public int getFFTSize() {
+		return WINDOW_SIZE;
+	}
+
+
+	// returns the backend this object does its FFTs with
+	protected FFTBackend getBackend() {
+		return _backend;
+	}
+
 
+	/**
+	 * Returns the name of the backend this object does its FFTs with
+	 * @return the name of the backend
+	 */
+	public String getBackendName() {
+		return _backend.getName();
 	}
 
 
@@ -0,0 +1,256 @@
+package fourier;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Everything an FFT of a certain size needs that doesn't depend on the window being transformed: the
+ * twiddle factors and the bit reversed order of the indexes. Working these out takes longer than the FFT
+ * itself, so a plan is only ever made once for each size and is then shared by everything that does an FFT
+ * of that size, on any thread. Get a plan with FFTPlan.forSize.
+ *
+ * A plan never changes once it has been made, and the transform only writes to the arrays it is given, so
+ * any number of threads can use the same plan at once. Each thread (or each object) has to bring its own
+ * real and imaginary arrays for the transform to work in
+ */
+public class FFTPlan {
+
+	// every plan made so far, by size. Plans are only ever added, never taken away
+	private static final ConcurrentHashMap<Integer, FFTPlan> plans = new ConcurrentHashMap<Integer, FFTPlan>();
+
+	// the number of points in the FFT, which is always a power of 2
+	private final int size;
+
+	// the number of stages of butterfly calculations, which is log2 of the size
+	private final int log2OfSize;
+
+	// the twiddle factors, split into their real and imaginary parts. There are size / 2 of them
+	private final double[] twiddleReal;
+	private final double[] twiddleImaginary;
+
+	// where each point of the input goes to before the butterflies start
+	private final int[] bitReverseOrder;
+
+
+	/**
+	 * Returns the plan for the smallest power of 2 that is at least the size given. The plan is made the first
+	 * time a size is asked for and the same plan is given back every time after that, to every thread
+	 * @param windowSize the number of points in the window to be transformed
+	 * @return the plan for the window size, rounded up to a power of 2
+	 * @throws IllegalArgumentException if the window size is not above 0 or is too big for a power of 2 int
+	 */
+	public static FFTPlan forSize(int windowSize) {
+
+		if (windowSize < 1 || windowSize > (1 << 30)) {
+			throw new IllegalArgumentException("Window size " + windowSize + " is not in the range of 1 - " + (1 << 30));
+		}
+
+		int size = 1;
+		while (size < windowSize)
+			size *= 2;
+
+		FFTPlan plan = plans.get(size);
+		if (plan == null) {
+			// two threads may both make the plan, but only the first one put in is ever given out
+			FFTPlan newPlan = new FFTPlan(size);
+			plan = plans.putIfAbsent(size, newPlan);
+			if (plan == null) {
+				plan = newPlan;
+			}
+		}
+		return plan;
+	}
+
+
+	// makes the plan for a size that is already a power of 2
+	private FFTPlan(int size) {
+
+		this.size = size;
+		this.log2OfSize = Integer.numberOfTrailingZeros(size);
+
+		// the twiddle factors are worked out in exactly the same way as FFTObject always has, so the
+		// transform gives exactly the same results
+		twiddleReal = new double[size / 2];
+		twiddleImaginary = new double[size / 2];
+		for (int r = 0; r < size / 2; ++r) {
+			twiddleReal[r] = Math.cos((2 * Math.PI * r) / size);
+			twiddleImaginary[r] = -Math.sin((2 * Math.PI * r) / size);
+		}
+
+		// bit reverse each index to find where it goes. A size of 1 has no bits to reverse
+		bitReverseOrder = new int[size];
+		for (int r = 0; r < size; ++r) {
+			bitReverseOrder[r] = (log2OfSize == 0) ? 0 : Integer.reverse(r) >>> (32 - log2OfSize);
+		}
+	}
+
+
+	/**
+	 * Does an FFT of a real window. The window isn't changed. The result is written into the real and
+	 * imaginary arrays given, which must both be the size of the plan
+	 * @param window the real input, which must be the size of the plan
+	 * @param real the array the real part of the result is written to
+	 * @param imaginary the array the imaginary part of the result is written to
+	 * @throws IllegalArgumentException if any of the arrays are not the size of the plan
+	 */
+	public void transform(double[] window, double[] real, double[] imaginary) {
+
+		if (window.length != size || real.length != size || imaginary.length != size) {
+			throw new IllegalArgumentException("Arrays for an FFT of size " + size + " were given with sizes " + window.length
+					+ ", " + real.length + " and " + imaginary.length);
+		}
+
+		// put the input into bit reversed order, so the butterflies can work in place
+		for (int r = 0; r < size; ++r) {
+			real[bitReverseOrder[r]] = window[r];
+			imaginary[bitReverseOrder[r]] = 0;	// the input is real
+		}
+
+		int step = 2;
+		int loop = size / step;
+
+		for (int stage = 0; stage < log2OfSize; ++stage) {
+
+			int halfStep = step / 2;
+
+			for (int offset = 0; offset < halfStep; offset++) {
+
+				int t = offset * loop;
+				double wReal = twiddleReal[t];
+				double wImaginary = twiddleImaginary[t];
+
+				for (int stepIteration = 0; stepIteration < loop; ++stepIteration) {
+					int a = offset + stepIteration * step;
+					int b = a + halfStep;
+
+					// multiply the second point of the butterfly by the twiddle factor
+					double resultReal = real[b] * wReal - imaginary[b] * wImaginary;
+					double resultImaginary = imaginary[b] * wReal + real[b] * wImaginary;
+
+					real[b] = real[a] - resultReal;
+					imaginary[b] = imaginary[a] - resultImaginary;
+
+					real[a] = real[a] + resultReal;
+					imaginary[a] = imaginary[a] + resultImaginary;
+				}
+			}
+			step = step * 2;
+			loop = size / step;
+		}
+	}
+
+
+	/**
+	 * Does the same FFT as transform, but two radix 2 stages at a time. Each radix 4 butterfly takes the
+	 * four points two radix 2 stages would have worked on, and puts them through both stages at once, so there
+	 * are half as many passes over the arrays and only 3 twiddle multiplies for every 4 points rather than 4.
+	 * If the size is an odd power of 2, one radix 2 stage (which needs no twiddle multiplies) is done first.
+	 * The results are not bit for bit the same as transform, as the multiplies are done in a different order,
+	 * but they agree to within rounding error
+	 * @param window the real input, which must be the size of the plan
+	 * @param real the array the real part of the result is written to
+	 * @param imaginary the array the imaginary part of the result is written to
+	 * @throws IllegalArgumentException if any of the arrays are not the size of the plan
+	 */
+	public void transformRadix4(double[] window, double[] real, double[] imaginary) {
+
+		if (window.length != size || real.length != size || imaginary.length != size) {
+			throw new IllegalArgumentException("Arrays for an FFT of size " + size + " were given with sizes " + window.length
+					+ ", " + real.length + " and " + imaginary.length);
+		}
+
+		// put the input into bit reversed order, so the butterflies can work in place
+		for (int r = 0; r < size; ++r) {
+			real[bitReverseOrder[r]] = window[r];
+			imaginary[bitReverseOrder[r]] = 0;	// the input is real
+		}
+
+		// the distance between the points in the first stage of the next butterflies
+		int span = 1;
+
+		// an odd number of stages leaves one radix 2 stage over. Its only twiddle factor is 1
+		if (log2OfSize % 2 == 1) {
+			for (int a = 0; a < size; a += 2) {
+				double br = real[a + 1], bi = imaginary[a + 1];
+				real[a + 1] = real[a] - br;
+				imaginary[a + 1] = imaginary[a] - bi;
+				real[a] = real[a] + br;
+				imaginary[a] = imaginary[a] + bi;
+			}
+			span = 2;
+		}
+
+		int half = size / 2;
+
+		for (; span < size; span *= 4) {
+
+			// the twiddle factors go round in steps of size / (4 * span)
+			int twiddleStep = size / (4 * span);
+
+			for (int j = 0; j < span; ++j) {
+
+				// w1 = W^j, w2 = W^2j and w3 = W^3j, where W = e^(-2 * pi * i / (4 * span)). w3 can be past
+				// the end of the table, in which case it is the negative of the factor half way round
+				int t1 = j * twiddleStep;
+				double w1r = twiddleReal[t1], w1i = twiddleImaginary[t1];
+				double w2r = twiddleReal[2 * t1], w2i = twiddleImaginary[2 * t1];
+				double w3r, w3i;
+				if (3 * t1 < half) {
+					w3r = twiddleReal[3 * t1];
+					w3i = twiddleImaginary[3 * t1];
+				} else {
+					w3r = -twiddleReal[3 * t1 - half];
+					w3i = -twiddleImaginary[3 * t1 - half];
+				}
+
+				for (int a0 = j; a0 < size; a0 += 4 * span) {
+
+					int a1 = a0 + span;
+					int a2 = a1 + span;
+					int a3 = a2 + span;
+
+					// the first stage pairs a0 with a1 (and a2 with a3) using w2, and the second pairs a0 with a2
+					// (and a1 with a3) using w1. Multiplying the inputs by their twiddles first saves a multiply
+					double b0r = real[a0], b0i = imaginary[a0];
+					double b1r = real[a1] * w2r - imaginary[a1] * w2i, b1i = imaginary[a1] * w2r + real[a1] * w2i;
+					double b2r = real[a2] * w1r - imaginary[a2] * w1i, b2i = imaginary[a2] * w1r + real[a2] * w1i;
+					double b3r = real[a3] * w3r - imaginary[a3] * w3i, b3i = imaginary[a3] * w3r + real[a3] * w3i;
+
+					double s01r = b0r + b1r, s01i = b0i + b1i;
+					double d01r = b0r - b1r, d01i = b0i - b1i;
+					double s23r = b2r + b3r, s23i = b2i + b3i;
+
+					// -i * (b2 - b3)
+					double d23r = b2i - b3i, d23i = b3r - b2r;
+
+					real[a0] = s01r + s23r;
+					imaginary[a0] = s01i + s23i;
+					real[a1] = d01r + d23r;
+					imaginary[a1] = d01i + d23i;
+					real[a2] = s01r - s23r;
+					imaginary[a2] = s01i - s23i;
+					real[a3] = d01r - d23r;
+					imaginary[a3] = d01i - d23i;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the number of points in the FFT
+	 * @return the size of the plan, which is a power of 2
+	 */
+	public int getSize() {
+		return size;
+	}
+
+
+	/**
+	 * Returns the number of stages of butterflies in the FFT
+	 * @return log2 of the size
+	 */
+	public int getLog2OfSize() {
+		return log2OfSize;
+	}
+
+}
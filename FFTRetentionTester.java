@@ -0,0 +1,175 @@
+package fourier;
+
+import java.util.Random;
+
+/**
+ * Checks that how much of each FFT an FFT object keeps doesn't change what it gives back. The same windows
+ * are given to four signal processors: one keeping the whole complex result (RETAIN_COMPLEX, as they always
+ * have), one keeping only the magnitudes (RETAIN_MAGNITUDES), one keeping a range of bins (setRetainedBins)
+ * and one working its phases out lazily (LAZY_PHASES). The objects that don't keep the whole complex result
+ * do their FFTs in arrays shared on the thread, so the windows are done one object after another to check
+ * none of them pick up each other's FFTs.
+ * For every window it checks that:
+ * the magnitudes are the same for every object,
+ * the phases and complex values of the bins kept are the same as those of RETAIN_COMPLEX,
+ * asking for the phases or complex values an object doesn't keep throws an IllegalArgumentException,
+ * and the lazy phases read for one window are worked out again for the next, rather than being the ones
+ * kept from the window before.
+ * It prints out the largest difference found for each and whether everything agrees
+ */
+public class FFTRetentionTester {
+
+	static final int windowSize = 1000;
+	static final int numOfWindows = 20;
+
+	// the range of bins kept by the processor that only keeps some bins
+	static final int firstRetainedBin = 40;
+	static final int numOfRetainedBins = 64;
+
+	public static void main(String[] args) {
+
+		Random random = new Random(47);
+
+		SignalProcessor complex = new SignalProcessor(windowSize);
+		SignalProcessor magnitudes = new SignalProcessor(windowSize);
+		SignalProcessor binRange = new SignalProcessor(windowSize);
+		SignalProcessor lazy = new SignalProcessor(windowSize);
+
+		magnitudes.setRetention(FFTObject.RETAIN_MAGNITUDES);
+		binRange.setRetainedBins(firstRetainedBin, numOfRetainedBins);
+		lazy.setRetention(FFTObject.LAZY_PHASES);
+
+		int size = complex.getFFTSize();
+
+		double magnitudeDifference = 0;
+		double binRangeDifference = 0;
+		double lazyDifference = 0;
+		int staleLazyPhases = 0;
+		int missingThrows = 0;
+
+		// the lazy phases read from the last window, to check the next window doesn't give them back
+		double[] lastLazyPhases = null;
+
+		for (int w = 0; w < numOfWindows; ++w) {
+
+			int[] window = makeWindow(random);
+
+			double[] complexSpectrum = complex.blackmanHarrisFFT(window).clone();
+			double[] complexPhases = complex.getPhases(0).clone();
+
+			// the magnitudes object is done in between the bin range object and its checks, so anything left
+			// in the shared arrays by it would show up in the bins the bin range object kept
+			double[] binRangeSpectrum = binRange.blackmanHarrisFFT(window).clone();
+			double[] magnitudeSpectrum = magnitudes.blackmanHarrisFFT(makeWindow(random)).clone();
+			magnitudeSpectrum = magnitudes.blackmanHarrisFFT(window).clone();
+			double[] lazySpectrum = lazy.blackmanHarrisFFT(window).clone();
+
+			for (int k = 0; k < size; ++k) {
+				magnitudeDifference = Math.max(magnitudeDifference, Math.abs(magnitudeSpectrum[k] - complexSpectrum[k]));
+				magnitudeDifference = Math.max(magnitudeDifference, Math.abs(binRangeSpectrum[k] - complexSpectrum[k]));
+				magnitudeDifference = Math.max(magnitudeDifference, Math.abs(lazySpectrum[k] - complexSpectrum[k]));
+			}
+
+			// the bins kept have the same complex values and phases, and the rest have a phase of zero
+			double[] binRangePhases = binRange.getPhases(0);
+			for (int k = 0; k < size; ++k) {
+				if (k >= firstRetainedBin && k < firstRetainedBin + numOfRetainedBins) {
+					binRangeDifference = Math.max(binRangeDifference, Math.abs(binRange.getReal(k) - complex.getReal(k)));
+					binRangeDifference = Math.max(binRangeDifference, Math.abs(binRange.getImaginary(k) - complex.getImaginary(k)));
+					binRangeDifference = Math.max(binRangeDifference, Math.abs(binRangePhases[k] - complexPhases[k]));
+				} else {
+					binRangeDifference = Math.max(binRangeDifference, Math.abs(binRangePhases[k]));
+				}
+			}
+
+			// every lazy phase is read twice, the second time from what was kept the first time
+			double[] lazyPhases = new double[size];
+			for (int k = 0; k < size; ++k) {
+				lazyPhases[k] = lazy.getPhaseValue(k);
+				lazyDifference = Math.max(lazyDifference, Math.abs(lazyPhases[k] - complex.getPhaseValue(k)));
+				lazyDifference = Math.max(lazyDifference, Math.abs(lazy.getPhaseValue(k) - lazyPhases[k]));
+			}
+
+			// a phase kept from the last window that is given back again, when the phase has changed, is stale
+			if (lastLazyPhases != null) {
+				for (int k = 0; k < size; ++k) {
+					if (lazyPhases[k] == lastLazyPhases[k] && complexPhases[k] != lastLazyPhases[k]) {
+						++staleLazyPhases;
+					}
+				}
+			}
+			lastLazyPhases = lazyPhases;
+
+			// the magnitudes object keeps no complex values at all, and the bin range object none outside its range
+			missingThrows += throwsIllegalArgument(magnitudes, 0, -1) ? 0 : 1;
+			missingThrows += throwsIllegalArgument(magnitudes, 1, firstRetainedBin) ? 0 : 1;
+			missingThrows += throwsIllegalArgument(magnitudes, 2, firstRetainedBin) ? 0 : 1;
+			missingThrows += throwsIllegalArgument(magnitudes, 3, firstRetainedBin) ? 0 : 1;
+			missingThrows += throwsIllegalArgument(binRange, 1, firstRetainedBin - 1) ? 0 : 1;
+			missingThrows += throwsIllegalArgument(binRange, 2, firstRetainedBin + numOfRetainedBins) ? 0 : 1;
+			missingThrows += throwsIllegalArgument(binRange, 3, firstRetainedBin + numOfRetainedBins) ? 0 : 1;
+		}
+
+		// RETAIN_BIN_RANGE can only be set with setRetainedBins
+		SignalProcessor unsettable = new SignalProcessor(windowSize);
+		boolean binRangeRefused = false;
+		try {
+			unsettable.setRetention(FFTObject.RETAIN_BIN_RANGE);
+		} catch (IllegalArgumentException e) {
+			binRangeRefused = true;
+		}
+
+		boolean allAgree = magnitudeDifference == 0 && binRangeDifference == 0 && lazyDifference == 0
+				&& staleLazyPhases == 0 && missingThrows == 0 && binRangeRefused;
+
+		System.out.println(numOfWindows + " windows, FFTs of " + size + " bins, bins " + firstRetainedBin + " to "
+				+ (firstRetainedBin + numOfRetainedBins - 1) + " kept by setRetainedBins");
+		System.out.format("Largest difference in magnitudes from RETAIN_COMPLEX:                   %.1e\n", magnitudeDifference);
+		System.out.format("Largest difference in the kept bins (setRetainedBins) from RETAIN_COMPLEX: %.1e\n", binRangeDifference);
+		System.out.format("Largest difference in phases (LAZY_PHASES) from RETAIN_COMPLEX:          %.1e\n", lazyDifference);
+		System.out.println("Lazy phases kept from the window before: " + staleLazyPhases);
+		System.out.println("Complex values or phases asked for but not kept that didn't throw: " + missingThrows);
+		System.out.println("setRetention(RETAIN_BIN_RANGE) " + (binRangeRefused ? "throws" : "DOES NOT THROW"));
+		System.out.println(allAgree ? "Every retention agrees with RETAIN_COMPLEX" : "SOME RETENTIONS DO NOT AGREE WITH RETAIN_COMPLEX");
+	}
+
+
+	// makes a window of a few sine waves and some noise, as 16 bit frames
+	static int[] makeWindow(Random random) {
+
+		int[] window = new int[windowSize];
+		double[] frequencies = {3 + 40 * random.nextDouble(), 50 + 100 * random.nextDouble(), 200 * random.nextDouble()};
+
+		for (int i = 0; i < windowSize; ++i) {
+			double frame = 2000 * (random.nextDouble() * 2 - 1);
+			for (double frequency : frequencies) {
+				frame += 6000 * Math.sin(2 * Math.PI * frequency * i / windowSize);
+			}
+			window[i] = (int) frame;
+		}
+
+		return window;
+	}
+
+
+	// returns true if asking the processor for something throws an IllegalArgumentException. What is asked
+	// for is 0 for every phase, 1 for the phase of the bin, 2 for its real part and 3 for its imaginary part
+	static boolean throwsIllegalArgument(SignalProcessor processor, int request, int bin) {
+
+		try {
+			if (request == 0) {
+				processor.getPhases(0);
+			} else if (request == 1) {
+				processor.getPhaseValue(bin);
+			} else if (request == 2) {
+				processor.getReal(bin);
+			} else {
+				processor.getImaginary(bin);
+			}
+		} catch (IllegalArgumentException e) {
+			return true;
+		}
+		return false;
+	}
+
+}
@@ -141,28 +141,15 @@ public class FFTtester2 {
 
 			// Harmonic FFT timing
 
-			int numOfInputPoints = newBin;
-			int startingIndex = newBin;
 			int newArraySize = 256*2*2;
 
-			double d = numOfInputPoints / (double)newArraySize;
-			outputHarmonicFFT = new double[newArraySize];
-
-			double constant = 0;
+			HarmonicSumPlan harmonicSum = new HarmonicSumPlan(newBin, 6, newArraySize);
 
 			startTime = System.nanoTime();
 
 			double[] answer = signalProcess.blackmanHarrisFFT(signal);
 
-			for (int j = 0; j < 6; j++) {
-				for (int k = 0; k < newArraySize; ++k) {
-					constant = startingIndex + d*k;
-					outputHarmonicFFT[k] += ((answer[(int)constant + 1] - answer[(int)constant]) * (constant - (int)constant) +  answer[(int)constant]) * (j * 0.2 + 1);
-				}
-				startingIndex *= 2;
-				numOfInputPoints *= 2;
-				d = numOfInputPoints / (double) newArraySize;
-			}
+			outputHarmonicFFT = harmonicSum.sum(answer);
 
 			double maxValue = 0;
 			int maxValueIndex = 0;
@@ -174,7 +161,7 @@ public class FFTtester2 {
 				}
 			}
 
-			double ans = (maxValueIndex * (double)newBin / outputHarmonicFFT.length + newBin);
+			double ans = harmonicSum.getBin(maxValueIndex);
 
 			ans /= difference;
 
@@ -0,0 +1,143 @@
+package fourier;
+
+/**
+ * Quicker versions of the log10 and atan2 that the spectral processing does on every bin of every window
+ * (the log of the spectrum and the phases of an FFT). They trade a tiny, known error for speed, and are only
+ * used by a SignalProcessor once setFastMath(true) is called on it.
+ *
+ * log10 splits the number into its power of 2 and its mantissa (from 1 to 2). The log2 of the mantissa is
+ * looked up in a table at the nearest 1 / 1024 below it, and what is left over (a ratio within 1 / 1024 of 1)
+ * is put through the first four terms of the series for ln(1 + r).
+ * atan2 folds the angle into the first eighth of a circle, so that it is the atan of a ratio from 0 to 1,
+ * looks up the atan of the nearest of 512 points, and corrects it with the first three terms of the Taylor
+ * series around that point.
+ * There is no sqrt (for the square root of the tempogram): the JIT compiler turns Math.sqrt into a single
+ * instruction, which no table or series can beat, so there is nothing to be gained by approximating it.
+ * Anything unusual (zero, negative numbers, infinities, NaN and subnormal numbers) is handed to Math, so the
+ * answers in those cases are exactly what Math gives.
+ * The largest errors are below LOG10_MAX_ERROR and ATAN2_MAX_ERROR, as measured by FastMathTester over
+ * millions of points spread across the whole range each function is used over
+ * @see FastMathTester
+ */
+public class FastMath {
+
+	/**
+	 * The largest absolute difference between log10 and Math.log10 for any positive (normal) number
+	 */
+	public static final double LOG10_MAX_ERROR = 1e-14;
+
+	/**
+	 * The largest absolute difference between atan2 and Math.atan2, in radians
+	 */
+	public static final double ATAN2_MAX_ERROR = 1e-12;
+
+	// log10 of 2 and of e, to turn log2 and ln into log10
+	private static final double log10Of2 = Math.log10(2);
+	private static final double log10OfE = Math.log10(Math.E);
+
+	// the log2 table has an entry for every 1 / 2^logTableBits from 1 to 2
+	private static final int logTableBits = 10;
+
+	// log2(1 + i / 1024), and 1 / (1 + i / 1024), for every i
+	private static final double[] log2Table = new double[1 << logTableBits];
+	private static final double[] reciprocalTable = new double[1 << logTableBits];
+
+	// the atan table has an entry for every 1 / atanTableSize from 0 to 1
+	private static final int atanTableSize = 512;
+
+	// the atan of each point, and the first, second and third Taylor coefficients around it
+	private static final double[] atanTable = new double[atanTableSize + 1];
+	private static final double[] atanFirst = new double[atanTableSize + 1];
+	private static final double[] atanSecond = new double[atanTableSize + 1];
+	private static final double[] atanThird = new double[atanTableSize + 1];
+
+	static {
+		for (int i = 0; i < log2Table.length; ++i) {
+			double mantissa = 1 + i / (double) log2Table.length;
+			log2Table[i] = Math.log(mantissa) / Math.log(2);
+			reciprocalTable[i] = 1 / mantissa;
+		}
+
+		for (int i = 0; i <= atanTableSize; ++i) {
+			double t = i / (double) atanTableSize;
+			double onePlusTSquared = 1 + t * t;
+			atanTable[i] = Math.atan(t);
+			atanFirst[i] = 1 / onePlusTSquared;
+			atanSecond[i] = -t / (onePlusTSquared * onePlusTSquared);
+			atanThird[i] = (3 * t * t - 1) / (3 * onePlusTSquared * onePlusTSquared * onePlusTSquared);
+		}
+	}
+
+
+	// nothing to make, it's all static
+	private FastMath() {
+	}
+
+
+	/**
+	 * Works out log10 of a number, to within LOG10_MAX_ERROR
+	 * @param x the number
+	 * @return log10 of the number
+	 */
+	public static double log10(double x) {
+
+		long bits = Double.doubleToRawLongBits(x);
+		int exponent = (int) (bits >>> 52);
+
+		// zero, negative numbers, subnormal numbers, infinity and NaN are left to Math. The sign bit is in
+		// the top of the exponent here, so every negative number has an exponent above 2046 too
+		if (exponent == 0 || exponent > 2046) {
+			return Math.log10(x);
+		}
+
+		// the mantissa, from 1 to 2, and which entry of the table is just below it
+		int index = (int) (bits >>> (52 - logTableBits)) & ((1 << logTableBits) - 1);
+		double mantissa = Double.longBitsToDouble((bits & 0x000FFFFFFFFFFFFFL) | 0x3FF0000000000000L);
+
+		// the mantissa is (1 + index / 1024) * (1 + r), where r is below 1 / 1024, so ln(1 + r) only needs a
+		// few terms of its series
+		double r = mantissa * reciprocalTable[index] - 1;
+		double lnOnePlusR = r * (1 - r * (0.5 - r * (1.0 / 3 - r * 0.25)));
+
+		return ((exponent - 1023) + log2Table[index]) * log10Of2 + lnOnePlusR * log10OfE;
+	}
+
+
+	/**
+	 * Works out the angle of the point (x, y) from the x axis, as Math.atan2 does, to within ATAN2_MAX_ERROR
+	 * @param y the y coordinate (the imaginary part)
+	 * @param x the x coordinate (the real part)
+	 * @return the angle, from -pi to pi
+	 */
+	public static double atan2(double y, double x) {
+
+		double absY = Math.abs(y);
+		double absX = Math.abs(x);
+
+		// both zero, infinities and NaN are left to Math. (NaN fails every comparison, so it ends up here too)
+		if (!(absX < Double.POSITIVE_INFINITY && absY < Double.POSITIVE_INFINITY) || (absX == 0 && absY == 0)) {
+			return Math.atan2(y, x);
+		}
+
+		// fold the angle into 0 to 45 degrees, where it is the atan of a ratio from 0 to 1
+		boolean steep = absY > absX;
+		double t = steep ? absX / absY : absY / absX;
+
+		// the nearest point in the table, and how far t is from it (no more than half a step)
+		int index = (int) (t * atanTableSize + 0.5);
+		double d = t - index / (double) atanTableSize;
+
+		double angle = atanTable[index] + d * (atanFirst[index] + d * (atanSecond[index] + d * atanThird[index]));
+
+		// then unfold it back out into the right eighth of the circle
+		if (steep) {
+			angle = Math.PI / 2 - angle;
+		}
+		if (x < 0) {
+			angle = Math.PI - angle;
+		}
+
+		return Math.copySign(angle, y);
+	}
+
+}
@@ -0,0 +1,157 @@
+package audio;
+
+import java.util.Random;
+
+import fourier.FastMath;
+import fourier.SignalProcessor;
+
+/**
+ * Checks how far out the approximations in FastMath are, how much quicker they are than Math, and whether
+ * using them changes the onsets found.
+ * First the largest error of log10 and atan2 is found over millions of points (log10 over every power of 10
+ * a spectrum can have, atan2 all the way round the circle and at every scale), and each is timed against
+ * Math. Then the FFT front-end of FilterbankOnsetTester is run over its made up track twice, once with Math
+ * and once with FastMath, and the time per hop and the F-measure of each are printed, along with the
+ * largest difference between the log spectra they give.
+ * As with FilterbankOnsetTester, this is made up audio. The F-measure on real music needs labelled tracks run
+ * through Illumaxate (with fastMath on and off) and BeatPlacementPlotter
+ * @see FastMath
+ * @see FilterbankOnsetTester
+ */
+public class FastMathTester {
+
+	static final int numOfPoints = 4000000;
+
+	public static void main(String[] args) {
+
+		Random random = new Random(46);
+
+		// ----------------
+		// errors and times
+		// ----------------
+		double[] xs = new double[numOfPoints];
+		double[] ys = new double[numOfPoints];
+		for (int i = 0; i < numOfPoints; ++i) {
+			// from 1 (log10(1 + 0)) up to 1e30, spread evenly over the powers of 10
+			xs[i] = Math.pow(10, random.nextDouble() * 30);
+			// and a point in any direction, at any scale from 1e-10 to 1e10
+			double scale = Math.pow(10, random.nextDouble() * 20 - 10);
+			double angle = (random.nextDouble() * 2 - 1) * Math.PI;
+			ys[i] = scale * Math.sin(angle);
+		}
+
+		double log10Error = 0;
+		double atan2Error = 0;
+		for (int i = 0; i < numOfPoints; ++i) {
+			log10Error = Math.max(log10Error, Math.abs(FastMath.log10(xs[i]) - Math.log10(xs[i])));
+			double x = ys[(i + 1) % numOfPoints];
+			atan2Error = Math.max(atan2Error, Math.abs(FastMath.atan2(ys[i], x) - Math.atan2(ys[i], x)));
+		}
+
+		// the exact cases have to be the same as Math
+		double[] unusual = {0, -0.0, -1, 1, Double.MIN_VALUE, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN};
+		boolean unusualAgree = true;
+		for (double a : unusual) {
+			unusualAgree &= Double.compare(FastMath.log10(a), Math.log10(a)) == 0;
+			for (double b : unusual) {
+				unusualAgree &= Double.compare(FastMath.atan2(a, b), Math.atan2(a, b)) == 0;
+			}
+		}
+
+		System.out.format("log10: largest error %.2e (documented %.0e), %.2f nanoseconds against %.2f for Math.log10\n",
+				log10Error, FastMath.LOG10_MAX_ERROR, time(xs, ys, 0, true), time(xs, ys, 0, false));
+		System.out.format("atan2: largest error %.2e (documented %.0e), %.2f nanoseconds against %.2f for Math.atan2\n",
+				atan2Error, FastMath.ATAN2_MAX_ERROR, time(xs, ys, 1, true), time(xs, ys, 1, false));
+		System.out.println("Zero, negative, subnormal, infinite and NaN inputs "
+				+ (unusualAgree ? "give the same as Math" : "DO NOT GIVE THE SAME AS MATH"));
+		System.out.println((log10Error < FastMath.LOG10_MAX_ERROR && atan2Error < FastMath.ATAN2_MAX_ERROR)
+				? "Both are within their documented error" : "SOMETHING IS OUTSIDE ITS DOCUMENTED ERROR");
+		System.out.println();
+
+		// -------------------------------
+		// onsets with and without FastMath
+		// -------------------------------
+		int windowSizeInFrames = (int) (FilterbankOnsetTester.sampleRate / FilterbankOnsetTester.minFrequency);
+		int hopInFrames = (int) (FilterbankOnsetTester.sampleRate * FilterbankOnsetTester.hopMillis / 1000);
+		int windowsInMovAverage = (int) (FilterbankOnsetTester.movingAverageMillis / FilterbankOnsetTester.hopMillis);
+
+		int numOfKicks = 0;
+		double[] kickTimes = new double[(int) (FilterbankOnsetTester.trackSeconds * 4) + 1];
+		for (double time = 500; time < FilterbankOnsetTester.trackSeconds * 1000 - 500; time += 250 + 420 * random.nextDouble()) {
+			kickTimes[numOfKicks++] = time;
+		}
+
+		int[] track = FilterbankOnsetTester.makeTrack(kickTimes, numOfKicks, random);
+		int numOfHops = (track.length - windowSizeInFrames) / hopInFrames;
+
+		double[][] spectra = new double[2][];
+		for (int pass = 0; pass < 2; ++pass) {
+
+			boolean fast = pass == 1;
+
+			SignalProcessor signalProcess = new SignalProcessor(windowSizeInFrames);
+			signalProcess.setFastMath(fast);
+			BeatTracker tracker = FilterbankOnsetTester.makeTracker(windowsInMovAverage);
+
+			double[] impulses = new double[numOfHops];
+			double[] previousSpectrum = new double[signalProcess.getFFTSize()];
+			double[] spectrum = new double[signalProcess.getFFTSize()];
+			int[] window = new int[windowSizeInFrames];
+
+			long startTime = System.nanoTime();
+			for (int h = 0; h < numOfHops; ++h) {
+
+				System.arraycopy(track, h * hopInFrames, window, 0, windowSizeInFrames);
+				signalProcess.blackmanHarrisFFT(window, true, spectrum);
+
+				impulses[h] = (h == 0) ? 0 : tracker.getImpulse(spectrum, previousSpectrum);
+
+				double[] swap = previousSpectrum;
+				previousSpectrum = spectrum;
+				spectrum = swap;
+			}
+			long time = System.nanoTime() - startTime;
+
+			spectra[pass] = previousSpectrum.clone();
+
+			System.out.format("%s: %.2f microseconds per hop, F-measure %.3f\n", fast ? "FastMath" : "Math    ",
+					time / (numOfHops * 1000.0), FilterbankOnsetTester.fMeasure(tracker, impulses, windowsInMovAverage,
+							windowSizeInFrames, hopInFrames, kickTimes, numOfKicks));
+		}
+
+		double spectrumError = 0;
+		for (int k = 0; k < spectra[0].length; ++k) {
+			spectrumError = Math.max(spectrumError, Math.abs(spectra[0][k] - spectra[1][k]));
+		}
+		System.out.format("Largest difference in the last log spectrum: %.2e\n", spectrumError);
+	}
+
+
+	// returns how long one call of a function takes in nanoseconds (0 is log10, 1 is atan2), either
+	// with FastMath or with Math. It is warmed up first, then the quickest of a few rounds is used
+	static double time(double[] xs, double[] ys, int function, boolean fast) {
+
+		double quickest = Double.MAX_VALUE;
+		double sum = 0;
+
+		for (int round = 0; round < 8; ++round) {
+
+			long start = System.nanoTime();
+			for (int i = 0; i < xs.length; ++i) {
+				if (function == 0) {
+					sum += fast ? FastMath.log10(xs[i]) : Math.log10(xs[i]);
+				} else {
+					sum += fast ? FastMath.atan2(ys[i], ys[xs.length - 1 - i]) : Math.atan2(ys[i], ys[xs.length - 1 - i]);
+				}
+			}
+			quickest = Math.min(quickest, (System.nanoTime() - start) / (double) xs.length);
+		}
+
+		// the sum is only printed so the JIT compiler can't throw the loop away
+		if (sum == 42) {
+			System.out.println(sum);
+		}
+		return quickest;
+	}
+
+}
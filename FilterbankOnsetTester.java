@@ -0,0 +1,223 @@
+package audio;
+
+import java.util.Random;
+
+import fourier.SignalProcessor;
+import rollingmemory.RollingDoubleMemory;
+
+/**
+ * Compares the filterbank onset front-end against the FFT onset front-end used in Illumaxate. A made up track
+ * is made of noise and a held chord, with kick drums (a falling low sine with a click on the front) at known
+ * times. Both front-ends are run over it with the same hop, their impulses are denoised by the beat tracker's
+ * moving average, and an onset is counted on every window where the denoised impulse rises from zero (as long as the
+ * last onset was at least 100 milliseconds before).
+ * The filterbank is run once for each of a few rise thresholds (how much a band has to go up by in one hop
+ * before it counts towards the flux), which gives the curve of F-measure against cost for the filterbank.
+ * It prints out how long each front-end takes per hop (and so how many streams one core could keep up with),
+ * and the F-measure of the onsets they find against the real kick times. Lastly it prints out how much cheaper
+ * the filterbank is than the FFT at the same F-measure, using the first threshold that does at least as well
+ * as the FFT.
+ * This only says how the two compare on clean, made up audio. Whether they give the same F-measure on real
+ * music needs labelled tracks run through Illumaxate and BeatPlacementPlotter
+ */
+public class FilterbankOnsetTester {
+
+	// the same settings as Illumaxate uses by default
+	static final double sampleRate = 44100;
+	static final double minFrequency = 23.43;
+	static final double hopMillis = 3;
+	static final int movingAverageMillis = 100;
+
+	static final double trackSeconds = 60;
+
+	// an onset found within this many milliseconds of a kick counts as a hit
+	static final double errorAllowable = 50;
+
+	// once an onset is found, no other onset can be found for this many milliseconds
+	static final double refractoryMillis = 100;
+
+	// the rise thresholds of the filterbank to try
+	static final double[] riseThresholds = {0, 0.05, BiquadFilterbank.DEFAULT_RISE_THRESHOLD, 0.2, 0.4};
+
+	public static void main(String[] args) {
+
+		Random random = new Random(37);
+
+		int windowSizeInFrames = (int) (sampleRate / minFrequency);
+		int hopInFrames = (int) (sampleRate * hopMillis / 1000);
+		int windowsInMovAverage = (int) (movingAverageMillis / hopMillis);
+
+		// make the kick times, between a quarter and two thirds of a second apart
+		int numOfKicks = 0;
+		double[] kickTimes = new double[(int) (trackSeconds * 4) + 1];
+		for (double time = 500; time < trackSeconds * 1000 - 500; time += 250 + 420 * random.nextDouble()) {
+			kickTimes[numOfKicks++] = time;
+		}
+
+		int[] track = makeTrack(kickTimes, numOfKicks, random);
+		int numOfHops = (track.length - windowSizeInFrames) / hopInFrames;
+
+		// -------------
+		// FFT front-end
+		// -------------
+		SignalProcessor signalProcess = new SignalProcessor(windowSizeInFrames);
+		BeatTracker fftTracker = makeTracker(windowsInMovAverage);
+		double[] fftImpulses = new double[numOfHops];
+		double[] previousSpectrum = null;
+		int[] window = new int[windowSizeInFrames];
+
+		long startTime = System.nanoTime();
+		for (int h = 0; h < numOfHops; ++h) {
+
+			System.arraycopy(track, h * hopInFrames, window, 0, windowSizeInFrames);
+			double[] spectrum = signalProcess.log(signalProcess.blackmanHarrisFFT(window)).clone();
+
+			fftImpulses[h] = (previousSpectrum == null) ? 0 : fftTracker.getImpulse(spectrum, previousSpectrum);
+			previousSpectrum = spectrum;
+		}
+		long fftTime = System.nanoTime() - startTime;
+
+		double fftMicros = fftTime / (numOfHops * 1000.0);
+		double fftFMeasure = fMeasure(fftTracker, fftImpulses, windowsInMovAverage, windowSizeInFrames, hopInFrames, kickTimes, numOfKicks);
+
+		System.out.println(numOfHops + " hops of " + hopMillis + " milliseconds, " + numOfKicks + " kicks");
+		System.out.format("FFT front-end:                        %.2f microseconds per hop (%.0f streams per core), F-measure %.3f\n",
+				fftMicros, hopMillis * 1000 / fftMicros, fftFMeasure);
+
+		// --------------------
+		// filterbank front-end
+		// --------------------
+		int[] hop = new int[hopInFrames];
+		double equalFMicros = 0;
+		double equalFThreshold = -1;
+
+		for (double riseThreshold : riseThresholds) {
+
+			BiquadFilterbank filterbank = new BiquadFilterbank(sampleRate, BiquadFilterbank.bandsUnder(BiquadFilterbank.defaultCentres, sampleRate * 0.45),
+					Math.sqrt(2), 5, 50, riseThreshold);
+			BeatTracker filterbankTracker = makeTracker(windowsInMovAverage);
+			double[] filterbankImpulses = new double[numOfHops];
+
+			startTime = System.nanoTime();
+			for (int h = 0; h < numOfHops; ++h) {
+
+				// the filterbank is only given the frames that are new in this hop, which are the last frames of the window
+				System.arraycopy(track, h * hopInFrames + windowSizeInFrames - hopInFrames, hop, 0, hopInFrames);
+				filterbank.processHop(hop);
+
+				filterbankImpulses[h] = filterbank.getFlux();
+			}
+			long filterbankTime = System.nanoTime() - startTime;
+
+			double filterbankMicros = filterbankTime / (numOfHops * 1000.0);
+			double filterbankFMeasure = fMeasure(filterbankTracker, filterbankImpulses, windowsInMovAverage, windowSizeInFrames, hopInFrames, kickTimes, numOfKicks);
+
+			System.out.format("filterbank front-end, threshold %.2f: %.2f microseconds per hop (%.0f streams per core), F-measure %.3f\n",
+					riseThreshold, filterbankMicros, hopMillis * 1000 / filterbankMicros, filterbankFMeasure);
+
+			if (equalFThreshold < 0 && filterbankFMeasure >= fftFMeasure) {
+				equalFMicros = filterbankMicros;
+				equalFThreshold = riseThreshold;
+			}
+		}
+
+		if (equalFThreshold < 0) {
+			System.out.println("No threshold gave the filterbank an F-measure as good as the FFT");
+		} else {
+			System.out.format("At the same F-measure (threshold %.2f), the filterbank is %.1f times cheaper per hop\n",
+					equalFThreshold, fftMicros / equalFMicros);
+		}
+	}
+
+
+	// makes a beat tracker that is only used for its impulse and moving average methods
+	static BeatTracker makeTracker(int windowsInMovAverage) {
+		return new BeatTracker(windowsInMovAverage, 100, 7, new RollingDoubleMemory(64), new RollingDoubleMemory(64), 64);
+	}
+
+
+	// makes the track out of noise, a held chord and a kick drum at each kick time
+	static int[] makeTrack(double[] kickTimes, int numOfKicks, Random random) {
+
+		int[] track = new int[(int) (trackSeconds * sampleRate)];
+		double[] chord = {220, 277.2, 329.6, 440};
+
+		for (int i = 0; i < track.length; ++i) {
+			double sample = 1500 * (random.nextDouble() * 2 - 1);
+			for (int n = 0; n < chord.length; ++n) {
+				sample += 1200 * Math.sin(2 * Math.PI * chord[n] * i / sampleRate);
+			}
+			track[i] = (int) sample;
+		}
+
+		for (int k = 0; k < numOfKicks; ++k) {
+
+			int start = (int) (kickTimes[k] * sampleRate / 1000);
+			double phase = 0;
+
+			for (int i = 0; i < sampleRate * 0.25 && start + i < track.length; ++i) {
+
+				double time = i / sampleRate;
+				double frequency = 50 + 100 * Math.exp(-time * 40);
+				phase += 2 * Math.PI * frequency / sampleRate;
+
+				double kick = 16000 * Math.exp(-time * 12) * Math.sin(phase);
+				double click = (i < sampleRate * 0.004) ? 6000 * (random.nextDouble() * 2 - 1) : 0;
+				track[start + i] += (int) (kick + click);
+			}
+		}
+
+		return track;
+	}
+
+
+	// denoises the impulses, finds the onsets (where the denoised impulse rises from zero, but not too soon
+	// after the last onset) and works out the F-measure against the kick times
+	static double fMeasure(BeatTracker tracker, double[] impulses, int windowsInMovAverage, int windowSizeInFrames,
+			int hopInFrames, double[] kickTimes, int numOfKicks) {
+
+		RollingDoubleMemory impulseMemory = new RollingDoubleMemory(windowsInMovAverage);
+		boolean[] partnered = new boolean[numOfKicks];
+		int hits = 0;
+		int falsePositives = 0;
+		double previous = 0;
+		double lastOnsetTime = -refractoryMillis;
+
+		for (int h = 0; h < impulses.length; ++h) {
+
+			impulseMemory.addDouble(impulses[h]);
+			double denoised = tracker.trailedMovingAverage(impulseMemory.getDoubleArray(h - windowsInMovAverage + 1, windowsInMovAverage));
+
+			// the onset is at the end of the window it was found in
+			double time = (h * hopInFrames + windowSizeInFrames) * 1000 / sampleRate;
+
+			if (denoised > 0 && previous <= 0 && time - lastOnsetTime >= refractoryMillis) {
+
+				lastOnsetTime = time;
+
+				boolean found = false;
+				for (int k = 0; k < numOfKicks && !found; ++k) {
+					if (!partnered[k] && Math.abs(kickTimes[k] - time) < errorAllowable) {
+						partnered[k] = true;
+						found = true;
+					}
+				}
+
+				if (found) {
+					++hits;
+				} else {
+					++falsePositives;
+				}
+			}
+
+			previous = denoised;
+		}
+
+		int falseNegatives = numOfKicks - hits;
+		double precision = (double) hits / (hits + falsePositives);
+		double recall = (double) hits / (hits + falseNegatives);
+
+		return 2 * (precision * recall) / (precision + recall);
+	}
+
+}
@@ -0,0 +1,296 @@
+package fourier;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A single precision (float) FFT, for when the spectrum is going to be kept as floats anyway. The input is
+ * only 16 or 24 bit audio, so a float's 24 bits of mantissa are plenty, and every array the FFT works in is
+ * half the size of its double equivalent, so twice as much of it fits in the cache.
+ *
+ * It is the same Stockham FFT as the mixed radix backend (as many radix 4 stages as the size allows, then one
+ * radix 2 stage if needed, so the result comes out in order with no bit reversal), but only for powers of 2,
+ * and everything is in floats apart from the twiddle factors being worked out. The windowed frames are
+ * loaded straight from the audio samples in the first stage, as the mixed radix backend does.
+ * The plan for each size is made once and shared between threads. Each thread has its own arrays to work in
+ * @see MixedRadixBackend
+ */
+public class FloatFFT {
+
+	// the plan for each size asked for so far
+	private static final ConcurrentHashMap<Integer, FloatFFT> plans = new ConcurrentHashMap<Integer, FloatFFT>();
+
+	// the number of points in the FFT
+	private final int size;
+
+	// the radix of each stage, in the order they are done
+	private final int[] factors;
+
+	// e^(-2 * pi * i * k / size) for every k, split into real and imaginary parts
+	private final float[] twiddleReal;
+	private final float[] twiddleImaginary;
+
+	// the arrays each thread does its transforms in
+	private final ThreadLocal<float[][]> work;
+
+
+	/**
+	 * Returns the plan for FFTs of the size given, making it if this is the first time the size has been asked for
+	 * @param size the number of points in the FFT, which must be a power of 2
+	 * @return the plan for the size
+	 * @throws IllegalArgumentException if the size is not a power of 2
+	 */
+	public static FloatFFT forSize(int size) {
+
+		if (size < 1 || size > (1 << 30) || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("The single precision FFT can only do sizes that are a power of 2, not " + size);
+		}
+
+		FloatFFT plan = plans.get(size);
+		if (plan == null) {
+			// two threads may both make the plan, but only the first one put in is ever used
+			FloatFFT newPlan = new FloatFFT(size);
+			plan = plans.putIfAbsent(size, newPlan);
+			if (plan == null) {
+				plan = newPlan;
+			}
+		}
+		return plan;
+	}
+
+
+	private FloatFFT(final int size) {
+
+		this.size = size;
+
+		// take out as many 4s as we can, then a 2 if there is one left
+		int log2 = Integer.numberOfTrailingZeros(size);
+		factors = new int[log2 / 2 + log2 % 2];
+		for (int f = 0; f < log2 / 2; ++f) {
+			factors[f] = 4;
+		}
+		if (log2 % 2 == 1) {
+			factors[factors.length - 1] = 2;
+		}
+
+		// the twiddles are worked out in double and then rounded, so they are as accurate as a float can be
+		twiddleReal = new float[size];
+		twiddleImaginary = new float[size];
+		for (int k = 0; k < size; ++k) {
+			twiddleReal[k] = (float) Math.cos(2 * Math.PI * k / size);
+			twiddleImaginary[k] = (float) -Math.sin(2 * Math.PI * k / size);
+		}
+
+		work = new ThreadLocal<float[][]>() {
+			@Override
+			protected float[][] initialValue() {
+				return new float[2][size];
+			}
+		};
+	}
+
+
+	/**
+	 * Returns the number of points in the FFTs this plan does
+	 * @return the size of the FFT
+	 */
+	public int getSize() {
+		return size;
+	}
+
+
+	/**
+	 * Does an FFT of audio samples with a window put on them. Each sample is multiplied by its coefficient
+	 * as it is loaded in the first stage, and the samples are padded with zeros up to the size of the FFT
+	 * @param frames the samples, no more than the size of the FFT
+	 * @param coefficients the coefficient of the window for each sample, at least as long as the frames
+	 * @param real the array the real part of the result is written into, the size of the FFT
+	 * @param imaginary the array the imaginary part of the result is written into, the size of the FFT
+	 * @throws IllegalArgumentException if any of the arrays are the wrong size
+	 */
+	public void transformWindowed(int[] frames, float[] coefficients, float[] real, float[] imaginary) {
+
+		if (frames.length > size || coefficients.length < frames.length || real.length != size || imaginary.length != size) {
+			throw new IllegalArgumentException("A single precision FFT of size " + size + " was given " + frames.length + " frames, "
+					+ coefficients.length + " coefficients and arrays of sizes " + real.length + " and " + imaginary.length);
+		}
+
+		if (size == 1) {
+			real[0] = load(frames, coefficients, 0);
+			imaginary[0] = 0;
+			return;
+		}
+
+		float[][] scratch = work.get();
+
+		// the first stage loads the frames itself and writes to the scratch arrays, and the rest of the stages go
+		// back and forth between them and the output arrays
+		if (factors[0] == 4) {
+			firstRadix4(frames, coefficients, scratch[0], scratch[1]);
+		} else {
+			firstRadix2(frames, coefficients, scratch[0], scratch[1]);
+		}
+
+		float[] xr = scratch[0], xi = scratch[1];
+		float[] yr = real, yi = imaginary;
+
+		int n = size / factors[0];
+		int stride = factors[0];
+
+		for (int f = 1; f < factors.length; ++f) {
+
+			int radix = factors[f];
+			int m = n / radix;
+			int twiddleStep = size / n;
+
+			if (radix == 4) {
+				radix4(xr, xi, yr, yi, m, stride, twiddleStep);
+			} else {
+				radix2(xr, xi, yr, yi, m, stride, twiddleStep);
+			}
+
+			float[] swap = xr;
+			xr = yr;
+			yr = swap;
+			swap = xi;
+			xi = yi;
+			yi = swap;
+
+			n = m;
+			stride *= radix;
+		}
+
+		// the result is in whichever pair of arrays was written last
+		if (xr != real) {
+			System.arraycopy(xr, 0, real, 0, size);
+			System.arraycopy(xi, 0, imaginary, 0, size);
+		}
+	}
+
+
+	// returns sample i with the window on it, or 0 if it is in the padding past the end of the frames
+	private static float load(int[] frames, float[] coefficients, int i) {
+		return (i < frames.length) ? frames[i] * coefficients[i] : 0;
+	}
+
+
+	// the first radix 4 stage, loading the windowed frames as it goes. The input is real, so a lot of the
+	// butterfly falls away
+	private void firstRadix4(int[] frames, float[] coefficients, float[] yr, float[] yi) {
+
+		int m = size / 4;
+
+		for (int p = 0; p < m; ++p) {
+
+			float a0 = load(frames, coefficients, p);
+			float a1 = load(frames, coefficients, p + m);
+			float a2 = load(frames, coefficients, p + 2 * m);
+			float a3 = load(frames, coefficients, p + 3 * m);
+
+			float s02 = a0 + a2, d02 = a0 - a2;
+			float s13 = a1 + a3, d13 = a3 - a1;
+			float b2 = s02 - s13;
+
+			int out = 4 * p;
+			yr[out] = s02 + s13;
+			yi[out] = 0;
+
+			yr[out + 1] = d02 * twiddleReal[p] - d13 * twiddleImaginary[p];
+			yi[out + 1] = d02 * twiddleImaginary[p] + d13 * twiddleReal[p];
+			yr[out + 2] = b2 * twiddleReal[2 * p];
+			yi[out + 2] = b2 * twiddleImaginary[2 * p];
+			yr[out + 3] = d02 * twiddleReal[3 * p] + d13 * twiddleImaginary[3 * p];
+			yi[out + 3] = d02 * twiddleImaginary[3 * p] - d13 * twiddleReal[3 * p];
+		}
+	}
+
+
+	// the first radix 2 stage, loading the windowed frames as it goes
+	private void firstRadix2(int[] frames, float[] coefficients, float[] yr, float[] yi) {
+
+		int m = size / 2;
+
+		for (int p = 0; p < m; ++p) {
+
+			float a = load(frames, coefficients, p);
+			float b = load(frames, coefficients, p + m);
+			float d = a - b;
+
+			yr[2 * p] = a + b;
+			yi[2 * p] = 0;
+			yr[2 * p + 1] = d * twiddleReal[p];
+			yi[2 * p + 1] = d * twiddleImaginary[p];
+		}
+	}
+
+
+	// input point j of sub transform (p, q) is at q + stride * (p + j * m), and output k is written
+	// to q + stride * (radix * p + k), after being multiplied by the twiddle w^(p * k)
+	private void radix2(float[] xr, float[] xi, float[] yr, float[] yi, int m, int stride, int twiddleStep) {
+
+		for (int p = 0; p < m; ++p) {
+
+			float w1r = twiddleReal[p * twiddleStep], w1i = twiddleImaginary[p * twiddleStep];
+
+			for (int q = 0; q < stride; ++q) {
+
+				int in = q + stride * p;
+				int out = q + stride * 2 * p;
+
+				float ar = xr[in], ai = xi[in];
+				float br = xr[in + stride * m], bi = xi[in + stride * m];
+
+				yr[out] = ar + br;
+				yi[out] = ai + bi;
+
+				float dr = ar - br, di = ai - bi;
+				yr[out + stride] = dr * w1r - di * w1i;
+				yi[out + stride] = dr * w1i + di * w1r;
+			}
+		}
+	}
+
+
+	private void radix4(float[] xr, float[] xi, float[] yr, float[] yi, int m, int stride, int twiddleStep) {
+
+		for (int p = 0; p < m; ++p) {
+
+			float w1r = twiddleReal[p * twiddleStep], w1i = twiddleImaginary[p * twiddleStep];
+			float w2r = twiddleReal[2 * p * twiddleStep], w2i = twiddleImaginary[2 * p * twiddleStep];
+			float w3r = twiddleReal[3 * p * twiddleStep], w3i = twiddleImaginary[3 * p * twiddleStep];
+
+			for (int q = 0; q < stride; ++q) {
+
+				int in = q + stride * p;
+				int out = q + stride * 4 * p;
+				int jump = stride * m;
+
+				float a0r = xr[in], a0i = xi[in];
+				float a1r = xr[in + jump], a1i = xi[in + jump];
+				float a2r = xr[in + 2 * jump], a2i = xi[in + 2 * jump];
+				float a3r = xr[in + 3 * jump], a3i = xi[in + 3 * jump];
+
+				float s02r = a0r + a2r, s02i = a0i + a2i;
+				float d02r = a0r - a2r, d02i = a0i - a2i;
+				float s13r = a1r + a3r, s13i = a1i + a3i;
+
+				// -i * (a1 - a3)
+				float d13r = a1i - a3i, d13i = a3r - a1r;
+
+				yr[out] = s02r + s13r;
+				yi[out] = s02i + s13i;
+
+				float b1r = d02r + d13r, b1i = d02i + d13i;
+				float b2r = s02r - s13r, b2i = s02i - s13i;
+				float b3r = d02r - d13r, b3i = d02i - d13i;
+
+				yr[out + stride] = b1r * w1r - b1i * w1i;
+				yi[out + stride] = b1r * w1i + b1i * w1r;
+				yr[out + 2 * stride] = b2r * w2r - b2i * w2i;
+				yi[out + 2 * stride] = b2r * w2i + b2i * w2r;
+				yr[out + 3 * stride] = b3r * w3r - b3i * w3i;
+				yi[out + 3 * stride] = b3r * w3i + b3i * w3r;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,313 @@
+package fourier;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An FFT for large windows (tens of thousands of points and up, such as the tempogram of a whole track),
+ * which splits one big FFT into lots of small ones that fit in the cache and can be shared out between
+ * the threads of the common fork join pool. This is the four step FFT.
+ *
+ * The N points are laid out as a matrix of N1 rows and N2 columns, where point n is at row n / N2 and
+ * column n % N2 (so each row is N2 points in a row). Then:
+ * 1. an FFT of N1 points is done down every column,
+ * 2. every point is multiplied by a twiddle factor, e^(-2 * pi * i * row * column / N),
+ * 3. an FFT of N2 points is done along every row (of the transposed result),
+ * 4. bin k1 + N1 * k2 of the full FFT is then point k2 of row k1.
+ * N1 and N2 are both around the square root of N, so every small FFT fits in the cache, even when the
+ * full FFT doesn't. The columns (and then the rows) are done in blocks: a block of columns is copied out
+ * into a small array with its columns interleaved, the block is done as one batch of the mixed radix FFT, and
+ * the results are written back out already transposed, ready for the rows. Each block is independent of the
+ * others, so the blocks are what is shared out between threads.
+ *
+ * Rather than keeping a twiddle factor for every one of the N points, it is made from two smaller tables,
+ * one of the N1 coarse steps and one of the N2 fine steps, at the cost of one extra multiply.
+ * Only powers of 2 from 4096 points up can be done
+ * @see MixedRadixBackend#transformBatch
+ */
+public class FourStepBackend implements FFTBackend {
+
+	/**
+	 * The name this backend is chosen by
+	 */
+	public static final String NAME = "fourstep";
+
+	/**
+	 * The smallest size this backend can do
+	 */
+	public static final int MIN_SIZE = 1 << 12;
+
+	// the number of columns (or rows) copied out and transformed together
+	private static final int blockSize = 16;
+
+	// a task with more blocks than this is split in two
+	private static final int blocksPerTask = 4;
+
+	// the backend that does the small FFTs
+	private final MixedRadixBackend subTransforms = new MixedRadixBackend();
+
+	// the plan for each size asked for so far
+	private final ConcurrentHashMap<Integer, Plan> plans = new ConcurrentHashMap<Integer, Plan>();
+
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+
+	@Override
+	public boolean supports(int size) {
+		return size >= MIN_SIZE && size <= (1 << 28) && Integer.bitCount(size) == 1;
+	}
+
+
+	@Override
+	public void transform(double[] window, double[] real, double[] imaginary) {
+
+		int size = window.length;
+
+		if (!supports(size) || real.length != size || imaginary.length != size) {
+			throw new IllegalArgumentException("Arrays for a four step FFT of size " + size + " were given with sizes " + real.length
+					+ " and " + imaginary.length + ". The size must be a power of 2 of at least " + MIN_SIZE);
+		}
+
+		for (int i = 0; i < size; ++i) {
+			real[i] = window[i];
+			imaginary[i] = 0;
+		}
+
+		planFor(size).transform(real, imaginary);
+	}
+
+
+	/**
+	 * Does an FFT of a complex input, in place
+	 * @param real the real part of the input, which the real part of the result is written over
+	 * @param imaginary the imaginary part of the input, which the imaginary part of the result is written over
+	 * @throws IllegalArgumentException if the arrays are not the same size, or the size isn't supported
+	 */
+	public void complexTransform(double[] real, double[] imaginary) {
+
+		if (!supports(real.length) || imaginary.length != real.length) {
+			throw new IllegalArgumentException("Arrays for a four step FFT were given with sizes " + real.length + " and " + imaginary.length
+					+ ". The size must be a power of 2 of at least " + MIN_SIZE);
+		}
+
+		planFor(real.length).transform(real, imaginary);
+	}
+
+
+	// returns the plan for a size, making it if this is the first time the size has been asked for
+	private Plan planFor(int size) {
+
+		Plan plan = plans.get(size);
+		if (plan == null) {
+			// two threads may both make the plan, but only the first one put in is ever used
+			Plan newPlan = new Plan(size);
+			plan = plans.putIfAbsent(size, newPlan);
+			if (plan == null) {
+				plan = newPlan;
+			}
+		}
+		return plan;
+	}
+
+
+	// everything a four step FFT of one size needs that doesn't depend on the input
+	private class Plan {
+
+		// the number of points, rows and columns
+		private final int size;
+		private final int rows;
+		private final int columns;
+		private final int log2OfColumns;
+
+		// e^(-2 * pi * i * r / rows) for every r, and e^(-2 * pi * i * c / size) for every c. The twiddle for
+		// r * columns + c is the first times the second
+		private final double[] coarseReal;
+		private final double[] coarseImaginary;
+		private final double[] fineReal;
+		private final double[] fineImaginary;
+
+		// the transposed matrix between the column and row FFTs, for each thread doing a transform
+		private final ThreadLocal<double[][]> transposed;
+
+		// the interleaved block each thread works on, for the column FFTs and for the row FFTs
+		private final ThreadLocal<double[][]> columnBlock;
+		private final ThreadLocal<double[][]> rowBlock;
+
+
+		Plan(int size) {
+
+			this.size = size;
+
+			int log2 = Integer.numberOfTrailingZeros(size);
+			rows = 1 << (log2 / 2);
+			columns = size / rows;
+			log2OfColumns = log2 - log2 / 2;
+
+			coarseReal = new double[rows];
+			coarseImaginary = new double[rows];
+			for (int r = 0; r < rows; ++r) {
+				coarseReal[r] = Math.cos(2 * Math.PI * r / rows);
+				coarseImaginary[r] = -Math.sin(2 * Math.PI * r / rows);
+			}
+
+			fineReal = new double[columns];
+			fineImaginary = new double[columns];
+			for (int c = 0; c < columns; ++c) {
+				fineReal[c] = Math.cos(2 * Math.PI * c / size);
+				fineImaginary[c] = -Math.sin(2 * Math.PI * c / size);
+			}
+
+			transposed = new ThreadLocal<double[][]>() {
+				@Override
+				protected double[][] initialValue() {
+					return new double[2][Plan.this.size];
+				}
+			};
+			columnBlock = new ThreadLocal<double[][]>() {
+				@Override
+				protected double[][] initialValue() {
+					return new double[2][rows * blockSize];
+				}
+			};
+			rowBlock = new ThreadLocal<double[][]>() {
+				@Override
+				protected double[][] initialValue() {
+					return new double[2][columns * blockSize];
+				}
+			};
+		}
+
+
+		// does the FFT in place
+		void transform(double[] real, double[] imaginary) {
+
+			double[][] matrix = transposed.get();
+
+			ForkJoinPool.commonPool().invoke(new BlockTask(this, true, real, imaginary, matrix, 0, columns / blockSize));
+			ForkJoinPool.commonPool().invoke(new BlockTask(this, false, real, imaginary, matrix, 0, rows / blockSize));
+		}
+
+
+		// does the FFTs down a block of columns, starting at the column given, multiplies them by their
+		// twiddles and writes them into the transposed matrix, where they become rows
+		void columnBlock(double[] real, double[] imaginary, double[][] matrix, int firstColumn) {
+
+			double[][] block = columnBlock.get();
+			double[] blockReal = block[0];
+			double[] blockImaginary = block[1];
+
+			// point r of column (firstColumn + j) goes to r * blockSize + j. Each row of the block is read
+			// from one run of the matrix
+			for (int r = 0; r < rows; ++r) {
+				System.arraycopy(real, r * columns + firstColumn, blockReal, r * blockSize, blockSize);
+				System.arraycopy(imaginary, r * columns + firstColumn, blockImaginary, r * blockSize, blockSize);
+			}
+
+			subTransforms.transformBatch(blockReal, blockImaginary, rows, blockSize);
+
+			double[] matrixReal = matrix[0];
+			double[] matrixImaginary = matrix[1];
+
+			for (int k = 0; k < rows; ++k) {
+
+				// the twiddle is e^(-2 * pi * i * k * column / size), made from the coarse and fine tables. The
+				// power (k * column, wrapped round at size) goes up by k from one column to the next
+				int m = (int) (((long) k * firstColumn) & (size - 1));
+
+				for (int j = 0; j < blockSize; ++j, m = (m + k) & (size - 1)) {
+
+					int coarse = m >>> log2OfColumns;
+					int fine = m & (columns - 1);
+					double wr = coarseReal[coarse] * fineReal[fine] - coarseImaginary[coarse] * fineImaginary[fine];
+					double wi = coarseReal[coarse] * fineImaginary[fine] + coarseImaginary[coarse] * fineReal[fine];
+
+					double xr = blockReal[k * blockSize + j];
+					double xi = blockImaginary[k * blockSize + j];
+
+					matrixReal[k * columns + firstColumn + j] = xr * wr - xi * wi;
+					matrixImaginary[k * columns + firstColumn + j] = xr * wi + xi * wr;
+				}
+			}
+		}
+
+
+		// does the FFTs along a block of rows of the transposed matrix, starting at the row given, and writes
+		// them into their bins of the full FFT
+		void rowBlock(double[] real, double[] imaginary, double[][] matrix, int firstRow) {
+
+			double[][] block = rowBlock.get();
+			double[] blockReal = block[0];
+			double[] blockImaginary = block[1];
+			double[] matrixReal = matrix[0];
+			double[] matrixImaginary = matrix[1];
+
+			// point c of row (firstRow + j) goes to c * blockSize + j
+			for (int j = 0; j < blockSize; ++j) {
+				int row = (firstRow + j) * columns;
+				for (int c = 0; c < columns; ++c) {
+					blockReal[c * blockSize + j] = matrixReal[row + c];
+					blockImaginary[c * blockSize + j] = matrixImaginary[row + c];
+				}
+			}
+
+			subTransforms.transformBatch(blockReal, blockImaginary, columns, blockSize);
+
+			// bin firstRow + j + rows * k of the full FFT is point k of row (firstRow + j), so each point of the
+			// block goes out as one run
+			for (int k = 0; k < columns; ++k) {
+				System.arraycopy(blockReal, k * blockSize, real, firstRow + rows * k, blockSize);
+				System.arraycopy(blockImaginary, k * blockSize, imaginary, firstRow + rows * k, blockSize);
+			}
+		}
+	}
+
+
+	// does a run of blocks, either of columns or of rows, splitting them in two if there are too many
+	private static class BlockTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Plan plan;
+		private final boolean columns;
+		private final double[] real;
+		private final double[] imaginary;
+		private final double[][] matrix;
+		private final int firstBlock;
+		private final int numOfBlocks;
+
+		BlockTask(Plan plan, boolean columns, double[] real, double[] imaginary, double[][] matrix, int firstBlock, int numOfBlocks) {
+			this.plan = plan;
+			this.columns = columns;
+			this.real = real;
+			this.imaginary = imaginary;
+			this.matrix = matrix;
+			this.firstBlock = firstBlock;
+			this.numOfBlocks = numOfBlocks;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (numOfBlocks > blocksPerTask) {
+				int half = numOfBlocks / 2;
+				invokeAll(new BlockTask(plan, columns, real, imaginary, matrix, firstBlock, half),
+						new BlockTask(plan, columns, real, imaginary, matrix, firstBlock + half, numOfBlocks - half));
+				return;
+			}
+
+			for (int b = firstBlock; b < firstBlock + numOfBlocks; ++b) {
+				if (columns) {
+					plan.columnBlock(real, imaginary, matrix, b * blockSize);
+				} else {
+					plan.rowBlock(real, imaginary, matrix, b * blockSize);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,160 @@
+package fourier;
+
+/**
+ * Sums the harmonics of a power spectrum onto one another, so a tempo and its harmonics all add up at the
+ * same point. The first harmonic is taken from the start bin up to double the start bin, the second from
+ * double the start bin up to four times the start bin and so on, with each harmonic being stretched
+ * (by linear interpolation) over the same number of output points. Each harmonic is weighted slightly more
+ * than the one before it.
+ * Where each output point lands in the spectrum and how far it is between two bins only depend on the start
+ * bin, the number of harmonics and the resolution, so they are all worked out once when the plan is made.
+ * Summing a spectrum is then just a multiply and add for every point of every harmonic. The same output
+ * array is returned (and overwritten) every time a spectrum is summed
+ */
+public class HarmonicSumPlan {
+
+	// the bin in the spectrum the first harmonic starts at
+	private final int startBin;
+
+	// the number of points each harmonic is stretched over
+	private final int resolution;
+
+	// the number of harmonics summed
+	private final int numOfHarmonics;
+
+	// for every point of every harmonic, the bin just below where the point lands in the spectrum.
+	// The point for harmonic h and output index k is at [h * resolution + k]
+	private final int[] lowerBins;
+
+	// for every point of every harmonic, how far (between 0 and 1) the point is from its lower bin to the next bin
+	private final double[] fractions;
+
+	// how much each harmonic is weighted by
+	private final double[] weights;
+
+	// the highest bin of the spectrum that will be read
+	private final int highestBin;
+
+	// the output of the sum. This is overwritten every time a spectrum is summed
+	private final double[] output;
+
+
+	/**
+	 * Makes a plan to sum the harmonics of a spectrum with the settings given. Each harmonic is weighted
+	 * by (1 + 0.2 * h), where h is 0 for the first harmonic
+	 * @param startBin the bin the first harmonic starts at
+	 * @param numOfHarmonics the number of harmonics to sum together
+	 * @param resolution the number of points each harmonic is stretched over, which is the length of the output
+	 * @throws IllegalArgumentException if the start bin, number of harmonics or resolution are not above 0
+	 */
+	public HarmonicSumPlan(int startBin, int numOfHarmonics, int resolution) {
+
+		if (startBin < 1 || numOfHarmonics < 1 || resolution < 1) {
+			throw new IllegalArgumentException("The start bin (" + startBin + "), number of harmonics (" + numOfHarmonics
+					+ ") and resolution (" + resolution + ") should all be above 0");
+		}
+
+		this.startBin = startBin;
+		this.resolution = resolution;
+		this.numOfHarmonics = numOfHarmonics;
+
+		lowerBins = new int[numOfHarmonics * resolution];
+		fractions = new double[numOfHarmonics * resolution];
+		weights = new double[numOfHarmonics];
+		output = new double[resolution];
+
+		// each harmonic starts at double the bin of the one before and covers double the number of bins
+		int startingIndex = startBin;
+		int numOfInputPoints = startBin;
+		int highest = 0;
+
+		for (int h = 0; h < numOfHarmonics; ++h) {
+
+			double d = numOfInputPoints / (double) resolution;
+
+			for (int k = 0; k < resolution; ++k) {
+				double constant = startingIndex + d * k;
+				lowerBins[h * resolution + k] = (int) constant;
+				fractions[h * resolution + k] = constant - (int) constant;
+				highest = Math.max(highest, (int) constant + 1);
+			}
+
+			weights[h] = h * 0.2 + 1;
+
+			startingIndex *= 2;
+			numOfInputPoints *= 2;
+		}
+
+		this.highestBin = highest;
+	}
+
+
+	/**
+	 * Sums the harmonics of the spectrum given to it
+	 * @param spectrum the power spectrum to sum the harmonics of
+	 * @return the summed harmonics. The array returned is not a new array and will be overwritten the
+	 * next time a spectrum is summed
+	 * @throws IllegalArgumentException if the spectrum is too short for the highest harmonic
+	 */
+	public double[] sum(double[] spectrum) {
+
+		if (spectrum.length <= highestBin) {
+			throw new IllegalArgumentException("Spectrum of length " + spectrum.length + " is too short for a harmonic sum reading bin " + highestBin);
+		}
+
+		for (int k = 0; k < resolution; ++k) {
+			output[k] = 0;
+		}
+
+		for (int h = 0; h < numOfHarmonics; ++h) {
+
+			double weight = weights[h];
+			int offset = h * resolution;
+
+			for (int k = 0; k < resolution; ++k) {
+				int bin = lowerBins[offset + k];
+				output[k] += ((spectrum[bin + 1] - spectrum[bin]) * fractions[offset + k] + spectrum[bin]) * weight;
+			}
+		}
+
+		return output;
+	}
+
+
+	/**
+	 * Converts an index of the output into the bin of the spectrum it corresponds to in the first harmonic
+	 * @param index the index of the output
+	 * @return the (fractional) bin in the spectrum
+	 */
+	public double getBin(int index) {
+		return index * (double) startBin / resolution + startBin;
+	}
+
+
+	/**
+	 * Returns the bin the first harmonic starts at
+	 * @return the start bin
+	 */
+	public int getStartBin() {
+		return startBin;
+	}
+
+
+	/**
+	 * Returns the number of harmonics summed together
+	 * @return the number of harmonics
+	 */
+	public int getNumOfHarmonics() {
+		return numOfHarmonics;
+	}
+
+
+	/**
+	 * Returns the number of points each harmonic is stretched over, which is the length of the output
+	 * @return the resolution
+	 */
+	public int getResolution() {
+		return resolution;
+	}
+
+}
@@ -1,5 +1,8 @@
 package audio;
 
+import java.io.File;
+import java.io.IOException;
+
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartFrame;
 import org.jfree.chart.JFreeChart;
@@ -7,109 +10,165 @@ import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
 import fourier.DFTSearch;
+import fourier.DFTSearchSession;
+import rollingmemory.SparseOnsetRing;
 
-public class HarmonicTempoPlotter extends DFTSearch{
+public class HarmonicTempoPlotter {
 
 	double expectedWindowsBetweenBeats = 6;
 
-	// create a data series to store first Harmonic tempo
-	XYSeries firstHarmSeries = new XYSeries("First Harmonic", false);
+	// the names of each harmonic, in order
+	static final String[] harmonicNames = {"First Harmonic", "Second Harmonic", "Third Harmonic", "Fourth Harmonic",
+			"Fifth Harmonic", "Sixth Harmonic", "Seventh Harmonic", "Eigth Harmonic"};
+
+	// the number of points in time the harmonics are summarised into for the plot. Each point holds
+	// the lowest and highest tempo of the harmonic at that point, whatever the length of the track
+	static final int plotResolution = 4096;
+
+	// the recorder every hop's harmonic tempos are given to. It writes them straight out to a file
+	// and only keeps a fixed size summary of them in memory for the plot
+	TempoHarmonicsRecorder recorder;
+
+	// the tempo of each harmonic for the hop being worked out. Double.NaN means there isn't one
+	double[] harmonicTempos = new double[harmonicNames.length];
+
+	// the bin range searched for each harmonic. [n][0] is the start bin and [n][1] is the end bin
+	double[][] harmonicRanges = new double[harmonicNames.length][2];
+
+	// the search session every harmonic is searched for in. The interval is only prepared once per hop.
+	// It uses the parabolic refinement, which needs 32 DFTs for each harmonic rather than 42
+	DFTSearchSession session = new DFTSearchSession();
+
+	// the onsets of the interval are copied into these when they are read from a sparse onset ring
+	int[] onsetIndexes = new int[0];
+	double[] onsetStrengths = new double[0];
+
+	// the number of windows in each sample of the intervals given. This is 1 unless the onset envelope
+	// is decimated before the tempo is worked out
+	int windowsPerSample = 1;
+
+
+	/**
+	 * Creates a plotter which streams the tempo of every harmonic to the file given as it runs
+	 * @param outputFile the CSV file the harmonic tempos are written to
+	 * @throws IOException if the file cannot be written to
+	 */
+	public HarmonicTempoPlotter(File outputFile) throws IOException {
+		recorder = new TempoHarmonicsRecorder(outputFile, harmonicNames.length, plotResolution);
+		session.setRefinement(DFTSearch.PARABOLIC_REFINEMENT);
+	}
+
+
+	/**
+	 * Sets the number of windows each sample of the intervals given covers, so the tempos found are still
+	 * worked out in windows when the onset envelope has been decimated
+	 * @param windowsPerSample the number of windows in each sample
+	 * @see OnsetEnvelopeDecimator
+	 */
+	public void setWindowsPerSample(int windowsPerSample) {
+		this.windowsPerSample = windowsPerSample;
+	}
+
+
+	public void getTempoHarmonies(double[] intervalImpulses, double[] intervalVolumes, double time, double windowOffsetsPerBeat) throws IOException {
 
-	// create a data series to store first Harmonic tempo
-	XYSeries secondHarmSeries = new XYSeries("Second Harmonic", false);
+		// pick out the non-zero impulses once, and then search for every harmonic on them
+		session.prepare(intervalImpulses);
 
-	// create a data series to store fourth Harmonic tempo
-	XYSeries thirdHarmSeries = new XYSeries("Third Harmonic", false);
+		searchHarmonies(intervalImpulses.length, time, windowOffsetsPerBeat);
+	}
 
-	// create a data series to store eighth Harmonic tempo
-	XYSeries fourthHarmSeries = new XYSeries("Fourth Harmonic", false);
 
-	// create a data series to store eighth Harmonic tempo
-	XYSeries fifthHarmSeries = new XYSeries("Fifth Harmonic", false);
-	
-	// create a data series to store eighth Harmonic tempo
-	XYSeries sixthHarmSeries = new XYSeries("Sixth Harmonic", false);
-	
-	// create a data series to store eighth Harmonic tempo
-	XYSeries seventhHarmSeries = new XYSeries("Seventh Harmonic", false);
-	
-	// create a data series to store eighth Harmonic tempo
-	XYSeries eigthHarmSeries = new XYSeries("Eigth Harmonic", false);
+	/**
+	 * Finds the tempo of every harmonic in an interval, reading the interval's onsets straight from a
+	 * sparse onset ring rather than from an array of every window
+	 * @param onsets the sparse onset ring holding the onsets
+	 * @param firstWindow the index of the first sample in the interval
+	 * @param windowsInInterval the number of samples in the interval
+	 * @param time the time of the newest window, in milliseconds
+	 * @param windowOffsetsPerBeat the number of samples expected between each beat
+	 * @throws IOException if the harmonic tempos could not be written out
+	 */
+	public void getTempoHarmonies(SparseOnsetRing onsets, int firstWindow, int windowsInInterval, double time, double windowOffsetsPerBeat) throws IOException {
+
+		// the arrays only need to be as large as the number of onsets in the interval, rather than every onset
+		// the ring could hold
+		int lastWindow = firstWindow + windowsInInterval - 1;
+		int onsetsInInterval = onsets.countInRange(firstWindow, lastWindow);
+		if (onsetIndexes.length < onsetsInInterval) {
+			onsetIndexes = new int[onsetsInInterval];
+			onsetStrengths = new double[onsetsInInterval];
+		}
+
+		int numOfOnsets = onsets.copyRange(firstWindow, lastWindow, onsetIndexes, onsetStrengths);
+
+		session.prepare(onsetIndexes, onsetStrengths, numOfOnsets, firstWindow, windowsInInterval);
+
+		searchHarmonies(windowsInInterval, time, windowOffsetsPerBeat);
+	}
 
-	public void getTempoHarmonies(double[] intervalImpulses, double[] intervalVolumes, double time, double windowOffsetsPerBeat) {
+
+	// searches the interval prepared in the session for every harmonic and records their tempos
+	private void searchHarmonies(int windowsInInterval, double time, double windowOffsetsPerBeat) throws IOException {
 
 		// decide how many cycles there will be in the interval
-		double numOfCyclesInInterval = intervalImpulses.length / windowOffsetsPerBeat;
+		double numOfCyclesInInterval = windowsInInterval / windowOffsetsPerBeat;
 
 		// we want to create bins to search between
 		double lowerBin = numOfCyclesInInterval * 3.0 / 4;
 		double upperBin = numOfCyclesInInterval * 3.0 / 2;
 
-		double jump = search(intervalImpulses, 31, 5, lowerBin, upperBin);
-
-		// convert the answer the DFT search into windows per cycle rather than cycles per interval
-		jump = (intervalImpulses.length) / jump;
-		if (60000 / (jump * 3) > 40) 
-			firstHarmSeries.add(time / 1000, 60000 / (jump * 3));
-
-		// do the same thing for the other harmonics
-
-		// SECOND
-		jump = search(intervalImpulses, 31, 5, lowerBin * 2, upperBin + lowerBin);
-		jump = (intervalImpulses.length) / jump;
-		if (60000 / (jump * 3) > 40) 
-			secondHarmSeries.add(time / 1000, 60000 / (jump * 3));
-
-		// THIRD
-		jump = search(intervalImpulses, 31, 5, lowerBin * 3, upperBin + lowerBin * 2);
-		jump = (intervalImpulses.length) / jump;
-		if (60000 / (jump * 3) > 40) 
-			thirdHarmSeries.add(time / 1000, 60000 / (jump * 3));
-
-		// FOURTH
-		jump = search(intervalImpulses, 31, 5, lowerBin * 4, upperBin + lowerBin * 3);
-		jump = (intervalImpulses.length) / jump;
-		if (60000 / (jump * 3) > 40) 
-			fourthHarmSeries.add(time / 1000, 60000 / (jump * 3));
-		
-		// FIFTH
-		jump = search(intervalImpulses, 31, 5, lowerBin * 5, upperBin + lowerBin * 4);
-		jump = (intervalImpulses.length) / jump;
-		if (60000 / (jump * 3) > 40) 
-			fifthHarmSeries.add(time / 1000, 60000 / (jump * 3));
-		
-		// SIXTH
-		jump = search(intervalImpulses, 31, 5, lowerBin * 6, upperBin + lowerBin * 5);
-		jump = (intervalImpulses.length) / jump;
-		if (60000 / (jump * 3) > 40) 
-			sixthHarmSeries.add(time / 1000, 60000 / (jump * 3));
-		
-		// SEVENTH
-		jump = search(intervalImpulses, 31, 5, lowerBin * 7, upperBin + lowerBin * 6);
-		jump = (intervalImpulses.length) / jump;
-		if (60000 / (jump * 3) > 40) 
-			seventhHarmSeries.add(time / 1000, 60000 / (jump * 3));
-		
-		// EIGHT
-		jump = search(intervalImpulses, 31, 5, lowerBin * 8, upperBin + lowerBin * 7);
-		jump = (intervalImpulses.length) / jump;
-		if (60000 / (jump * 3) > 40) 
-			eigthHarmSeries.add(time / 1000, 60000 / (jump * 3));
+		// the first harmonic is searched between the lower and upper bins. Every harmonic after that
+		// is searched between the lower bin times the harmonic and the upper bin plus the lower bin times
+		// one less than the harmonic
+		for (int i = 0; i < harmonicRanges.length; ++i) {
+			harmonicRanges[i][0] = lowerBin * (i + 1);
+			harmonicRanges[i][1] = upperBin + lowerBin * i;
+		}
+
+		// If the interval is large enough the harmonics are searched for at the same time
+		double[] bestBins = session.searchAll(31, 5, harmonicRanges);
+
+		for (int i = 0; i < bestBins.length; ++i) {
 
+			// convert the answer the DFT search into windows per cycle rather than cycles per interval
+			double jump = (windowsInInterval) * windowsPerSample / bestBins[i];
+			if (60000 / (jump * 3) > 40) 
+				harmonicTempos[i] = 60000 / (jump * 3);
+			else
+				harmonicTempos[i] = Double.NaN;
+		}
+
+		recorder.record(time / 1000, harmonicTempos);
 	}
 
 
-	public void plotTempoHamonies() {
+	/**
+	 * Closes the file the harmonic tempos are written to and plots the summary of them. Each point in
+	 * the summary is plotted as its lowest and then its highest tempo, so the spread of the tempo at
+	 * every point can still be seen
+	 * @throws IOException if the file could not be closed
+	 */
+	public void plotTempoHamonies() throws IOException {
+
+		recorder.close();
 
 		XYSeriesCollection outputDataset = new XYSeriesCollection();
-		outputDataset.addSeries(firstHarmSeries);
-		outputDataset.addSeries(secondHarmSeries);
-		outputDataset.addSeries(thirdHarmSeries);
-		outputDataset.addSeries(fourthHarmSeries);
-		outputDataset.addSeries(fifthHarmSeries);
-		outputDataset.addSeries(sixthHarmSeries);
-		outputDataset.addSeries(seventhHarmSeries);
-		outputDataset.addSeries(eigthHarmSeries);
+
+		for (int h = 0; h < harmonicNames.length; ++h) {
+
+			XYSeries series = new XYSeries(harmonicNames[h], false);
+
+			for (int b = 0; b < recorder.getBucketsUsed(); ++b) {
+				if (!Double.isNaN(recorder.getMinTempo(h, b))) {
+					series.add(recorder.getBucketTime(b), recorder.getMinTempo(h, b));
+					series.add(recorder.getBucketTime(b), recorder.getMaxTempo(h, b));
+				}
+			}
+
+			outputDataset.addSeries(series);
+		}
+
 		JFreeChart chartTempos = ChartFactory.createXYLineChart("Tempo Harmonics Without Window", "time (seconds)", "BPM", outputDataset);
 		ChartFrame frame2 = new ChartFrame("This Doesn't Matter", chartTempos);
 		frame2.setVisible(true);
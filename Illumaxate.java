@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Locale;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -16,10 +17,16 @@ import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 
+import fourier.ConstantQTransform;
+import fourier.FFTBackends;
+import fourier.MixedRadixBackend;
 import fourier.SignalProcessor;
+import rollingmemory.QuantisedSpectrogramMemory;
 import rollingmemory.RollingArrayMemory;
 import rollingmemory.RollingDoubleMemory;
 import rollingmemory.RollingIntMemory;
+import rollingmemory.SlidingWindowMax;
+import rollingmemory.SparseOnsetRing;
 import visual.BeatsPanel;
 import visual.FFTPanel;
 import visual.ImpulsePanel;
@@ -140,6 +147,117 @@ public class Illumaxate {
 	 */
 	static int visualiserMaxFPS = 60; // in FPS
 
+	/**
+	 * The tempo is only worked out again when a new onset comes along (or an onset rises to a new
+	 * peak), rather than on every window with an impulse in it. This sets the shortest time there
+	 * can be between two of these estimates of the tempo, which caps how often the tempo is worked
+	 * out when the music is very busy. If this is smaller than the reaction time, the tempo can be
+	 * worked out on every window that has a new onset
+	 */
+	static double minTempoEstimateMillis = 50; // in milliseconds
+
+	/**
+	 * Peak picking thins out the denoised impulses so only the strongest impulse of a cluster is kept.
+	 * When it is turned on, a new impulse is only kept if it is stronger than every impulse in the
+	 * peak picking time before it, and if it is, the impulse it beat is removed. The largest of the recent
+	 * impulses is kept track of as they come in, so this costs next to nothing per window
+	 */
+	static boolean peakPicking = false;
+
+	static double peakPickingMillis = 30; // in milliseconds
+
+	/**
+	 * The tempo doesn't need to be worked out from every window. Tempo resolution needs nowhere near the
+	 * rate of the windows (over 300 a second with a 3 millisecond reaction), and the tempo stage costs more
+	 * the more windows there are in its interval. This sets the rate of the onset envelope the tempo (and
+	 * the tempogram and harmonic tempos) are worked out from. Each sample of this envelope holds the largest
+	 * impulse of the windows it covers, so no onsets are lost. Beats are still placed on the windows
+	 * themselves. The rate used will be a whole number of windows per sample, so it will likely be slightly
+	 * different to the one given here. If this is 0, or faster than the rate of the windows, every window is used
+	 */
+	static double tempoAnalysisRate = 0; // in Hz
+
+	/**
+	 * The beat tracker only looks at the lower frequencies of each window (the impulse uses the lowest third
+	 * of the FFT and the low frequency volume everything under 800 Hz), so the audio can be filtered and
+	 * decimated to a lower sample rate before the FFT is worked out. The same frequency resolution then comes
+	 * from a smaller FFT, and the analysis no longer depends on the sample rate of the file. The audio played
+	 * through the speaker is not changed. The rate used will be the file's rate divided by a whole number, so
+	 * it will likely be slightly different to the one given here. If this is 0, the file's rate is used.
+	 * Since the impulse is worked out from the lowest third of the FFT, it only covers frequencies up to a
+	 * third of the rate used. At the full rate of a 44.1 kHz file that is 14.7 kHz, but at 11.025 kHz it is
+	 * only about 3.7 kHz, so the impulse no longer sees the higher frequencies (the top of snares and hats)
+	 */
+	static double analysisFrameRate = 0; // in Hz
+
+	/**
+	 * If this is true, the impulse and volumes of each window are worked out by a bank of band-pass filters
+	 * run over the audio sample by sample, rather than from an FFT of every window. This is a lot cheaper,
+	 * but has far less frequency detail to go on. On the made up track of FilterbankOnsetTester it finds the
+	 * kicks at least as well as the FFT, but that has not been checked on real music yet. The FFT and
+	 * spectrogram panels will be left empty
+	 * @see BiquadFilterbank
+	 */
+	static boolean filterbankOnsets = false;
+
+	/**
+	 * If this is true, each window is split into a few dozen bands spaced evenly in pitch (a constant Q
+	 * transform) rather than the hundreds of bins of the FFT, and the impulse and volumes are worked out from
+	 * the bands. The bass is split up just as finely, but the treble is in far fewer bands, so the impulse isn't
+	 * swamped by the high frequencies. The FFT and spectrogram panels show the bands. With so few bands, the
+	 * noise doesn't average out in the impulse as it does over the bins, so on the made up track of
+	 * ConstantQOnsetTester this finds far more false onsets than the FFT does
+	 * @see fourier.ConstantQTransform
+	 */
+	static boolean constantQ = false;
+
+	/**
+	 * Which FFT backend the signal processors use. This can be the name of a backend ("radix2" for the FFT
+	 * this project has always used, or "jtransforms" if JTransforms is on the class path), or "auto", which
+	 * times every backend when the program starts and uses the fastest one for each window size. If this is
+	 * null, the system property fourier.fftBackend is used, and if that isn't set either, the radix 2 FFT is
+	 * used for the window sizes this program uses, so the output is the same on every machine
+	 * @see FFTBackends
+	 */
+	static String fftBackend = null;
+
+	/**
+	 * Normally each window is padded out with zeros to the next 2^n frames before its FFT is worked out
+	 * (1882 frames becomes 2048 at 44.1 kHz). If this is true, the window and its FFT are instead made the
+	 * size needed for the minimum frequency, rounded up to the nearest size made only of factors of 2, 3 and
+	 * 5 (1920 frames at 44.1 kHz), as the mixed radix FFT is quickest at these sizes. There is then no
+	 * padding, and the FFT of the beat tracker's interval is made exactly the length of the interval too
+	 * @see MixedRadixBackend
+	 */
+	static boolean exactWindowSize = false;
+
+	/**
+	 * If this is true, the log of every spectrum (and the phases, if they are asked for) are worked out with
+	 * the table based approximations in FastMath rather than with Math. The log is out by no more than 1e-14
+	 * and the phases by no more than 1e-12 radians (FastMathTester measures about 1.8e-13), which makes no
+	 * difference to the beats found, but they are quicker
+	 * @see fourier.FastMath
+	 */
+	static boolean fastMath = false;
+
+	/**
+	 * If this is true, the spectrum of every window is worked out in single precision (floats) and kept as
+	 * floats in the FFT rolling array, and the spectrogram, tempogram, impulse and volume memories all keep
+	 * their values as floats. This halves the memory they take up. The input is only 16 bit audio, so the
+	 * onsets and beats found are the same (PrecisionTester compares the two)
+	 * @see fourier.FloatFFT
+	 */
+	static boolean singlePrecision = false;
+
+	/**
+	 * The number of bits the spectrogram history is kept in. 0 keeps every row of the FFT rolling array at
+	 * full precision. 8 or 16 keeps only the last two rows (which the impulse is found from) at full precision,
+	 * and quantises every older row to 8 or 16 bits with its own offset and step, which is plenty to draw
+	 * them. The history then takes 4 to 8 times less memory, so a much longer one can be kept
+	 * @see rollingmemory.QuantisedSpectrogramMemory
+	 */
+	static int spectrogramBits = 0;
+
 
 	public static void main(String[] args) throws UnsupportedAudioFileException, IOException, LineUnavailableException {
 
@@ -151,6 +269,12 @@ public class Illumaxate {
 //					selected = openDiag.getSelectedFile();
 //				}
 
+		// choose the FFT backend before any signal processors are made, as they keep the backend
+		// they were made with. If it isn't set here, it is left to the system property
+		if (fftBackend != null) {
+			FFTBackends.select(fftBackend);
+		}
+
 		// We now create an audio stream that effectively acts as a buffer for the whole song
 		// and drip feeds the raw audio data in bytes when we ask to read() from it
 		AudioInputStream musicData = AudioSystem.getAudioInputStream(music);
@@ -181,11 +305,18 @@ public class Illumaxate {
 		float audioFrameRate = musicFormat.getFrameRate();
 		// int portBufferSizeInFrames = speakerPort.getBufferSize() / (numberOfChannels * sampleSizeInBytes);
 
+		// work out how much the audio is decimated by before it is analysed, and the frame rate the
+		// analysis is done at. Frames given to the FFT are at this rate, and frames given to the
+		// speaker are at the audio frame rate
+		// @see analysisFrameRate
+		int decimationFactor = (analysisFrameRate <= 0) ? 1 : Math.max(1, Math.round(audioFrameRate / (float) analysisFrameRate));
+		float analysisRate = audioFrameRate / decimationFactor;
+
 		// Calculate the window size to be used, based off of
 		// minimum frequency we want to detect in the music
 		// @see minFrequency
 		int returnedWindowSizeInFrames = 1;
-		while(returnedWindowSizeInFrames < (int)(audioFrameRate / minFrequency)) {
+		while(returnedWindowSizeInFrames < (int)(analysisRate / minFrequency)) {
 			// continue multiplying by two until the window size is larger than the frame
 			// rate divided by the minimum frequency. We multiply by two to ensure that the
 			// window size is of size 2^n
@@ -193,23 +324,35 @@ public class Illumaxate {
 		}
 		
 		// This gives the size of the array that will be given to the Signal Processor object
-		int windowSizeInFrames = (int) (audioFrameRate / minFrequency);
+		// (in frames at the analysis rate)
+		int windowSizeInFrames = (int) (analysisRate / minFrequency);
+
+		// if the FFT is made exactly the size of the window, there is no padding
+		// @see exactWindowSize
+		if (exactWindowSize) {
+			windowSizeInFrames = MixedRadixBackend.nextSmoothSize(windowSizeInFrames);
+			returnedWindowSizeInFrames = windowSizeInFrames;
+		}
 
 		// Calculate the offset from window to window (can be translated into overlap)
 		// use the minimum reaction time requested to work out this value
 		// As a note, the offset also describes the number of frames given to the
-		// speaker port for every byte buffer passed to the write() method
-		int windowOffsetInFrames =  (int) ((audioFrameRate * minReaction) / 1000);
+		// speaker port for every byte buffer passed to the write() method.
+		// The offset is kept to a whole number of analysis frames, so every buffer
+		// decimates down to the same number of frames
+		int windowOffsetInAnalysisFrames = Math.max(1, (int) ((analysisRate * minReaction) / 1000));
 
 		// We want, at the least, each window to be adjacent to each other, so, if the
 		// offset is worked out to be larger than the window size, we will set the
 		// offset to equal the window size. This will also change the minimum reaction
-		if (windowOffsetInFrames > windowSizeInFrames)
-			windowOffsetInFrames = windowSizeInFrames;
+		if (windowOffsetInAnalysisFrames > windowSizeInFrames)
+			windowOffsetInAnalysisFrames = windowSizeInFrames;
+
+		int windowOffsetInFrames = windowOffsetInAnalysisFrames * decimationFactor;
 
 		// We can now work out the time it takes for one window to be fully played
 		// (in milliseconds)
-		float timeForWindowMillis = (float) windowSizeInFrames / (float) audioFrameRate;
+		float timeForWindowMillis = (float) windowSizeInFrames / analysisRate;
 
 		// if the step above does actually change the window offset, the minimum reaction
 		// time to the music will change too, so we create a variable to store the new
@@ -234,12 +377,23 @@ public class Illumaxate {
 		// we also want to know how long this interval is in seconds for the stats at the start
 		float initialIntervalSize = windowsInInterval * actualReactionTime / 1000;
 
+		// work out how many windows go into each sample of the onset envelope the tempo is worked out from
+		// @see tempoAnalysisRate
+		double windowRate = 1000 / actualReactionTime;
+		int windowsPerTempoSample = (tempoAnalysisRate <= 0 || tempoAnalysisRate >= windowRate) ?
+				1 : (int) Math.round(windowRate / tempoAnalysisRate);
+
+		// the interval and the expected distance between beats in samples of the onset envelope
+		int samplesInInterval = (int) Math.ceil(windowsInInterval / (double) windowsPerTempoSample);
+		double samplesPerBeat = windowOffsetsPerBeat / windowsPerTempoSample;
+
 		// decide on how large the interval will be for the tempogram. This is a completely
 		// separate interval to the one used in the actual beat tracking. This is done
 		// purely for visualisation purposes only. We need to ensure that there are only
-		// 2^n number of windows
+		// 2^n number of windows. The tempogram is made from the onset envelope, so this
+		// is counted in samples of the envelope (which are windows unless it is decimated)
 		int tempogramIntervalSizeInWindows = 1;
-		while(tempogramIntervalSizeInWindows <= (windowOffsetsPerBeat * numOfBeatsInInterval)) {
+		while(tempogramIntervalSizeInWindows <= (samplesPerBeat * numOfBeatsInInterval)) {
 			// continue multiplying by two until the amount of windows in the interval
 			// is larger than the required size to be of 2^n.
 			tempogramIntervalSizeInWindows *= 2;
@@ -247,7 +401,7 @@ public class Illumaxate {
 
 		// This is the actual interval size to be used by the code. This value is written in seconds,
 		// not milliseconds
-		float minTempogramInterval = (tempogramIntervalSizeInWindows * windowOffsetInFrames) / audioFrameRate;
+		float minTempogramInterval = (tempogramIntervalSizeInWindows * windowsPerTempoSample * windowOffsetInFrames) / audioFrameRate;
 
 		// we ensure that the moving average length (size) in milliseconds is
 		// longer than the min reaction time
@@ -271,13 +425,15 @@ public class Illumaxate {
 			refreshRate = (int) actualReactionTime;
 
 		// Print out any variables useful to know that may have been changed by the code
+		System.out.format("Analysis frame rate = %.1f Hz (decimated by %d)\n", analysisRate, decimationFactor);
 		System.out.println("Window size in frames = " + windowSizeInFrames);
 		System.out.println("Window size in with padding frames = " + returnedWindowSizeInFrames);
-		System.out.println("Minimum frequency to be detected = " + (int) Math.ceil(audioFrameRate / windowSizeInFrames) + " Hz");
-		System.out.format("Offset of frames = %d (%.1f%% overlap)\n", windowOffsetInFrames, (100 - (100 * windowOffsetInFrames) / (float) returnedWindowSizeInFrames));
+		System.out.println("Minimum frequency to be detected = " + (int) Math.ceil(analysisRate / windowSizeInFrames) + " Hz");
+		System.out.format("Offset of frames = %d (%.1f%% overlap)\n", windowOffsetInFrames, (100 - (100 * windowOffsetInAnalysisFrames) / (float) returnedWindowSizeInFrames));
 		System.out.format("Reaction time to music = %.1f milliseconds\n", actualReactionTime );
 		System.out.format("Time for one window = " + "%.1f" + " milliseconds\n", timeForWindowMillis * 1000);
 		System.out.format("Initial beat tracking interval = %.1f seconds\n", initialIntervalSize);
+		System.out.format("Tempo analysis rate = %.1f Hz (%d windows per sample)\n", windowRate / windowsPerTempoSample, windowsPerTempoSample);
 		System.out.format("Tempogram interval in seconds = %.1f seconds\n", minTempogramInterval);
 		System.out.format ("Moving average = %.1f milliseconds\n", actualRollAvrgMillis);
 		System.out.println("Number of windows in moving average = " + windowsInMovAverage);
@@ -322,18 +478,27 @@ public class Illumaxate {
 		// set up a rolling array memory for temporarily storing the data processed using
 		// the FFT. This array holds the FFT spectrum windows
 		// The number of arrays it stores will be large enough to fit around 10 seconds of audio.
-		RollingArrayMemory fftSpectRollingArray = new RollingArrayMemory(returnedWindowSizeInFrames, tenSecsOfWindows);
+		// If the spectrogram is quantised, only the last two rows are kept at full precision.
+		// If the constant Q transform is used, each row holds its bands rather than the FFT's bins
+		ConstantQTransform constantQTransform = constantQ ? new ConstantQTransform(analysisRate, windowSizeInFrames) : null;
+		int spectrumSize = (constantQTransform != null) ? constantQTransform.getNumOfBands() : returnedWindowSizeInFrames;
+		RollingArrayMemory fftSpectRollingArray;
+		if (spectrogramBits == 0) {
+			fftSpectRollingArray = new RollingArrayMemory(spectrumSize, tenSecsOfWindows, singlePrecision);
+		} else {
+			fftSpectRollingArray = new QuantisedSpectrogramMemory(spectrumSize, tenSecsOfWindows, spectrogramBits, singlePrecision);
+		}
 
 		// set up another rolling array memory for temporarily storing the data processed using
 		// the beat tracker. This array holds the tempogram data.
 		// The number of array it stores will also be large enough to fit 10 seconds of audio
-		RollingArrayMemory tempoRollingArray = new RollingArrayMemory(tempogramIntervalSizeInWindows, tenSecsOfWindows);
+		RollingArrayMemory tempoRollingArray = new RollingArrayMemory(tempogramIntervalSizeInWindows, tenSecsOfWindows, singlePrecision);
 
 		// create a rolling array to store the impulse of the music, which is found by the beat tracker object
 		// this memory need only hold a moving average number of windows, since this is all it's used for before
 		// the data is placed inside the denoised impulse array for longer term storage. No panels should read off
 		// of this rolling memory and should read the denoisedImpulseRollingMemory instead
-		RollingDoubleMemory impulseRollingMemory = new RollingDoubleMemory(windowsInMovAverage);
+		RollingDoubleMemory impulseRollingMemory = new RollingDoubleMemory(windowsInMovAverage, singlePrecision);
 
 		// create a rolling array to store the denoised impulse of the music for the FFT spectrogram, which is also used by the
 		// beat tracker object. It needs to accommodate 10 seconds of data and/or all the interval data needed to create an FFT
@@ -342,23 +507,47 @@ public class Illumaxate {
 		int maxValue = (tenSecsOfWindows > tempogramIntervalSizeInWindows)? ((windowsInInterval*4 > tenSecsOfWindows)?
 				windowsInInterval*4 : tenSecsOfWindows) :
 					((windowsInInterval*4 > tempogramIntervalSizeInWindows)? windowsInInterval*4 : tempogramIntervalSizeInWindows);
-		RollingDoubleMemory denoisedImpulseRollingMemory = new RollingDoubleMemory(maxValue);
+		RollingDoubleMemory denoisedImpulseRollingMemory = new RollingDoubleMemory(maxValue, singlePrecision);
 		// the reason why quadruple the windows in interval variable is because this variable changes dynamically as the code is
 		// being run, and so we want to ensure that the rolling array can store a full interval, even if it the interval becomes =
 		// larger. The interval will most likely never ever balloon to x4 it's original size
 
+		// keep a sparse list of the onsets (the windows above zero) alongside the denoised impulses. The harmonic
+		// plotter reads the onsets from this, rather than going through every window
+		denoisedImpulseRollingMemory.attachSparseIndex(new SparseOnsetRing(maxValue, maxValue));
+
+		// also keep track of the largest of the most recent denoised impulses. The beat tracker uses this to
+		// find the strongest impulse around a predicted beat, and it is used for peak picking
+		denoisedImpulseRollingMemory.attachWindowMax(new SlidingWindowMax(maxValue));
+		SlidingWindowMax recentImpulses = denoisedImpulseRollingMemory.getWindowMax();
+		int windowsInPeakPicking = Math.min(Math.max(1, (int) Math.round(peakPickingMillis / actualReactionTime)), maxValue);
+
 		// This rolling memeory is created for the impulse panel to read off of. Th impulse panel will only show an impulse
 		// when the value in this rolling array changes
-		RollingDoubleMemory impulseRollingMemoryReading = new RollingDoubleMemory(maxValue);
+		RollingDoubleMemory impulseRollingMemoryReading = new RollingDoubleMemory(maxValue, singlePrecision);
 
 		// set up a rolling array memory for the volume data, to be used by the beat tracker for confidence values
-		RollingDoubleMemory volumeRollingMemory = new RollingDoubleMemory(maxValue);
+		RollingDoubleMemory volumeRollingMemory = new RollingDoubleMemory(maxValue, singlePrecision);
 
 		// set up a rolling array memory for the low volume data, to be used by the beat JPanel
-		RollingDoubleMemory lowFreqVolumeRollingMemory = new RollingDoubleMemory(tenSecsOfWindows);
+		RollingDoubleMemory lowFreqVolumeRollingMemory = new RollingDoubleMemory(tenSecsOfWindows, singlePrecision);
 
 		// set up a rolling array memory for the rms volume data, to be used by the beat JPanel
-		RollingDoubleMemory RMSVolumeRollingMemory = new RollingDoubleMemory(tenSecsOfWindows);
+		RollingDoubleMemory RMSVolumeRollingMemory = new RollingDoubleMemory(tenSecsOfWindows, singlePrecision);
+
+		// the tempo is worked out from the onset envelope. If every window is used, this is just the denoised
+		// impulses (and their volumes). Otherwise, the decimator turns the windows into a slower envelope which
+		// is stored in its own memories, big enough to hold the interval and the tempogram interval
+		OnsetEnvelopeDecimator onsetDecimator = null;
+		RollingDoubleMemory tempoImpulseRollingMemory = denoisedImpulseRollingMemory;
+		RollingDoubleMemory tempoVolumeRollingMemory = RMSVolumeRollingMemory;
+		if (windowsPerTempoSample > 1) {
+			onsetDecimator = new OnsetEnvelopeDecimator(windowsPerTempoSample);
+			int tempoMemorySize = Math.max(samplesInInterval * 4, tempogramIntervalSizeInWindows);
+			tempoImpulseRollingMemory = new RollingDoubleMemory(tempoMemorySize, singlePrecision);
+			tempoImpulseRollingMemory.attachSparseIndex(new SparseOnsetRing(tempoMemorySize, tempoMemorySize));
+			tempoVolumeRollingMemory = new RollingDoubleMemory(tempoMemorySize, singlePrecision);
+		}
 
 		// set up a rolling array memory for temporarily storing the beats predicted to occur within the audio
 		// This memory will only be used by the visualiser panels and so only needs to fit around 10 seconds of audio.
@@ -374,17 +563,49 @@ public class Illumaxate {
 		// buffer into a large-endian integer array, one integer for each frame
 		WavToMono mono = new WavToMono(numberOfChannels, sampleSizeInBytes * 8);
 
+		// if the audio is analysed at a lower rate, the mono frames are filtered and decimated before
+		// they are stored in the rolling integer array
+		PolyphaseDecimator decimator = (decimationFactor > 1) ? new PolyphaseDecimator(decimationFactor) : null;
+
+		// if we are using the filterbank for onsets, it is given the new frames of every hop. An empty spectrum
+		// is still added to the FFT rolling array every window so the panels reading it carry on as normal
+		BiquadFilterbank filterbank = filterbankOnsets ? new BiquadFilterbank(analysisRate) : null;
+		double[] emptySpectrum = new double[spectrumSize];
+
 		// create an signal processor object to perform FFTs on the mono audio arrays, and
 		// to do other useful calculations on the audio data
-		SignalProcessor signalProcess = new SignalProcessor(windowSizeInFrames);
+		SignalProcessor signalProcess = new SignalProcessor(windowSizeInFrames, exactWindowSize, singlePrecision);
 
 		// create another signal processor. This is made in case we need to have a look at an FFT
 		// of the impulse data to draw a tempogram, otherwise, this object will not be used
 		SignalProcessor impulseProcess = new SignalProcessor(tempogramIntervalSizeInWindows);
 
+		signalProcess.setFastMath(fastMath);
+		impulseProcess.setFastMath(fastMath);
+		if (constantQTransform != null) {
+			constantQTransform.setFastMath(fastMath);
+		}
+
+		// neither signal processor is ever asked for phases, so they only need to keep the magnitudes
+		signalProcess.setRetention(SignalProcessor.RETAIN_MAGNITUDES);
+		impulseProcess.setRetention(SignalProcessor.RETAIN_MAGNITUDES);
+
+		System.out.println("FFT backend = " + signalProcess.getBackendName() + " for windows, "
+				+ impulseProcess.getBackendName() + " for the tempogram");
+
 		// create a beat tracker object to track the beats from impulse data. We give it the rolling array to read off
 		// of in order to make decisions
-		BeatTracker beatTracker = new BeatTracker(windowsInMovAverage, windowOffsetsPerBeat, numOfBeatsInInterval, denoisedImpulseRollingMemory, RMSVolumeRollingMemory, windowsInInterval);
+		// The tempo is worked out from the onset envelope, but the beats are placed on the windows
+		BeatTracker beatTracker = new BeatTracker(windowsInMovAverage, windowOffsetsPerBeat, numOfBeatsInInterval, denoisedImpulseRollingMemory, RMSVolumeRollingMemory,
+				samplesInInterval, windowsPerTempoSample);
+		beatTracker.setExactSizeFFT(exactWindowSize);
+		// the peaks of the onsets are found in between windows from the impulses before they were denoised
+		beatTracker.setImpulseMemory(impulseRollingMemory);
+
+		// create a scheduler that decides when the beat tracker should work out the tempo again
+		int samplesBetweenTempoEstimates = (int) Math.ceil(minTempoEstimateMillis / (actualReactionTime * windowsPerTempoSample));
+		TempoEstimationScheduler tempoScheduler = new TempoEstimationScheduler(beatTracker, tempoImpulseRollingMemory,
+				tempoVolumeRollingMemory, samplesInInterval, samplesBetweenTempoEstimates);
 
 		// Create a panel for visualising the volume from the FFT
 		VisualiserJPanel volumePanel = new VolumePanel(30, 150, RMSVolumeRollingMemory);
@@ -419,8 +640,10 @@ public class Illumaxate {
 		// array, and finally, the refresh rate wanted
 		VisualiserFrame visuals = new VisualiserFrame(addPanels, speakerPort, bufSizeInFrames, refreshRate);
 
-		// create a harmonic beat search plotter
-		HarmonicTempoPlotter tempoHarmonies = new HarmonicTempoPlotter();
+		// create a harmonic beat search plotter. The tempo of every harmonic is streamed out to a file
+		// as the song plays, rather than all being held in memory until the end
+		HarmonicTempoPlotter tempoHarmonies = new HarmonicTempoPlotter(new File(filename + " tempo harmonics.csv"));
+		tempoHarmonies.setWindowsPerSample(windowsPerTempoSample);
 		
 		// for writing where the beats are
 		PrintStream ps = new PrintStream(new File(filename + " beat predictions.txt"));
@@ -438,20 +661,24 @@ public class Illumaxate {
 		// to bufSizeInBytes
 		int numBytesRead;
 
-		// a counter for how many frames have been read by the buffer
+		// a counter for how many frames have been read by the buffer. This counts frames at the analysis
+		// rate, which are the frames stored in the rolling integer array
 		int totalFramesRead = 0;
 
-		// this tells the window of the most recent impulse peak
-		double maxImpulse = 0;
-
-		int maxImpulseWindow = 0;
-
 		double prevValue = 0;
 
 		// a counter for how many windows have been processed
 		// (this is basically how many times we have gone through the loop)
 		int totalWindowsProcessed = 0;
 
+		// the tempogram column made from the newest sample of the onset envelope. It is added again for every
+		// window until the next sample comes along. Until the first sample is finished (which isn't the first
+		// window if the envelope is decimated), an empty column is added
+		double[] tempogramColumn = new double[tempogramIntervalSizeInWindows];
+
+		// this is handed to the beat tracker on windows that don't finish a sample of the onset envelope
+		double[] noTempo = new double[5];
+
 		// number to add to beat tracker. This is arbitrary and should eventually
 		// be replaced by the amplitude of the bass frequencies in the certain window
 		double numForBeats = 0;
@@ -468,11 +695,13 @@ public class Illumaxate {
 		while ((numBytesRead = musicData.read(buf, 0, buf.length)) != -1) {
 
 			// add on to the counter the new frames that have just been read by the byte buffer
-			totalFramesRead += bufSizeInFrames;
+			totalFramesRead += windowOffsetInAnalysisFrames;
 
 			// create mono integers from the multi-channel byte data and store them in the
-			// rolling integer array
-			rollingInt.addIntArray(mono.convertToMono(buf));
+			// rolling integer array, decimating them first if we need to
+			int[] monoFrames = mono.convertToMono(buf);
+			int[] hopFrames = (decimator != null) ? decimator.process(monoFrames) : monoFrames;
+			rollingInt.addIntArray(hopFrames);
 
 			// add the RMS volume for the window to the rolling memory
 			RMSVolumeRollingMemory.addDouble(
@@ -480,54 +709,121 @@ public class Illumaxate {
 							rollingInt.getIntArray(totalFramesRead - windowSizeInFrames, windowSizeInFrames)));
 
 
-			// now this is a complicated one. Were I to do some optimising, I might start here.
-			// what we are doing is reading the mono values for the past window from the rolling
-			// integer array, we are then using the hamming window FFT method from the
-			// signal processing object and then we add the processed data into a large rolling array	
-			double[] doubleArray = signalProcess.log(
-					signalProcess.blackmanHarrisFFT(
-							rollingInt.getIntArray(totalFramesRead - windowSizeInFrames, windowSizeInFrames)));	
+			if (filterbank != null) {
 
-			fftSpectRollingArray.addArray(doubleArray);
+				// the filterbank only needs the frames that are new in this hop, and it gives the impulse
+				// (the flux) and the volumes without an FFT
+				filterbank.processHop(hopFrames);
 
-			volumeRollingMemory.addDouble(
-					beatTracker.getVolume(
-							doubleArray));
+				fftSpectRollingArray.addArray(emptySpectrum);
 
-			lowFreqVolumeRollingMemory.addDouble(
-					beatTracker.getLowFreqVolume(
-							doubleArray, audioFrameRate));
+				volumeRollingMemory.addDouble(filterbank.getVolume());
 
-			// find the new impulse number for the window and add it to the impulse rolling memory
-			impulseRollingMemory.addDouble(
-					beatTracker.getImpulse(
-							doubleArray, fftSpectRollingArray.getArrayPointer(
-									fftSpectRollingArray.getLastAddedIndex() - 1)));
+				lowFreqVolumeRollingMemory.addDouble(filterbank.getLowBandVolume());
 
-			denoisedImpulseRollingMemory.addDouble(
-					beatTracker.trailedMovingAverage(
-							impulseRollingMemory.getDoubleArray(totalWindowsProcessed - windowsInMovAverage + 1, windowsInMovAverage)));
+				impulseRollingMemory.addDouble(filterbank.getFlux());
 
+			} else if (constantQTransform != null) {
 
-			double currentImpulse = denoisedImpulseRollingMemory.getDouble(totalWindowsProcessed);
+				// the bands of the constant Q transform are written straight into the next row of the large
+				// rolling array, just as the FFT is below, and the volumes and impulse are found from them
+				double[] bandArray = constantQTransform.transform(
+						rollingInt.getIntArray(totalFramesRead - windowSizeInFrames, windowSizeInFrames),
+						true, fftSpectRollingArray.getWritableRow());
+
+				fftSpectRollingArray.commitRow();
+
+				volumeRollingMemory.addDouble(
+						beatTracker.getVolume(
+								bandArray));
+
+				lowFreqVolumeRollingMemory.addDouble(
+						beatTracker.getLowFreqVolume(
+								bandArray, constantQTransform));
+
+				impulseRollingMemory.addDouble(
+						beatTracker.getBandImpulse(
+								bandArray, fftSpectRollingArray.getArrayPointer(
+										fftSpectRollingArray.getLastAddedIndex() - 1)));
+
+			} else {
+
+				// now this is a complicated one. What we are doing is reading the mono values for the past
+				// window from the rolling integer array, we are then using the Blackman-Harris window FFT
+				// method from the signal processing object, with the log, and it writes the processed data
+				// straight into the next row of the large rolling array, so the spectrum isn't copied anywhere
+				// in single precision, the spectrum is worked out and kept as floats, and the volumes and
+				// impulse are found from the floats
+				if (singlePrecision) {
+
+					float[] floatArray = signalProcess.blackmanHarrisFFT(
+							rollingInt.getIntArray(totalFramesRead - windowSizeInFrames, windowSizeInFrames),
+							true, fftSpectRollingArray.getWritableFloatRow());
+
+					fftSpectRollingArray.commitRow();
+
+					volumeRollingMemory.addDouble(
+							beatTracker.getVolume(
+									floatArray));
+
+					lowFreqVolumeRollingMemory.addDouble(
+							beatTracker.getLowFreqVolume(
+									floatArray, analysisRate));
+
+					impulseRollingMemory.addDouble(
+							beatTracker.getImpulse(
+									floatArray, fftSpectRollingArray.getFloatArrayPointer(
+											fftSpectRollingArray.getLastAddedIndex() - 1)));
+
+				} else {
+
+					double[] doubleArray = signalProcess.blackmanHarrisFFT(
+							rollingInt.getIntArray(totalFramesRead - windowSizeInFrames, windowSizeInFrames),
+							true, fftSpectRollingArray.getWritableRow());
+
+					fftSpectRollingArray.commitRow();
 
+					volumeRollingMemory.addDouble(
+							beatTracker.getVolume(
+									doubleArray));
+
+					lowFreqVolumeRollingMemory.addDouble(
+							beatTracker.getLowFreqVolume(
+									doubleArray, analysisRate));
+
+					// find the new impulse number for the window and add it to the impulse rolling memory
+					impulseRollingMemory.addDouble(
+							beatTracker.getImpulse(
+									doubleArray, fftSpectRollingArray.getArrayPointer(
+											fftSpectRollingArray.getLastAddedIndex() - 1)));
+				}
+			}
+
+			double denoisedImpulse = beatTracker.trailedMovingAverage(
+					impulseRollingMemory.getDoubleArray(totalWindowsProcessed - windowsInMovAverage + 1, windowsInMovAverage));
+
+			// if we are peak picking, the new impulse is only kept if it beats every impulse in the peak picking
+			// time before it. The impulse it beats is then removed once the new impulse has been added
+			int beatenPeakWindow = -1;
+			if (peakPicking && denoisedImpulse > 0) {
+				if (denoisedImpulse > recentImpulses.maxValue(windowsInPeakPicking)) {
+					if (recentImpulses.maxValue(windowsInPeakPicking) > 0) {
+						beatenPeakWindow = recentImpulses.maxIndex(windowsInPeakPicking);
+					}
+				} else {
+					denoisedImpulse = 0;
+				}
+			}
+
+			denoisedImpulseRollingMemory.addDouble(denoisedImpulse);
+
+			if (beatenPeakWindow >= 0) {
+				denoisedImpulseRollingMemory.overwriteDouble(beatenPeakWindow, 0.0);
+			}
+
+
+			double currentImpulse = denoisedImpulseRollingMemory.getDouble(totalWindowsProcessed);
 
-			//						if (currentImpulse == 0) {
-			//							maxImpulse = 0;
-			//							maxImpulseWindow = 0;
-			//							
-			//						}else if(maxImpulseWindow == 0){
-			//							maxImpulse = currentImpulse;
-			//							maxImpulseWindow = totalWindowsProcessed;
-			//							
-			//						} else if (currentImpulse > maxImpulse) {
-			//							denoisedImpulseRollingMemory.overwriteDouble(maxImpulseWindow, 0.0);
-			//							maxImpulse = currentImpulse;
-			//							maxImpulseWindow = totalWindowsProcessed;
-			//			
-			//						}else{
-			//							denoisedImpulseRollingMemory.overwriteDouble(totalWindowsProcessed, 0.0);
-			//						}
 
 			if (currentImpulse != 0)
 				impulseRollingMemoryReading.addDouble(currentImpulse);
@@ -540,39 +836,47 @@ public class Illumaxate {
 
 
 
-			// create a new column for the tempogram array which can be read and visualised by one of
-			// the JPanels later on
-			tempoRollingArray.addArray(
-					impulseProcess.sqrt(
-							impulseProcess.blackmanHarrisFFT(
-									denoisedImpulseRollingMemory.getDoubleArray(
-											totalWindowsProcessed - tempogramIntervalSizeInWindows + 1, tempogramIntervalSizeInWindows))));
-
+			// if the onset envelope is decimated, the window goes into the current sample. Otherwise every
+			// window is a sample of the envelope
+			boolean newTempoSample = true;
+			if (onsetDecimator != null) {
+				newTempoSample = onsetDecimator.add(totalWindowsProcessed, currentImpulse,
+						RMSVolumeRollingMemory.getDouble(totalWindowsProcessed));
+				if (newTempoSample) {
+					tempoImpulseRollingMemory.addDouble(onsetDecimator.getImpulse());
+					tempoVolumeRollingMemory.addDouble(onsetDecimator.getVolume());
+				}
+			}
+			int newestTempoSample = tempoImpulseRollingMemory.getLastAddedIndex();
 
-			double[] tempo;
+			// create a new column for the tempogram array which can be read and visualised by one of
+			// the JPanels later on. It is only worked out again when there is a new sample of the envelope
+			if (newTempoSample) {
+				tempogramColumn = impulseProcess.sqrt(
+						impulseProcess.blackmanHarrisFFT(
+								tempoImpulseRollingMemory.getDoubleArray(
+										newestTempoSample - tempogramIntervalSizeInWindows + 1, tempogramIntervalSizeInWindows)));
+			}
+			tempoRollingArray.addArray(tempogramColumn);
 
 
-			if (denoisedImpulseRollingMemory.getDouble(totalWindowsProcessed) > 0) {
-				tempo = beatTracker.trackBeat(
-						denoisedImpulseRollingMemory.getDoubleArray(
-								totalWindowsProcessed - windowsInInterval + 1, windowsInInterval),
-						RMSVolumeRollingMemory.getDoubleArray(totalWindowsProcessed - windowsInInterval + 1, windowsInInterval));
-			} else {
-				tempo = new double[5];
-			}
+			// the scheduler only asks the beat tracker to work out the tempo again when a new onset (or
+			// a new peak in an onset) has come along. Otherwise it hands back the last tempo worked out
+			double[] tempo = newTempoSample ? tempoScheduler.getTempo(newestTempoSample) : noTempo;
 
 			if(beatTracker.getBeat(tempo, totalWindowsProcessed)) {
 				numForBeats = lowFreqVolumeRollingMemory.getDouble(totalWindowsProcessed);
-				ps.println((int)((totalWindowsProcessed + 1) * actualReactionTime));
+				// the beat can fall in between windows, so its time is written to a fraction of a millisecond.
+				// The root locale always writes a '.', which is what BeatPlacementPlotter reads back in
+				ps.format(Locale.ROOT, "%.3f%n", (beatTracker.getBeatPosition() + 1) * actualReactionTime);
 			}
 
 			beatsRollingMemory.addDouble(numForBeats);
 			
-			if (denoisedImpulseRollingMemory.getDouble(totalWindowsProcessed) > 0) {
-				tempoHarmonies.getTempoHarmonies(denoisedImpulseRollingMemory.getDoubleArray(
-						totalWindowsProcessed - windowsInInterval + 1, windowsInInterval),
-						RMSVolumeRollingMemory.getDoubleArray(totalWindowsProcessed - windowsInInterval + 1, windowsInInterval),
-						(double)(actualReactionTime * totalWindowsProcessed), windowOffsetsPerBeat);
+			if (newTempoSample && tempoImpulseRollingMemory.getDouble(newestTempoSample) > 0) {
+				tempoHarmonies.getTempoHarmonies(tempoImpulseRollingMemory.getSparseIndex(),
+						newestTempoSample - samplesInInterval + 1, samplesInInterval,
+						(double)(actualReactionTime * totalWindowsProcessed), samplesPerBeat);
 			}
 
 
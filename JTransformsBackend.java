@@ -0,0 +1,93 @@
+package fourier;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jtransforms.fft.DoubleFFT_1D;
+
+/**
+ * Does the FFT with JTransforms, which can do any size (not just powers of 2) and is usually faster than
+ * the radix 2 FFT for large windows. JTransforms is only needed at run time if this backend is actually
+ * used: if it isn't on the class path, making this backend throws a LinkageError (which FFTBackends
+ * catches, and leaves the backend out).
+ *
+ * JTransforms works on an array of interleaved real and imaginary values, so the window is copied into one
+ * of these (kept for each thread) before the transform, and copied back out into the real and imaginary
+ * arrays after it. Its plan for each size is made once and shared between threads, as it isn't changed by
+ * a transform
+ */
+public class JTransformsBackend implements FFTBackend {
+
+	/**
+	 * The name this backend is chosen by
+	 */
+	public static final String NAME = "jtransforms";
+
+	// the JTransforms plan for each size asked for so far
+	private final ConcurrentHashMap<Integer, DoubleFFT_1D> plans = new ConcurrentHashMap<Integer, DoubleFFT_1D>();
+
+	// the interleaved array each thread does its transforms in. It is remade if a different size comes along
+	private final ThreadLocal<double[]> interleaved = new ThreadLocal<double[]>();
+
+
+	/**
+	 * Creates the backend, making a small plan straight away so that a missing JTransforms is found now
+	 * rather than on the first transform
+	 * @throws LinkageError if JTransforms is not on the class path
+	 */
+	public JTransformsBackend() {
+		plans.put(2, new DoubleFFT_1D(2));
+	}
+
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+
+	@Override
+	public boolean supports(int size) {
+		return size > 0 && size <= (1 << 30);
+	}
+
+
+	@Override
+	public void transform(double[] window, double[] real, double[] imaginary) {
+
+		int size = window.length;
+
+		if (real.length != size || imaginary.length != size) {
+			throw new IllegalArgumentException("Arrays for an FFT of size " + size + " were given with sizes " + real.length
+					+ " and " + imaginary.length);
+		}
+
+		DoubleFFT_1D plan = plans.get(size);
+		if (plan == null) {
+			// two threads may both make the plan, but only the first one put in is ever used
+			DoubleFFT_1D newPlan = new DoubleFFT_1D(size);
+			plan = plans.putIfAbsent(size, newPlan);
+			if (plan == null) {
+				plan = newPlan;
+			}
+		}
+
+		double[] complex = interleaved.get();
+		if (complex == null || complex.length != size * 2) {
+			complex = new double[size * 2];
+			interleaved.set(complex);
+		}
+
+		for (int i = 0; i < size; ++i) {
+			complex[i * 2] = window[i];
+			complex[i * 2 + 1] = 0;
+		}
+
+		plan.complexForward(complex);
+
+		for (int i = 0; i < size; ++i) {
+			real[i] = complex[i * 2];
+			imaginary[i] = complex[i * 2 + 1];
+		}
+	}
+
+}
@@ -0,0 +1,693 @@
+package fourier;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An FFT that can do any size, not just powers of 2, so a window can be exactly the size it needs to be
+ * rather than being padded out with zeros to the next power of 2.
+ *
+ * If the size is made only of factors of 2, 3, 4 and 5 (1882 isn't, but 1875 and 1920 are), the FFT is split
+ * into one stage per factor, using radix 4 wherever it can as it needs the fewest multiplies. Each stage
+ * is a Stockham stage: it reads from one array and writes to the other, already in the right order, so
+ * there is no bit reversal at the end and the factors can be in any mix.
+ *
+ * Any other size is done with Bluestein's algorithm, which turns an FFT of any size N into a convolution
+ * of two sequences, which is done with FFTs of a power of 2 size of at least 2N - 1 (and those are done by
+ * the mixed radix stages). This is a few times slower than an FFT of a power of 2 near N, but gives the
+ * exact DFT of N points.
+ *
+ * A window function can be put on the frames as they are loaded by the first stage (see transformWindowed),
+ * so there is no separate pass over the frames to window them and copy them in. A batch of transforms can also
+ * be done at once with their points interleaved (see transformBatch), so the innermost loops run along the
+ * batch with the same twiddle factors.
+ *
+ * The plan for each size (the factors, twiddle factors and, for Bluestein, the chirp) is made once and shared
+ * between threads. The arrays a transform works in belong to the thread doing it
+ */
+public class MixedRadixBackend implements WindowedFFTBackend, BatchFFTBackend {
+
+	/**
+	 * The name this backend is chosen by
+	 */
+	public static final String NAME = "mixedradix";
+
+	// the plan for each size asked for so far
+	private final ConcurrentHashMap<Integer, Plan> plans = new ConcurrentHashMap<Integer, Plan>();
+
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+
+	@Override
+	public boolean supports(int size) {
+		return size > 0 && size <= (1 << 28);
+	}
+
+
+	@Override
+	public void transform(double[] window, double[] real, double[] imaginary) {
+
+		int size = window.length;
+
+		if (!supports(size) || real.length != size || imaginary.length != size) {
+			throw new IllegalArgumentException("Arrays for an FFT of size " + size + " were given with sizes " + real.length
+					+ " and " + imaginary.length);
+		}
+
+		for (int i = 0; i < size; ++i) {
+			real[i] = window[i];
+			imaginary[i] = 0;
+		}
+
+		planFor(size).transform(real, imaginary);
+	}
+
+
+	@Override
+	public void transformWindowed(double[] frames, double[] coefficients, double[] real, double[] imaginary) {
+
+		int size = real.length;
+
+		if (!supports(size) || imaginary.length != size || frames.length > size || coefficients.length < frames.length) {
+			throw new IllegalArgumentException("Arrays for a windowed FFT of size " + size + " were given with sizes " + frames.length
+					+ ", " + coefficients.length + " and " + imaginary.length);
+		}
+
+		planFor(size).transformWindowed(frames, coefficients, real, imaginary);
+	}
+
+
+	@Override
+	public void transformBatch(double[] real, double[] imaginary, int size, int batch) {
+
+		if (!supports(size) || batch < 1 || real.length != size * batch || imaginary.length != size * batch) {
+			throw new IllegalArgumentException("Arrays for a batch of " + batch + " FFTs of size " + size + " were given with sizes "
+					+ real.length + " and " + imaginary.length);
+		}
+
+		planFor(size).transformBatch(real, imaginary, batch);
+	}
+
+
+	/**
+	 * Does an FFT of a complex input, in place
+	 * @param real the real part of the input, which the real part of the result is written over
+	 * @param imaginary the imaginary part of the input, which the imaginary part of the result is written over
+	 * @throws IllegalArgumentException if the arrays are not the same size, or the size isn't supported
+	 */
+	public void complexTransform(double[] real, double[] imaginary) {
+
+		if (!supports(real.length) || imaginary.length != real.length) {
+			throw new IllegalArgumentException("Arrays for an FFT were given with sizes " + real.length + " and " + imaginary.length);
+		}
+
+		planFor(real.length).transform(real, imaginary);
+	}
+
+
+	// returns the plan for a size, making it if this is the first time the size has been asked for
+	private Plan planFor(int size) {
+
+		Plan plan = plans.get(size);
+		if (plan == null) {
+			// two threads may both make the plan, but only the first one put in is ever used
+			Plan newPlan = new Plan(size, this);
+			plan = plans.putIfAbsent(size, newPlan);
+			if (plan == null) {
+				plan = newPlan;
+			}
+		}
+		return plan;
+	}
+
+
+	/**
+	 * Returns whether a size can be done with the mixed radix stages alone, without Bluestein's algorithm
+	 * @param size the number of points in the FFT
+	 * @return true if the only prime factors of the size are 2, 3 and 5
+	 */
+	public static boolean isSmooth(int size) {
+
+		if (size < 1) {
+			return false;
+		}
+		for (int p = 2; p <= 5; ++p) {
+			while (size % p == 0) {
+				size /= p;
+			}
+		}
+		return size == 1;
+	}
+
+
+	/**
+	 * Returns the smallest size that is at least the size given and can be done with the mixed radix stages
+	 * alone. These sizes are never more than a few percent apart once they are in the hundreds
+	 * @param size the smallest size wanted
+	 * @return the smallest size at or above the size given whose only prime factors are 2, 3 and 5
+	 */
+	public static int nextSmoothSize(int size) {
+
+		int smooth = Math.max(1, size);
+		while (!isSmooth(smooth)) {
+			++smooth;
+		}
+		return smooth;
+	}
+
+
+	// everything an FFT of one size needs that doesn't depend on the input
+	private static class Plan {
+
+		// the number of points in the FFT
+		private final int size;
+
+		// the radix of each stage, in the order they are done. Empty if Bluestein's algorithm is used
+		private final int[] factors;
+
+		// e^(-2 * pi * i * k / size) for every k, split into real and imaginary parts
+		private final double[] twiddleReal;
+		private final double[] twiddleImaginary;
+
+		// for Bluestein's algorithm: the power of 2 size of the convolution, the chirp e^(-pi * i * n^2 / size)
+		// and the FFT of the conjugate chirp, wrapped around the convolution
+		private final int convolutionSize;
+		private final double[] chirpReal;
+		private final double[] chirpImaginary;
+		private final double[] filterReal;
+		private final double[] filterImaginary;
+		private final Plan convolutionPlan;
+
+		// the arrays each thread does its transforms in, and its batches of transforms in
+		private final ThreadLocal<double[][]> work;
+		private final ThreadLocal<double[][]> batchWork = new ThreadLocal<double[][]>();
+
+
+		Plan(int size, MixedRadixBackend backend) {
+
+			this.size = size;
+
+			if (isSmooth(size)) {
+
+				// take out as many 4s as we can, then 2s, 3s and 5s
+				int[] found = new int[32];
+				int count = 0;
+				int left = size;
+				while (left % 4 == 0) {
+					found[count++] = 4;
+					left /= 4;
+				}
+				for (int p = 2; p <= 5; ++p) {
+					while (left % p == 0) {
+						found[count++] = p;
+						left /= p;
+					}
+				}
+
+				factors = new int[count];
+				System.arraycopy(found, 0, factors, 0, count);
+
+				twiddleReal = new double[size];
+				twiddleImaginary = new double[size];
+				for (int k = 0; k < size; ++k) {
+					twiddleReal[k] = Math.cos(2 * Math.PI * k / size);
+					twiddleImaginary[k] = -Math.sin(2 * Math.PI * k / size);
+				}
+
+				convolutionSize = 0;
+				chirpReal = chirpImaginary = filterReal = filterImaginary = null;
+				convolutionPlan = null;
+
+			} else {
+
+				factors = new int[0];
+				twiddleReal = twiddleImaginary = null;
+
+				int m = 1;
+				while (m < 2 * size - 1)
+					m *= 2;
+				convolutionSize = m;
+				convolutionPlan = backend.planFor(m);
+
+				// n^2 is worked out modulo 2 * size, so the angle stays accurate for large n
+				chirpReal = new double[size];
+				chirpImaginary = new double[size];
+				for (int n = 0; n < size; ++n) {
+					long squared = ((long) n * n) % (2L * size);
+					double angle = Math.PI * squared / size;
+					chirpReal[n] = Math.cos(angle);
+					chirpImaginary[n] = -Math.sin(angle);
+				}
+
+				// the filter is the conjugate chirp, with the negative indexes wrapped to the end
+				filterReal = new double[m];
+				filterImaginary = new double[m];
+				for (int n = 0; n < size; ++n) {
+					filterReal[n] = chirpReal[n];
+					filterImaginary[n] = -chirpImaginary[n];
+					if (n > 0) {
+						filterReal[m - n] = chirpReal[n];
+						filterImaginary[m - n] = -chirpImaginary[n];
+					}
+				}
+				convolutionPlan.transform(filterReal, filterImaginary);
+			}
+
+			final int workSize = (convolutionSize > 0) ? convolutionSize : size;
+			work = new ThreadLocal<double[][]>() {
+				@Override
+				protected double[][] initialValue() {
+					return new double[2][workSize];
+				}
+			};
+		}
+
+
+		// does the FFT in place
+		void transform(double[] real, double[] imaginary) {
+
+			if (convolutionSize > 0) {
+				bluestein(real, imaginary, null, null);
+			} else {
+				double[][] scratch = work.get();
+				stages(0, real, imaginary, scratch[0], scratch[1], real, imaginary, 1);
+			}
+		}
+
+
+		// does the FFT of the windowed frames (padded with zeros), putting the window on in the first stage
+		void transformWindowed(double[] frames, double[] coefficients, double[] real, double[] imaginary) {
+
+			if (convolutionSize > 0) {
+				bluestein(real, imaginary, frames, coefficients);
+				return;
+			}
+
+			double[][] scratch = work.get();
+
+			if (factors.length > 0 && (factors[0] == 4 || factors[0] == 2)) {
+
+				// the first stage loads the frames itself and writes to the scratch arrays, and the rest of the
+				// stages go back and forth between them and the output arrays
+				if (factors[0] == 4) {
+					firstRadix4(frames, coefficients, scratch[0], scratch[1]);
+				} else {
+					firstRadix2(frames, coefficients, scratch[0], scratch[1]);
+				}
+				stages(1, scratch[0], scratch[1], real, imaginary, real, imaginary, 1);
+
+			} else {
+
+				// sizes that are odd (or 1) just load the frames first
+				for (int i = 0; i < size; ++i) {
+					real[i] = load(frames, coefficients, i);
+					imaginary[i] = 0;
+				}
+				stages(0, real, imaginary, scratch[0], scratch[1], real, imaginary, 1);
+			}
+		}
+
+
+		// does a batch of FFTs at once, in place. Point i of transform b is at i * batch + b
+		void transformBatch(double[] real, double[] imaginary, int batch) {
+
+			if (batch == 1) {
+				transform(real, imaginary);
+				return;
+			}
+
+			if (convolutionSize > 0) {
+
+				// Bluestein's algorithm isn't done in batches, so each transform is taken out and done on its own
+				double[] oneReal = new double[size];
+				double[] oneImaginary = new double[size];
+				for (int b = 0; b < batch; ++b) {
+					for (int i = 0; i < size; ++i) {
+						oneReal[i] = real[i * batch + b];
+						oneImaginary[i] = imaginary[i * batch + b];
+					}
+					transform(oneReal, oneImaginary);
+					for (int i = 0; i < size; ++i) {
+						real[i * batch + b] = oneReal[i];
+						imaginary[i * batch + b] = oneImaginary[i];
+					}
+				}
+				return;
+			}
+
+			double[][] scratch = batchWork.get();
+			if (scratch == null || scratch[0].length < size * batch) {
+				scratch = new double[2][size * batch];
+				batchWork.set(scratch);
+			}
+
+			stages(0, real, imaginary, scratch[0], scratch[1], real, imaginary, batch);
+		}
+
+
+		// runs every stage from the one given onwards, reading from one pair of arrays and writing to the other.
+		// The input starts in x, and the result ends up in the real and imaginary arrays given (which must be
+		// either x or y). A batch of interleaved transforms is the same as starting with a stride of the batch
+		// size: the stages never mix points that are a stride apart, so each transform is done on its own, and
+		// the loop along the stride runs over the batch with the same twiddle factors
+		private void stages(int first, double[] xr, double[] xi, double[] yr, double[] yi, double[] real, double[] imaginary, int batch) {
+
+			// n is the length of the sub transforms still to be done, and stride the number of them
+			int n = size;
+			int stride = batch;
+			for (int f = 0; f < first; ++f) {
+				n /= factors[f];
+				stride *= factors[f];
+			}
+
+			for (int f = first; f < factors.length; ++f) {
+
+				int radix = factors[f];
+				int m = n / radix;
+
+				// the twiddle for this stage's sub transforms are every (size / n)th of the full table
+				int twiddleStep = size / n;
+
+				switch (radix) {
+				case 2:
+					radix2(xr, xi, yr, yi, m, stride, twiddleStep);
+					break;
+				case 3:
+					radix3(xr, xi, yr, yi, m, stride, twiddleStep);
+					break;
+				case 4:
+					radix4(xr, xi, yr, yi, m, stride, twiddleStep);
+					break;
+				default:
+					radix5(xr, xi, yr, yi, m, stride, twiddleStep);
+					break;
+				}
+
+				double[] swap = xr;
+				xr = yr;
+				yr = swap;
+				swap = xi;
+				xi = yi;
+				yi = swap;
+
+				n = m;
+				stride *= radix;
+			}
+
+			// the result is in whichever pair of arrays was written last
+			if (xr != real) {
+				System.arraycopy(xr, 0, real, 0, size * batch);
+				System.arraycopy(xi, 0, imaginary, 0, size * batch);
+			}
+		}
+
+
+		// returns frame i with the window on it, or 0 if it is in the padding past the end of the frames
+		private static double load(double[] frames, double[] coefficients, int i) {
+			return (i < frames.length) ? frames[i] * coefficients[i] : 0;
+		}
+
+
+		// the first radix 4 stage, loading the windowed frames as it goes. The first stage has a stride of 1, and
+		// as the input is real, a lot of the butterfly falls away
+		private void firstRadix4(double[] frames, double[] coefficients, double[] yr, double[] yi) {
+
+			int m = size / 4;
+
+			for (int p = 0; p < m; ++p) {
+
+				double a0 = load(frames, coefficients, p);
+				double a1 = load(frames, coefficients, p + m);
+				double a2 = load(frames, coefficients, p + 2 * m);
+				double a3 = load(frames, coefficients, p + 3 * m);
+
+				double s02 = a0 + a2, d02 = a0 - a2;
+				double s13 = a1 + a3, d13 = a3 - a1;
+
+				int out = 4 * p;
+				yr[out] = s02 + s13;
+				yi[out] = 0;
+
+				// b1 = d02 + i * d13, b2 = s02 - s13 and b3 = d02 - i * d13
+				double w1r = twiddleReal[p], w1i = twiddleImaginary[p];
+				double w2r = twiddleReal[2 * p], w2i = twiddleImaginary[2 * p];
+				double w3r = twiddleReal[3 * p], w3i = twiddleImaginary[3 * p];
+				double b2 = s02 - s13;
+
+				yr[out + 1] = d02 * w1r - d13 * w1i;
+				yi[out + 1] = d02 * w1i + d13 * w1r;
+				yr[out + 2] = b2 * w2r;
+				yi[out + 2] = b2 * w2i;
+				yr[out + 3] = d02 * w3r + d13 * w3i;
+				yi[out + 3] = d02 * w3i - d13 * w3r;
+			}
+		}
+
+
+		// the first radix 2 stage, loading the windowed frames as it goes
+		private void firstRadix2(double[] frames, double[] coefficients, double[] yr, double[] yi) {
+
+			int m = size / 2;
+
+			for (int p = 0; p < m; ++p) {
+
+				double a = load(frames, coefficients, p);
+				double b = load(frames, coefficients, p + m);
+				double d = a - b;
+
+				yr[2 * p] = a + b;
+				yi[2 * p] = 0;
+				yr[2 * p + 1] = d * twiddleReal[p];
+				yi[2 * p + 1] = d * twiddleImaginary[p];
+			}
+		}
+
+
+		// input point j of sub transform (p, q) is at q + stride * (p + j * m), and output k is written
+		// to q + stride * (radix * p + k), after being multiplied by the twiddle w^(p * k)
+		private void radix2(double[] xr, double[] xi, double[] yr, double[] yi, int m, int stride, int twiddleStep) {
+
+			for (int p = 0; p < m; ++p) {
+
+				double w1r = twiddleReal[p * twiddleStep], w1i = twiddleImaginary[p * twiddleStep];
+
+				for (int q = 0; q < stride; ++q) {
+
+					int in = q + stride * p;
+					int out = q + stride * 2 * p;
+
+					double ar = xr[in], ai = xi[in];
+					double br = xr[in + stride * m], bi = xi[in + stride * m];
+
+					yr[out] = ar + br;
+					yi[out] = ai + bi;
+
+					double dr = ar - br, di = ai - bi;
+					yr[out + stride] = dr * w1r - di * w1i;
+					yi[out + stride] = dr * w1i + di * w1r;
+				}
+			}
+		}
+
+
+		private void radix3(double[] xr, double[] xi, double[] yr, double[] yi, int m, int stride, int twiddleStep) {
+
+			// sin(2 * pi / 3)
+			final double s = 0.86602540378443864676;
+
+			for (int p = 0; p < m; ++p) {
+
+				double w1r = twiddleReal[p * twiddleStep], w1i = twiddleImaginary[p * twiddleStep];
+				double w2r = twiddleReal[2 * p * twiddleStep], w2i = twiddleImaginary[2 * p * twiddleStep];
+
+				for (int q = 0; q < stride; ++q) {
+
+					int in = q + stride * p;
+					int out = q + stride * 3 * p;
+					int jump = stride * m;
+
+					double a0r = xr[in], a0i = xi[in];
+					double a1r = xr[in + jump], a1i = xi[in + jump];
+					double a2r = xr[in + 2 * jump], a2i = xi[in + 2 * jump];
+
+					double tr = a1r + a2r, ti = a1i + a2i;
+					double mr = a0r - 0.5 * tr, mi = a0i - 0.5 * ti;
+
+					// -i * sin(2 * pi / 3) * (a1 - a2)
+					double nr = s * (a1i - a2i), ni = -s * (a1r - a2r);
+
+					yr[out] = a0r + tr;
+					yi[out] = a0i + ti;
+
+					double b1r = mr + nr, b1i = mi + ni;
+					double b2r = mr - nr, b2i = mi - ni;
+
+					yr[out + stride] = b1r * w1r - b1i * w1i;
+					yi[out + stride] = b1r * w1i + b1i * w1r;
+					yr[out + 2 * stride] = b2r * w2r - b2i * w2i;
+					yi[out + 2 * stride] = b2r * w2i + b2i * w2r;
+				}
+			}
+		}
+
+
+		private void radix4(double[] xr, double[] xi, double[] yr, double[] yi, int m, int stride, int twiddleStep) {
+
+			for (int p = 0; p < m; ++p) {
+
+				double w1r = twiddleReal[p * twiddleStep], w1i = twiddleImaginary[p * twiddleStep];
+				double w2r = twiddleReal[2 * p * twiddleStep], w2i = twiddleImaginary[2 * p * twiddleStep];
+				double w3r = twiddleReal[3 * p * twiddleStep], w3i = twiddleImaginary[3 * p * twiddleStep];
+
+				for (int q = 0; q < stride; ++q) {
+
+					int in = q + stride * p;
+					int out = q + stride * 4 * p;
+					int jump = stride * m;
+
+					double a0r = xr[in], a0i = xi[in];
+					double a1r = xr[in + jump], a1i = xi[in + jump];
+					double a2r = xr[in + 2 * jump], a2i = xi[in + 2 * jump];
+					double a3r = xr[in + 3 * jump], a3i = xi[in + 3 * jump];
+
+					double s02r = a0r + a2r, s02i = a0i + a2i;
+					double d02r = a0r - a2r, d02i = a0i - a2i;
+					double s13r = a1r + a3r, s13i = a1i + a3i;
+
+					// -i * (a1 - a3)
+					double d13r = a1i - a3i, d13i = a3r - a1r;
+
+					yr[out] = s02r + s13r;
+					yi[out] = s02i + s13i;
+
+					double b1r = d02r + d13r, b1i = d02i + d13i;
+					double b2r = s02r - s13r, b2i = s02i - s13i;
+					double b3r = d02r - d13r, b3i = d02i - d13i;
+
+					yr[out + stride] = b1r * w1r - b1i * w1i;
+					yi[out + stride] = b1r * w1i + b1i * w1r;
+					yr[out + 2 * stride] = b2r * w2r - b2i * w2i;
+					yi[out + 2 * stride] = b2r * w2i + b2i * w2r;
+					yr[out + 3 * stride] = b3r * w3r - b3i * w3i;
+					yi[out + 3 * stride] = b3r * w3i + b3i * w3r;
+				}
+			}
+		}
+
+
+		private void radix5(double[] xr, double[] xi, double[] yr, double[] yi, int m, int stride, int twiddleStep) {
+
+			// cos and sin of 2 * pi / 5 and 4 * pi / 5
+			final double c1 = 0.30901699437494742410, s1 = 0.95105651629515357212;
+			final double c2 = -0.80901699437494742410, s2 = 0.58778525229247312917;
+
+			for (int p = 0; p < m; ++p) {
+
+				int t = p * twiddleStep;
+
+				for (int q = 0; q < stride; ++q) {
+
+					int in = q + stride * p;
+					int out = q + stride * 5 * p;
+					int jump = stride * m;
+
+					double a0r = xr[in], a0i = xi[in];
+					double a1r = xr[in + jump], a1i = xi[in + jump];
+					double a2r = xr[in + 2 * jump], a2i = xi[in + 2 * jump];
+					double a3r = xr[in + 3 * jump], a3i = xi[in + 3 * jump];
+					double a4r = xr[in + 4 * jump], a4i = xi[in + 4 * jump];
+
+					double t1r = a1r + a4r, t1i = a1i + a4i;
+					double t2r = a2r + a3r, t2i = a2i + a3i;
+					double t3r = a1r - a4r, t3i = a1i - a4i;
+					double t4r = a2r - a3r, t4i = a2i - a3i;
+
+					yr[out] = a0r + t1r + t2r;
+					yi[out] = a0i + t1i + t2i;
+
+					double m1r = a0r + c1 * t1r + c2 * t2r, m1i = a0i + c1 * t1i + c2 * t2i;
+					double m2r = a0r + c2 * t1r + c1 * t2r, m2i = a0i + c2 * t1i + c1 * t2i;
+
+					// -i * (s1 * t3 + s2 * t4) and -i * (s2 * t3 - s1 * t4)
+					double n1r = s1 * t3i + s2 * t4i, n1i = -(s1 * t3r + s2 * t4r);
+					double n2r = s2 * t3i - s1 * t4i, n2i = -(s2 * t3r - s1 * t4r);
+
+					double b1r = m1r + n1r, b1i = m1i + n1i;
+					double b2r = m2r + n2r, b2i = m2i + n2i;
+					double b3r = m2r - n2r, b3i = m2i - n2i;
+					double b4r = m1r - n1r, b4i = m1i - n1i;
+
+					double wr = twiddleReal[t], wi = twiddleImaginary[t];
+					yr[out + stride] = b1r * wr - b1i * wi;
+					yi[out + stride] = b1r * wi + b1i * wr;
+
+					wr = twiddleReal[2 * t];
+					wi = twiddleImaginary[2 * t];
+					yr[out + 2 * stride] = b2r * wr - b2i * wi;
+					yi[out + 2 * stride] = b2r * wi + b2i * wr;
+
+					wr = twiddleReal[3 * t];
+					wi = twiddleImaginary[3 * t];
+					yr[out + 3 * stride] = b3r * wr - b3i * wi;
+					yi[out + 3 * stride] = b3r * wi + b3i * wr;
+
+					wr = twiddleReal[4 * t];
+					wi = twiddleImaginary[4 * t];
+					yr[out + 4 * stride] = b4r * wr - b4i * wi;
+					yi[out + 4 * stride] = b4r * wi + b4i * wr;
+				}
+			}
+		}
+
+
+		// X[k] = chirp[k] * sum of (x[n] * chirp[n]) * conj(chirp[k - n]), which is a convolution.
+		// If frames are given, the input is the windowed frames rather than the real and imaginary arrays
+		private void bluestein(double[] real, double[] imaginary, double[] frames, double[] coefficients) {
+
+			double[][] scratch = work.get();
+			double[] ar = scratch[0], ai = scratch[1];
+			int m = convolutionSize;
+
+			if (frames != null) {
+				for (int n = 0; n < size; ++n) {
+					double x = load(frames, coefficients, n);
+					ar[n] = x * chirpReal[n];
+					ai[n] = x * chirpImaginary[n];
+				}
+			} else {
+				for (int n = 0; n < size; ++n) {
+					ar[n] = real[n] * chirpReal[n] - imaginary[n] * chirpImaginary[n];
+					ai[n] = real[n] * chirpImaginary[n] + imaginary[n] * chirpReal[n];
+				}
+			}
+			for (int n = size; n < m; ++n) {
+				ar[n] = 0;
+				ai[n] = 0;
+			}
+
+			convolutionPlan.transform(ar, ai);
+
+			// multiply by the filter, and conjugate so the forward FFT does the inverse FFT
+			for (int k = 0; k < m; ++k) {
+				double pr = ar[k] * filterReal[k] - ai[k] * filterImaginary[k];
+				double pi = ar[k] * filterImaginary[k] + ai[k] * filterReal[k];
+				ar[k] = pr;
+				ai[k] = -pi;
+			}
+
+			convolutionPlan.transform(ar, ai);
+
+			// conjugate back, scale the inverse FFT and multiply by the chirp
+			for (int k = 0; k < size; ++k) {
+				double cr = ar[k] / m;
+				double ci = -ai[k] / m;
+				real[k] = cr * chirpReal[k] - ci * chirpImaginary[k];
+				imaginary[k] = cr * chirpImaginary[k] + ci * chirpReal[k];
+			}
+		}
+	}
+
+}
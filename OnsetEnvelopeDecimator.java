@@ -0,0 +1,123 @@
+package audio;
+
+/**
+ * Turns the denoised impulses of every window into a slower onset envelope for working out the tempo.
+ * The tempo doesn't need anywhere near the resolution of the audio hop (a 3 millisecond hop gives over 300
+ * windows a second), but everything in the tempo stage costs more the more windows there are in the interval.
+ * Instead, the windows are put into blocks of a fixed number of windows and each block becomes one sample of
+ * the envelope.
+ *
+ * Simply averaging each block (or taking every nth window) doesn't work well for impulse data. Most windows
+ * are zero and an onset may only be a window or two long, so an average smears it out into a small bump and
+ * taking every nth window misses it completely. Each sample therefore takes the largest impulse in its block
+ * (a max hold), which keeps the full strength of every onset, no matter where in the block it falls. The
+ * volume given alongside each sample is the volume of the window the largest impulse was found in, as this
+ * is the window the beat tracker would have looked at.
+ * If the number of windows per sample is 1, every window is passed straight through
+ */
+public class OnsetEnvelopeDecimator {
+
+	// the number of windows that go into each sample
+	private final int windowsPerSample;
+
+	// the number of windows that have gone into the current block
+	private int windowsInBlock = 0;
+
+	// the largest impulse in the current block, the volume of the window it was in and the window it was in
+	private double blockImpulse = 0;
+	private double blockVolume = 0;
+	private int blockPeakWindow = 0;
+
+	// the last sample finished
+	private double sampleImpulse = 0;
+	private double sampleVolume = 0;
+	private int samplePeakWindow = 0;
+
+
+	/**
+	 * Creates a decimator that puts the number of windows given into each sample
+	 * @param windowsPerSample the number of windows in each sample of the envelope
+	 * @throws IllegalArgumentException if the number of windows per sample is not above 0
+	 */
+	public OnsetEnvelopeDecimator(int windowsPerSample) {
+
+		if (windowsPerSample < 1) {
+			throw new IllegalArgumentException("The number of windows per sample should be above 0, not " + windowsPerSample);
+		}
+
+		this.windowsPerSample = windowsPerSample;
+	}
+
+
+	/**
+	 * Adds the next window to the current block. Once the block is full, it becomes a new sample, which can
+	 * then be read with the getters
+	 * @param windowIndex the index of the window
+	 * @param impulse the denoised impulse of the window
+	 * @param volume the volume of the window
+	 * @return true if the window finished a block and there is a new sample, false otherwise
+	 */
+	public boolean add(int windowIndex, double impulse, double volume) {
+
+		// the first window of a block, or any window with a larger impulse, becomes the peak of the block.
+		// On a tie, the newer window is kept, just as the beat tracker does when it looks for impulses
+		if (windowsInBlock == 0 || impulse >= blockImpulse) {
+			blockImpulse = impulse;
+			blockVolume = volume;
+			blockPeakWindow = windowIndex;
+		}
+
+		++windowsInBlock;
+
+		if (windowsInBlock < windowsPerSample) {
+			return false;
+		}
+
+		// the block is full, so it becomes the newest sample
+		sampleImpulse = blockImpulse;
+		sampleVolume = blockVolume;
+		samplePeakWindow = blockPeakWindow;
+
+		windowsInBlock = 0;
+
+		return true;
+	}
+
+
+	/**
+	 * Returns the impulse of the last sample finished, which is the largest impulse in its block
+	 * @return the impulse of the sample
+	 */
+	public double getImpulse() {
+		return sampleImpulse;
+	}
+
+
+	/**
+	 * Returns the volume of the last sample finished, which is the volume of the window the largest impulse
+	 * in the block was found in
+	 * @return the volume of the sample
+	 */
+	public double getVolume() {
+		return sampleVolume;
+	}
+
+
+	/**
+	 * Returns the window the largest impulse of the last sample finished was found in
+	 * @return the window index of the peak
+	 */
+	public int getPeakWindow() {
+		return samplePeakWindow;
+	}
+
+
+	/**
+	 * Returns the number of windows that go into each sample
+	 * @return the windows per sample
+	 */
+	public int getWindowsPerSample() {
+		return windowsPerSample;
+	}
+
+}
@@ -0,0 +1,171 @@
+package audio;
+
+/**
+ * Lowers the sample rate of a stream of mono audio by a whole number factor, before it is given to the FFT.
+ * The beat tracker only looks at the lower frequencies of each window, so there is no point working out an
+ * FFT of the audio at its full rate. After decimating by a factor of 4, a 4 times smaller FFT gives the same
+ * frequency resolution.
+ *
+ * Before samples are thrown away, the audio has to be low pass filtered to get rid of anything above the new
+ * Nyquist frequency, otherwise it would fold back down (alias) onto the frequencies we want. The filter is a
+ * windowed sinc FIR filter with a Blackman window, cutting off at 75% of the new Nyquist frequency. With the
+ * default 48 taps per branch, it is down by over 80 dB from the new Nyquist frequency upwards, and loses
+ * less than 0.1 dB at two thirds of it. The impulse only uses the lowest third of the new sample rate (which
+ * is two thirds of the new Nyquist frequency), so nothing folds back onto it and none of it is cut off.
+ *
+ * Rather than filtering every sample and then throwing most of them away, the filter is split into one branch
+ * per phase of the factor (a polyphase filter). Branch p holds the taps p, p + factor, p + 2 * factor and so on,
+ * and only ever sees the input samples that line up with those taps. An output is only worked out once every
+ * factor samples, and each input sample is only multiplied by the taps it actually meets. This makes it
+ * factor times cheaper than filtering the full rate signal.
+ *
+ * The decimator is streaming: samples can be given to it in chunks of any size, and it carries on where the
+ * last chunk finished. The filter delays the audio by half its length (in input samples)
+ */
+public class PolyphaseDecimator {
+
+	// the number of input samples for every output sample
+	private final int factor;
+
+	// the number of taps in each branch
+	private final int tapsPerBranch;
+
+	// the taps of each branch. [p][q] is tap p + q * factor of the full filter
+	private final double[][] branches;
+
+	// the recent input samples seen by each branch, as a ring. [p][q]
+	private final double[][] history;
+
+	// where the newest sample is in the history of each branch
+	private final int[] newest;
+
+	// which input sample (of the factor) is coming next
+	private int phase = 0;
+
+
+	/**
+	 * Creates a decimator with 48 taps for each branch of the filter
+	 * @param factor the number of input samples for every output sample
+	 */
+	public PolyphaseDecimator(int factor) {
+		this(factor, 48);
+	}
+
+
+	/**
+	 * Creates a decimator. The more taps there are, the sharper the filter is, but the more it costs
+	 * @param factor the number of input samples for every output sample
+	 * @param tapsPerBranch the number of taps in each branch. The full filter has factor * tapsPerBranch taps
+	 * @throws IllegalArgumentException if the factor or taps per branch are not above 0
+	 */
+	public PolyphaseDecimator(int factor, int tapsPerBranch) {
+
+		if (factor < 1 || tapsPerBranch < 1) {
+			throw new IllegalArgumentException("The factor (" + factor + ") and taps per branch (" + tapsPerBranch + ") should both be above 0");
+		}
+
+		this.factor = factor;
+		this.tapsPerBranch = tapsPerBranch;
+
+		branches = new double[factor][tapsPerBranch];
+		history = new double[factor][tapsPerBranch];
+		newest = new int[factor];
+
+		// design the full filter, a windowed sinc cutting off at 75% of the new Nyquist frequency.
+		// The cut off is in cycles per input sample
+		int length = factor * tapsPerBranch;
+		double cutOff = 0.375 / factor;
+		double middle = (length - 1) / 2.0;
+		double[] taps = new double[length];
+		double total = 0;
+
+		for (int k = 0; k < length; ++k) {
+
+			double x = k - middle;
+			double sinc = (x == 0) ? 2 * cutOff : Math.sin(2 * Math.PI * cutOff * x) / (Math.PI * x);
+
+			// the window is worked out over one more point than the filter so the ends aren't 0
+			double w = 2 * Math.PI * (k + 1) / (length + 1);
+			double blackman = 0.42 - 0.5 * Math.cos(w) + 0.08 * Math.cos(2 * w);
+
+			taps[k] = sinc * blackman;
+			total += taps[k];
+		}
+
+		// make sure the filter doesn't change the level of the lower frequencies, and split it up into
+		// its branches
+		for (int k = 0; k < length; ++k) {
+			branches[k % factor][k / factor] = taps[k] / total;
+		}
+	}
+
+
+	/**
+	 * Filters and decimates the next chunk of audio. If the chunk is a multiple of the factor in length,
+	 * the output will always be the length of the chunk divided by the factor
+	 * @param input the next mono samples of the audio
+	 * @return the decimated samples that could be worked out from the audio given so far
+	 */
+	public int[] process(int[] input) {
+
+		// work out how many outputs this chunk will finish. An output is finished on every sample
+		// where the phase comes back round to 0, the first of which is this many samples in
+		int firstOutput = (factor - phase) % factor;
+		int outputs = (input.length - 1 - firstOutput + factor) / factor;
+
+		int[] output = new int[outputs];
+		int outputIndex = 0;
+
+		for (int i = 0; i < input.length; ++i) {
+
+			// each sample goes to the branch whose taps it meets. Phase 0 is the sample an output is worked
+			// out on, and the samples leading up to it go to the branches in reverse order
+			int branch = (phase == 0) ? 0 : factor - phase;
+
+			newest[branch] = (newest[branch] + 1) % tapsPerBranch;
+			history[branch][newest[branch]] = input[i];
+
+			if (branch == 0) {
+				output[outputIndex] = (int) Math.round(filter());
+				++outputIndex;
+			}
+
+			phase = (phase + 1) % factor;
+		}
+
+		return output;
+	}
+
+
+	/**
+	 * Returns the number of input samples for every output sample
+	 * @return the decimation factor
+	 */
+	public int getFactor() {
+		return factor;
+	}
+
+
+	// works out the output of the filter from the history of every branch
+	private double filter() {
+
+		double sum = 0;
+
+		for (int p = 0; p < factor; ++p) {
+
+			double[] taps = branches[p];
+			double[] samples = history[p];
+
+			// the newest sample in the branch meets the first tap of the branch, the one before it the second
+			// and so on
+			int place = newest[p];
+			for (int q = 0; q < tapsPerBranch; ++q) {
+				sum += taps[q] * samples[place];
+				place = (place == 0) ? tapsPerBranch - 1 : place - 1;
+			}
+		}
+
+		return sum;
+	}
+
+}
@@ -0,0 +1,198 @@
+package audio;
+
+import java.util.Random;
+
+import fourier.SignalProcessor;
+import rollingmemory.RollingArrayMemory;
+import rollingmemory.RollingDoubleMemory;
+
+/**
+ * Compares the single precision (float) pipeline with the double one, to check the floats don't change the
+ * beats found. The made up track of FilterbankOnsetTester (noise, a held chord, and kick drums at known
+ * times) is run through the FFT front-end twice, the way Illumaxate does with singlePrecision off and on:
+ * the spectrum of every window goes into a rolling array memory, the impulse is found from it and the
+ * previous spectrum, and the impulses, denoised impulses and volumes go into rolling double memories. In the
+ * second run all of these are floats.
+ * It prints out:
+ * - the largest difference between the log spectra, and between the impulses (relative to the largest impulse),
+ * - the onsets each run finds (where the denoised impulse rises from zero), how many are in exactly the same
+ * window, and the furthest apart any are,
+ * - the F-measure of each against the kick times,
+ * - the tempo (in windows between beats) the beat tracker finds from every interval of each, and the largest
+ * difference between them,
+ * - the time per hop of each.
+ * The floats are only said to agree if every onset is within onsetTolerance windows, and every tempo within
+ * tempoTolerance windows, of the double ones
+ * @see FilterbankOnsetTester
+ */
+public class PrecisionTester {
+
+	// an onset in the float run is allowed to be this many windows from its onset in the double run
+	static final int onsetTolerance = 1;
+
+	// and a tempo this many windows between beats from its double tempo
+	static final double tempoTolerance = 0.5;
+
+	// the same beat settings as Illumaxate uses by default
+	static final int expectedBPM = 130;
+	static final int numOfBeatsInInterval = 7;
+
+	public static void main(String[] args) {
+
+		Random random = new Random(48);
+
+		int windowSizeInFrames = (int) (FilterbankOnsetTester.sampleRate / FilterbankOnsetTester.minFrequency);
+		int hopInFrames = (int) (FilterbankOnsetTester.sampleRate * FilterbankOnsetTester.hopMillis / 1000);
+		int windowsInMovAverage = (int) (FilterbankOnsetTester.movingAverageMillis / FilterbankOnsetTester.hopMillis);
+		double expectedWindowsBetweenBeats = 60000.0 / expectedBPM / FilterbankOnsetTester.hopMillis;
+		int windowsInInterval = (int) (expectedWindowsBetweenBeats * numOfBeatsInInterval);
+
+		int numOfKicks = 0;
+		double[] kickTimes = new double[(int) (FilterbankOnsetTester.trackSeconds * 4) + 1];
+		for (double time = 500; time < FilterbankOnsetTester.trackSeconds * 1000 - 500; time += 250 + 420 * random.nextDouble()) {
+			kickTimes[numOfKicks++] = time;
+		}
+
+		int[] track = FilterbankOnsetTester.makeTrack(kickTimes, numOfKicks, random);
+		int numOfHops = (track.length - windowSizeInFrames) / hopInFrames;
+
+		double[][] impulses = new double[2][];
+		double[][] denoised = new double[2][];
+		double[][] tempos = new double[2][];
+		double[][] lastSpectra = new double[2][];
+		double[] fMeasures = new double[2];
+		double[] micros = new double[2];
+
+		for (int pass = 0; pass < 2; ++pass) {
+
+			boolean single = pass == 1;
+
+			SignalProcessor signalProcess = new SignalProcessor(windowSizeInFrames, false, single);
+			RollingArrayMemory spectra = new RollingArrayMemory(signalProcess.getFFTSize(), 16, single);
+			RollingDoubleMemory impulseMemory = new RollingDoubleMemory(windowsInMovAverage, single);
+			RollingDoubleMemory denoisedMemory = new RollingDoubleMemory(numOfHops, single);
+			RollingDoubleMemory volumeMemory = new RollingDoubleMemory(numOfHops, single);
+			BeatTracker tracker = new BeatTracker(windowsInMovAverage, expectedWindowsBetweenBeats, numOfBeatsInInterval,
+					denoisedMemory, volumeMemory, windowsInInterval);
+
+			impulses[pass] = new double[numOfHops];
+			denoised[pass] = new double[numOfHops];
+			int[] window = new int[windowSizeInFrames];
+
+			long startTime = System.nanoTime();
+			for (int h = 0; h < numOfHops; ++h) {
+
+				System.arraycopy(track, h * hopInFrames, window, 0, windowSizeInFrames);
+
+				double impulse;
+				if (single) {
+					float[] spectrum = signalProcess.blackmanHarrisFFT(window, true, spectra.getWritableFloatRow());
+					spectra.commitRow();
+					impulse = (h == 0) ? 0 : tracker.getImpulse(spectrum, spectra.getFloatArrayPointer(h - 1));
+				} else {
+					double[] spectrum = signalProcess.blackmanHarrisFFT(window, true, spectra.getWritableRow());
+					spectra.commitRow();
+					impulse = (h == 0) ? 0 : tracker.getImpulse(spectrum, spectra.getArrayPointer(h - 1));
+				}
+
+				impulseMemory.addDouble(impulse);
+				volumeMemory.addDouble(tracker.getRMSVolume(window));
+				denoisedMemory.addDouble(tracker.trailedMovingAverage(
+						impulseMemory.getDoubleArray(h - windowsInMovAverage + 1, windowsInMovAverage)));
+
+				impulses[pass][h] = impulseMemory.getDouble(h);
+			}
+			micros[pass] = (System.nanoTime() - startTime) / (numOfHops * 1000.0);
+
+			lastSpectra[pass] = spectra.getArrayCopy(numOfHops - 1);
+			denoised[pass] = denoisedMemory.getDoubleArray(0, numOfHops);
+			fMeasures[pass] = FilterbankOnsetTester.fMeasure(FilterbankOnsetTester.makeTracker(windowsInMovAverage), impulses[pass],
+					windowsInMovAverage, windowSizeInFrames, hopInFrames, kickTimes, numOfKicks);
+
+			// the tempo of every interval, a second apart
+			int intervalsApart = (int) (1000 / FilterbankOnsetTester.hopMillis);
+			tempos[pass] = new double[(numOfHops - windowsInInterval) / intervalsApart];
+			for (int i = 0; i < tempos[pass].length; ++i) {
+				int first = i * intervalsApart;
+				tempos[pass][i] = tracker.trackBeat(denoisedMemory.getDoubleArray(first, windowsInInterval),
+						volumeMemory.getDoubleArray(first, windowsInInterval))[0];
+			}
+		}
+
+		// -------
+		// spectra
+		// -------
+		double spectrumError = 0;
+		for (int k = 0; k < lastSpectra[0].length; ++k) {
+			spectrumError = Math.max(spectrumError, Math.abs(lastSpectra[0][k] - lastSpectra[1][k]));
+		}
+
+		double largestImpulse = 0;
+		double impulseError = 0;
+		for (int h = 0; h < numOfHops; ++h) {
+			largestImpulse = Math.max(largestImpulse, impulses[0][h]);
+			impulseError = Math.max(impulseError, Math.abs(impulses[0][h] - impulses[1][h]));
+		}
+
+		// ------
+		// onsets
+		// ------
+		int[] doubleOnsets = onsets(denoised[0]);
+		int[] floatOnsets = onsets(denoised[1]);
+		int same = 0;
+		int furthest = 0;
+		boolean onsetsAgree = doubleOnsets.length == floatOnsets.length;
+		for (int i = 0; i < Math.min(doubleOnsets.length, floatOnsets.length); ++i) {
+			int apart = Math.abs(doubleOnsets[i] - floatOnsets[i]);
+			if (apart == 0) {
+				++same;
+			}
+			furthest = Math.max(furthest, apart);
+		}
+		onsetsAgree &= furthest <= onsetTolerance;
+
+		// ------
+		// tempos
+		// ------
+		double tempoError = 0;
+		for (int i = 0; i < tempos[0].length; ++i) {
+			tempoError = Math.max(tempoError, Math.abs(tempos[0][i] - tempos[1][i]));
+		}
+		boolean temposAgree = tempoError <= tempoTolerance;
+
+		System.out.println(numOfHops + " hops of " + FilterbankOnsetTester.hopMillis + " milliseconds, " + numOfKicks + " kicks");
+		System.out.format("Largest difference in the log spectrum: %.2e\n", spectrumError);
+		System.out.format("Largest difference in the impulse: %.2e (%.2e of the largest impulse)\n", impulseError, impulseError / largestImpulse);
+		System.out.format("Onsets: %d in double, %d in float, %d in exactly the same window, furthest apart %d windows\n",
+				doubleOnsets.length, floatOnsets.length, same, furthest);
+		System.out.format("F-measure: %.3f in double, %.3f in float\n", fMeasures[0], fMeasures[1]);
+		System.out.format("Tempo of %d intervals: largest difference %.3f windows between beats\n", tempos[0].length, tempoError);
+		System.out.format("Time per hop: %.2f microseconds in double, %.2f in float\n", micros[0], micros[1]);
+		System.out.println((onsetsAgree && temposAgree) ? "The float pipeline agrees with the double pipeline"
+				: "THE FLOAT PIPELINE DOES NOT AGREE WITH THE DOUBLE PIPELINE");
+	}
+
+
+	// returns the windows where the denoised impulse rises from zero, with no onset within the refractory
+	// time of the last one, as FilterbankOnsetTester counts them
+	static int[] onsets(double[] denoised) {
+
+		int refractoryWindows = (int) (FilterbankOnsetTester.refractoryMillis / FilterbankOnsetTester.hopMillis);
+
+		int[] found = new int[denoised.length];
+		int count = 0;
+		int last = -refractoryWindows;
+
+		for (int h = 1; h < denoised.length; ++h) {
+			if (denoised[h] > 0 && denoised[h - 1] <= 0 && h - last >= refractoryWindows) {
+				found[count++] = h;
+				last = h;
+			}
+		}
+
+		int[] onsets = new int[count];
+		System.arraycopy(found, 0, onsets, 0, count);
+		return onsets;
+	}
+
+}
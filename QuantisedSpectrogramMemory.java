@@ -0,0 +1,326 @@
+package rollingmemory;
+
+/**
+ * A rolling array memory for spectrograms, which only keeps the most recent rows at full precision and
+ * keeps every older row quantised to 8 or 16 bits.
+ * A spectrogram is mostly kept to be looked back over (drawn on the screen), and nothing needs more than an
+ * 8 or 16 bit value to draw a pixel. Only the most recent row, and the one before it (which the impulse is
+ * found from), are used for any working out. So the last FULL_PRECISION_ROWS rows are kept in an ordinary
+ * rolling array memory, and as each row is committed it is also quantised into the history, which holds all
+ * the rows this memory stores.
+ * Each row is quantised with its own offset and step: the offset is the smallest value in the row, the step
+ * is the range of the row split into 255 (or 65535) steps, and each value is kept as the number of steps it
+ * is above the offset, rounded to the nearest step. So every value read back from the history is within half
+ * a step of the value added, and a row with a small range is kept as accurately as a row with a large one.
+ * The history takes 1 byte (or 2 bytes) for each value, rather than the 8 of a double (or 4 of a float), so
+ * a long history takes 4 to 8 times less memory than it would in a RollingArrayMemory.
+ * This is a RollingArrayMemory in every other way, and can be used anywhere one is. The values in the rows
+ * must be finite for them to be quantised. A row read with getArrayPointer (or getFloatArrayPointer) from the
+ * history is worked out into an array kept for this, which is written over by the next call
+ * @see RollingArrayMemory
+ */
+public class QuantisedSpectrogramMemory extends RollingArrayMemory {
+
+	/**
+	 * The number of most recent rows that are kept at full precision
+	 */
+	public static final int FULL_PRECISION_ROWS = 2;
+
+	// the number of rows in the history, the number of values in each row, and the bits each value is kept in
+	private final int historyRows;
+	private final int historyColumns;
+	private final int bits;
+
+	// the quantised rows. Only one of these is used, depending on the bits
+	private byte[][] history8;
+	private short[][] history16;
+
+	// the offset and step of each row in the history
+	private final double[] offsets;
+	private final double[] steps;
+
+	// the rows getArrayPointer and getFloatArrayPointer work a row of the history out into
+	private final double[] pointerRow;
+	private float[] floatPointerRow;
+
+
+	/**
+	 * Creates a quantised spectrogram memory of the requested sizes
+	 * @param arraySize the size of the arrays that are going to be temporarily stored
+	 * @param numberOfArraysToStore the amount of arrays to be stored at any one time, at least FULL_PRECISION_ROWS
+	 * @param bits the number of bits each value older than the full precision rows is kept in, 8 or 16
+	 * @throws IllegalArgumentException if the bits are not 8 or 16, or there are fewer arrays to store than
+	 * FULL_PRECISION_ROWS
+	 */
+	public QuantisedSpectrogramMemory(int arraySize, int numberOfArraysToStore, int bits) {
+		this(arraySize, numberOfArraysToStore, bits, false);
+	}
+
+
+	/**
+	 * Creates a quantised spectrogram memory of the requested sizes, which can keep its full precision rows
+	 * as floats rather than doubles, as a single precision RollingArrayMemory does
+	 * @param arraySize the size of the arrays that are going to be temporarily stored
+	 * @param numberOfArraysToStore the amount of arrays to be stored at any one time, at least FULL_PRECISION_ROWS
+	 * @param bits the number of bits each value older than the full precision rows is kept in, 8 or 16
+	 * @param singlePrecision true to keep the full precision rows as floats
+	 * @throws IllegalArgumentException if the bits are not 8 or 16, or there are fewer arrays to store than
+	 * FULL_PRECISION_ROWS
+	 */
+	public QuantisedSpectrogramMemory(int arraySize, int numberOfArraysToStore, int bits, boolean singlePrecision) {
+
+		// the full precision rows are an ordinary rolling array memory
+		super(arraySize, FULL_PRECISION_ROWS, singlePrecision);
+
+		if (bits != 8 && bits != 16) {
+			throw new IllegalArgumentException("A quantised spectrogram memory keeps its values in 8 or 16 bits, not " + bits);
+		}
+		if (numberOfArraysToStore < FULL_PRECISION_ROWS) {
+			throw new IllegalArgumentException("A quantised spectrogram memory has to store at least " + FULL_PRECISION_ROWS
+					+ " arrays, not " + numberOfArraysToStore);
+		}
+
+		historyRows = numberOfArraysToStore;
+		historyColumns = arraySize;
+		this.bits = bits;
+
+		if (bits == 8) {
+			history8 = new byte[historyRows][historyColumns];
+		} else {
+			history16 = new short[historyRows][historyColumns];
+		}
+
+		offsets = new double[historyRows];
+		steps = new double[historyRows];
+		pointerRow = new double[historyColumns];
+	}
+
+
+	/**
+	 * Method for adding the row got from getWritableRow (or getWritableFloatRow) to the memory, once it has
+	 * been written. The row is kept at full precision until FULL_PRECISION_ROWS more rows have been added,
+	 * and it is quantised into the history now
+	 * Synchronised with other methods in this object to make the memory thread safe
+	 * @throws IllegalArgumentException if getWritableRow hasn't been called since the last row was added
+	 * @see RollingArrayMemory#commitRow
+	 */
+	@Override
+	synchronized public void commitRow() {
+
+		super.commitRow();
+
+		int index = getLastAddedIndex();
+		quantise(super.getArrayPointer(index), Math.floorMod(index, historyRows));
+
+	}
+
+
+	// quantises a row into a row of the history
+	private void quantise(double[] row, int historyIndex) {
+
+		// the offset is the smallest value, and the range is split into as many steps as the bits can count
+		double min = row[0];
+		double max = row[0];
+		for (int i = 1; i < historyColumns; ++i) {
+			min = Math.min(min, row[i]);
+			max = Math.max(max, row[i]);
+		}
+
+		int levels = (1 << bits) - 1;
+		double step = (max - min) / levels;
+
+		offsets[historyIndex] = min;
+		steps[historyIndex] = step;
+
+		// a flat row is all at the offset
+		double perStep = (step > 0) ? 1 / step : 0;
+
+		if (bits == 8) {
+			byte[] quantised = history8[historyIndex];
+			for (int i = 0; i < historyColumns; ++i) {
+				quantised[i] = (byte) (int) ((row[i] - min) * perStep + 0.5);
+			}
+		} else {
+			short[] quantised = history16[historyIndex];
+			for (int i = 0; i < historyColumns; ++i) {
+				quantised[i] = (short) (int) ((row[i] - min) * perStep + 0.5);
+			}
+		}
+
+	}
+
+
+	// works a row of the history back out into the array given
+	private void dequantise(int historyIndex, double[] row) {
+
+		double offset = offsets[historyIndex];
+		double step = steps[historyIndex];
+
+		if (bits == 8) {
+			byte[] quantised = history8[historyIndex];
+			for (int i = 0; i < historyColumns; ++i) {
+				row[i] = offset + (quantised[i] & 0xFF) * step;
+			}
+		} else {
+			short[] quantised = history16[historyIndex];
+			for (int i = 0; i < historyColumns; ++i) {
+				row[i] = offset + (quantised[i] & 0xFFFF) * step;
+			}
+		}
+
+	}
+
+
+	/**
+	 * Method for retrieving a copy of an array (row) from the memory. The most recent rows are exact, and
+	 * older rows are within half a quantisation step of the row added
+	 * Synchronised with other methods in this object to make the memory thread safe
+	 * @param requestedIndex the index of the array wanted from this temporary memory
+	 * @return a copy of the array in memory at the index requested
+	 * @throws IllegalArgumentException if the requested array index has been overwritten or not yet written
+	 * @see getMaxError
+	 */
+	@Override
+	synchronized public double[] getArrayCopy(int requestedIndex) {
+
+		if (isFullPrecision(requestedIndex)) {
+			return super.getArrayCopy(requestedIndex);
+		}
+
+		double[] readRow = new double[historyColumns];
+		dequantise(historyIndex(requestedIndex), readRow);
+		return readRow;
+
+	}
+
+
+	/**
+	 * Method for quickly retrieving a pointer to an array (row) in the memory, with the same warnings as
+	 * RollingArrayMemory's getArrayPointer. A row older than the full precision rows is worked out into an
+	 * array kept for this, which is written over by the next call
+	 * @param requestedIndex the index of the array wanted from this temporary memory
+	 * @return the array in memory at the index requested
+	 * @throws IllegalArgumentException if the requested array index has been overwritten or not yet written
+	 * @see RollingArrayMemory#getArrayPointer
+	 */
+	@Override
+	synchronized public double[] getArrayPointer(int requestedIndex) {
+
+		if (isFullPrecision(requestedIndex)) {
+			return super.getArrayPointer(requestedIndex);
+		}
+
+		dequantise(historyIndex(requestedIndex), pointerRow);
+		return pointerRow;
+
+	}
+
+
+	/**
+	 * The float equivalent of getArrayPointer, for a memory with single precision full precision rows
+	 * @param requestedIndex the index of the array wanted from this temporary memory
+	 * @return the float array in memory at the index requested
+	 * @throws IllegalArgumentException if the requested array index has been overwritten or not yet written,
+	 * or this memory is not single precision
+	 * @see RollingArrayMemory#getFloatArrayPointer
+	 */
+	@Override
+	synchronized public float[] getFloatArrayPointer(int requestedIndex) {
+
+		if (isFullPrecision(requestedIndex) || !isSinglePrecision()) {
+			// this also throws the error if this memory is not single precision
+			return super.getFloatArrayPointer(requestedIndex);
+		}
+
+		if (floatPointerRow == null) {
+			floatPointerRow = new float[historyColumns];
+		}
+
+		dequantise(historyIndex(requestedIndex), pointerRow);
+		for (int i = 0; i < historyColumns; ++i) {
+			floatPointerRow[i] = (float) pointerRow[i];
+		}
+		return floatPointerRow;
+
+	}
+
+
+	/**
+	 * Returns the largest amount any value of a row can be out by, which is half the step it was quantised
+	 * with, or 0 if the row is still kept at full precision
+	 * Synchronised with other methods in this object to make the memory thread safe
+	 * @param requestedIndex the index of the array
+	 * @return the largest error of any value in the row
+	 * @throws IllegalArgumentException if the requested array index has been overwritten or not yet written
+	 */
+	synchronized public double getMaxError(int requestedIndex) {
+
+		if (isFullPrecision(requestedIndex)) {
+			return 0;
+		}
+
+		return steps[historyIndex(requestedIndex)] / 2;
+
+	}
+
+
+	// true if the row is one of the rows still kept at full precision
+	private boolean isFullPrecision(int requestedIndex) {
+		return requestedIndex >= super.getMinIndexAvailable() && requestedIndex <= getLastAddedIndex();
+	}
+
+
+	// finds the row of the history an index is kept in, throwing an error if it isn't there. Until the history
+	// has wrapped, the indexes below 0 are in range (as they are in a RollingArrayMemory) and land on rows no
+	// row has been quantised into yet, whose offset and step are 0, so they are read back as rows of zeros
+	private int historyIndex(int requestedIndex) {
+
+		int minIndexAccessible = getMinIndexAvailable();
+		int maxIndexAccessible = getLastAddedIndex();
+
+		if (requestedIndex < minIndexAccessible) {
+			throw new IllegalArgumentException("Requested array at index " + requestedIndex + " has been overwritten (not in the range of " + minIndexAccessible + " - " + maxIndexAccessible + ")");
+		}
+
+		if (requestedIndex > maxIndexAccessible) {
+			throw new IllegalArgumentException("Requested array at index " + requestedIndex + " is not yet written (not in the range of " + minIndexAccessible + " - " + maxIndexAccessible + ")");
+		}
+
+		return Math.floorMod(requestedIndex, historyRows);
+
+	}
+
+
+	/**
+	 * Returns the minimum index available in the memory, which counts the quantised rows.
+	 * Any array indexes lower than the value returned here have been overwritten
+	 * Synchronised with other methods in this object to make the memory thread safe
+	 * @return the minimum index available in this memory
+	 */
+	@Override
+	synchronized public int getMinIndexAvailable() {
+		// the history is only written over when a row is committed, so it always holds the last historyRows rows
+		return getLastAddedIndex() - historyRows + 1;
+	}
+
+
+	/**
+	 * Returns the max amount of arrays the memory can store before it overwrites, counting the quantised rows
+	 * Synchronised with other methods in this object to make the memory thread safe
+	 * @return the maximum number of arrays that can be stored before overwriting occurs
+	 */
+	@Override
+	synchronized public int getMemorySize() {
+		return historyRows;
+	}
+
+
+	/**
+	 * Returns the number of bits the quantised rows are kept in
+	 * @return 8 or 16
+	 */
+	public int getBits() {
+		return bits;
+	}
+
+}
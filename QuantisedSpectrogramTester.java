@@ -0,0 +1,147 @@
+package audio;
+
+import java.util.Random;
+
+import fourier.SignalProcessor;
+import rollingmemory.QuantisedSpectrogramMemory;
+import rollingmemory.RollingArrayMemory;
+
+/**
+ * Checks the quantised spectrogram memory against an ordinary rolling array memory. The log spectra of the
+ * made up track of FilterbankOnsetTester are added to both, at 8 and at 16 bits, and every row still in the
+ * memory is read back at the end and compared with the row added.
+ * It prints out the largest error of any value (and whether every value is within the largest error the
+ * memory says its row can have), whether the full precision rows are exact, whether the impulses found from
+ * the quantised memory are the same as from the ordinary one, and how much memory each takes.
+ * It also reads a small memory that has only had a few rows added at the indexes below 0, which are in range
+ * before the memory wraps, and checks these are rows of zeros as they are in an ordinary rolling array memory
+ * @see QuantisedSpectrogramMemory
+ */
+public class QuantisedSpectrogramTester {
+
+	// how many rows each memory holds, which is around 10 seconds at the 3 millisecond hop
+	static final int numOfRows = 3333;
+
+	// how many rows the small memory read before it wraps holds, and how many rows are added to it
+	static final int numOfSmallRows = 10;
+	static final int numOfSmallRowsAdded = 3;
+
+	public static void main(String[] args) {
+
+		Random random = new Random(49);
+
+		int windowSizeInFrames = (int) (FilterbankOnsetTester.sampleRate / FilterbankOnsetTester.minFrequency);
+		int hopInFrames = (int) (FilterbankOnsetTester.sampleRate * FilterbankOnsetTester.hopMillis / 1000);
+		int windowsInMovAverage = (int) (FilterbankOnsetTester.movingAverageMillis / FilterbankOnsetTester.hopMillis);
+
+		int numOfKicks = 0;
+		double[] kickTimes = new double[(int) (FilterbankOnsetTester.trackSeconds * 4) + 1];
+		for (double time = 500; time < FilterbankOnsetTester.trackSeconds * 1000 - 500; time += 250 + 420 * random.nextDouble()) {
+			kickTimes[numOfKicks++] = time;
+		}
+
+		int[] track = FilterbankOnsetTester.makeTrack(kickTimes, numOfKicks, random);
+		int numOfHops = (track.length - windowSizeInFrames) / hopInFrames;
+
+		SignalProcessor signalProcess = new SignalProcessor(windowSizeInFrames);
+		int arraySize = signalProcess.getFFTSize();
+
+		for (int bits = 8; bits <= 16; bits += 8) {
+
+			RollingArrayMemory exact = new RollingArrayMemory(arraySize, numOfRows);
+			QuantisedSpectrogramMemory quantised = new QuantisedSpectrogramMemory(arraySize, numOfRows, bits);
+			BeatTracker tracker = FilterbankOnsetTester.makeTracker(windowsInMovAverage);
+
+			int[] window = new int[windowSizeInFrames];
+			boolean impulsesSame = true;
+
+			for (int h = 0; h < numOfHops; ++h) {
+
+				System.arraycopy(track, h * hopInFrames, window, 0, windowSizeInFrames);
+				double[] spectrum = signalProcess.blackmanHarrisFFT(window, true, exact.getWritableRow());
+				exact.commitRow();
+				quantised.addArray(spectrum);
+
+				if (h > 0) {
+					impulsesSame &= tracker.getImpulse(spectrum, exact.getArrayPointer(h - 1))
+							== tracker.getImpulse(quantised.getArrayPointer(h), quantised.getArrayPointer(h - 1));
+				}
+			}
+
+			// read every row back
+			double largestError = 0;
+			double largestValue = 0;
+			boolean withinMaxError = true;
+			boolean fullPrecisionExact = true;
+
+			for (int i = quantised.getMinIndexAvailable(); i <= quantised.getLastAddedIndex(); ++i) {
+
+				double[] row = exact.getArrayCopy(i);
+				double[] readBack = quantised.getArrayCopy(i);
+				double maxError = quantised.getMaxError(i);
+
+				for (int k = 0; k < arraySize; ++k) {
+					double error = Math.abs(row[k] - readBack[k]);
+					largestError = Math.max(largestError, error);
+					largestValue = Math.max(largestValue, Math.abs(row[k]));
+					// allow for the rounding of the offset plus steps
+					withinMaxError &= error <= maxError * (1 + 1e-9) + 1e-12;
+					if (i > quantised.getLastAddedIndex() - QuantisedSpectrogramMemory.FULL_PRECISION_ROWS) {
+						fullPrecisionExact &= error == 0;
+					}
+				}
+			}
+
+			long exactBytes = 8L * arraySize * numOfRows;
+			long quantisedBytes = 8L * arraySize * QuantisedSpectrogramMemory.FULL_PRECISION_ROWS
+					+ (bits / 8) * (long) arraySize * numOfRows + 16L * numOfRows;
+
+			System.out.format("%d bits: largest error %.2e (%.2e of the largest value), %s\n", bits, largestError,
+					largestError / largestValue, withinMaxError ? "all within the row's max error" : "NOT ALL WITHIN THE ROW'S MAX ERROR");
+			System.out.println("\tfull precision rows " + (fullPrecisionExact ? "exact" : "NOT EXACT")
+					+ ", impulses " + (impulsesSame ? "the same" : "NOT THE SAME"));
+			System.out.format("\t%d rows of %d: %.1f MB against %.1f MB, %.1f times less\n", numOfRows, arraySize,
+					quantisedBytes / 1e6, exactBytes / 1e6, exactBytes / (double) quantisedBytes);
+		}
+
+		// -------------------------------
+		// reading before the memory wraps
+		// -------------------------------
+		for (int bits = 8; bits <= 16; bits += 8) {
+
+			RollingArrayMemory exact = new RollingArrayMemory(arraySize, numOfSmallRows);
+			QuantisedSpectrogramMemory quantised = new QuantisedSpectrogramMemory(arraySize, numOfSmallRows, bits);
+
+			int[] window = new int[windowSizeInFrames];
+			for (int h = 0; h < numOfSmallRowsAdded; ++h) {
+				System.arraycopy(track, h * hopInFrames, window, 0, windowSizeInFrames);
+				double[] spectrum = signalProcess.blackmanHarrisFFT(window, true, exact.getWritableRow());
+				exact.commitRow();
+				quantised.addArray(spectrum);
+			}
+
+			boolean sameAsExact = true;
+			String error = null;
+
+			for (int i = quantised.getMinIndexAvailable(); i < 0; ++i) {
+				try {
+					double[] row = exact.getArrayCopy(i);
+					double[] copy = quantised.getArrayCopy(i);
+					double[] pointer = quantised.getArrayPointer(i);
+					for (int k = 0; k < arraySize; ++k) {
+						sameAsExact &= copy[k] == row[k] && pointer[k] == row[k];
+					}
+					sameAsExact &= quantised.getMaxError(i) == 0;
+				} catch (RuntimeException e) {
+					error = "index " + i + " threw " + e;
+					break;
+				}
+			}
+
+			System.out.format("%d bits, %d of %d rows added: indexes %d - -1 %s\n", bits, numOfSmallRowsAdded, numOfSmallRows,
+					quantised.getMinIndexAvailable(), (error != null) ? "FAILED, " + error
+							: sameAsExact ? "are rows of zeros, as in the rolling array memory" : "ARE NOT THE SAME AS THE ROLLING ARRAY MEMORY");
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package fourier;
+
+/**
+ * The FFT this project has always used: an in place radix 2 FFT on bit reversed input. It can only do
+ * sizes that are a power of 2. The twiddle factors and bit reversed order of each size come from the
+ * shared FFTPlan for that size
+ * @see FFTPlan
+ */
+public class Radix2Backend implements FFTBackend {
+
+	/**
+	 * The name this backend is chosen by
+	 */
+	public static final String NAME = "radix2";
+
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+
+	@Override
+	public boolean supports(int size) {
+		return size > 0 && size <= (1 << 30) && Integer.bitCount(size) == 1;
+	}
+
+
+	@Override
+	public void transform(double[] window, double[] real, double[] imaginary) {
+
+		if (!supports(window.length)) {
+			throw new IllegalArgumentException("The radix 2 FFT can only do sizes that are a power of 2, not " + window.length);
+		}
+
+		FFTPlan.forSize(window.length).transform(window, real, imaginary);
+	}
+
+}
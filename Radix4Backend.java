@@ -0,0 +1,40 @@
+package fourier;
+
+/**
+ * The same in place FFT on bit reversed input as the radix 2 backend, but doing two radix 2 stages at once
+ * with radix 4 butterflies. This halves the number of passes over the arrays and cuts the twiddle multiplies
+ * by a quarter. It can only do sizes that are a power of 2, and shares the FFTPlan of each size with the
+ * radix 2 backend
+ * @see FFTPlan#transformRadix4
+ */
+public class Radix4Backend implements FFTBackend {
+
+	/**
+	 * The name this backend is chosen by
+	 */
+	public static final String NAME = "radix4";
+
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+
+	@Override
+	public boolean supports(int size) {
+		return size > 0 && size <= (1 << 30) && Integer.bitCount(size) == 1;
+	}
+
+
+	@Override
+	public void transform(double[] window, double[] real, double[] imaginary) {
+
+		if (!supports(window.length)) {
+			throw new IllegalArgumentException("The radix 4 FFT can only do sizes that are a power of 2, not " + window.length);
+		}
+
+		FFTPlan.forSize(window.length).transformRadix4(window, real, imaginary);
+	}
+
+}
@@ -141,11 +141,27 @@ Outside thread adds one more row:
 	 
 	 private int revolutions = 0;
 
+	 // true between getWritableRow being called and the row being committed
+	 private boolean rowOpen = false;
+
 	 // we do not want threads to access the array directly
 	 // we want them to use the synchronised methods to read and write
 	 // to the array, hence why this is chosen to be private
 	 private double[][] rollingArray;
 
+	 // if the memory is single precision, the rows are kept as floats in this array instead, and
+	 // rollingArray is null. Half the memory is used, and twice as many rows fit in the cache
+	 private final boolean singlePrecision;
+	 private float[][] floatArray;
+
+	 // for a single precision memory: the row given out by getWritableRow, which is rounded into the
+	 // float row when it is committed, and the row getArrayPointer widens a float row into
+	 private double[] writableRow;
+	 private double[] pointerRow;
+
+	 // true if the row open for writing was got with getWritableRow rather than getWritableFloatRow
+	 private boolean rowOpenAsDouble = false;
+
 
 	 /**
 	  * Creates a rolling array memory of the requested sizes
@@ -153,13 +169,34 @@ Outside thread adds one more row:
 	  * @param numberOfArraysToStore  the amount of arrays to be stored at any one time
 	  */
 	 public RollingArrayMemory (int arraySize, int numberOfArraysToStore) {
+		 this(arraySize, numberOfArraysToStore, false);
+	 }
+
+
+	 /**
+	  * Creates a rolling array memory of the requested sizes, which can keep its rows as floats rather than
+	  * doubles. A single precision memory can be used in exactly the same way as a double one (the doubles
+	  * given to it are rounded to floats, and the floats it holds are widened back to doubles when read), but
+	  * it can also be written to and read from as floats, with getWritableFloatRow and getFloatArrayPointer
+	  * @param arraySize the size of the arrays that are going to be temporarily stored
+	  * @param numberOfArraysToStore  the amount of arrays to be stored at any one time
+	  * @param singlePrecision true to keep the rows as floats
+	  */
+	 public RollingArrayMemory (int arraySize, int numberOfArraysToStore, boolean singlePrecision) {
 		 // set the number of rows and columns wanted.
 		 // these dimensions are final and cannot be changed
 		 numberOfRows = numberOfArraysToStore;
 		 numberOfColumns = arraySize;
+		 this.singlePrecision = singlePrecision;
 
 		 // create a rolling array with the wanted dimensions
-		 rollingArray = new double[numberOfRows][numberOfColumns];
+		 if (singlePrecision) {
+			 floatArray = new float[numberOfRows][numberOfColumns];
+			 writableRow = new double[numberOfColumns];
+			 pointerRow = new double[numberOfColumns];
+		 } else {
+			 rollingArray = new double[numberOfRows][numberOfColumns];
+		 }
 
 		 // maxIndexAccessible is set to -1 to ensure no data is retried when the rolling array is empty
 		 maxIndexAccessible = -1;
@@ -186,18 +223,137 @@ Outside thread adds one more row:
 		 if (numbers.length != numberOfColumns) {
 			 throw new IllegalArgumentException("Array to be added is of size " + numbers.length + ". Memory created for array of size " + numberOfColumns + ".");
 		 }
+
+		 // this is the same as getting the writable row, copying into it and committing it
+		 double[] row = getWritableRow();
 		 
 		 // copy each value from the input array into the rolling array
 		 for (int i = 0; i < numberOfColumns; ++i) {
 
-			 rollingArray[actualIndex][i] = numbers[i] ;
+			 row[i] = numbers[i] ;
 
 		 }
 
-		 // increase the maxIndexAccessible and the minIndexAccessible, as the span has
-		 // shifted over by one
+		 commitRow();
+
+	 }
+
+
+	 /**
+	  * The float equivalent of addArray(double[]). If this memory is not single precision, the floats are
+	  * widened to doubles
+	  * Synchronised with other methods in this object to make the memory thread safe
+	  * @param numbers the array to be saved to this temporary memory
+	  * @throws IllegalArgumentException if array to be added is not the same size as the size of array this
+	  * memory holds
+	  */
+	 synchronized public void addArray(float[] numbers) {
+
+		 if (numbers.length != numberOfColumns) {
+			 throw new IllegalArgumentException("Array to be added is of size " + numbers.length + ". Memory created for array of size " + numberOfColumns + ".");
+		 }
+
+		 if (singlePrecision) {
+			 System.arraycopy(numbers, 0, getWritableFloatRow(), 0, numberOfColumns);
+		 } else {
+			 double[] row = getWritableRow();
+			 for (int i = 0; i < numberOfColumns; ++i) {
+				 row[i] = numbers[i];
+			 }
+		 }
+
+		 commitRow();
+
+	 }
+
+
+	 /**
+	  * Method for getting the row the next array will be added into, so that it can be written into
+	  * directly (by an FFT for example) rather than being written somewhere else and copied in by addArray.
+	  * Once the row has been written, commitRow must be called to add it to the memory. Until then, the row
+	  * is not readable, and the oldest row (which is the one being written over) can't be read either, as
+	  * it is counted as overwritten as soon as this is called. Calling this again before commitRow returns
+	  * the same row. Only the thread adding rows should write into the row.
+	  * If this memory is single precision, the row is a double row of its own, which is rounded into the
+	  * memory when it is committed
+	  * Synchronised with other methods in this object to make the memory thread safe
+	  * @return the row to write the next array into, which is as long as the arrays this memory holds
+	  * @see commitRow
+	  * @see getWritableFloatRow
+	  */
+	 synchronized public double[] getWritableRow() {
+
+		 openRow();
+
+		 if (singlePrecision) {
+			 rowOpenAsDouble = true;
+			 return writableRow;
+		 }
+
+		 return rollingArray[actualIndex];
+
+	 }
+
+
+	 /**
+	  * The float equivalent of getWritableRow, for a single precision memory. The row given is the row in the
+	  * memory itself, so nothing is copied or rounded when it is committed
+	  * Synchronised with other methods in this object to make the memory thread safe
+	  * @return the row to write the next array into, which is as long as the arrays this memory holds
+	  * @throws IllegalArgumentException if this memory is not single precision
+	  * @see getWritableRow
+	  * @see commitRow
+	  */
+	 synchronized public float[] getWritableFloatRow() {
+
+		 checkSinglePrecision();
+
+		 openRow();
+		 rowOpenAsDouble = false;
+
+		 return floatArray[actualIndex];
+
+	 }
+
+
+	 // opens the next row for writing, if it isn't open already
+	 synchronized private void openRow() {
+
+		 // the oldest row is about to be written over, so it is no longer accessible
+		 if (!rowOpen) {
+			 ++minIndexAccessible;
+			 rowOpen = true;
+		 }
+
+	 }
+
+
+	 /**
+	  * Method for adding the row got from getWritableRow to the memory, once it has been written.
+	  * It can then be read like any other row added
+	  * Synchronised with other methods in this object to make the memory thread safe
+	  * @throws IllegalArgumentException if getWritableRow hasn't been called since the last row was added
+	  * @see getWritableRow
+	  */
+	 synchronized public void commitRow() {
+
+		 if (!rowOpen) {
+			 throw new IllegalArgumentException("There is no row to commit. getWritableRow needs to be called first");
+		 }
+		 rowOpen = false;
+
+		 // a double row written into a single precision memory is rounded into the memory now
+		 if (singlePrecision && rowOpenAsDouble) {
+			 float[] row = floatArray[actualIndex];
+			 for (int i = 0; i < numberOfColumns; ++i) {
+				 row[i] = (float) writableRow[i];
+			 }
+		 }
+		 rowOpenAsDouble = false;
+
+		 // increase the maxIndexAccessible, as the span has now shifted over by one (the minIndexAccessible
+		 // was increased when the row was got)
 		 ++maxIndexAccessible;
-		 ++minIndexAccessible;
 
 		 // reset the actual index back to 0 once it reaches the end of the rolling array,
 		 // ready for the next time a row is inserted
@@ -236,8 +392,14 @@ Outside thread adds one more row:
 		 }
 
 		 // copy the data from the array into the new array
-		 for (int i = 0; i < numberOfColumns; ++i) {
-			 readRow[i] = rollingArray[retrieveIndex][i];
+		 if (singlePrecision) {
+			 for (int i = 0; i < numberOfColumns; ++i) {
+				 readRow[i] = floatArray[retrieveIndex][i];
+			 }
+		 } else {
+			 for (int i = 0; i < numberOfColumns; ++i) {
+				 readRow[i] = rollingArray[retrieveIndex][i];
+			 }
 		 }
 
 		 return readRow;
@@ -253,10 +415,14 @@ Outside thread adds one more row:
 	  * this method is not inherently thread safe. 
 	  * For more permanent data retrieval, use getArrayCopy, which returns a copy of the data stored 
 	  * and is thread safe.
+	  * If this memory is single precision, there is no double row to point to, so the float row is widened
+	  * into an array kept for this, which is written over by the next call. getFloatArrayPointer points to
+	  * the float row itself
 	  * @param requestedIndex the index of the array wanted from this temporary memory
 	  * @return a copy of the array in memory at the index requested
 	  * @throws IllegalArgumentException if the requested array index has been overwritten or not yet written
 	  * @see getArrayCopy
+	  * @see getFloatArrayPointer
 	  */
 	 synchronized public double[] getArrayPointer(int requestedIndex) {
 
@@ -269,11 +435,51 @@ Outside thread adds one more row:
 			 retrieveIndex += numberOfRows;
 		 }
 
+		 if (singlePrecision) {
+			 for (int i = 0; i < numberOfColumns; ++i) {
+				 pointerRow[i] = floatArray[retrieveIndex][i];
+			 }
+			 return pointerRow;
+		 }
+
 		 return rollingArray[retrieveIndex];
 
 	 }
 
 
+	 /**
+	  * The float equivalent of getArrayPointer, for a single precision memory. The same warnings apply
+	  * @param requestedIndex the index of the array wanted from this temporary memory
+	  * @return the float row in memory at the index requested
+	  * @throws IllegalArgumentException if the requested array index has been overwritten or not yet written,
+	  * or this memory is not single precision
+	  * @see getArrayPointer
+	  */
+	 synchronized public float[] getFloatArrayPointer(int requestedIndex) {
+
+		 checkSinglePrecision();
+		 this.checkVaildIndex(requestedIndex);
+
+		 retrieveIndex = requestedIndex - revolutions * numberOfRows;
+		 if(retrieveIndex < 0) {
+			 retrieveIndex += numberOfRows;
+		 }
+
+		 return floatArray[retrieveIndex];
+
+	 }
+
+
+	 // throws an IllegalArgumentException if this memory doesn't keep its rows as floats
+	 synchronized private void checkSinglePrecision() {
+
+		 if (!singlePrecision) {
+			 throw new IllegalArgumentException("This rolling array memory keeps its rows as doubles, not floats");
+		 }
+
+	 }
+
+
 	 /**
 	  * This method is only accessed by other methods in this object. 
 	  * It will throw an error based on if the requested index has been overwritten or not
@@ -342,4 +548,13 @@ Outside thread adds one more row:
 	 }
 
 
+	 /**
+	  * Returns whether the rolling array memory keeps its rows as floats
+	  * @return true if the rows are floats, false if they are doubles
+	  */
+	 synchronized public boolean isSinglePrecision() {
+		 return singlePrecision;
+	 }
+
+
  }
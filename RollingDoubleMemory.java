@@ -88,16 +88,43 @@ public class RollingDoubleMemory {
 
 	private double[] rollingDouble;
 
+	// if the memory is single precision, the values are kept as floats in this array instead, and
+	// rollingDouble is null
+	private float[] rollingFloat;
+
+	// if one is attached, this keeps a sparse list of every window with a value above zero, which
+	// is kept up to date as doubles are added to or overwritten in this memory
+	private SparseOnsetRing sparseIndex;
+
+	// if one is attached, this keeps track of the largest value in the most recent indexes
+	private SlidingWindowMax windowMax;
+
 	/**
 	 * Creates a rolling memory for doubles of the requested size
 	 * @param sizeOfMemory the maximum number of doubles to be temporarily stored at any one time
 	 */
 	public RollingDoubleMemory(int sizeOfMemory){
+		this(sizeOfMemory, false);
+	}
+
+	/**
+	 * Creates a rolling memory for doubles of the requested size, which can keep its values as floats
+	 * rather than doubles. It is used in exactly the same way either way: the doubles given to a single
+	 * precision memory are rounded to floats, and widened back to doubles when read (and the rounded value
+	 * is what an attached sparse onset ring or sliding window max sees)
+	 * @param sizeOfMemory the maximum number of doubles to be temporarily stored at any one time
+	 * @param singlePrecision true to keep the values as floats
+	 */
+	public RollingDoubleMemory(int sizeOfMemory, boolean singlePrecision){
 
 		this.sizeOfMemory = sizeOfMemory;
 
 		// create a rolling memory with the size specified
-		rollingDouble = new double[sizeOfMemory];
+		if (singlePrecision) {
+			rollingFloat = new float[sizeOfMemory];
+		} else {
+			rollingDouble = new double[sizeOfMemory];
+		}
 
 		// maxIndexAccessible is set to -1 to ensure no data is retried when the rolling memory is empty
 		maxIndexAccessible = -1;
@@ -118,13 +145,21 @@ public class RollingDoubleMemory {
 	synchronized public void addDouble(Double saveDouble) {
 
 		// copy the value of the double into the array at the correct index
-		rollingDouble[actualIndex] = saveDouble;
+		double saved = store(actualIndex, saveDouble);
 
 		// increase the maxIndexAccessible and the minIndexAccessible, as the span has
 		// shifted over by one
 		++maxIndexAccessible;
 		++minIndexAccessible;
 
+		// keep the sparse index up to date
+		if (sparseIndex != null) {
+			sparseIndex.record(maxIndexAccessible, saved);
+		}
+		if (windowMax != null) {
+			windowMax.record(maxIndexAccessible, saved);
+		}
+
 		// reset the actual index back to 0 once it reaches the end of the array,
 		// ready for the next time a row is inserted
 		// also increase the revolutions count as a wrap has happened on the array
@@ -159,7 +194,17 @@ public class RollingDoubleMemory {
 		}
 		
 		// simply overwrite the index in the array
-		rollingDouble[retrieveIndex] = newDouble;
+		double saved = store(retrieveIndex, newDouble);
+
+		// keep the sparse index up to date
+		if (sparseIndex != null) {
+			sparseIndex.overwrite(overwriteIndex, saved);
+		}
+
+		// if the sliding window max can't deal with the change by itself, it is recorded again from scratch
+		if (windowMax != null && !windowMax.overwrite(overwriteIndex, saved)) {
+			recordWindowMax();
+		}
 
 	}
 
@@ -206,7 +251,7 @@ public class RollingDoubleMemory {
 			retrieveIndex += sizeOfMemory;
 		}
 
-		return rollingDouble[retrieveIndex];
+		return load(retrieveIndex);
 
 	}
 
@@ -246,7 +291,7 @@ public class RollingDoubleMemory {
 		for (int i = 0; i < arraySize; ++i) {
 			// uses the private version of getDouble where the indexes are not checked
 			// since we already know they are valid for both boundaries
-			returnArray[i] = rollingDouble[retrieveIndex];
+			returnArray[i] = load(retrieveIndex);
 
 			// add on 1 to the read actual index to read the next double in the memory
 			++retrieveIndex;
@@ -312,6 +357,112 @@ public class RollingDoubleMemory {
 	}
 
 
+	/**
+	 * Attaches a sparse onset ring to this memory, which will then keep a list of every index with a
+	 * value above zero as doubles are added or overwritten. Any values already in the memory are
+	 * recorded in the ring straight away. The ring should span the same number of indexes as this memory
+	 * Synchronised with other methods in this object to make the memory thread safe
+	 * @param sparseIndex the sparse onset ring to keep up to date
+	 */
+	synchronized public void attachSparseIndex(SparseOnsetRing sparseIndex) {
+
+		// record everything that is still accessible in the memory
+		for (int i = Math.max(0, minIndexAccessible); i <= maxIndexAccessible; ++i) {
+			sparseIndex.record(i, getDouble(i));
+		}
+
+		this.sparseIndex = sparseIndex;
+	}
+
+
+	/**
+	 * Returns the sparse onset ring attached to this memory
+	 * Synchronised with other methods in this object to make the memory thread safe
+	 * @return the sparse onset ring, or null if none has been attached
+	 */
+	synchronized public SparseOnsetRing getSparseIndex() {
+		return sparseIndex;
+	}
+
+
+	/**
+	 * Attaches a sliding window max to this memory, which will then keep track of the largest value in the
+	 * most recent indexes as doubles are added or overwritten. Any values already in the memory are
+	 * recorded straight away
+	 * Synchronised with other methods in this object to make the memory thread safe
+	 * @param windowMax the sliding window max to keep up to date
+	 * @throws IllegalArgumentException if the max width of the sliding window max is larger than this memory
+	 */
+	synchronized public void attachWindowMax(SlidingWindowMax windowMax) {
+
+		if (windowMax.getMaxWidth() > sizeOfMemory) {
+			throw new IllegalArgumentException("Sliding window max of width " + windowMax.getMaxWidth() + " is too large for memory of length " + sizeOfMemory);
+		}
+
+		this.windowMax = windowMax;
+		recordWindowMax();
+	}
+
+
+	/**
+	 * Returns the sliding window max attached to this memory
+	 * Synchronised with other methods in this object to make the memory thread safe
+	 * @return the sliding window max, or null if none has been attached
+	 */
+	synchronized public SlidingWindowMax getWindowMax() {
+		return windowMax;
+	}
+
+
+	/**
+	 * This method is only accessed by other methods in this object. 
+	 * It clears the sliding window max and records every index it covers again
+	 */
+	synchronized private void recordWindowMax() {
+
+		windowMax.clear();
+		for (int i = Math.max(0, maxIndexAccessible - windowMax.getMaxWidth() + 1); i <= maxIndexAccessible; ++i) {
+			windowMax.record(i, getDouble(i));
+		}
+	}
+
+
+	/**
+	 * This method is only accessed by other methods in this object. 
+	 * It stores a value at an actual index of the array, and returns the value as it was stored
+	 * (which is rounded to a float if the memory is single precision)
+	 */
+	private double store(int actual, double value) {
+
+		if (rollingFloat != null) {
+			rollingFloat[actual] = (float) value;
+			return rollingFloat[actual];
+		}
+
+		rollingDouble[actual] = value;
+		return value;
+	}
+
+
+	/**
+	 * This method is only accessed by other methods in this object. 
+	 * It returns the value at an actual index of the array
+	 */
+	private double load(int actual) {
+		return (rollingFloat != null) ? rollingFloat[actual] : rollingDouble[actual];
+	}
+
+
+	/**
+	 * Returns whether the rolling memory keeps its values as floats
+	 * Synchronised with other methods in this object to make the memory thread safe
+	 * @return true if the values are floats, false if they are doubles
+	 */
+	synchronized public boolean isSinglePrecision() {
+		return rollingFloat != null;
+	}
+
+
 	/**
 	 * Returns the max amount of doubles the rolling memory can store before it overwrites. 
 	 * Synchronised with other methods in this object to make the memory thread safe
@@ -1,5 +1,8 @@
 package fourier;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * This class presents a range of processing methods that can be applied to a signal window
  * in order to alter it's characteristics before beat detection is carried out. It is an extension of the
@@ -22,6 +25,43 @@ public class SignalProcessor extends FFTObject{
 
 	private int startIndexOfData;
 
+	// the coefficients of each window function, worked out the first time the window is used.
+	// They don't change for the size of this object, so there is no need to work out the cosines on every FFT
+	private double[] hammingWindow;
+
+	private double[] hanningWindow;
+
+	private double[] blackmanHarrisWindow;
+
+	// true if the methods that write into float arrays do their FFTs in single precision
+	private final boolean singlePrecision;
+
+	// for the single precision methods: the FFT, the window coefficients rounded to floats, and the arrays the
+	// result is worked out in (or, for an object that isn't single precision, the array the double result is
+	// worked out in before it is rounded). These are only made the first time they are needed
+	private FloatFFT floatFFT;
+
+	private float[] floatBlackmanHarrisWindow;
+
+	private float[] floatReal;
+
+	private float[] floatImaginary;
+
+	private double[] beforeRounding;
+
+	// the number of windows the spectrogram methods transform together in each batch
+	private static final int windowsPerBatch = 8;
+
+	// a spectrogram task with more windows than this is split in two, so the windows can be shared
+	// out between the threads of the pool
+	private static final int windowsPerTask = 64;
+
+	// the arrays each thread uses when working out a spectrogram. A batch of interleaved windows for
+	// backends that can do batches, or one window at a time for backends that can't
+	private final ThreadLocal<double[][]> batchArrays = new ThreadLocal<double[][]>();
+
+	private final ThreadLocal<double[][]> windowArrays = new ThreadLocal<double[][]>();
+
 
 	/**
 	 * This object is used for different types of processing of the signal. It will perform
@@ -37,8 +77,45 @@ public class SignalProcessor extends FFTObject{
 	 * @throws a error if the number of frames is not of 2^n
 	 */
 	public SignalProcessor(int nFrames){
+		this(nFrames, false);
+	}
+
+
+	/**
+	 * The same as SignalProcessor(int), but the FFT can be made exactly the size of the number of
+	 * frames given, rather than padding them out to the next 2^n. The arrays returned by the FFT methods
+	 * are then the same length as the number of frames, and each bin is exactly (frame rate / frames) Hz
+	 * apart. Any size can be used, but sizes made only of factors of 2, 3 and 5 are the quickest
+	 * @param nFrames the number of frames that will be given to this object
+	 * @param exactSize true to make the FFT exactly nFrames long, false to pad it out to the next 2^n
+	 * @see MixedRadixBackend
+	 */
+	public SignalProcessor(int nFrames, boolean exactSize){
+		this(nFrames, exactSize, false);
+	}
+
+
+	/**
+	 * The same as SignalProcessor(int, boolean), but the methods that write into float arrays (such as
+	 * blackmanHarrisFFT(int[], boolean, float[])) can be made to do their FFTs in single precision, with
+	 * FloatFFT. Every array they work in is then half the size, which matters when the spectra are being
+	 * kept as floats anyway (in a single precision RollingArrayMemory for example). The methods that return
+	 * doubles are always done in double precision. The single precision FFT can only do powers of 2, so
+	 * an exact size has to be a power of 2 too
+	 * @param nFrames the number of frames that will be given to this object
+	 * @param exactSize true to make the FFT exactly nFrames long, false to pad it out to the next 2^n
+	 * @param singlePrecision true to do the FFTs of the float methods in single precision
+	 * @throws IllegalArgumentException if single precision is wanted with an exact size that isn't a power of 2
+	 * @see FloatFFT
+	 */
+	public SignalProcessor(int nFrames, boolean exactSize, boolean singlePrecision){
 
-		super(nFrames);
+		super(nFrames, exactSize);
+
+		if (singlePrecision && Integer.bitCount(getFFTSize()) != 1) {
+			throw new IllegalArgumentException("Single precision FFTs can only be a power of 2 long, not " + getFFTSize());
+		}
+		this.singlePrecision = singlePrecision;
 
 		// check to make sure that the inputed window size for construction has a size of 2^n
 		int windowSizeHalf = nFrames;
@@ -46,9 +123,7 @@ public class SignalProcessor extends FFTObject{
 			windowSizeHalf /= 2;
 		}
 
-		int size = 1;
-		while (size < nFrames)
-			size *= 2;
+		int size = getFFTSize();
 
 		this.startIndexOfData = (frames - inFrames) / 2;
 
@@ -76,24 +151,18 @@ public class SignalProcessor extends FFTObject{
 		// make sure the array is of the correct size
 		checkArraySize(framesD.length);
 
-		// pad the signal with zeros
-		for (int i = 0; i < startIndexOfData; ++i) 
-			doubleArray[i] = 0;
-		for (int i = startIndexOfData + inFrames; i < frames; ++i)
-			doubleArray[i] = 0;
-
 		// add a hamming window to the signal data, which tapers off the ends of the signal
-		// start at the initial padding location
-		for (int i = startIndexOfData; i < inFrames; ++i) {
-			doubleArray[i] = framesD[i] * (0.54 - 0.46 * Math.cos((2 * Math.PI * i) / frames));
+		if (hammingWindow == null) {
+			hammingWindow = new double[inFrames];
+			for (int i = 0; i < inFrames; ++i) {
+				hammingWindow[i] = (0.54 - 0.46 * Math.cos((2 * Math.PI * i) / frames));
+			}
 		}
 
-		// compute FFT of the signal with compute() method in the FFTObject that this class extends from
-		doubleArray = compute(doubleArray);
-
-		// return the double array. If another method is used in this object that
-		// utilises the double array, it will be overwritten 
-		return doubleArray;
+		// compute FFT of the signal with the window on it (and padded with zeros) with the computeWindowed()
+		// method in the FFTObject that this class extends from. The array returned will be overwritten
+		// by the next FFT
+		return computeWindowed(framesD, hammingWindow);
 	}
 
 
@@ -179,23 +248,18 @@ public class SignalProcessor extends FFTObject{
 		// make sure the array is of the correct size
 		checkArraySize(framesD.length);
 
-		// pad the signal with zeros
-		for (int i = 0; i < startIndexOfData; ++i) 
-			doubleArray[i] = 0;
-		for (int i = startIndexOfData + inFrames; i < frames; ++i)
-			doubleArray[i] = 0;
-		
 		// add a hanning window to the signal data
-		for (int i = startIndexOfData; i < inFrames ; ++i) {
-			doubleArray[i] = framesD[i] * (0.5 - 0.4 * Math.cos((2 * Math.PI * i) / frames));
+		if (hanningWindow == null) {
+			hanningWindow = new double[inFrames];
+			for (int i = 0; i < inFrames; ++i) {
+				hanningWindow[i] = (0.5 - 0.4 * Math.cos((2 * Math.PI * i) / frames));
+			}
 		}
 
-		// compute FFT of the signal with compute() method in the FFTObject that this class extends from
-		doubleArray = compute(doubleArray);
-
-		// return the double array. If another method is used in this object that
-		// utilises the double array, it will be overwritten 
-		return doubleArray;
+		// compute FFT of the signal with the window on it (and padded with zeros) with the computeWindowed()
+		// method in the FFTObject that this class extends from. The array returned will be overwritten
+		// by the next FFT
+		return computeWindowed(framesD, hanningWindow);
 	}
 
 
@@ -231,26 +295,11 @@ public class SignalProcessor extends FFTObject{
 	public double[] blackmanHarrisFFT(double[] framesD) {
 		// make sure the array is of the correct size
 		checkArraySize(framesD.length);
-		
-		// pad the signal with zeros
-		for (int i = 0; i < startIndexOfData; ++i) 
-			doubleArray[i] = 0;
-		for (int i = startIndexOfData + inFrames; i < frames; ++i)
-			doubleArray[i] = 0;
 
-		// add a hamming window to the signal data, which tapers off the ends of the signal
-		for (int i = startIndexOfData; i < inFrames ; ++i) {
-			doubleArray[i] = framesD[i] * (0.355768 - 0.487396 * Math.cos(2 * Math.PI * i / frames)
-					+ 0.144232 * Math.cos(4 * Math.PI * i / frames)
-					- 0.012604 * Math.cos(6 * Math.PI * i / frames));
-		}
-
-		// compute FFT of the signal with compute() method in the FFTObject that this class extends from
-		doubleArray = compute(doubleArray);
-
-		// return the double array. If another method is used in this object that
-		// utilises the double array, it will be overwritten 
-		return doubleArray;
+		// compute FFT of the signal with a Blackman-Harris window on it (and padded with zeros) with the
+		// computeWindowed() method in the FFTObject that this class extends from. The array returned will
+		// be overwritten by the next FFT
+		return computeWindowed(framesD, blackmanHarrisCoefficients());
 	}
 
 
@@ -272,6 +321,287 @@ public class SignalProcessor extends FFTObject{
 	}
 
 
+	/**
+	 * Does the same FFT as blackmanHarrisFFT(double[]), and the log method too if asked, but writes the result
+	 * straight into the destination given rather than into an array of this object's. This means the
+	 * spectrum can be written into wherever it is going to be kept (such as the next row of a
+	 * RollingArrayMemory) without being copied there afterwards
+	 * @param framesD the signal that we want to apply a Blackman-Harris window to and then FFT process, as a double array
+	 * @param log true to put every value through log10(1 + value), as the log method does
+	 * @param destination the array the result is written into, which must be at least getFFTSize() long
+	 * @return the destination
+	 * @throws IllegalArgumentException if the input array length is not the same size as the one this object was
+	 * constructed for, or the destination is too short
+	 */
+	public double[] blackmanHarrisFFT(double[] framesD, boolean log, double[] destination) {
+		// make sure the array is of the correct size
+		checkArraySize(framesD.length);
+
+		return computeWindowedInto(framesD, blackmanHarrisCoefficients(), log, destination);
+	}
+
+
+	/**
+	 * The integer argument equivalent of blackmanHarrisFFT(double[], boolean, double[])
+	 * @param framesI the signal that we want to apply a Blackman-Harris window to as an integer
+	 * @param log true to put every value through log10(1 + value), as the log method does
+	 * @param destination the array the result is written into, which must be at least getFFTSize() long
+	 * @return the destination
+	 * @throws IllegalArgumentException if the input array length is not the same size as the one this object was
+	 * constructed for, or the destination is too short
+	 * @see blackmanHarrisFFT(double[], boolean, double[])
+	 */
+	public double[] blackmanHarrisFFT(int[] framesI, boolean log, double[] destination) {
+		// make sure the array is of the correct size
+		checkArraySize(framesI.length);
+
+		return blackmanHarrisFFT(dbleToIntArray(framesI), log, destination);
+	}
+
+
+	/**
+	 * Does the same as blackmanHarrisFFT(int[], boolean, double[]), but writes the result into a float array.
+	 * If this object was made for single precision, the whole FFT is done in floats, otherwise it is done in
+	 * doubles and rounded to floats at the end
+	 * @param framesI the signal that we want to apply a Blackman-Harris window to as an integer
+	 * @param log true to put every value through log10(1 + value), as the log method does
+	 * @param destination the array the result is written into, which must be at least getFFTSize() long
+	 * @return the destination
+	 * @throws IllegalArgumentException if the input array length is not the same size as the one this object was
+	 * constructed for, or the destination is too short
+	 * @see SignalProcessor(int, boolean, boolean)
+	 */
+	public float[] blackmanHarrisFFT(int[] framesI, boolean log, float[] destination) {
+		// make sure the array is of the correct size
+		checkArraySize(framesI.length);
+
+		int size = getFFTSize();
+		if (destination.length < size) {
+			throw new IllegalArgumentException("The destination is " + destination.length + " long, but the FFT is " + size + " long");
+		}
+
+		if (!singlePrecision) {
+			if (beforeRounding == null) {
+				beforeRounding = new double[size];
+			}
+			blackmanHarrisFFT(framesI, log, beforeRounding);
+			for (int k = 0; k < size; ++k) {
+				destination[k] = (float) beforeRounding[k];
+			}
+			return destination;
+		}
+
+		if (floatFFT == null) {
+			floatFFT = FloatFFT.forSize(size);
+			floatReal = new float[size];
+			floatImaginary = new float[size];
+			double[] coefficients = blackmanHarrisCoefficients();
+			floatBlackmanHarrisWindow = new float[inFrames];
+			for (int i = 0; i < inFrames; ++i) {
+				floatBlackmanHarrisWindow[i] = (float) coefficients[i];
+			}
+		}
+
+		floatFFT.transformWindowed(framesI, floatBlackmanHarrisWindow, floatReal, floatImaginary);
+
+		boolean fastMath = isFastMath();
+		for (int k = 0; k < size; ++k) {
+			float power = floatReal[k] * floatReal[k] + floatImaginary[k] * floatImaginary[k];
+			destination[k] = !log ? power : (float) (fastMath ? FastMath.log10(1 + power) : Math.log10(1 + power));
+		}
+
+		return destination;
+	}
+
+
+	/**
+	 * Returns whether the methods that write into float arrays do their FFTs in single precision
+	 * @return true if they are done in single precision
+	 */
+	public boolean isSinglePrecision() {
+		return singlePrecision;
+	}
+
+
+	/**
+	 * Works out the Blackman-Harris FFT (as blackmanHarrisFFT does) of many overlapping windows of a track in
+	 * one go, such as every window of a whole song, and writes each one into a row of the spectrogram given.
+	 * Window w starts at sample (firstSample + w * hop) and is as long as the number of frames this object was
+	 * made for.
+	 * The windows are split up between the threads of the common fork join pool. If the backend can do batches
+	 * of FFTs, each thread does its windows a batch at a time, with the windows interleaved, otherwise they are
+	 * done one at a time. This object's other methods shouldn't be used while this is running
+	 * @param samples the mono samples of the track
+	 * @param firstSample the sample the first window starts at
+	 * @param hop the number of samples from the start of one window to the start of the next
+	 * @param numOfWindows the number of windows to transform
+	 * @param log true to put every value through log10(1 + value), as the log method does
+	 * @param spectrogram the array the FFT of window w is written into row w of. Each row must be at least
+	 * getFFTSize() long
+	 * @throws IllegalArgumentException if a window goes past the end of the samples, the hop is not above 0,
+	 * or the spectrogram is too small
+	 * @see BatchFFTBackend
+	 */
+	public void blackmanHarrisSpectrogram(int[] samples, int firstSample, int hop, int numOfWindows, boolean log, double[][] spectrogram) {
+
+		if (numOfWindows < 1) {
+			return;
+		}
+
+		if (hop < 1 || firstSample < 0 || firstSample + (long) (numOfWindows - 1) * hop + inFrames > samples.length) {
+			throw new IllegalArgumentException("Windows of " + inFrames + " frames from sample " + firstSample + " with a hop of " + hop
+					+ " don't fit into " + samples.length + " samples " + numOfWindows + " times");
+		}
+		if (spectrogram.length < numOfWindows) {
+			throw new IllegalArgumentException("The spectrogram has " + spectrogram.length + " rows, but there are " + numOfWindows + " windows");
+		}
+
+		// work out the window coefficients before any threads use them
+		double[] coefficients = blackmanHarrisCoefficients();
+
+		ForkJoinPool.commonPool().invoke(new SpectrogramTask(samples, firstSample, hop, 0, numOfWindows, log, coefficients, spectrogram));
+	}
+
+
+	// transforms the windows from one window onwards into the spectrogram, splitting them in two if there are too many
+	private class SpectrogramTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] samples;
+		private final int firstSample;
+		private final int hop;
+		private final int firstWindow;
+		private final int numOfWindows;
+		private final boolean log;
+		private final double[] coefficients;
+		private final double[][] spectrogram;
+
+		SpectrogramTask(int[] samples, int firstSample, int hop, int firstWindow, int numOfWindows, boolean log,
+				double[] coefficients, double[][] spectrogram) {
+			this.samples = samples;
+			this.firstSample = firstSample;
+			this.hop = hop;
+			this.firstWindow = firstWindow;
+			this.numOfWindows = numOfWindows;
+			this.log = log;
+			this.coefficients = coefficients;
+			this.spectrogram = spectrogram;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (numOfWindows > windowsPerTask) {
+
+				// split on a whole number of batches
+				int half = (numOfWindows / 2 + windowsPerBatch - 1) / windowsPerBatch * windowsPerBatch;
+				invokeAll(new SpectrogramTask(samples, firstSample, hop, firstWindow, half, log, coefficients, spectrogram),
+						new SpectrogramTask(samples, firstSample, hop, firstWindow + half, numOfWindows - half, log, coefficients, spectrogram));
+				return;
+			}
+
+			for (int w = firstWindow; w < firstWindow + numOfWindows; w += windowsPerBatch) {
+
+				int windows = Math.min(windowsPerBatch, firstWindow + numOfWindows - w);
+
+				if (getBackend() instanceof BatchFFTBackend) {
+					transformBatch(samples, firstSample, hop, w, windows, log, coefficients, spectrogram);
+				} else {
+					for (int b = 0; b < windows; ++b) {
+						transformWindow(samples, firstSample + (w + b) * hop, log, coefficients, spectrogram[w + b]);
+					}
+				}
+			}
+		}
+	}
+
+
+	// transforms a batch of windows at once, with the windows interleaved. The batch is always full, with
+	// any windows past the ones asked for left as zeros
+	private void transformBatch(int[] samples, int firstSample, int hop, int firstWindow, int windows, boolean log,
+			double[] coefficients, double[][] spectrogram) {
+
+		int size = getFFTSize();
+		boolean fastMath = isFastMath();
+
+		double[][] arrays = batchArrays.get();
+		if (arrays == null) {
+			arrays = new double[2][size * windowsPerBatch];
+			batchArrays.set(arrays);
+		}
+		double[] real = arrays[0];
+		double[] imaginary = arrays[1];
+
+		// point i of window b goes to i * windowsPerBatch + b
+		for (int i = 0; i < size; ++i) {
+			int place = i * windowsPerBatch;
+			for (int b = 0; b < windowsPerBatch; ++b) {
+				real[place + b] = (i < inFrames && b < windows) ? samples[firstSample + (firstWindow + b) * hop + i] * coefficients[i] : 0;
+				imaginary[place + b] = 0;
+			}
+		}
+
+		((BatchFFTBackend) getBackend()).transformBatch(real, imaginary, size, windowsPerBatch);
+
+		for (int b = 0; b < windows; ++b) {
+			double[] row = spectrogram[firstWindow + b];
+			for (int k = 0; k < size; ++k) {
+				double power = Math.pow(real[k * windowsPerBatch + b], 2) + Math.pow(imaginary[k * windowsPerBatch + b], 2);
+				row[k] = !log ? power : fastMath ? FastMath.log10(1 + power) : Math.log10(1 + power);
+			}
+		}
+	}
+
+
+	// transforms one window on its own, in the same way as blackmanHarrisFFT does
+	private void transformWindow(int[] samples, int start, boolean log, double[] coefficients, double[] row) {
+
+		int size = getFFTSize();
+		boolean fastMath = isFastMath();
+
+		double[][] arrays = windowArrays.get();
+		if (arrays == null) {
+			arrays = new double[3][size];
+			windowArrays.set(arrays);
+		}
+		double[] windowed = arrays[0];
+		double[] real = arrays[1];
+		double[] imaginary = arrays[2];
+
+		for (int i = 0; i < inFrames; ++i) {
+			windowed[i] = (double) samples[start + i] * coefficients[i];
+		}
+		for (int i = inFrames; i < size; ++i) {
+			windowed[i] = 0;
+		}
+
+		getBackend().transform(windowed, real, imaginary);
+
+		for (int k = 0; k < size; ++k) {
+			double power = Math.pow(real[k], 2) + Math.pow(imaginary[k], 2);
+			row[k] = !log ? power : fastMath ? FastMath.log10(1 + power) : Math.log10(1 + power);
+		}
+	}
+
+
+	// returns the coefficients of the Blackman-Harris window, working them out the first time
+	private double[] blackmanHarrisCoefficients() {
+
+		// a Blackman-Harris window tapers off the ends of the signal
+		if (blackmanHarrisWindow == null) {
+			double[] window = new double[inFrames];
+			for (int i = 0; i < inFrames; ++i) {
+				window[i] = (0.355768 - 0.487396 * Math.cos(2 * Math.PI * i / frames)
+						+ 0.144232 * Math.cos(4 * Math.PI * i / frames)
+						- 0.012604 * Math.cos(6 * Math.PI * i / frames));
+			}
+			blackmanHarrisWindow = window;
+		}
+		return blackmanHarrisWindow;
+	}
+
+
 	/**
 	 * This method simply returns the square root of each value in the array given to it
 	 * The method does not return a new array but changes the values in the array given to it
@@ -286,9 +616,22 @@ public class SignalProcessor extends FFTObject{
 	}
 
 
+	/**
+	 * This method puts each value in the array given to it through log10(1 + value), with FastMath if
+	 * setFastMath(true) has been called
+	 * The method does not return a new array but changes the values in the array given to it
+	 * @param input the power spectrum window to be processed by the log
+	 * @return the array it was given but with the log of all the values
+	 */
 	public double[] log(double[] input) {
-		for (int i = 0; i < frames; ++i) {
-			input[i] = Math.log10(1 + input[i]);
+		if (isFastMath()) {
+			for (int i = 0; i < frames; ++i) {
+				input[i] = FastMath.log10(1 + input[i]);
+			}
+		} else {
+			for (int i = 0; i < frames; ++i) {
+				input[i] = Math.log10(1 + input[i]);
+			}
 		}
 		return input;
 	}
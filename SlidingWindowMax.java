@@ -0,0 +1,258 @@
+package rollingmemory;
+
+/**
+ * The sliding window max keeps track of the largest value in the most recent windows, for any number of
+ * recent windows up to a maximum width. It sits alongside a rolling double memory and is told about every
+ * value added to it.
+ *
+ * It works by keeping a queue (a monotonic deque) of only the windows that could still be the largest of
+ * some number of recent windows. A window can only be the largest if no newer window is as large as it is,
+ * so when a new value comes along, every window at the back of the queue that is not larger than it is
+ * thrown away. This leaves the queue going from the oldest (and largest) value at the front to the newest
+ * (and smallest) value at the back. Every window goes into and out of the queue at most once, so keeping
+ * the queue up to date costs next to nothing per window.
+ *
+ * Lets see how the queue works:
+ * ' v ' is the front of the queue (the largest value in the full width)
+ * max width = 5
+ *
+ * Values 4, 1 and 3 are added at windows 0, 1 and 2. The 1 is thrown away when the 3 comes along:
+ * 	v
+ * 	0	2	-	-	-		<--- window index
+ * 	4	3	-	-	-		<--- value
+ *
+ * Values 2 and 3 are added at windows 3 and 4. The 3 at window 4 throws away the 2 and the older 3:
+ * 	v
+ * 	0	4	-	-	-
+ * 	4	3	-	-	-
+ *
+ * Value 0 is added at window 5. Window 0 is now more than the max width behind and drops off the front:
+ * 		v
+ * 	-	4	5	-	-
+ * 	-	3	0	-	-
+ *
+ * To find the largest of the last w windows, we find the first window in the queue that is one of the last
+ * w windows (by binary searching, since the window indexes in the queue are in order). Everything in front
+ * of it is too old, and everything behind it is smaller, so it must be the largest. Because equal values
+ * are thrown away too, when two windows have the largest value, the newest of them is always given
+ */
+public class SlidingWindowMax {
+
+	// the largest number of recent windows a query can cover
+	private final int maxWidth;
+
+	// the window index and value of every window in the queue
+	private final int[] queueIndexes;
+	private final double[] queueValues;
+
+	// the place in the arrays of the front of the queue
+	private int head = 0;
+
+	// the number of windows in the queue
+	private int count = 0;
+
+	// the newest window recorded
+	private int newestWindow = -1;
+
+
+	/**
+	 * Creates a sliding window max
+	 * @param maxWidth the largest number of recent windows that will be asked about at once
+	 * @throws IllegalArgumentException if the max width is not above 0
+	 */
+	public SlidingWindowMax(int maxWidth) {
+
+		if (maxWidth < 1) {
+			throw new IllegalArgumentException("The max width should be above 0, not " + maxWidth);
+		}
+
+		this.maxWidth = maxWidth;
+
+		queueIndexes = new int[maxWidth];
+		queueValues = new double[maxWidth];
+	}
+
+
+	/**
+	 * Records the value of the newest window. The window index should always be one more than the last
+	 * one recorded
+	 * Synchronised with other methods in this object to make it thread safe
+	 * @param windowIndex the index of the window
+	 * @param value the value of the window
+	 */
+	synchronized public void record(int windowIndex, double value) {
+
+		newestWindow = windowIndex;
+
+		// drop the front of the queue if it has fallen out of the max width
+		while (count > 0 && queueIndexes[head] <= windowIndex - maxWidth) {
+			head = (head + 1) % maxWidth;
+			--count;
+		}
+
+		// throw away every window at the back of the queue that is no larger than the new value,
+		// as they can never be the largest again
+		while (count > 0 && queueValues[(head + count - 1) % maxWidth] <= value) {
+			--count;
+		}
+
+		int place = (head + count) % maxWidth;
+		queueIndexes[place] = windowIndex;
+		queueValues[place] = value;
+		++count;
+	}
+
+
+	/**
+	 * Tells the queue that the value of a window already recorded has changed. Raising a value can always
+	 * be dealt with, as can lowering the value of a window that is no longer in the queue. Lowering the value
+	 * of a window still in the queue may bring back windows that have been thrown away, which the queue no
+	 * longer knows about. In this case, the queue has to be cleared and every window in the max width
+	 * recorded again
+	 * Synchronised with other methods in this object to make it thread safe
+	 * @param windowIndex the index of the window
+	 * @param value the new value of the window
+	 * @return false if the queue needs to be cleared and recorded again, true otherwise
+	 */
+	synchronized public boolean overwrite(int windowIndex, double value) {
+
+		// windows outside the max width don't matter any more
+		if (windowIndex <= newestWindow - maxWidth) {
+			return true;
+		}
+
+		int position = firstAtOrAfter(windowIndex);
+		boolean inQueue = position < count && queueIndexes[(head + position) % maxWidth] == windowIndex;
+
+		if (inQueue) {
+
+			if (value < queueValues[(head + position) % maxWidth]) {
+				return false;
+			}
+			queueValues[(head + position) % maxWidth] = value;
+
+		} else if (position < count && queueValues[(head + position) % maxWidth] >= value) {
+			// a newer window is at least as large, so the window still can't be the largest
+			return true;
+
+		} else {
+
+			// the window goes into the queue. A window behind it in the queue must be newer, and every
+			// newer window in the queue is smaller than it, so it goes straight in front of them
+			++count;
+			for (int p = count - 1; p > position; --p) {
+				queueIndexes[(head + p) % maxWidth] = queueIndexes[(head + p - 1) % maxWidth];
+				queueValues[(head + p) % maxWidth] = queueValues[(head + p - 1) % maxWidth];
+			}
+			queueIndexes[(head + position) % maxWidth] = windowIndex;
+			queueValues[(head + position) % maxWidth] = value;
+		}
+
+		// every older window that is no larger than the new value can never be the largest again
+		int largerInFront = position;
+		while (largerInFront > 0 && queueValues[(head + largerInFront - 1) % maxWidth] <= value) {
+			--largerInFront;
+		}
+		int removed = position - largerInFront;
+		if (removed > 0) {
+			for (int p = largerInFront; p < count - removed; ++p) {
+				queueIndexes[(head + p) % maxWidth] = queueIndexes[(head + p + removed) % maxWidth];
+				queueValues[(head + p) % maxWidth] = queueValues[(head + p + removed) % maxWidth];
+			}
+			count -= removed;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Empties the queue, ready for every window to be recorded again
+	 * Synchronised with other methods in this object to make it thread safe
+	 */
+	synchronized public void clear() {
+		head = 0;
+		count = 0;
+		newestWindow = -1;
+	}
+
+
+	/**
+	 * Finds the window with the largest value out of the most recent windows. If more than one window
+	 * has the largest value, the newest is given
+	 * Synchronised with other methods in this object to make it thread safe
+	 * @param width the number of recent windows to look through, including the newest window
+	 * @return the window index of the largest value, or -1 if no windows have been recorded
+	 * @throws IllegalArgumentException if the width is not between 1 and the max width
+	 */
+	synchronized public int maxIndex(int width) {
+
+		int position = positionOfMax(width);
+		return (position < count) ? queueIndexes[(head + position) % maxWidth] : -1;
+	}
+
+
+	/**
+	 * Finds the largest value out of the most recent windows
+	 * Synchronised with other methods in this object to make it thread safe
+	 * @param width the number of recent windows to look through, including the newest window
+	 * @return the largest value, or 0 if no windows have been recorded
+	 * @throws IllegalArgumentException if the width is not between 1 and the max width
+	 */
+	synchronized public double maxValue(int width) {
+
+		int position = positionOfMax(width);
+		return (position < count) ? queueValues[(head + position) % maxWidth] : 0;
+	}
+
+
+	/**
+	 * Returns the index of the newest window recorded
+	 * Synchronised with other methods in this object to make it thread safe
+	 * @return the newest window index, or -1 if no windows have been recorded
+	 */
+	synchronized public int getNewestWindow() {
+		return newestWindow;
+	}
+
+
+	/**
+	 * Returns the largest number of recent windows a query can cover
+	 * @return the max width
+	 */
+	public int getMaxWidth() {
+		return maxWidth;
+	}
+
+
+	// finds the position in the queue of the largest of the most recent windows
+	private int positionOfMax(int width) {
+
+		if (width < 1 || width > maxWidth) {
+			throw new IllegalArgumentException("Width " + width + " is not in the range of 1 - " + maxWidth);
+		}
+
+		// the first window in the queue that is one of the most recent windows is the largest of them
+		return firstAtOrAfter(newestWindow - width + 1);
+	}
+
+
+	// binary searches for the position of the first window in the queue at or after the window index given
+	private int firstAtOrAfter(int windowIndex) {
+
+		int low = 0;
+		int high = count;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (queueIndexes[(head + middle) % maxWidth] < windowIndex) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+}
@@ -0,0 +1,271 @@
+package rollingmemory;
+
+/**
+ * The sparse onset ring keeps a list of only the windows that have an onset (a value above zero) in them,
+ * alongside a rolling double memory that holds every window. Most windows of the denoised impulse data are
+ * zero, so rather than going through every window to find the onsets in a range, the onsets are kept in
+ * order of their window index and found by binary searching. This way, finding onsets costs about the same
+ * as the number of onsets there are, rather than the number of windows.
+ *
+ * The onsets are held in a ring, in the same way as the rolling memories:
+ * ' v ' is the oldest onset still held (head)
+ * size of ring = 5
+ *
+ * Onsets are added at windows 3, 9 and 10:
+ * 	v
+ * 	3	9	10	-	-		<--- window index
+ * 	2.1	0.4	5.0	-	-		<--- strength
+ *
+ * Onsets are added at windows 14, 20 and 21. The ring wraps and the oldest onset is lost:
+ * 		v
+ * 	21	9	10	14	20
+ * 	1.1	0.4	5.0	0.3	2.2
+ *
+ * Onsets are also dropped once their window is more than the span of windows behind the newest window
+ * written, so the ring never holds onsets for windows the rolling memory has already overwritten.
+ * Positions in the ring count from the oldest onset held (0) up to the newest
+ */
+public class SparseOnsetRing {
+
+	// the maximum number of onsets held at once
+	private final int capacity;
+
+	// the number of windows behind the newest window an onset is kept for
+	private final int windowSpan;
+
+	// the window index and strength of every onset held
+	private final int[] onsetIndexes;
+	private final double[] onsetStrengths;
+
+	// the place in the arrays of the oldest onset held
+	private int head = 0;
+
+	// the number of onsets held
+	private int count = 0;
+
+	// the newest window written, whether or not it had an onset
+	private int newestWindow = -1;
+
+
+	/**
+	 * Creates a sparse onset ring
+	 * @param capacity the maximum number of onsets held at once. If more onsets come along, the oldest are lost
+	 * @param windowSpan the number of windows (counting back from the newest window written) onsets are kept for.
+	 * This should be the size of the rolling memory it sits alongside
+	 */
+	public SparseOnsetRing(int capacity, int windowSpan) {
+
+		this.capacity = capacity;
+		this.windowSpan = windowSpan;
+
+		onsetIndexes = new int[capacity];
+		onsetStrengths = new double[capacity];
+	}
+
+
+	/**
+	 * Records the value of the newest window. Only values above zero are kept as onsets. The window index
+	 * should always be larger than the last one recorded
+	 * Synchronised with other methods in this object to make the ring thread safe
+	 * @param windowIndex the index of the window
+	 * @param value the value of the window
+	 */
+	synchronized public void record(int windowIndex, double value) {
+
+		newestWindow = windowIndex;
+
+		// drop any onsets that have fallen out of the span of windows
+		while (count > 0 && onsetIndexes[head] <= windowIndex - windowSpan) {
+			head = (head + 1) % capacity;
+			--count;
+		}
+
+		if (value > 0) {
+
+			// if the ring is full, we lose the oldest onset
+			if (count == capacity) {
+				head = (head + 1) % capacity;
+				--count;
+			}
+
+			int place = (head + count) % capacity;
+			onsetIndexes[place] = windowIndex;
+			onsetStrengths[place] = value;
+			++count;
+		}
+	}
+
+
+	/**
+	 * Changes the value of a window that has already been recorded. If the window becomes zero, its onset
+	 * is taken out of the ring. If it wasn't an onset but now is, it is put into the ring in order
+	 * Synchronised with other methods in this object to make the ring thread safe
+	 * @param windowIndex the index of the window
+	 * @param value the new value of the window
+	 */
+	synchronized public void overwrite(int windowIndex, double value) {
+
+		int position = firstAtOrAfter(windowIndex);
+		boolean exists = position < count && onsetIndexes[(head + position) % capacity] == windowIndex;
+
+		if (exists && value > 0) {
+			onsetStrengths[(head + position) % capacity] = value;
+
+		} else if (exists) {
+			// shift every newer onset back one place to fill the gap
+			for (int p = position; p < count - 1; ++p) {
+				onsetIndexes[(head + p) % capacity] = onsetIndexes[(head + p + 1) % capacity];
+				onsetStrengths[(head + p) % capacity] = onsetStrengths[(head + p + 1) % capacity];
+			}
+			--count;
+
+		} else if (value > 0 && windowIndex > newestWindow - windowSpan) {
+
+			// make room if we need to, losing the oldest onset
+			if (count == capacity) {
+				if (position == 0) {
+					return;
+				}
+				head = (head + 1) % capacity;
+				--count;
+				--position;
+			}
+
+			// shift every newer onset forward one place to make a gap
+			for (int p = count; p > position; --p) {
+				onsetIndexes[(head + p) % capacity] = onsetIndexes[(head + p - 1) % capacity];
+				onsetStrengths[(head + p) % capacity] = onsetStrengths[(head + p - 1) % capacity];
+			}
+			onsetIndexes[(head + position) % capacity] = windowIndex;
+			onsetStrengths[(head + position) % capacity] = value;
+			++count;
+		}
+	}
+
+
+	// finds the position of the first onset at or after the window given, by binary searching.
+	// Returns the number of onsets held if there are none at or after the window
+	private int firstAtOrAfter(int windowIndex) {
+
+		int low = 0;
+		int high = count;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (onsetIndexes[(head + middle) % capacity] < windowIndex) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+
+	/**
+	 * Returns how many onsets there are between two windows
+	 * Synchronised with other methods in this object to make the ring thread safe
+	 * @param firstWindow the first window of the range (inclusive)
+	 * @param lastWindow the last window of the range (inclusive)
+	 * @return the number of onsets in the range
+	 */
+	synchronized public int countInRange(int firstWindow, int lastWindow) {
+		return Math.max(0, firstAtOrAfter(lastWindow + 1) - firstAtOrAfter(firstWindow));
+	}
+
+
+	/**
+	 * Finds the strongest onset between two windows. If more than one onset has the strongest value,
+	 * the newest one is given
+	 * Synchronised with other methods in this object to make the ring thread safe
+	 * @param firstWindow the first window of the range (inclusive)
+	 * @param lastWindow the last window of the range (inclusive)
+	 * @return the window index of the strongest onset, or -1 if there are no onsets in the range
+	 */
+	synchronized public int strongestInRange(int firstWindow, int lastWindow) {
+
+		int first = firstAtOrAfter(firstWindow);
+		int last = firstAtOrAfter(lastWindow + 1) - 1;
+
+		int strongest = -1;
+		double strongestValue = 0;
+
+		// go from the newest onset backwards, so the newest wins when two are equal
+		for (int p = last; p >= first; --p) {
+			if (onsetStrengths[(head + p) % capacity] > strongestValue) {
+				strongestValue = onsetStrengths[(head + p) % capacity];
+				strongest = onsetIndexes[(head + p) % capacity];
+			}
+		}
+
+		return strongest;
+	}
+
+
+	/**
+	 * Finds the onset closest to the window given. If two are as close as each other, the older one is given
+	 * Synchronised with other methods in this object to make the ring thread safe
+	 * @param windowIndex the window to look around
+	 * @return the window index of the nearest onset, or -1 if there are no onsets held
+	 */
+	synchronized public int nearest(int windowIndex) {
+
+		if (count == 0) {
+			return -1;
+		}
+
+		int after = firstAtOrAfter(windowIndex);
+
+		if (after == count) {
+			return onsetIndexes[(head + count - 1) % capacity];
+		}
+		if (after == 0) {
+			return onsetIndexes[head];
+		}
+
+		int afterIndex = onsetIndexes[(head + after) % capacity];
+		int beforeIndex = onsetIndexes[(head + after - 1) % capacity];
+
+		return (afterIndex - windowIndex < windowIndex - beforeIndex) ? afterIndex : beforeIndex;
+	}
+
+
+	/**
+	 * Copies the onsets between two windows into the arrays given
+	 * Synchronised with other methods in this object to make the ring thread safe
+	 * @param firstWindow the first window of the range (inclusive)
+	 * @param lastWindow the last window of the range (inclusive)
+	 * @param indexes the array the window index of each onset is copied into
+	 * @param strengths the array the strength of each onset is copied into
+	 * @return the number of onsets copied
+	 * @throws IllegalArgumentException if the arrays are too small to hold every onset in the range
+	 */
+	synchronized public int copyRange(int firstWindow, int lastWindow, int[] indexes, double[] strengths) {
+
+		int first = firstAtOrAfter(firstWindow);
+		int onsetsInRange = firstAtOrAfter(lastWindow + 1) - first;
+
+		if (indexes.length < onsetsInRange || strengths.length < onsetsInRange) {
+			throw new IllegalArgumentException("Arrays of size " + Math.min(indexes.length, strengths.length)
+					+ " cannot hold the " + onsetsInRange + " onsets in the range");
+		}
+
+		for (int i = 0; i < onsetsInRange; ++i) {
+			indexes[i] = onsetIndexes[(head + first + i) % capacity];
+			strengths[i] = onsetStrengths[(head + first + i) % capacity];
+		}
+
+		return onsetsInRange;
+	}
+
+
+	/**
+	 * Returns the maximum number of onsets the ring can hold
+	 * @return the capacity of the ring
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+}
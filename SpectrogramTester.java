@@ -0,0 +1,74 @@
+package fourier;
+
+import java.util.Random;
+
+/**
+ * Times working out the spectrogram of a whole track, one window at a time with blackmanHarrisFFT (as
+ * Illumaxate does as it plays), against doing every window at once with blackmanHarrisSpectrogram, with the
+ * radix 2 backend and with the mixed radix backend (which does the windows in interleaved batches).
+ * The track is a minute of noise at 44.1 kHz, with the same window size and hop as Illumaxate uses by default.
+ * How many times faster than real time each one is, and how far each differs from the window at a time
+ * spectrogram, are printed out
+ */
+public class SpectrogramTester {
+
+	static final double sampleRate = 44100;
+	static final double trackSeconds = 60;
+	static final int windowSize = 1882;
+	static final int hop = 132;
+
+
+	public static void main(String[] args) {
+
+		Random random = new Random(43);
+		int[] track = new int[(int) (sampleRate * trackSeconds)];
+		for (int i = 0; i < track.length; ++i) {
+			track[i] = random.nextInt(60000) - 30000;
+		}
+
+		int numOfWindows = (track.length - windowSize) / hop + 1;
+		System.out.println(numOfWindows + " windows of " + windowSize + " frames, on " + Runtime.getRuntime().availableProcessors() + " processors");
+
+		// one window at a time
+		SignalProcessor signalProcess = new SignalProcessor(windowSize);
+		double[][] reference = new double[numOfWindows][signalProcess.getFFTSize()];
+		int[] window = new int[windowSize];
+
+		double seconds = Double.MAX_VALUE;
+		for (int round = 0; round < 3; ++round) {
+			long start = System.nanoTime();
+			for (int w = 0; w < numOfWindows; ++w) {
+				System.arraycopy(track, w * hop, window, 0, windowSize);
+				double[] spectrum = signalProcess.log(signalProcess.blackmanHarrisFFT(window));
+				System.arraycopy(spectrum, 0, reference[w], 0, spectrum.length);
+			}
+			seconds = Math.min(seconds, (System.nanoTime() - start) / 1e9);
+		}
+		System.out.format("one window at a time (radix2):	%.2f seconds, %.0f times real time\n", seconds, trackSeconds / seconds);
+
+		for (String backend : new String[] {Radix2Backend.NAME, MixedRadixBackend.NAME}) {
+
+			FFTBackends.select(backend);
+			SignalProcessor batchProcess = new SignalProcessor(windowSize);
+			double[][] spectrogram = new double[numOfWindows][batchProcess.getFFTSize()];
+
+			seconds = Double.MAX_VALUE;
+			for (int round = 0; round < 3; ++round) {
+				long start = System.nanoTime();
+				batchProcess.blackmanHarrisSpectrogram(track, 0, hop, numOfWindows, true, spectrogram);
+				seconds = Math.min(seconds, (System.nanoTime() - start) / 1e9);
+			}
+
+			double difference = 0;
+			for (int w = 0; w < numOfWindows; ++w) {
+				for (int k = 0; k < spectrogram[w].length; ++k) {
+					difference = Math.max(difference, Math.abs(spectrogram[w][k] - reference[w][k]));
+				}
+			}
+
+			System.out.format("spectrogram (%s):	%.2f seconds, %.0f times real time, largest difference %.1e\n", backend, seconds,
+					trackSeconds / seconds, difference);
+		}
+	}
+
+}
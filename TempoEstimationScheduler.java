@@ -0,0 +1,141 @@
+package audio;
+
+import rollingmemory.RollingDoubleMemory;
+
+/**
+ * Decides when the beat tracker should work out the tempo again, rather than it being worked out on every
+ * single window that has an impulse in it. An onset in the denoised impulse data usually lasts for several
+ * windows in a row, and working out the tempo on every one of them gives pretty much the same answer each
+ * time. Instead, the tempo is only worked out again when the evidence has changed: when a new onset starts,
+ * or when the onset being looked at rises to a new peak. On top of this, the tempo is never worked out more
+ * often than a set number of windows. If an estimate is due but too soon, it is made on the next window with
+ * an impulse once enough windows have gone by.
+ * Between estimates the last tempo worked out is handed back for every window that has an impulse, and an
+ * empty tempo for every window without one, just as happened when the tempo was worked out every window.
+ * If the impulse memory has a sparse onset ring attached, the beat tracker is given it so the jump loop only
+ * looks at the onsets of the interval rather than every window.
+ * Each scheduler only holds a handful of values, so one can be made for every stream being tracked
+ */
+public class TempoEstimationScheduler {
+
+	// the beat tracker that works out the tempo
+	private final BeatTracker beatTracker;
+
+	// where the denoised impulses and the volumes of every window are read from
+	private final RollingDoubleMemory impulseMemory;
+	private final RollingDoubleMemory volumeMemory;
+
+	// the number of windows in the interval given to the beat tracker
+	private final int windowsInInterval;
+
+	// the fewest windows there can be between two estimates of the tempo
+	private final int minWindowsBetweenEstimates;
+
+	// this is handed back for windows without an impulse in them
+	private final double[] emptyTempo = new double[5];
+
+	// the last tempo worked out by the beat tracker
+	private double[] cachedTempo = emptyTempo;
+
+	// the impulse of the last window given to the scheduler
+	private double previousImpulse = 0;
+
+	// the largest impulse of the onset currently being looked at
+	private double onsetPeak = 0;
+
+	// the window the tempo was last worked out on
+	private int lastEstimateWindow = Integer.MIN_VALUE / 2;
+
+	// true if the evidence has changed but an estimate hasn't been made yet because it was too soon
+	private boolean estimatePending = false;
+
+	// tallies of how many windows have been given to the scheduler and how many estimates have been made
+	private long windowsScheduled = 0;
+	private long estimatesMade = 0;
+
+
+	/**
+	 * Creates a scheduler for the beat tracker given
+	 * @param beatTracker the beat tracker to work out the tempo with
+	 * @param impulseMemory the rolling memory holding the denoised impulse of every window
+	 * @param volumeMemory the rolling memory holding the volume of every window
+	 * @param windowsInInterval the number of windows in the interval given to the beat tracker
+	 * @param minWindowsBetweenEstimates the fewest windows there can be between two estimates of the tempo.
+	 * 1 lets an estimate be made on every window
+	 */
+	public TempoEstimationScheduler(BeatTracker beatTracker, RollingDoubleMemory impulseMemory, RollingDoubleMemory volumeMemory,
+			int windowsInInterval, int minWindowsBetweenEstimates) {
+
+		this.beatTracker = beatTracker;
+		this.impulseMemory = impulseMemory;
+		this.volumeMemory = volumeMemory;
+		this.windowsInInterval = windowsInInterval;
+		this.minWindowsBetweenEstimates = Math.max(1, minWindowsBetweenEstimates);
+	}
+
+
+	/**
+	 * Returns the tempo for the window given, working it out again with the beat tracker only if the
+	 * evidence has changed since it was last worked out. The array returned is in the same form as
+	 * the one BeatTracker.trackBeat returns, and can be given straight to BeatTracker.getBeat
+	 * @param totalWindowsProcessed the index of the window that has just been added to the memories
+	 * @return the tempo for the window. This is all zeros if the window has no impulse in it
+	 * @see BeatTracker#trackBeat
+	 */
+	public double[] getTempo(int totalWindowsProcessed) {
+
+		++windowsScheduled;
+
+		double currentImpulse = impulseMemory.getDouble(totalWindowsProcessed);
+
+		// if there is no impulse, the onset (if there was one) has ended
+		if (currentImpulse <= 0) {
+			previousImpulse = 0;
+			onsetPeak = 0;
+			return emptyTempo;
+		}
+
+		// the evidence has changed if a new onset has started, or the current onset has a new peak
+		if (previousImpulse <= 0 || currentImpulse > onsetPeak) {
+			estimatePending = true;
+		}
+
+		previousImpulse = currentImpulse;
+		onsetPeak = Math.max(onsetPeak, currentImpulse);
+
+		// we work out the tempo again, as long as it hasn't been worked out too recently
+		if (estimatePending && totalWindowsProcessed - lastEstimateWindow >= minWindowsBetweenEstimates) {
+
+			int firstWindow = totalWindowsProcessed - windowsInInterval + 1;
+			cachedTempo = beatTracker.trackBeat(
+					impulseMemory.getDoubleArray(firstWindow, windowsInInterval),
+					volumeMemory.getDoubleArray(firstWindow, windowsInInterval),
+					impulseMemory.getSparseIndex(), firstWindow);
+
+			lastEstimateWindow = totalWindowsProcessed;
+			estimatePending = false;
+			++estimatesMade;
+		}
+
+		return cachedTempo;
+	}
+
+
+	/**
+	 * Returns how many windows have been given to the scheduler
+	 * @return the number of windows
+	 */
+	public long getWindowsScheduled() {
+		return windowsScheduled;
+	}
+
+
+	/**
+	 * Returns how many times the tempo has actually been worked out by the beat tracker
+	 * @return the number of estimates made
+	 */
+	public long getEstimatesMade() {
+		return estimatesMade;
+	}
+
+}
@@ -0,0 +1,251 @@
+package audio;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Records the tempo of every harmonic, every time it is given them, without keeping them all in memory.
+ * Every sample is written straight out to a CSV file as it comes in (one line per sample, with the time
+ * first and then the tempo of each harmonic). Alongside this, a min/max summary of the samples is kept in
+ * memory at a fixed resolution, which is what gets plotted at the end. The summary is made up of a fixed
+ * number of buckets. Each bucket holds the smallest and largest tempo of each harmonic over the samples
+ * that fell into it. Once every bucket is full, neighbouring buckets are merged together in pairs and each
+ * bucket from then on holds twice as many samples. In this way, the memory used stays the same no matter
+ * how long the track is, and the summary always covers the whole track
+ */
+public class TempoHarmonicsRecorder {
+
+	// the number of harmonics recorded in every sample
+	private final int numOfHarmonics;
+
+	// the number of buckets in the summary
+	private final int resolution;
+
+	// where the samples are written out to as they come in
+	private BufferedWriter writer;
+
+	// the smallest and largest tempo of each harmonic in each bucket. [harmonic][bucket]
+	private final double[][] minTempos;
+	private final double[][] maxTempos;
+
+	// the time of the first and last sample in each bucket
+	private final double[] firstTimes;
+	private final double[] lastTimes;
+
+	// how many samples have gone into each bucket
+	private final int[] samplesInBucket;
+
+	// how many samples each bucket holds before we move onto the next one. This doubles every time
+	// the buckets are merged
+	private int samplesPerBucket = 1;
+
+	// the bucket new samples are being added to
+	private int currentBucket = 0;
+
+	// the total number of samples recorded
+	private long totalSamples = 0;
+
+
+	/**
+	 * Creates a recorder which writes every sample to the file given, and keeps a summary of the samples
+	 * with the resolution given
+	 * @param outputFile the CSV file every sample is written out to
+	 * @param numOfHarmonics how many harmonics there are in every sample
+	 * @param resolution the number of buckets in the summary. This must be an even number
+	 * @throws IOException if the file cannot be written to
+	 * @throws IllegalArgumentException if the resolution is not an even number of at least 2
+	 */
+	public TempoHarmonicsRecorder(File outputFile, int numOfHarmonics, int resolution) throws IOException {
+
+		if (resolution < 2 || resolution % 2 != 0) {
+			throw new IllegalArgumentException("The resolution of the summary should be an even number, not " + resolution);
+		}
+
+		this.numOfHarmonics = numOfHarmonics;
+		this.resolution = resolution;
+
+		minTempos = new double[numOfHarmonics][resolution];
+		maxTempos = new double[numOfHarmonics][resolution];
+		firstTimes = new double[resolution];
+		lastTimes = new double[resolution];
+		samplesInBucket = new int[resolution];
+
+		for (int h = 0; h < numOfHarmonics; ++h) {
+			clearBucket(h, 0, resolution);
+		}
+
+		writer = new BufferedWriter(new FileWriter(outputFile));
+
+		// write out the header of the CSV file
+		writer.write("time");
+		for (int h = 0; h < numOfHarmonics; ++h) {
+			writer.write(",harmonic " + (h + 1));
+		}
+		writer.newLine();
+	}
+
+
+	/**
+	 * Records the tempo of every harmonic at the time given. The sample is written out to the file and
+	 * added into the summary
+	 * @param time the time of the sample in seconds. This should never go down between samples
+	 * @param tempos the tempo of each harmonic in BPM. If a harmonic has no tempo for this sample,
+	 * it should be given as Double.NaN, and it will be left empty in the file and the summary
+	 * @throws IOException if the sample could not be written to the file
+	 */
+	public void record(double time, double[] tempos) throws IOException {
+
+		if (tempos.length != numOfHarmonics) {
+			throw new IllegalArgumentException("Expected the tempos of " + numOfHarmonics + " harmonics, was given " + tempos.length);
+		}
+
+		// write the sample out to the file
+		writer.write(Double.toString(time));
+		for (int h = 0; h < numOfHarmonics; ++h) {
+			writer.write(',');
+			if (!Double.isNaN(tempos[h])) {
+				writer.write(Double.toString(tempos[h]));
+			}
+		}
+		writer.newLine();
+
+		// if the current bucket is full, move onto the next. If there is no next bucket, we merge
+		// the buckets together in pairs, which frees up the second half of the summary
+		if (samplesInBucket[currentBucket] == samplesPerBucket) {
+			++currentBucket;
+			if (currentBucket == resolution) {
+				mergeBuckets();
+			}
+		}
+
+		// add the sample into the summary
+		if (samplesInBucket[currentBucket] == 0) {
+			firstTimes[currentBucket] = time;
+		}
+		lastTimes[currentBucket] = time;
+		++samplesInBucket[currentBucket];
+
+		for (int h = 0; h < numOfHarmonics; ++h) {
+			if (!Double.isNaN(tempos[h])) {
+				minTempos[h][currentBucket] = Math.min(minTempos[h][currentBucket], tempos[h]);
+				maxTempos[h][currentBucket] = Math.max(maxTempos[h][currentBucket], tempos[h]);
+			}
+		}
+
+		++totalSamples;
+	}
+
+
+	/**
+	 * Returns the number of buckets in the summary that have samples in them
+	 * @return the number of buckets used
+	 */
+	public int getBucketsUsed() {
+		return (samplesInBucket[currentBucket] == 0) ? currentBucket : currentBucket + 1;
+	}
+
+
+	/**
+	 * Returns the middle time of a bucket in the summary
+	 * @param bucket the bucket wanted
+	 * @return the time between the first and last sample of the bucket, in seconds
+	 */
+	public double getBucketTime(int bucket) {
+		return (firstTimes[bucket] + lastTimes[bucket]) / 2;
+	}
+
+
+	/**
+	 * Returns the smallest tempo of a harmonic within a bucket of the summary
+	 * @param harmonic the harmonic wanted (0 is the first harmonic)
+	 * @param bucket the bucket wanted
+	 * @return the smallest tempo in BPM, or Double.NaN if the harmonic had no tempos in the bucket
+	 */
+	public double getMinTempo(int harmonic, int bucket) {
+		return (minTempos[harmonic][bucket] == Double.POSITIVE_INFINITY) ? Double.NaN : minTempos[harmonic][bucket];
+	}
+
+
+	/**
+	 * Returns the largest tempo of a harmonic within a bucket of the summary
+	 * @param harmonic the harmonic wanted (0 is the first harmonic)
+	 * @param bucket the bucket wanted
+	 * @return the largest tempo in BPM, or Double.NaN if the harmonic had no tempos in the bucket
+	 */
+	public double getMaxTempo(int harmonic, int bucket) {
+		return (maxTempos[harmonic][bucket] == Double.NEGATIVE_INFINITY) ? Double.NaN : maxTempos[harmonic][bucket];
+	}
+
+
+	/**
+	 * Returns the number of harmonics recorded in every sample
+	 * @return the number of harmonics
+	 */
+	public int getNumOfHarmonics() {
+		return numOfHarmonics;
+	}
+
+
+	/**
+	 * Returns the total number of samples recorded so far
+	 * @return the number of samples
+	 */
+	public long getTotalSamples() {
+		return totalSamples;
+	}
+
+
+	/**
+	 * Writes out anything still waiting to be written and closes the file. The summary can still be read
+	 * after the recorder is closed, but no more samples can be recorded
+	 * @throws IOException if the file could not be closed
+	 */
+	public void close() throws IOException {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+
+
+	/**
+	 * Merges every pair of buckets into one. The merged buckets fill the first half of the summary
+	 * and the second half is emptied, ready for new samples. Each bucket will now hold twice as many samples
+	 */
+	private void mergeBuckets() {
+
+		for (int b = 0; b < resolution / 2; ++b) {
+
+			firstTimes[b] = firstTimes[b * 2];
+			lastTimes[b] = lastTimes[b * 2 + 1];
+			samplesInBucket[b] = samplesInBucket[b * 2] + samplesInBucket[b * 2 + 1];
+
+			for (int h = 0; h < numOfHarmonics; ++h) {
+				minTempos[h][b] = Math.min(minTempos[h][b * 2], minTempos[h][b * 2 + 1]);
+				maxTempos[h][b] = Math.max(maxTempos[h][b * 2], maxTempos[h][b * 2 + 1]);
+			}
+		}
+
+		for (int h = 0; h < numOfHarmonics; ++h) {
+			clearBucket(h, resolution / 2, resolution);
+		}
+		for (int b = resolution / 2; b < resolution; ++b) {
+			samplesInBucket[b] = 0;
+		}
+
+		samplesPerBucket *= 2;
+		currentBucket = resolution / 2;
+	}
+
+
+	// empties the buckets of a harmonic between the first (inclusive) and last (exclusive) bucket given
+	private void clearBucket(int harmonic, int firstBucket, int lastBucket) {
+		for (int b = firstBucket; b < lastBucket; ++b) {
+			minTempos[harmonic][b] = Double.POSITIVE_INFINITY;
+			maxTempos[harmonic][b] = Double.NEGATIVE_INFINITY;
+		}
+	}
+
+}
@@ -0,0 +1,25 @@
+package fourier;
+
+/**
+ * An FFT backend that can put a window function on the frames as it loads them, rather than needing the
+ * windowed frames to be worked out and written to an array of their own first. FFTObject uses this whenever
+ * its backend can do it
+ * @see FFTObject
+ */
+public interface WindowedFFTBackend extends FFTBackend {
+
+	/**
+	 * Does an FFT of the frames, each multiplied by its coefficient of the window function. The FFT is the size
+	 * of the real and imaginary arrays, and if there are fewer frames than this, the rest are taken to be 0.
+	 * The frames and coefficients aren't changed. The result should be the same as multiplying the frames by the
+	 * coefficients, padding them with zeros, and passing them to transform
+	 * @param frames the real input
+	 * @param coefficients the window function, at least as long as the frames
+	 * @param real the array the real part of the result is written to
+	 * @param imaginary the array the imaginary part of the result is written to
+	 * @throws IllegalArgumentException if the backend does not support the size of the real and imaginary arrays,
+	 * or the other arrays don't fit with them
+	 */
+	void transformWindowed(double[] frames, double[] coefficients, double[] real, double[] imaginary);
+
+}